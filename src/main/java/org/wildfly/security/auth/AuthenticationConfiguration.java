@@ -35,7 +35,6 @@ import javax.security.auth.callback.UnsupportedCallbackException;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
-import org.wildfly.security.auth.callback.CallbackUtils;
 import org.wildfly.security.auth.principal.AnonymousPrincipal;
 import org.wildfly.security.auth.principal.NamePrincipal;
 import org.wildfly.security.auth.util.NameRewriter;
@@ -59,27 +58,10 @@ public abstract class AuthenticationConfiguration {
      */
     public static final AuthenticationConfiguration EMPTY = new AuthenticationConfiguration() {
 
-        void handleCallback(final Callback[] callbacks, final int index) throws UnsupportedCallbackException {
-            CallbackUtils.unsupported(callbacks[index]);
-        }
-
-        void handleCallbacks(final AuthenticationConfiguration config, final Callback[] callbacks) throws IOException, UnsupportedCallbackException {
-            final int length = callbacks.length;
-            for (int i = 0; i < length; i ++) {
-                config.handleCallback(callbacks, i);
-            }
-        }
-
-        void configureSaslProperties(final Map<String, Object> properties) {
-        }
-
-        void filterSaslMechanisms(final Set<String> names) {
+        void compile(final CompiledAuthenticationConfiguration.Builder builder) {
+            builder.setPrincipal(AnonymousPrincipal.getInstance());
             // apparently no principal has been set; we only allow anonymous
-            names.retainAll(ONLY_ANONYMOUS);
-        }
-
-        String doRewriteUser(final String original) {
-            return original;
+            builder.allowMechanisms(ONLY_ANONYMOUS);
         }
 
         AuthenticationConfiguration reparent(final AuthenticationConfiguration newParent) {
@@ -89,26 +71,10 @@ public abstract class AuthenticationConfiguration {
         AuthenticationConfiguration without(final Class<? extends AuthenticationConfiguration> clazz) {
             return this;
         }
-
-        String getHost(final URI uri) {
-            return uri.getHost();
-        }
-
-        int getPort(final URI uri) {
-            return uri.getPort();
-        }
-
-        Principal getPrincipal() {
-            return AnonymousPrincipal.getInstance();
-        }
     };
 
     private final AuthenticationConfiguration parent;
-    private final CallbackHandler callbackHandler = new CallbackHandler() {
-        public void handle(final Callback[] callbacks) throws IOException, UnsupportedCallbackException {
-            AuthenticationConfiguration.this.handleCallbacks(AuthenticationConfiguration.this, callbacks);
-        }
-    };
+    private volatile CompiledAuthenticationConfiguration compiled;
 
     // constructors
 
@@ -127,37 +93,63 @@ public abstract class AuthenticationConfiguration {
     // test method
 
     Principal getPrincipal() {
-        return parent.getPrincipal();
+        return getCompiled().getPrincipal();
     }
 
     String getHost(URI uri) {
-        return parent.getHost(uri);
+        return getCompiled().getHost(uri);
     }
 
     int getPort(URI uri) {
-        return parent.getPort(uri);
+        return getCompiled().getPort(uri);
     }
 
     // internal actions
 
-    void handleCallback(Callback[] callbacks, int index) throws IOException, UnsupportedCallbackException {
-        parent.handleCallback(callbacks, index);
+    void configureSaslProperties(Map<String, Object> properties) {
+        getCompiled().configureSaslProperties(properties);
     }
 
-    void handleCallbacks(AuthenticationConfiguration config, Callback[] callbacks) throws IOException, UnsupportedCallbackException {
-        parent.handleCallbacks(config, callbacks);
+    void filterSaslMechanisms(Set<String> names) {
+        getCompiled().filterSaslMechanisms(names);
     }
 
-    void configureSaslProperties(Map<String, Object> properties) {
-        parent.configureSaslProperties(properties);
+    String doRewriteUser(String original) {
+        return getCompiled().doRewriteUser(original);
     }
 
-    void filterSaslMechanisms(Set<String> names) {
-        parent.filterSaslMechanisms(names);
+    // compilation
+
+    /**
+     * Contribute the settings of this layer alone to the compiled form of a chain.
+     *
+     * @param builder the builder of the compiled form
+     */
+    abstract void compile(CompiledAuthenticationConfiguration.Builder builder);
+
+    /**
+     * Handle a callback of one of the types this layer registered when it was compiled.
+     *
+     * @param callback the callback
+     * @return {@code true} if the callback was handled, {@code false} if it should be offered to the next layer
+     * @throws IOException if the credential for the callback could not be acquired
+     * @throws UnsupportedCallbackException if the callback is rejected
+     */
+    boolean handleCallback(Callback callback) throws IOException, UnsupportedCallbackException {
+        return false;
     }
 
-    String doRewriteUser(String original) {
-        return parent.doRewriteUser(original);
+    CompiledAuthenticationConfiguration getCompiled() {
+        CompiledAuthenticationConfiguration compiled = this.compiled;
+        if (compiled == null) {
+            // the chain is immutable so a racing compilation produces an equivalent result
+            this.compiled = compiled = CompiledAuthenticationConfiguration.compile(this);
+        }
+        return compiled;
+    }
+
+    AuthenticationConfiguration getParent() {
+        return parent;
     }
 
     abstract AuthenticationConfiguration reparent(AuthenticationConfiguration newParent);
@@ -337,11 +329,10 @@ public abstract class AuthenticationConfiguration {
     // XML
 
     static AuthenticationConfiguration fromXml(XMLStreamReader reader) throws XMLStreamException {
-        // todo
-        return null;
+        return new IdentityContextParser(reader, null).parseAuthenticationConfiguration();
     }
 
     CallbackHandler getCallbackHandler() {
-        return callbackHandler;
+        return getCompiled().getCallbackHandler();
     }
 }
@@ -0,0 +1,248 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.auth;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+
+import org.wildfly.security.auth.callback.CallbackUtils;
+import org.wildfly.security.auth.util.NameRewriter;
+
+/**
+ * The immutable, flattened form of an {@link AuthenticationConfiguration} chain.
+ * <p>
+ * Each layer of the chain contributes its settings once, from the outermost layer to the root, so that the principal,
+ * host, port, SASL properties and mechanism filter are resolved up front.  Callbacks are dispatched through a table
+ * mapping each callback type to the layers able to handle it, rather than by offering every callback to every layer.
+ */
+final class CompiledAuthenticationConfiguration {
+
+    private static final AuthenticationConfiguration[] NO_LAYERS = new AuthenticationConfiguration[0];
+
+    private final Principal principal;
+    private final boolean hostSet;
+    private final String host;
+    private final int port;
+    private final Map<String, Object> saslProperties;
+    private final Set<String> allowedMechanisms;
+    private final Set<String> forbiddenMechanisms;
+    private final NameRewriter[] rewriters;
+    private final AuthenticationConfiguration[] callbackLayers;
+    private final Class<?>[][] callbackTypes;
+    private final ConcurrentMap<Class<?>, AuthenticationConfiguration[]> handlers = new ConcurrentHashMap<Class<?>, AuthenticationConfiguration[]>();
+    private final CallbackHandler callbackHandler;
+
+    private CompiledAuthenticationConfiguration(final Builder builder) {
+        principal = builder.principal;
+        hostSet = builder.hostSet;
+        host = builder.host;
+        port = builder.port;
+        saslProperties = builder.saslProperties.isEmpty() ? Collections.<String, Object>emptyMap() : builder.saslProperties;
+        allowedMechanisms = builder.allowedMechanisms;
+        forbiddenMechanisms = builder.forbiddenMechanisms;
+        final List<NameRewriter> rewriterList = builder.rewriters;
+        // the chain applies the innermost rewriter first
+        Collections.reverse(rewriterList);
+        rewriters = rewriterList.toArray(new NameRewriter[rewriterList.size()]);
+        callbackLayers = builder.callbackLayers.toArray(new AuthenticationConfiguration[builder.callbackLayers.size()]);
+        callbackTypes = builder.callbackTypes.toArray(new Class<?>[builder.callbackTypes.size()][]);
+        if (builder.callbackHandler != null) {
+            callbackHandler = builder.callbackHandler;
+        } else {
+            callbackHandler = new CallbackHandler() {
+                public void handle(final Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                    handleCallbacks(callbacks);
+                }
+            };
+        }
+    }
+
+    /**
+     * Compile the given configuration chain.
+     *
+     * @param configuration the outermost layer of the chain
+     * @return the compiled configuration
+     */
+    static CompiledAuthenticationConfiguration compile(final AuthenticationConfiguration configuration) {
+        final Builder builder = new Builder();
+        for (AuthenticationConfiguration layer = configuration; layer != null; layer = layer.getParent()) {
+            layer.compile(builder);
+        }
+        return new CompiledAuthenticationConfiguration(builder);
+    }
+
+    Principal getPrincipal() {
+        return principal;
+    }
+
+    String getHost(final URI uri) {
+        return hostSet ? host : uri.getHost();
+    }
+
+    int getPort(final URI uri) {
+        return port == -1 ? uri.getPort() : port;
+    }
+
+    void configureSaslProperties(final Map<String, Object> properties) {
+        properties.putAll(saslProperties);
+    }
+
+    void filterSaslMechanisms(final Set<String> names) {
+        if (allowedMechanisms != null) {
+            names.retainAll(allowedMechanisms);
+        }
+        names.removeAll(forbiddenMechanisms);
+    }
+
+    String doRewriteUser(final String original) {
+        String name = original;
+        for (NameRewriter rewriter : rewriters) {
+            name = rewriter.rewriteName(name);
+        }
+        return name;
+    }
+
+    CallbackHandler getCallbackHandler() {
+        return callbackHandler;
+    }
+
+    void handleCallbacks(final Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+        for (Callback callback : callbacks) {
+            if (! handleCallback(callback)) {
+                CallbackUtils.unsupported(callback);
+            }
+        }
+    }
+
+    private boolean handleCallback(final Callback callback) throws IOException, UnsupportedCallbackException {
+        for (AuthenticationConfiguration layer : getHandlers(callback.getClass())) {
+            if (layer.handleCallback(callback)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private AuthenticationConfiguration[] getHandlers(final Class<?> callbackClass) {
+        AuthenticationConfiguration[] layers = handlers.get(callbackClass);
+        if (layers == null) {
+            final List<AuthenticationConfiguration> list = new ArrayList<AuthenticationConfiguration>(callbackLayers.length);
+            for (int i = 0; i < callbackLayers.length; i ++) {
+                for (Class<?> type : callbackTypes[i]) {
+                    if (type.isAssignableFrom(callbackClass)) {
+                        list.add(callbackLayers[i]);
+                        break;
+                    }
+                }
+            }
+            layers = list.isEmpty() ? NO_LAYERS : list.toArray(new AuthenticationConfiguration[list.size()]);
+            final AuthenticationConfiguration[] appearing = handlers.putIfAbsent(callbackClass, layers);
+            if (appearing != null) {
+                layers = appearing;
+            }
+        }
+        return layers;
+    }
+
+    /**
+     * Collects the contributions of each layer of a configuration chain.  Layers are visited from the outermost to the
+     * root, so where a setting may only have one value the first contribution wins.
+     */
+    static final class Builder {
+        private Principal principal;
+        private boolean hostSet;
+        private String host;
+        private int port = -1;
+        private final Map<String, Object> saslProperties = new HashMap<String, Object>();
+        private Set<String> allowedMechanisms;
+        private final Set<String> forbiddenMechanisms = new HashSet<String>();
+        private final List<NameRewriter> rewriters = new ArrayList<NameRewriter>();
+        private final List<AuthenticationConfiguration> callbackLayers = new ArrayList<AuthenticationConfiguration>();
+        private final List<Class<?>[]> callbackTypes = new ArrayList<Class<?>[]>();
+        private CallbackHandler callbackHandler;
+
+        Builder() {
+        }
+
+        void setPrincipal(final Principal principal) {
+            if (this.principal == null) {
+                this.principal = principal;
+            }
+        }
+
+        void setHost(final String host) {
+            if (! hostSet) {
+                hostSet = true;
+                this.host = host;
+            }
+        }
+
+        void setPort(final int port) {
+            if (this.port == -1) {
+                this.port = port;
+            }
+        }
+
+        void setSaslProperty(final String name, final Object value) {
+            // inner layers are applied after outer ones by the chain
+            saslProperties.put(name, value);
+        }
+
+        void allowMechanisms(final Set<String> names) {
+            if (allowedMechanisms == null) {
+                allowedMechanisms = new HashSet<String>(names);
+            } else {
+                allowedMechanisms.retainAll(names);
+            }
+        }
+
+        void forbidMechanisms(final Set<String> names) {
+            forbiddenMechanisms.addAll(names);
+        }
+
+        void addRewriter(final NameRewriter rewriter) {
+            rewriters.add(rewriter);
+        }
+
+        void addCallbackLayer(final AuthenticationConfiguration layer, final Class<?>... types) {
+            callbackLayers.add(layer);
+            callbackTypes.add(types);
+        }
+
+        void setCallbackHandler(final CallbackHandler callbackHandler) {
+            if (this.callbackHandler == null) {
+                this.callbackHandler = callbackHandler;
+            }
+        }
+    }
+}
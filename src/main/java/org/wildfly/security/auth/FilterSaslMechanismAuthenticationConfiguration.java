@@ -34,13 +34,12 @@ class FilterSaslMechanismAuthenticationConfiguration extends AuthenticationConfi
         this.names = names;
     }
 
-    void filterSaslMechanisms(final Set<String> names) {
+    void compile(final CompiledAuthenticationConfiguration.Builder builder) {
         if (allow) {
-            names.retainAll(this.names);
+            builder.allowMechanisms(names);
         } else {
-            names.removeAll(this.names);
+            builder.forbidMechanisms(names);
         }
-        super.filterSaslMechanisms(names);
     }
 
     AuthenticationConfiguration reparent(final AuthenticationConfiguration newParent) {
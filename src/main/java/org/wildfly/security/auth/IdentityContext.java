@@ -18,6 +18,8 @@
 
 package org.wildfly.security.auth;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
@@ -27,6 +29,8 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
@@ -55,7 +59,13 @@ public final class IdentityContext {
         }
     }
 
+    /**
+     * The number of rules from which matching uses a {@link MatchRuleIndex} rather than testing each rule in turn.
+     */
+    private static final int INDEX_THRESHOLD = 16;
+
     private final Rule[] rules;
+    private volatile MatchRuleIndex index;
 
     private static final Rule[] NO_RULES = new Rule[0];
 
@@ -101,7 +111,26 @@ public final class IdentityContext {
      * @throws XMLStreamException if an XML read error has occurred
      */
     static IdentityContext fromXML(XMLStreamReader reader) throws XMLStreamException {
-        return null;
+        return new IdentityContextParser(reader, null).parseIdentityContext();
+    }
+
+    /**
+     * Parse an identity context from an XML file.  Parsing a file whose content has not changed since it was last
+     * parsed returns the same identity context, if that context is still in use.  Key stores and passwords are not loaded until a configuration which
+     * uses them is first used.
+     *
+     * @param file the file to parse
+     *
+     * @return the identity context
+     *
+     * @throws IOException if the file could not be read
+     * @throws XMLStreamException if an XML read error has occurred
+     */
+    public static IdentityContext fromXML(File file) throws IOException, XMLStreamException {
+        if (file == null) {
+            throw new NullPointerException("file is null");
+        }
+        return IdentityContextParser.parse(file);
     }
 
     /**
@@ -259,10 +288,38 @@ public final class IdentityContext {
     }
 
     int ruleMatching(URI uri) {
-        for (int i = 0, rulesLength = rules.length; i < rulesLength; i++) {
-            if (rules[i].matchRule.matches(uri)) return i;
+        final Rule[] rules = this.rules;
+        final int length = rules.length;
+        if (length < INDEX_THRESHOLD) {
+            for (int i = 0; i < length; i++) {
+                if (rules[i].matchRule.matches(uri)) return i;
+            }
+            return -1;
         }
-        return -1;
+        return getIndex().ruleMatching(uri);
+    }
+
+    /**
+     * Get the memo of matched rules of this context.
+     *
+     * @return the memo, or {@code null} if this context is too small to use one or it is disabled
+     */
+    MatchRuleCache getMatchRuleCache() {
+        return rules.length < INDEX_THRESHOLD ? null : getIndex().getCache();
+    }
+
+    private MatchRuleIndex getIndex() {
+        MatchRuleIndex index = this.index;
+        if (index == null) {
+            // the index is immutable so a concurrent duplicate build is harmless
+            final Rule[] rules = this.rules;
+            final MatchRule[] matchRules = new MatchRule[rules.length];
+            for (int i = 0; i < rules.length; i++) {
+                matchRules[i] = rules[i].matchRule;
+            }
+            this.index = index = new MatchRuleIndex(matchRules);
+        }
+        return index;
     }
 
     MatchRule getMatchRule(int idx) {
@@ -404,4 +461,107 @@ public final class IdentityContext {
             currentIdentityContext.set(oldSubj);
         }
     }
+
+    /**
+     * Get a task which runs the given task with this identity context associated.  A task which was already
+     * wrapped by an identity context is returned as is, since it will run with the context which it already has.
+     *
+     * @param task the task to wrap
+     * @return the wrapped task
+     */
+    public Runnable wrap(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException("task is null");
+        }
+        return task instanceof ContextRunnable ? task : new ContextRunnable(this, task);
+    }
+
+    /**
+     * Get a task which runs the given task with this identity context associated.  A task which was already
+     * wrapped by an identity context is returned as is, since it will run with the context which it already has.
+     *
+     * @param task the task to wrap
+     * @param <T> the task return type
+     * @return the wrapped task
+     */
+    public <T> Callable<T> wrap(Callable<T> task) {
+        if (task == null) {
+            throw new NullPointerException("task is null");
+        }
+        return task instanceof ContextCallable ? task : new ContextCallable<T>(this, task);
+    }
+
+    /**
+     * Get an executor service which runs each task submitted to the given executor service with the identity
+     * context which was current on the submitting thread.  Shutting down the returned executor service shuts down
+     * the given one.
+     *
+     * @param executorService the executor service to delegate to
+     * @return the propagating executor service
+     */
+    public static ExecutorService propagating(ExecutorService executorService) {
+        if (executorService == null) {
+            throw new NullPointerException("executorService is null");
+        }
+        return executorService instanceof IdentityContextExecutorService ? executorService : new IdentityContextExecutorService(executorService);
+    }
+
+    /**
+     * Get the task which was wrapped by {@link #wrap(Runnable)}.
+     *
+     * @param task the possibly wrapped task
+     * @return the original task, or {@code task} itself if it was not wrapped
+     */
+    static Runnable unwrap(Runnable task) {
+        return task instanceof ContextRunnable ? ((ContextRunnable) task).task : task;
+    }
+
+    private static final class ContextRunnable implements Runnable {
+        private final IdentityContext context;
+        private final Runnable task;
+
+        ContextRunnable(final IdentityContext context, final Runnable task) {
+            this.context = context;
+            this.task = task;
+        }
+
+        public void run() {
+            final IdentityContext context = this.context;
+            final IdentityContext oldSubj = currentIdentityContext.get();
+            if (oldSubj == context) {
+                task.run();
+                return;
+            }
+            currentIdentityContext.set(context);
+            try {
+                task.run();
+            } finally {
+                currentIdentityContext.set(oldSubj);
+            }
+        }
+    }
+
+    private static final class ContextCallable<T> implements Callable<T> {
+        private final IdentityContext context;
+        private final Callable<T> task;
+
+        ContextCallable(final IdentityContext context, final Callable<T> task) {
+            this.context = context;
+            this.task = task;
+        }
+
+        public T call() throws Exception {
+            final IdentityContext context = this.context;
+            final IdentityContext oldSubj = currentIdentityContext.get();
+            if (oldSubj == context) {
+                return task.call();
+            }
+            currentIdentityContext.set(context);
+            try {
+                return task.call();
+            } finally {
+                currentIdentityContext.set(oldSubj);
+            }
+        }
+    }
 }
@@ -56,6 +56,41 @@ public final class IdentityContextConfigurationClient {
         return identityContext.getAuthenticationConfiguration(idx);
     }
 
+    /**
+     * Get the number of URIs resolved against the given identity context which were found in its memo of matched rules.
+     * Contexts with few rules do not keep a memo.
+     *
+     * @param identityContext the identity context
+     * @return the number of URIs found in the memo
+     */
+    public long getMatchCacheHitCount(IdentityContext identityContext) {
+        final MatchRuleCache cache = identityContext.getMatchRuleCache();
+        return cache == null ? 0L : cache.getHitCount();
+    }
+
+    /**
+     * Get the number of URIs resolved against the given identity context which were not found in its memo of matched
+     * rules.
+     *
+     * @param identityContext the identity context
+     * @return the number of URIs not found in the memo
+     */
+    public long getMatchCacheMissCount(IdentityContext identityContext) {
+        final MatchRuleCache cache = identityContext.getMatchRuleCache();
+        return cache == null ? 0L : cache.getMissCount();
+    }
+
+    /**
+     * Get the number of URIs held by the memo of matched rules of the given identity context.
+     *
+     * @param identityContext the identity context
+     * @return the number of URIs in the memo
+     */
+    public int getMatchCacheSize(IdentityContext identityContext) {
+        final MatchRuleCache cache = identityContext.getMatchRuleCache();
+        return cache == null ? 0 : cache.getSize();
+    }
+
     /**
      * Get an authentication callback handler for the given configuration.
      *
@@ -0,0 +1,113 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.auth;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An executor service which runs each task with the identity context which was current on the thread which submitted
+ * it.  The context is captured once per submission, so a batch of tasks shares a single capture.
+ * <p>
+ * Every task is wrapped, even one submitted with the default identity context, since the delegate may run it on a
+ * thread which has a different context, for example the caller's thread or a thread joining a fork-join task.  A task
+ * which runs on a thread which already has its context does not change the context of that thread.  The tasks
+ * returned by {@link #shutdownNow()} are the tasks as they were submitted.
+ */
+final class IdentityContextExecutorService implements ExecutorService {
+
+    private final ExecutorService delegate;
+
+    IdentityContextExecutorService(final ExecutorService delegate) {
+        this.delegate = delegate;
+    }
+
+    public void execute(final Runnable command) {
+        delegate.execute(IdentityContext.captureCurrent().wrap(command));
+    }
+
+    public Future<?> submit(final Runnable task) {
+        return delegate.submit(IdentityContext.captureCurrent().wrap(task));
+    }
+
+    public <T> Future<T> submit(final Runnable task, final T result) {
+        return delegate.submit(IdentityContext.captureCurrent().wrap(task), result);
+    }
+
+    public <T> Future<T> submit(final Callable<T> task) {
+        return delegate.submit(IdentityContext.captureCurrent().wrap(task));
+    }
+
+    public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks) throws InterruptedException {
+        return delegate.invokeAll(wrap(tasks));
+    }
+
+    public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks, final long timeout, final TimeUnit unit) throws InterruptedException {
+        return delegate.invokeAll(wrap(tasks), timeout, unit);
+    }
+
+    public <T> T invokeAny(final Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        return delegate.invokeAny(wrap(tasks));
+    }
+
+    public <T> T invokeAny(final Collection<? extends Callable<T>> tasks, final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        return delegate.invokeAny(wrap(tasks), timeout, unit);
+    }
+
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    public List<Runnable> shutdownNow() {
+        final List<Runnable> tasks = delegate.shutdownNow();
+        final List<Runnable> unwrapped = new ArrayList<>(tasks.size());
+        for (Runnable task : tasks) {
+            unwrapped.add(IdentityContext.unwrap(task));
+        }
+        return unwrapped;
+    }
+
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    private static <T> List<Callable<T>> wrap(final Collection<? extends Callable<T>> tasks) {
+        final IdentityContext context = IdentityContext.captureCurrent();
+        final List<Callable<T>> wrapped = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            wrapped.add(context.wrap(task));
+        }
+        return wrapped;
+    }
+}
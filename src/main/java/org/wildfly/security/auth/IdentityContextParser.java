@@ -0,0 +1,447 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.auth;
+
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_DOCUMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.wildfly.security.auth.util.RegexNameRewriter;
+
+/**
+ * A single pass, streaming parser of identity context configuration documents.
+ * <p>
+ * A document has the following form, with all elements in the {@value #NAMESPACE} namespace:
+ *
+ * <pre>{@code
+ * <identity-context xmlns="urn:elytron:1.0">
+ *     <key-store name="..." file="..." type="JKS" password="..."/>
+ *     <authentication-configuration name="..." extends="...">
+ *         <set-host name="..."/>
+ *         <set-port number="..."/>
+ *         <set-user-name name="..."/>
+ *         <set-anonymous/>
+ *         <set-password password="..."/>
+ *         <set-key-store-credential key-store="..." alias="..." key-password="..."/>
+ *         <rewrite-user-name-regex pattern="..." replacement="..." replace-all="false"/>
+ *         <allow-sasl-mechanisms names="... ..."/>
+ *         <forbid-sasl-mechanisms names="... ..."/>
+ *     </authentication-configuration>
+ *     <rule configuration="...">
+ *         <match-protocol name="..."/>
+ *         <match-host name="..."/>
+ *         <match-path name="..."/>
+ *         <match-port number="..."/>
+ *         <match-user name="..."/>
+ *         <match-no-user/>
+ *         <match-urn name="..."/>
+ *         <match-local-security-domain name="..."/>
+ *     </rule>
+ * </identity-context>
+ * }</pre>
+ *
+ * The {@code key-store}, {@code authentication-configuration} and {@code rule} elements may appear any number of times
+ * and in any order, except that key stores and configurations must be defined before they are referenced.  The
+ * elements within a configuration are applied in document order, as if by the corresponding builder methods of
+ * {@link AuthenticationConfiguration}, starting from the configuration named by {@code extends}, if any.  The match
+ * elements of a rule are combined as if by the corresponding methods of {@link MatchRule}, and rules are matched in
+ * document order.  All attributes are required except for {@code type} and {@code password} of a key store,
+ * {@code extends} of a configuration, {@code key-password} and {@code replace-all}.
+ * <p>
+ * Key stores are not loaded, and passwords are not generated, until a configuration which uses them is first used.
+ * Relative key store file names are resolved against the directory containing the document.
+ */
+final class IdentityContextParser {
+
+    /**
+     * The namespace of identity context configuration documents.
+     */
+    static final String NAMESPACE = "urn:elytron:1.0";
+
+    private static final XMLInputFactory inputFactory;
+
+    static {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        inputFactory = factory;
+    }
+
+    /**
+     * The maximum number of parsed files which are remembered.
+     */
+    private static final int MAXIMUM_PARSED_FILES = 64;
+
+    private static final ConcurrentMap<File, ParsedFile> parsedFiles = new ConcurrentHashMap<File, ParsedFile>();
+    private static final ReferenceQueue<IdentityContext> parsedFilesQueue = new ReferenceQueue<IdentityContext>();
+
+    private final XMLStreamReader reader;
+    private final File baseDirectory;
+    private final Map<String, KeyStore.Builder> keyStores = new HashMap<String, KeyStore.Builder>();
+    private final Map<String, AuthenticationConfiguration> configurations = new HashMap<String, AuthenticationConfiguration>();
+
+    IdentityContextParser(final XMLStreamReader reader, final File baseDirectory) {
+        this.reader = reader;
+        this.baseDirectory = baseDirectory;
+    }
+
+    /**
+     * Parse the identity context in the given file.  The context is remembered against the file along with the
+     * checksum of its content, so parsing an unchanged file again while the context is still in use returns the same
+     * context, retaining its compiled configurations and memo of matched rules.  Contexts are only weakly
+     * referenced, so that their credentials are not kept once they are no longer in use, and the context of a file is
+     * forgotten as soon as the file is found to have changed.
+     *
+     * @param file the file to parse
+     * @return the identity context
+     * @throws IOException if the file could not be read
+     * @throws XMLStreamException if the content of the file is not valid
+     */
+    static IdentityContext parse(final File file) throws IOException, XMLStreamException {
+        final File canonicalFile = file.getCanonicalFile();
+        final byte[] content = Files.readAllBytes(canonicalFile.toPath());
+        final byte[] checksum = checksum(content);
+        expungeParsedFiles();
+        final ParsedFile parsedFile = parsedFiles.get(canonicalFile);
+        if (parsedFile != null) {
+            if (Arrays.equals(parsedFile.checksum, checksum)) {
+                final IdentityContext identityContext = parsedFile.get();
+                if (identityContext != null) {
+                    return identityContext;
+                }
+            }
+            // the file has changed or the context is no longer in use
+            parsedFiles.remove(canonicalFile, parsedFile);
+        }
+        final IdentityContext identityContext = parse(new ByteArrayInputStream(content), canonicalFile.getParentFile());
+        if (parsedFiles.size() >= MAXIMUM_PARSED_FILES) {
+            final Iterator<File> iterator = parsedFiles.keySet().iterator();
+            if (iterator.hasNext()) {
+                parsedFiles.remove(iterator.next());
+            }
+        }
+        parsedFiles.put(canonicalFile, new ParsedFile(canonicalFile, checksum, identityContext));
+        return identityContext;
+    }
+
+    private static void expungeParsedFiles() {
+        ParsedFile stale;
+        while ((stale = (ParsedFile) parsedFilesQueue.poll()) != null) {
+            parsedFiles.remove(stale.file, stale);
+        }
+    }
+
+    static IdentityContext parse(final InputStream inputStream, final File baseDirectory) throws XMLStreamException {
+        final XMLStreamReader reader = inputFactory.createXMLStreamReader(inputStream);
+        try {
+            return new IdentityContextParser(reader, baseDirectory).parseIdentityContext();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static byte[] checksum(final byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    IdentityContext parseIdentityContext() throws XMLStreamException {
+        requireElement("identity-context");
+        final List<IdentityContext.Rule> rules = new ArrayList<IdentityContext.Rule>();
+        while (reader.nextTag() == START_ELEMENT) {
+            switch (requireNamespace()) {
+                case "key-store": {
+                    parseKeyStore();
+                    break;
+                }
+                case "authentication-configuration": {
+                    final String name = requireAttribute("name");
+                    if (configurations.put(name, parseAuthenticationConfiguration()) != null) {
+                        throw new XMLStreamException("Duplicate authentication configuration '" + name + "'", reader.getLocation());
+                    }
+                    break;
+                }
+                case "rule": {
+                    final AuthenticationConfiguration configuration = getReference(configurations, "configuration", "authentication configuration");
+                    rules.add(new IdentityContext.Rule(parseMatchRule(), configuration));
+                    break;
+                }
+                default: {
+                    throw unexpectedElement();
+                }
+            }
+        }
+        // built directly rather than through with(), which would copy the rules once per rule
+        return rules.isEmpty() ? IdentityContext.EMPTY : new IdentityContext(rules.toArray(new IdentityContext.Rule[rules.size()]), false);
+    }
+
+    AuthenticationConfiguration parseAuthenticationConfiguration() throws XMLStreamException {
+        requireElement("authentication-configuration");
+        AuthenticationConfiguration configuration = AuthenticationConfiguration.EMPTY;
+        if (reader.getAttributeValue(null, "extends") != null) {
+            configuration = getReference(configurations, "extends", "authentication configuration");
+        }
+        while (reader.nextTag() == START_ELEMENT) {
+            try {
+                switch (requireNamespace()) {
+                    case "set-host": {
+                        configuration = configuration.useHost(requireAttribute("name"));
+                        break;
+                    }
+                    case "set-port": {
+                        configuration = configuration.usePort(Integer.parseInt(requireAttribute("number")));
+                        break;
+                    }
+                    case "set-user-name": {
+                        configuration = configuration.useName(requireAttribute("name"));
+                        break;
+                    }
+                    case "set-anonymous": {
+                        configuration = configuration.useAnonymous();
+                        break;
+                    }
+                    case "set-password": {
+                        configuration = new SetPasswordAuthenticationConfiguration(configuration, requireAttribute("password").toCharArray());
+                        break;
+                    }
+                    case "set-key-store-credential": {
+                        final KeyStore.Builder keyStoreBuilder = getReference(keyStores, "key-store", "key store");
+                        final String alias = requireAttribute("alias");
+                        final String keyPassword = reader.getAttributeValue(null, "key-password");
+                        final KeyStore.ProtectionParameter protectionParameter = keyPassword == null ? null : new KeyStore.PasswordProtection(keyPassword.toCharArray());
+                        configuration = new SetKeyStoreCredentialAuthenticationConfiguration(configuration, keyStoreBuilder, alias, protectionParameter);
+                        break;
+                    }
+                    case "rewrite-user-name-regex": {
+                        final Pattern pattern = Pattern.compile(requireAttribute("pattern"));
+                        final boolean replaceAll = Boolean.parseBoolean(reader.getAttributeValue(null, "replace-all"));
+                        configuration = configuration.rewriteUser(new RegexNameRewriter(pattern, requireAttribute("replacement"), replaceAll));
+                        break;
+                    }
+                    case "allow-sasl-mechanisms": {
+                        configuration = configuration.allowSaslMechanisms(requireNames());
+                        break;
+                    }
+                    case "forbid-sasl-mechanisms": {
+                        configuration = configuration.forbidSaslMechanisms(requireNames());
+                        break;
+                    }
+                    default: {
+                        throw unexpectedElement();
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                throw new XMLStreamException("Invalid value: " + e.getMessage(), reader.getLocation(), e);
+            }
+            requireNoContent();
+        }
+        return configuration;
+    }
+
+    private MatchRule parseMatchRule() throws XMLStreamException {
+        MatchRule rule = MatchRule.ALL;
+        while (reader.nextTag() == START_ELEMENT) {
+            try {
+                switch (requireNamespace()) {
+                    case "match-protocol": {
+                        rule = rule.matchProtocol(requireAttribute("name"));
+                        break;
+                    }
+                    case "match-host": {
+                        rule = rule.matchHost(requireAttribute("name"));
+                        break;
+                    }
+                    case "match-path": {
+                        rule = rule.matchPath(requireAttribute("name"));
+                        break;
+                    }
+                    case "match-port": {
+                        rule = rule.matchPort(Integer.parseInt(requireAttribute("number")));
+                        break;
+                    }
+                    case "match-user": {
+                        rule = rule.matchUser(requireAttribute("name"));
+                        break;
+                    }
+                    case "match-no-user": {
+                        rule = rule.matchNoUser();
+                        break;
+                    }
+                    case "match-urn": {
+                        rule = rule.matchUrnName(requireAttribute("name"));
+                        break;
+                    }
+                    case "match-local-security-domain": {
+                        rule = rule.matchLocalSecurityDomain(requireAttribute("name"));
+                        break;
+                    }
+                    default: {
+                        throw unexpectedElement();
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                throw new XMLStreamException("Invalid value: " + e.getMessage(), reader.getLocation(), e);
+            }
+            requireNoContent();
+        }
+        return rule;
+    }
+
+    private void parseKeyStore() throws XMLStreamException {
+        final String name = requireAttribute("name");
+        File file = new File(requireAttribute("file"));
+        if (! file.isAbsolute() && baseDirectory != null) {
+            file = new File(baseDirectory, file.getPath());
+        }
+        final String type = reader.getAttributeValue(null, "type");
+        final String password = reader.getAttributeValue(null, "password");
+        final KeyStore.Builder builder = new FileKeyStoreBuilder(file, type == null ? KeyStore.getDefaultType() : type, password == null ? null : password.toCharArray());
+        if (keyStores.put(name, builder) != null) {
+            throw new XMLStreamException("Duplicate key store '" + name + "'", reader.getLocation());
+        }
+        requireNoContent();
+    }
+
+    private <T> T getReference(final Map<String, T> definitions, final String attribute, final String description) throws XMLStreamException {
+        final String name = requireAttribute(attribute);
+        final T definition = definitions.get(name);
+        if (definition == null) {
+            throw new XMLStreamException("No " + description + " named '" + name + "' has been defined", reader.getLocation());
+        }
+        return definition;
+    }
+
+    private void requireElement(final String localName) throws XMLStreamException {
+        if (reader.getEventType() == START_DOCUMENT) {
+            reader.nextTag();
+        }
+        if (reader.getEventType() != START_ELEMENT || ! localName.equals(requireNamespace())) {
+            throw unexpectedElement();
+        }
+    }
+
+    private String requireNamespace() throws XMLStreamException {
+        if (! NAMESPACE.equals(reader.getNamespaceURI())) {
+            throw unexpectedElement();
+        }
+        return reader.getLocalName();
+    }
+
+    private String requireAttribute(final String name) throws XMLStreamException {
+        final String value = reader.getAttributeValue(null, name);
+        if (value == null) {
+            throw new XMLStreamException("Missing required attribute '" + name + "' of element '" + reader.getLocalName() + "'", reader.getLocation());
+        }
+        return value;
+    }
+
+    private String[] requireNames() throws XMLStreamException {
+        final String names = requireAttribute("names").trim();
+        return names.isEmpty() ? new String[0] : names.split("\\s+");
+    }
+
+    private void requireNoContent() throws XMLStreamException {
+        if (reader.nextTag() != END_ELEMENT) {
+            throw unexpectedElement();
+        }
+    }
+
+    private XMLStreamException unexpectedElement() {
+        return new XMLStreamException("Unexpected element '" + reader.getName() + "'", reader.getLocation());
+    }
+
+    private static final class ParsedFile extends WeakReference<IdentityContext> {
+        private final File file;
+        private final byte[] checksum;
+
+        ParsedFile(final File file, final byte[] checksum, final IdentityContext identityContext) {
+            super(identityContext, parsedFilesQueue);
+            this.file = file;
+            this.checksum = checksum;
+        }
+    }
+
+    /**
+     * A key store builder which loads the key store from its file when it is first required.
+     */
+    private static final class FileKeyStoreBuilder extends KeyStore.Builder {
+        private final File file;
+        private final String type;
+        private final char[] password;
+        private KeyStore keyStore;
+
+        FileKeyStoreBuilder(final File file, final String type, final char[] password) {
+            this.file = file;
+            this.type = type;
+            this.password = password;
+        }
+
+        public synchronized KeyStore getKeyStore() throws KeyStoreException {
+            KeyStore keyStore = this.keyStore;
+            if (keyStore == null) {
+                keyStore = KeyStore.getInstance(type);
+                try (InputStream inputStream = new FileInputStream(file)) {
+                    keyStore.load(inputStream, password);
+                } catch (IOException | NoSuchAlgorithmException | CertificateException e) {
+                    throw new KeyStoreException("Unable to load key store " + file, e);
+                }
+                this.keyStore = keyStore;
+            }
+            return keyStore;
+        }
+
+        public KeyStore.ProtectionParameter getProtectionParameter(final String alias) throws KeyStoreException {
+            // trusted certificate entries must be read without a protection parameter
+            if (password == null || getKeyStore().entryInstanceOf(alias, KeyStore.TrustedCertificateEntry.class)) {
+                return null;
+            }
+            return new KeyStore.PasswordProtection(password);
+        }
+    }
+}
@@ -38,6 +38,10 @@ class MatchNoUserRule extends MatchRule {
         return new MatchNoUserRule(newParent);
     }
 
+    boolean isNoUserMatched() {
+        return true;
+    }
+
     boolean halfEqual(final MatchRule other) {
         return other.getMatchUser() == null && parentHalfEqual(other);
     }
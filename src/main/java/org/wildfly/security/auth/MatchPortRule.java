@@ -40,6 +40,14 @@ class MatchPortRule extends MatchRule {
         return new MatchPortRule(newParent, port);
     }
 
+    public int getMatchPort() {
+        return port;
+    }
+
+    public boolean isPortMatched() {
+        return true;
+    }
+
     boolean halfEqual(final MatchRule other) {
         return other.getMatchPort() == port && parentHalfEqual(other);
     }
@@ -75,6 +75,10 @@ public abstract class MatchRule {
             throw new IllegalStateException();
         }
 
+        boolean isNoUserMatched() {
+            return false;
+        }
+
         public boolean isUrnNameMatched() {
             return false;
         }
@@ -337,6 +341,15 @@ public abstract class MatchRule {
         return parent.getMatchUser();
     }
 
+    /**
+     * Determine whether this rule only matches URIs with no user info.
+     *
+     * @return {@code true} if the rule only matches URIs with no user info, {@code false} otherwise
+     */
+    boolean isNoUserMatched() {
+        return parent.isNoUserMatched();
+    }
+
     /**
      * Create a new rule which is the same as this rule, but also matches the given URI user info.
      *
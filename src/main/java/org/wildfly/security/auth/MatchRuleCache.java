@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.auth;
+
+import java.net.URI;
+import java.security.AccessController;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.wildfly.security.manager.action.ReadPropertyAction;
+
+/**
+ * A bounded memo of the rule matched by each URI resolved against an {@link IdentityContext}, so that a URI seen before
+ * is resolved with a single hash lookup.
+ * <p>
+ * The memo belongs to the {@link MatchRuleIndex} of a single context and so is discarded along with the context.  The
+ * maximum number of entries is given by the {@value #MAXIMUM_SIZE_PROPERTY} system property, default {@value
+ * #DEFAULT_MAXIMUM_SIZE}; a value of {@code 0} disables the memo.  Once full an arbitrary entry is evicted for each
+ * new entry.
+ * <p>
+ * URIs are remembered by their exact string form, since {@link URI#equals} ignores the case of the scheme and host
+ * but the rules match them with case.
+ */
+final class MatchRuleCache {
+
+    /**
+     * The system property giving the maximum number of entries of each memo.
+     */
+    static final String MAXIMUM_SIZE_PROPERTY = "wildfly.security.identity-context.match-cache-size";
+
+    /**
+     * The default maximum number of entries of each memo.
+     */
+    static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    static final int MAXIMUM_SIZE;
+
+    static {
+        int maximumSize;
+        try {
+            maximumSize = Integer.parseInt(AccessController.doPrivileged(new ReadPropertyAction(MAXIMUM_SIZE_PROPERTY, Integer.toString(DEFAULT_MAXIMUM_SIZE))));
+        } catch (NumberFormatException e) {
+            maximumSize = DEFAULT_MAXIMUM_SIZE;
+        }
+        MAXIMUM_SIZE = Math.max(maximumSize, 0);
+    }
+
+    private final ConcurrentMap<String, Integer> cache = new ConcurrentHashMap<String, Integer>();
+    private final int maximumSize;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    MatchRuleCache(final int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Get the index of the rule previously matched by a URI.
+     *
+     * @param uri the URI
+     * @return the rule index, which is {@code -1} if no rule matched, or {@code null} if the URI is not known
+     */
+    Integer get(final URI uri) {
+        final Integer idx = cache.get(uri.toString());
+        (idx == null ? misses : hits).incrementAndGet();
+        return idx;
+    }
+
+    /**
+     * Record the index of the rule matched by a URI.
+     *
+     * @param uri the URI
+     * @param idx the rule index, or {@code -1} if no rule matched
+     */
+    void put(final URI uri, final int idx) {
+        if (size.get() >= maximumSize) {
+            final Iterator<String> iterator = cache.keySet().iterator();
+            if (iterator.hasNext() && cache.remove(iterator.next()) != null) {
+                size.decrementAndGet();
+            }
+        }
+        if (cache.putIfAbsent(uri.toString(), Integer.valueOf(idx)) == null) {
+            size.incrementAndGet();
+        }
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    int getSize() {
+        return size.get();
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.auth;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled index of the match rules of an {@link IdentityContext}, used to find the first rule matching a URI without
+ * testing every rule.
+ * <p>
+ * Rules which match by host are keyed by their host specification in a hash table which is probed with each prefix of
+ * the URI host, as host specifications match by prefix; the prefix hashes are computed incrementally so a lookup does
+ * not allocate.  Other rules are partitioned by the scheme they match and by whether they only match URIs without user
+ * info.  Every rule which may match is then checked against the scheme, port and user info it requires before its own
+ * {@link MatchRule#matches(URI)} is called, so the result is always the same as testing the rules in order.  The result
+ * for each URI is also remembered by a {@link MatchRuleCache}.
+ */
+final class MatchRuleIndex {
+
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private final MatchRule[] matchRules;
+    private final String[] schemes;
+    private final int[] ports;
+    private final boolean[] noUser;
+    private final SchemeRules anyHostNoUser;
+    private final SchemeRules anyHostUser;
+    private final String[] hostKeys;
+    private final int[][] hostRules;
+    private final boolean[] hostLengths;
+    private final MatchRuleCache cache;
+
+    /**
+     * Compile the given rules, which must not be modified afterwards.
+     *
+     * @param matchRules the rules in order of precedence
+     */
+    MatchRuleIndex(final MatchRule[] matchRules) {
+        this.matchRules = matchRules;
+        final int length = matchRules.length;
+        schemes = new String[length];
+        ports = new int[length];
+        noUser = new boolean[length];
+        final Map<String, List<Integer>> byHost = new HashMap<String, List<Integer>>();
+        final SchemeRules.Builder anyHostNoUser = new SchemeRules.Builder();
+        final SchemeRules.Builder anyHostUser = new SchemeRules.Builder();
+        int maxHostLength = 0;
+        for (int i = 0; i < length; i++) {
+            final MatchRule rule = matchRules[i];
+            schemes[i] = rule.getMatchProtocol();
+            ports[i] = rule.getMatchPort();
+            noUser[i] = rule.isNoUserMatched();
+            final String host = rule.getMatchHost();
+            if (host == null) {
+                (noUser[i] ? anyHostNoUser : anyHostUser).add(schemes[i], i);
+            } else {
+                add(byHost, host, i);
+                maxHostLength = Math.max(maxHostLength, host.length());
+            }
+        }
+        this.anyHostNoUser = anyHostNoUser.build();
+        this.anyHostUser = anyHostUser.build();
+        // open addressing with a load factor of at most one half
+        final int size = Integer.highestOneBit(Math.max(byHost.size(), 1) * 2 + 1) << 1;
+        hostKeys = new String[size];
+        hostRules = new int[size][];
+        hostLengths = new boolean[maxHostLength + 1];
+        for (Map.Entry<String, List<Integer>> entry : byHost.entrySet()) {
+            final String host = entry.getKey();
+            int slot = slot(host.hashCode());
+            while (hostKeys[slot] != null) {
+                slot = (slot + 1) & (size - 1);
+            }
+            hostKeys[slot] = host;
+            hostRules[slot] = toArray(entry.getValue());
+            hostLengths[host.length()] = true;
+        }
+        cache = MatchRuleCache.MAXIMUM_SIZE == 0 ? null : new MatchRuleCache(MatchRuleCache.MAXIMUM_SIZE);
+    }
+
+    /**
+     * Get the index of the first rule which matches the given URI.
+     *
+     * @param uri the URI
+     * @return the index of the first matching rule, or {@code -1} if no rule matches
+     */
+    int ruleMatching(final URI uri) {
+        final MatchRuleCache cache = this.cache;
+        if (cache == null) {
+            return compute(uri);
+        }
+        final Integer cached = cache.get(uri);
+        if (cached != null) {
+            return cached.intValue();
+        }
+        final int idx = compute(uri);
+        cache.put(uri, idx);
+        return idx;
+    }
+
+    /**
+     * Get the memo of matched rules.
+     *
+     * @return the memo, or {@code null} if it is disabled
+     */
+    MatchRuleCache getCache() {
+        return cache;
+    }
+
+    private int compute(final URI uri) {
+        final String scheme = uri.getScheme();
+        final boolean hasUser = MatchRule.getUserInfo(uri) != null;
+        int best = NONE;
+        if (! hasUser) {
+            best = first(anyHostNoUser.anyScheme, uri, false, best);
+            best = first(anyHostNoUser.get(scheme), uri, false, best);
+        }
+        best = first(anyHostUser.anyScheme, uri, hasUser, best);
+        best = first(anyHostUser.get(scheme), uri, hasUser, best);
+        final String host = uri.getHost();
+        if (host != null) {
+            final int max = Math.min(host.length(), hostLengths.length - 1);
+            int hash = 0;
+            for (int i = 0; i < max; i++) {
+                // the hash of the prefix is computed as String.hashCode() would
+                hash = 31 * hash + host.charAt(i);
+                if (hostLengths[i + 1]) {
+                    final int[] rules = lookup(host, i + 1, hash);
+                    if (rules != null) {
+                        best = first(rules, uri, hasUser, best);
+                    }
+                }
+            }
+        }
+        return best == NONE ? -1 : best;
+    }
+
+    private int first(final int[] candidates, final URI uri, final boolean hasUser, final int bound) {
+        if (candidates == null) {
+            return bound;
+        }
+        for (int idx : candidates) {
+            if (idx >= bound) {
+                break;
+            }
+            if (hasUser && noUser[idx]) {
+                continue;
+            }
+            final String scheme = schemes[idx];
+            if (scheme != null && ! scheme.equals(uri.getScheme())) {
+                continue;
+            }
+            final int port = ports[idx];
+            if (port != 0 && port != uri.getPort()) {
+                continue;
+            }
+            if (matchRules[idx].matches(uri)) {
+                return idx;
+            }
+        }
+        return bound;
+    }
+
+    private int[] lookup(final String host, final int length, final int hash) {
+        final String[] hostKeys = this.hostKeys;
+        int slot = slot(hash);
+        String key;
+        while ((key = hostKeys[slot]) != null) {
+            if (key.length() == length && key.hashCode() == hash && host.regionMatches(0, key, 0, length)) {
+                return hostRules[slot];
+            }
+            slot = (slot + 1) & (hostKeys.length - 1);
+        }
+        return null;
+    }
+
+    private int slot(final int hash) {
+        return (hash ^ hash >>> 16) & (hostKeys.length - 1);
+    }
+
+    static void add(final Map<String, List<Integer>> map, final String key, final int idx) {
+        List<Integer> list = map.get(key);
+        if (list == null) {
+            map.put(key, list = new ArrayList<Integer>());
+        }
+        list.add(Integer.valueOf(idx));
+    }
+
+    static int[] toArray(final List<Integer> list) {
+        final int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i).intValue();
+        }
+        return array;
+    }
+
+    /**
+     * Rules partitioned by the scheme they match.
+     */
+    static final class SchemeRules {
+
+        private final int[] anyScheme;
+        private final Map<String, int[]> byScheme;
+
+        private SchemeRules(final int[] anyScheme, final Map<String, int[]> byScheme) {
+            this.anyScheme = anyScheme;
+            this.byScheme = byScheme;
+        }
+
+        int[] get(final String scheme) {
+            return scheme == null ? null : byScheme.get(scheme);
+        }
+
+        static final class Builder {
+
+            private final List<Integer> anyScheme = new ArrayList<Integer>();
+            private final Map<String, List<Integer>> byScheme = new HashMap<String, List<Integer>>();
+
+            void add(final String scheme, final int idx) {
+                if (scheme == null) {
+                    anyScheme.add(Integer.valueOf(idx));
+                } else {
+                    MatchRuleIndex.add(byScheme, scheme, idx);
+                }
+            }
+
+            SchemeRules build() {
+                final Map<String, int[]> byScheme = new HashMap<String, int[]>();
+                for (Map.Entry<String, List<Integer>> entry : this.byScheme.entrySet()) {
+                    byScheme.put(entry.getKey(), toArray(entry.getValue()));
+                }
+                return new SchemeRules(toArray(anyScheme), byScheme);
+            }
+        }
+    }
+}
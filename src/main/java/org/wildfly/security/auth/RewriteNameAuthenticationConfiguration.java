@@ -32,8 +32,8 @@ class RewriteNameAuthenticationConfiguration extends AuthenticationConfiguration
         this.rewriter = rewriter;
     }
 
-    String doRewriteUser(final String original) {
-        return rewriter.rewriteName(super.doRewriteUser(original));
+    void compile(final CompiledAuthenticationConfiguration.Builder builder) {
+        builder.addRewriter(rewriter);
     }
 
     AuthenticationConfiguration reparent(final AuthenticationConfiguration newParent) {
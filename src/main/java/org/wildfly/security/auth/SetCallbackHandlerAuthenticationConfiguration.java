@@ -18,11 +18,7 @@
 
 package org.wildfly.security.auth;
 
-import java.io.IOException;
-
-import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
-import javax.security.auth.callback.UnsupportedCallbackException;
 
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
@@ -36,8 +32,8 @@ class SetCallbackHandlerAuthenticationConfiguration extends AuthenticationConfig
         this.callbackHandler = callbackHandler;
     }
 
-    void handleCallbacks(final Callback[] callbacks) throws IOException, UnsupportedCallbackException {
-        callbackHandler.handle(callbacks);
+    void compile(final CompiledAuthenticationConfiguration.Builder builder) {
+        builder.setCallbackHandler(callbackHandler);
     }
 
     AuthenticationConfiguration reparent(final AuthenticationConfiguration newParent) {
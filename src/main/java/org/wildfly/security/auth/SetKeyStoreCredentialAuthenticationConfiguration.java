@@ -29,7 +29,6 @@ import java.security.spec.InvalidKeySpecException;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.PasswordCallback;
-import javax.security.auth.callback.UnsupportedCallbackException;
 import javax.security.auth.x500.X500PrivateCredential;
 
 import org.wildfly.security.auth.callback.CredentialCallback;
@@ -43,61 +42,68 @@ import org.wildfly.security.password.spec.ClearPasswordSpec;
  */
 class SetKeyStoreCredentialAuthenticationConfiguration extends AuthenticationConfiguration {
 
-    private final KeyStore keyStore;
+    private final KeyStore.Builder keyStoreBuilder;
     private final String alias;
     private final KeyStore.ProtectionParameter protectionParameter;
 
     SetKeyStoreCredentialAuthenticationConfiguration(final AuthenticationConfiguration parent, final KeyStore keyStore, final String alias, final KeyStore.ProtectionParameter protectionParameter) {
+        this(parent, new LoadedKeyStoreBuilder(keyStore), alias, protectionParameter);
+    }
+
+    SetKeyStoreCredentialAuthenticationConfiguration(final AuthenticationConfiguration parent, final KeyStore.Builder keyStoreBuilder, final String alias, final KeyStore.ProtectionParameter protectionParameter) {
         super(parent.without(SetPasswordAuthenticationConfiguration.class).without(SetCallbackHandlerAuthenticationConfiguration.class));
-        this.keyStore = keyStore;
+        this.keyStoreBuilder = keyStoreBuilder;
         this.alias = alias;
         this.protectionParameter = protectionParameter;
     }
 
     AuthenticationConfiguration reparent(final AuthenticationConfiguration newParent) {
-        return new SetKeyStoreCredentialAuthenticationConfiguration(newParent, keyStore, alias, protectionParameter);
+        return new SetKeyStoreCredentialAuthenticationConfiguration(newParent, keyStoreBuilder, alias, protectionParameter);
+    }
+
+    private KeyStore.Entry getEntry() throws IOException {
+        // the builder may defer loading the key store until the credential is first required
+        try {
+            final KeyStore.ProtectionParameter protectionParameter = this.protectionParameter;
+            return keyStoreBuilder.getKeyStore().getEntry(alias, protectionParameter == null ? keyStoreBuilder.getProtectionParameter(alias) : protectionParameter);
+        } catch (NoSuchAlgorithmException | KeyStoreException | UnrecoverableEntryException e) {
+            throw new IOException("Unable to read credential", e);
+        }
     }
 
-    void handleCallback(final Callback[] callbacks, final int index) throws IOException, UnsupportedCallbackException {
-        final Callback callback = callbacks[index];
+    void compile(final CompiledAuthenticationConfiguration.Builder builder) {
+        builder.addCallbackLayer(this, CredentialCallback.class, PasswordCallback.class);
+    }
+
+    boolean handleCallback(final Callback callback) throws IOException {
         if (callback instanceof CredentialCallback) {
             final CredentialCallback credentialCallback = (CredentialCallback) callback;
-            final KeyStore.Entry entry;
-            try {
-                entry = keyStore.getEntry(alias, protectionParameter);
-            } catch (NoSuchAlgorithmException | KeyStoreException | UnrecoverableEntryException e) {
-                throw new IOException("Unable to read credential", e);
-            }
+            final KeyStore.Entry entry = getEntry();
             if (entry instanceof PasswordEntry) {
                 credentialCallback.setCredential(((PasswordEntry) entry).getPassword());
-                return;
+                return true;
             } else if (entry instanceof KeyStore.PrivateKeyEntry) {
                 final KeyStore.PrivateKeyEntry privateKeyEntry = (KeyStore.PrivateKeyEntry) entry;
                 final Certificate[] certificateChain = privateKeyEntry.getCertificateChain();
                 if (certificateChain == null || certificateChain.length == 0) {
                     credentialCallback.setCredential(privateKeyEntry.getPrivateKey());
-                    return;
+                    return true;
                 } else {
                     final Certificate certificate = privateKeyEntry.getCertificate();
                     if (certificate instanceof X509Certificate) {
                         credentialCallback.setCredential(new X500PrivateCredential((X509Certificate) certificate, privateKeyEntry.getPrivateKey()));
-                        return;
+                        return true;
                     }
                 }
             } else if (entry instanceof KeyStore.TrustedCertificateEntry) {
                 credentialCallback.setCredential(((KeyStore.TrustedCertificateEntry) entry).getTrustedCertificate());
-                return;
+                return true;
             } else if (entry instanceof KeyStore.SecretKeyEntry) {
                 credentialCallback.setCredential(((KeyStore.SecretKeyEntry) entry).getSecretKey());
-                return;
+                return true;
             }
         } else if (callback instanceof PasswordCallback) {
-            final KeyStore.Entry entry;
-            try {
-                entry = keyStore.getEntry(alias, protectionParameter);
-            } catch (NoSuchAlgorithmException | KeyStoreException | UnrecoverableEntryException e) {
-                throw new IOException("Unable to read credential", e);
-            }
+            final KeyStore.Entry entry = getEntry();
             if (entry instanceof PasswordEntry) {
                 final Password password = ((PasswordEntry) entry).getPassword();
                 final PasswordFactory passwordFactory;
@@ -113,9 +119,25 @@ class SetKeyStoreCredentialAuthenticationConfiguration extends AuthenticationCon
                     throw new IOException("Unable to read credential", e);
                 }
                 ((PasswordCallback) callback).setPassword(keySpec.getEncodedPassword());
-                return;
+                return true;
             }
         }
-        super.handleCallback(callbacks, index);
+        return false;
+    }
+
+    private static final class LoadedKeyStoreBuilder extends KeyStore.Builder {
+        private final KeyStore keyStore;
+
+        LoadedKeyStoreBuilder(final KeyStore keyStore) {
+            this.keyStore = keyStore;
+        }
+
+        public KeyStore getKeyStore() {
+            return keyStore;
+        }
+
+        public KeyStore.ProtectionParameter getProtectionParameter(final String alias) {
+            return null;
+        }
     }
 }
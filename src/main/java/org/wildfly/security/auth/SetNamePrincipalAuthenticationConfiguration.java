@@ -18,12 +18,8 @@
 
 package org.wildfly.security.auth;
 
-import java.io.IOException;
-import java.security.Principal;
-
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.NameCallback;
-import javax.security.auth.callback.UnsupportedCallbackException;
 
 import org.wildfly.security.auth.principal.NamePrincipal;
 
@@ -39,17 +35,14 @@ class SetNamePrincipalAuthenticationConfiguration extends AuthenticationConfigur
         this.principal = principal;
     }
 
-    void handleCallback(final Callback[] callbacks, final int index) throws UnsupportedCallbackException, IOException {
-        Callback callback = callbacks[index];
-        if (callback instanceof NameCallback) {
-            ((NameCallback) callback).setName(principal.getName());
-        } else {
-            super.handleCallback(callbacks, index);
-        }
+    void compile(final CompiledAuthenticationConfiguration.Builder builder) {
+        builder.setPrincipal(principal);
+        builder.addCallbackLayer(this, NameCallback.class);
     }
 
-    Principal getPrincipal() {
-        return principal;
+    boolean handleCallback(final Callback callback) {
+        ((NameCallback) callback).setName(principal.getName());
+        return true;
     }
 
     AuthenticationConfiguration reparent(final AuthenticationConfiguration newParent) {
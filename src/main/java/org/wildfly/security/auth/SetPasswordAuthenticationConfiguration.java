@@ -18,13 +18,10 @@
 
 package org.wildfly.security.auth;
 
-import java.io.IOException;
 import java.security.GeneralSecurityException;
-import java.util.Map;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.PasswordCallback;
-import javax.security.auth.callback.UnsupportedCallbackException;
 import javax.security.sasl.Sasl;
 
 import org.wildfly.security.auth.callback.CredentialCallback;
@@ -38,40 +35,66 @@ import org.wildfly.security.password.spec.ClearPasswordSpec;
  */
 class SetPasswordAuthenticationConfiguration extends AuthenticationConfiguration {
 
-    private final Password password;
+    private final char[] clearPassword;
+    private volatile Password password;
 
     SetPasswordAuthenticationConfiguration(final AuthenticationConfiguration parent, final Password password) {
+        this(parent, password, null);
+    }
+
+    /**
+     * Construct a new instance which only generates the clear password from the given characters once the
+     * configuration is first used.
+     */
+    SetPasswordAuthenticationConfiguration(final AuthenticationConfiguration parent, final char[] clearPassword) {
+        this(parent, null, clearPassword);
+    }
+
+    private SetPasswordAuthenticationConfiguration(final AuthenticationConfiguration parent, final Password password, final char[] clearPassword) {
         super(parent.without(SetCallbackHandlerAuthenticationConfiguration.class).without(SetKeyStoreCredentialAuthenticationConfiguration.class));
         this.password = password;
+        this.clearPassword = clearPassword;
     }
 
-    void handleCallback(final Callback[] callbacks, final int index) throws IOException, UnsupportedCallbackException {
-        Callback callback = callbacks[index];
+    private Password getPassword() {
+        Password password = this.password;
+        if (password == null) {
+            try {
+                this.password = password = PasswordFactory.getInstance("clear").generatePassword(new ClearPasswordSpec(clearPassword));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return password;
+    }
+
+    void compile(final CompiledAuthenticationConfiguration.Builder builder) {
+        builder.setSaslProperty(Sasl.CREDENTIALS, getPassword());
+        builder.addCallbackLayer(this, CredentialCallback.class, PasswordCallback.class);
+    }
+
+    boolean handleCallback(final Callback callback) {
+        final Password password = getPassword();
         if (callback instanceof CredentialCallback) {
             CredentialCallback credentialCallback = (CredentialCallback) callback;
             if (credentialCallback.isCredentialSupported(password)) {
                 credentialCallback.setCredential(password);
-                return;
+                return true;
             }
         } else if (callback instanceof PasswordCallback) {
             if (password instanceof TwoWayPassword) try {
                 PasswordFactory passwordFactory = PasswordFactory.getInstance(password.getAlgorithm());
                 ClearPasswordSpec clearPasswordSpec = passwordFactory.getKeySpec(password, ClearPasswordSpec.class);
                 ((PasswordCallback) callback).setPassword(clearPasswordSpec.getEncodedPassword());
-                return;
+                return true;
             } catch (GeneralSecurityException e) {
                 // fall out
             }
         }
-        super.handleCallback(callbacks, index);
-    }
-
-    void configureSaslProperties(final Map<String, Object> properties) {
-        properties.put(Sasl.CREDENTIALS, password);
-        super.configureSaslProperties(properties);
+        return false;
     }
 
     AuthenticationConfiguration reparent(final AuthenticationConfiguration newParent) {
-        return new SetPasswordAuthenticationConfiguration(newParent, password);
+        return new SetPasswordAuthenticationConfiguration(newParent, password, clearPassword);
     }
 }
@@ -0,0 +1,61 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.auth.callback;
+
+import java.security.Principal;
+
+/**
+ * A callback to acquire the identity of the peer which was already authenticated by the underlying connection, for
+ * example the subject of a verified TLS client certificate.
+ */
+public class PeerPrincipalCallback implements ExtendedCallback {
+    private Principal principal;
+
+    /**
+     * Construct a new instance.
+     */
+    public PeerPrincipalCallback() {
+    }
+
+    /**
+     * Get the peer principal.  If none was set, {@code null} is returned.
+     *
+     * @return the peer principal, or {@code null} if none was set
+     */
+    public Principal getPrincipal() {
+        return principal;
+    }
+
+    /**
+     * Set the peer principal.
+     *
+     * @param principal the peer principal, or {@code null} if the peer is not authenticated
+     */
+    public void setPrincipal(final Principal principal) {
+        this.principal = principal;
+    }
+
+    public boolean isOptional() {
+        return false;
+    }
+
+    public boolean needsInformation() {
+        return true;
+    }
+}
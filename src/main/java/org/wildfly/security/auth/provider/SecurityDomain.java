@@ -18,6 +18,7 @@
 
 package org.wildfly.security.auth.provider;
 
+import java.security.Principal;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -86,6 +87,27 @@ public final class SecurityDomain {
         return securityRealm.createRealmIdentity(name);
     }
 
+    /**
+     * Map the provided principal to a {@link RealmIdentity}.  The realm is selected by the name of the principal as
+     * rewritten by the pre-realm rewriters, as for {@link #mapName(String)}, but the principal itself is passed to the
+     * realm so that its type, for example {@link javax.security.auth.x500.X500Principal}, is retained.
+     *
+     * @param principal The principal to map.
+     * @return The identity for the principal.
+     * @throws IllegalArgumentException if the selected realm does not support the type of principal
+     */
+    public RealmIdentity mapPrincipal(Principal principal) {
+        String name = principal.getName();
+        for (NameRewriter rewriter : preRealmRewriters) {
+            name = rewriter.rewriteName(name);
+        }
+        String realmName = realmMapper.getRealmMapping(name);
+        if (realmName == null) {
+            realmName = defaultRealmName;
+        }
+        return getRealm(realmName).createRealmIdentity(principal);
+    }
+
     SecurityRealm getRealm(final String realmName) {
         SecurityRealm securityRealm = realmMap.get(realmName);
         if (securityRealm == null) {
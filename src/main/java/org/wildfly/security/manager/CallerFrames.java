@@ -0,0 +1,65 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.security.manager;
+
+/**
+ * A lazily walked view of the classes on the call stack of the current thread, for checks which only need to examine
+ * the few frames nearest to them.
+ * <p>
+ * Where the JDK allows a single frame to be found, the frames nearest to the calling method are found one at a time,
+ * so only the frames actually examined are walked.  Otherwise, or once a frame further than {@link
+ * #DIRECT_FRAME_LIMIT} is examined, the call stack is captured once and reused.  An instance must only be used by the
+ * method which created it, and only from the thread which created it.
+ */
+final class CallerFrames {
+
+    /**
+     * The number of frames which are found one at a time before the whole call stack is captured; each single frame
+     * lookup walks all of the frames before it, so this bounds the repeated walking.
+     */
+    static final int DIRECT_FRAME_LIMIT = 16;
+
+    private Class<?>[] stack;
+
+    CallerFrames() {
+    }
+
+    /**
+     * Get the class of a frame of the calling method's stack, where frame {@code 0} is the calling method itself and
+     * frame {@code 1} is its caller; this is the same numbering as {@link SecurityManager#getClassContext()}.
+     *
+     * @param n the frame number
+     * @return the class of the frame, or {@code null} if the stack is not that deep
+     */
+    Class<?> get(final int n) {
+        // frame 0 of the calling method is two frames from this method in either case
+        Class<?>[] stack = this.stack;
+        if (stack == null) {
+            if (WildFlySecurityManager.hasGetCallerClass && n < DIRECT_FRAME_LIMIT) {
+                return WildFlySecurityManager.getCallerClass(n + 2);
+            }
+            this.stack = stack = WildFlySecurityManager.getCallStack();
+        }
+        return n + 2 < stack.length ? stack[n + 2] : null;
+    }
+}
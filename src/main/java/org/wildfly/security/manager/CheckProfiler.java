@@ -0,0 +1,210 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.security.manager;
+
+import static java.security.AccessController.doPrivileged;
+
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.Permission;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.wildfly.security.manager.SecurityManagerProfile.Entry;
+import org.wildfly.security.manager.SecurityManagerProfile.Kind;
+import org.wildfly.security.manager.action.ReadPropertyAction;
+
+/**
+ * The recorder of the security manager profiler.  Each thread samples one of every {@code sampleRate} checks, so that
+ * the checks which are not sampled cost only a per-thread countdown.  Checks made while a sampled check is in progress,
+ * such as the permission check which a property check falls back to, are not sampled separately so that their time is
+ * only counted once.  Once {@value #MAXIMUM_ENTRIES} distinct checks have been recorded, further new checks are recorded
+ * under a single entry of each kind named {@value #OTHER_NAME}.
+ */
+final class CheckProfiler {
+
+    /**
+     * The system property giving the number of checks of which one is sampled on each thread; the profiler is
+     * disabled if it is not set or is {@code 0}.
+     */
+    static final String SAMPLE_RATE_PROPERTY = "wildfly.security.manager.profile-sample-rate";
+
+    static final int MAXIMUM_ENTRIES = 4096;
+
+    static final String OTHER_NAME = "<other>";
+
+    /**
+     * The profiler, or {@code null} if profiling is disabled.
+     */
+    static final CheckProfiler INSTANCE;
+
+    static {
+        int sampleRate;
+        try {
+            sampleRate = Integer.parseInt(doPrivileged(new ReadPropertyAction(SAMPLE_RATE_PROPERTY, "0")));
+        } catch (NumberFormatException e) {
+            sampleRate = 0;
+        }
+        INSTANCE = sampleRate > 0 ? new CheckProfiler(sampleRate) : null;
+    }
+
+    private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+        public int compare(final Entry o1, final Entry o2) {
+            final int res = Long.compare(o2.getTotalNanos(), o1.getTotalNanos());
+            return res != 0 ? res : Long.compare(o2.getSampleCount(), o1.getSampleCount());
+        }
+    };
+
+    private final int sampleRate;
+    private final ConcurrentMap<Key, Counters> counters = new ConcurrentHashMap<Key, Counters>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    CheckProfiler(final int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Determine whether the current check of the given thread should be sampled.  If so the caller must clear the
+     * {@code sampling} flag of the context once the check is complete.
+     *
+     * @param ctx the security context of the current thread
+     * @return {@code true} to sample the check, {@code false} otherwise
+     */
+    boolean sample(final WildFlySecurityManager.Context ctx) {
+        if (ctx.sampling || -- ctx.sampleCountdown > 0) {
+            return false;
+        }
+        ctx.sampleCountdown = sampleRate;
+        ctx.sampling = true;
+        return true;
+    }
+
+    void record(final Kind kind, final Permission permission, final ProtectionDomain domain, final long nanos, final boolean denied) {
+        record(kind, permission == null ? null : permission.getClass().getName(), permission == null ? null : permission.getName(), domain, nanos, denied);
+    }
+
+    void record(final Kind kind, final String permissionType, final String permissionName, final ProtectionDomain domain, final long nanos, final boolean denied) {
+        final String codeSource = getLocation(domain);
+        Key key = new Key(kind, permissionType, permissionName, codeSource);
+        Counters entry = counters.get(key);
+        if (entry == null) {
+            if (size.get() >= MAXIMUM_ENTRIES) {
+                key = new Key(kind, null, OTHER_NAME, null);
+                entry = counters.get(key);
+            }
+            if (entry == null) {
+                final Counters appearing = counters.putIfAbsent(key, entry = new Counters());
+                if (appearing != null) {
+                    entry = appearing;
+                } else {
+                    size.incrementAndGet();
+                }
+            }
+        }
+        entry.samples.incrementAndGet();
+        entry.nanos.addAndGet(nanos);
+        if (denied) {
+            entry.denied.incrementAndGet();
+        }
+    }
+
+    SecurityManagerProfile getProfile() {
+        final List<Entry> entries = new ArrayList<Entry>(size.get());
+        for (Map.Entry<Key, Counters> mapEntry : counters.entrySet()) {
+            final Key key = mapEntry.getKey();
+            final Counters value = mapEntry.getValue();
+            final long samples = value.samples.get();
+            entries.add(new Entry(key.kind, key.permissionType, key.permissionName, key.codeSource, samples, samples * sampleRate, value.denied.get(), value.nanos.get()));
+        }
+        Collections.sort(entries, ENTRY_ORDER);
+        return new SecurityManagerProfile(sampleRate, Collections.unmodifiableList(entries));
+    }
+
+    void reset() {
+        counters.clear();
+        size.set(0);
+    }
+
+    private static String getLocation(final ProtectionDomain domain) {
+        if (domain == null) {
+            return null;
+        }
+        final CodeSource codeSource = domain.getCodeSource();
+        if (codeSource == null) {
+            return null;
+        }
+        final URL location = codeSource.getLocation();
+        return location == null ? null : location.toExternalForm();
+    }
+
+    private static final class Counters {
+        final AtomicLong samples = new AtomicLong();
+        final AtomicLong nanos = new AtomicLong();
+        final AtomicLong denied = new AtomicLong();
+    }
+
+    private static final class Key {
+        private final Kind kind;
+        private final String permissionType;
+        private final String permissionName;
+        private final String codeSource;
+        private final int hashCode;
+
+        private Key(final Kind kind, final String permissionType, final String permissionName, final String codeSource) {
+            this.kind = kind;
+            this.permissionType = permissionType;
+            this.permissionName = permissionName;
+            this.codeSource = codeSource;
+            this.hashCode = ((kind.ordinal() * 31 + hash(permissionType)) * 31 + hash(permissionName)) * 31 + hash(codeSource);
+        }
+
+        private static int hash(final String s) {
+            return s == null ? 0 : s.hashCode();
+        }
+
+        private static boolean equals(final String s1, final String s2) {
+            return s1 == null ? s2 == null : s1.equals(s2);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof Key && equals((Key) obj);
+        }
+
+        private boolean equals(final Key other) {
+            return this == other || hashCode == other.hashCode && kind == other.kind && equals(permissionType, other.permissionType)
+                && equals(permissionName, other.permissionName) && equals(codeSource, other.codeSource);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.security.manager;
+
+import java.io.File;
+import java.io.FilePermission;
+import java.io.SerializablePermission;
+import java.lang.reflect.ReflectPermission;
+import java.net.NetPermission;
+import java.security.AllPermission;
+import java.security.Permission;
+import java.security.Permissions;
+import java.security.SecurityPermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PropertyPermission;
+import java.util.Set;
+import java.util.logging.LoggingPermission;
+
+import javax.security.auth.AuthPermission;
+
+/**
+ * An immutable set of granted permissions, indexed so that the common checks do not examine every grant.
+ * <p>
+ * Permissions of the plain {@link java.security.BasicPermission BasicPermission} types are held in a trie of names,
+ * in which a walk along a requested name also finds the dotted wildcard grants which imply it, and
+ * {@link PropertyPermission}s additionally record their actions in the trie.  {@link FilePermission}s are held in a
+ * trie of paths, so that only the grants for the requested path, its directory, and its ancestors are examined.
+ * {@link WildFlySecurityManagerPermission}s are held as a bit set.  Any check which the indexes cannot answer, such as
+ * a check of a wildcard name or of another permission type, is answered by a {@link Permissions} of all of the grants.
+ */
+final class CompiledPermissions {
+
+    private static final Set<Class<?>> NAMED_TYPES = Collections.unmodifiableSet(new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+        AuthPermission.class,
+        LoggingPermission.class,
+        NetPermission.class,
+        ReflectPermission.class,
+        RuntimePermission.class,
+        SecurityPermission.class,
+        SerializablePermission.class
+    )));
+
+    private static final String ALL_FILES = "<<ALL FILES>>";
+    private static final String EXIT_VM = "exitVM";
+
+    private static final int READ = 1;
+    private static final int WRITE = 2;
+
+    private final boolean allPermission;
+    private final int managerPermissions;
+    private final Map<Class<?>, NameNode> names;
+    private final NameNode properties;
+    private final FilePermission[] unindexedFiles;
+    private final PathNode files;
+    private final Permissions permissions;
+
+    CompiledPermissions(final Collection<? extends Permission> granted) {
+        boolean allPermission = false;
+        int managerPermissions = 0;
+        final Map<Class<?>, NameNode> names = new HashMap<>();
+        final NameNode properties = new NameNode();
+        final List<FilePermission> unindexedFiles = new ArrayList<>();
+        final PathNode files = new PathNode();
+        final Permissions permissions = new Permissions();
+        for (Permission permission : granted) {
+            permissions.add(permission);
+            final Class<? extends Permission> type = permission.getClass();
+            if (type == AllPermission.class) {
+                allPermission = true;
+            } else if (type == WildFlySecurityManagerPermission.class) {
+                managerPermissions |= 1 << ((WildFlySecurityManagerPermission) permission).getKind().ordinal();
+            } else if (type == PropertyPermission.class) {
+                properties.add(permission.getName(), getActions(permission));
+            } else if (NAMED_TYPES.contains(type)) {
+                NameNode root = names.get(type);
+                if (root == null) {
+                    names.put(type, root = new NameNode());
+                }
+                root.add(permission.getName(), READ);
+                if (permission.getName().equals(EXIT_VM)) {
+                    // a BasicPermission collection treats a grant of "exitVM" as a grant of "exitVM.*"
+                    root.add(EXIT_VM + ".*", READ);
+                }
+            } else if (type == FilePermission.class) {
+                final FilePermission filePermission = (FilePermission) permission;
+                final String path = filePermission.getName();
+                final int length = path.length();
+                if (path.equals(ALL_FILES) || ! new File(path).isAbsolute()) {
+                    unindexedFiles.add(filePermission);
+                } else if (length > 1 && path.charAt(length - 2) == File.separatorChar && path.charAt(length - 1) == '-') {
+                    final PathNode node = files.getOrCreate(path, length - 1);
+                    node.tree = append(node.tree, filePermission);
+                } else if (length > 1 && path.charAt(length - 2) == File.separatorChar && path.charAt(length - 1) == '*') {
+                    final PathNode node = files.getOrCreate(path, length - 1);
+                    node.directory = append(node.directory, filePermission);
+                } else {
+                    final PathNode node = files.getOrCreate(path, length);
+                    node.file = append(node.file, filePermission);
+                }
+            }
+        }
+        permissions.setReadOnly();
+        this.allPermission = allPermission;
+        this.managerPermissions = managerPermissions;
+        this.names = names;
+        this.properties = properties;
+        this.unindexedFiles = unindexedFiles.toArray(new FilePermission[unindexedFiles.size()]);
+        this.files = files;
+        this.permissions = permissions;
+    }
+
+    /**
+     * Determine whether the given permission is implied by these grants.
+     *
+     * @param permission the permission to check
+     * @return {@code true} if the permission is implied, {@code false} otherwise
+     */
+    boolean implies(final Permission permission) {
+        if (allPermission) {
+            return true;
+        }
+        final Class<? extends Permission> type = permission.getClass();
+        if (type == WildFlySecurityManagerPermission.class) {
+            return (managerPermissions & 1 << ((WildFlySecurityManagerPermission) permission).getKind().ordinal()) != 0;
+        } else if (type == PropertyPermission.class) {
+            final String name = permission.getName();
+            if (! isWildcard(name)) {
+                final int actions = getActions(permission);
+                return (properties.get(name, true) & actions) == actions;
+            }
+        } else if (NAMED_TYPES.contains(type)) {
+            final String name = permission.getName();
+            if (! isWildcard(name)) {
+                final NameNode root = names.get(type);
+                return root != null && root.get(name, false) != 0;
+            }
+        } else if (type == FilePermission.class) {
+            if (impliesFile((FilePermission) permission)) {
+                return true;
+            }
+        }
+        return permissions.implies(permission);
+    }
+
+    /**
+     * Get all of the grants.
+     *
+     * @return the read-only grants
+     */
+    Permissions getPermissions() {
+        return permissions;
+    }
+
+    private boolean impliesFile(final FilePermission permission) {
+        if (impliesAny(unindexedFiles, permission)) {
+            return true;
+        }
+        final String path = permission.getName();
+        final int length = path.length();
+        if (length == 0 || path.charAt(length - 1) == '-' || path.charAt(length - 1) == '*') {
+            // the whole-directory requests are left to the full check
+            return false;
+        }
+        final int lastSeparator = path.lastIndexOf(File.separatorChar);
+        PathNode node = files;
+        for (int i = 0; i < length; i++) {
+            node = node.get(path.charAt(i));
+            if (node == null) {
+                return false;
+            }
+            if (impliesAny(node.tree, permission) || i == lastSeparator && impliesAny(node.directory, permission)) {
+                return true;
+            }
+        }
+        return impliesAny(node.file, permission);
+    }
+
+    private static boolean impliesAny(final FilePermission[] candidates, final FilePermission permission) {
+        if (candidates != null) for (FilePermission candidate : candidates) {
+            if (candidate.implies(permission)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWildcard(final String name) {
+        final int length = name.length();
+        return length > 0 && name.charAt(length - 1) == '*' && (length == 1 || name.charAt(length - 2) == '.') || name.equals(EXIT_VM);
+    }
+
+    private static int getActions(final Permission permission) {
+        switch (permission.getActions()) {
+            case "read": return READ;
+            case "write": return WRITE;
+            case "read,write": return READ | WRITE;
+            default: return 0;
+        }
+    }
+
+    private static FilePermission[] append(final FilePermission[] permissions, final FilePermission permission) {
+        if (permissions == null) {
+            return new FilePermission[] { permission };
+        }
+        final FilePermission[] appended = Arrays.copyOf(permissions, permissions.length + 1);
+        appended[permissions.length] = permission;
+        return appended;
+    }
+
+    abstract static class TrieNode<N extends TrieNode<N>> {
+        private static final char[] C_EMPTY = new char[0];
+
+        private char[] matches = C_EMPTY;
+        private TrieNode<?>[] children = new TrieNode<?>[0];
+
+        abstract N create();
+
+        @SuppressWarnings("unchecked")
+        final N get(final char c) {
+            final int i = Arrays.binarySearch(matches, c);
+            return i < 0 ? null : (N) children[i];
+        }
+
+        @SuppressWarnings("unchecked")
+        final N getOrCreate(final String s, final int end) {
+            N node = (N) this;
+            for (int idx = 0; idx < end; idx++) {
+                node = node.getOrCreateChild(s.charAt(idx));
+            }
+            return node;
+        }
+
+        @SuppressWarnings("unchecked")
+        final N getOrCreateChild(final char c) {
+            final int i = Arrays.binarySearch(matches, c);
+            if (i >= 0) {
+                return (N) children[i];
+            }
+            // i is the negated insertion index
+            final int insertIndex = -i - 1;
+            final int oldLength = matches.length;
+            final char[] newMatches = Arrays.copyOf(matches, oldLength + 1);
+            final TrieNode<?>[] newChildren = Arrays.copyOf(children, oldLength + 1);
+            System.arraycopy(newMatches, insertIndex, newMatches, insertIndex + 1, oldLength - insertIndex);
+            System.arraycopy(newChildren, insertIndex, newChildren, insertIndex + 1, oldLength - insertIndex);
+            final N node = create();
+            newMatches[insertIndex] = c;
+            newChildren[insertIndex] = node;
+            matches = newMatches;
+            children = newChildren;
+            return node;
+        }
+    }
+
+    /**
+     * A trie of permission names, recording the actions granted to each name and to each dotted wildcard.
+     */
+    static final class NameNode extends TrieNode<NameNode> {
+        // the actions granted to exactly this name
+        private int exact;
+        // the actions granted to this name followed by "*"
+        private int wildcard;
+
+        NameNode create() {
+            return new NameNode();
+        }
+
+        void add(final String name, final int actions) {
+            final int length = name.length();
+            if (length > 0 && name.charAt(length - 1) == '*' && (length == 1 || name.charAt(length - 2) == '.')) {
+                getOrCreate(name, length - 1).wildcard |= actions;
+            } else {
+                getOrCreate(name, length).exact |= actions;
+            }
+        }
+
+        /**
+         * Get the actions granted to the given name, which must not itself be a wildcard.  A wildcard grant such as
+         * {@code a.*} implies only longer names, as {@link java.security.BasicPermission#implies} does, unless {@code
+         * matchPrefix} is given, in which case it also implies {@code a.}, as a {@link PropertyPermission} collection
+         * does.
+         */
+        int get(final String name, final boolean matchPrefix) {
+            // wildcards are only recorded following a '.' or at the root
+            NameNode node = this;
+            int actions = 0;
+            for (int i = 0; i < name.length(); i++) {
+                actions |= node.wildcard;
+                node = node.get(name.charAt(i));
+                if (node == null) {
+                    return actions;
+                }
+            }
+            return matchPrefix ? actions | node.exact | node.wildcard : actions | node.exact;
+        }
+    }
+
+    /**
+     * A trie of file paths, holding the file permissions granted to each file, to the files of each directory, and to
+     * each directory tree.
+     */
+    static final class PathNode extends TrieNode<PathNode> {
+        private FilePermission[] file;
+        private FilePermission[] directory;
+        private FilePermission[] tree;
+
+        PathNode create() {
+            return new PathNode();
+        }
+    }
+}
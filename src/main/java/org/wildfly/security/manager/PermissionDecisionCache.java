@@ -0,0 +1,288 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.security.manager;
+
+import static java.security.AccessController.doPrivileged;
+
+import java.io.FilePermission;
+import java.io.SerializablePermission;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.ReflectPermission;
+import java.net.NetPermission;
+import java.security.AllPermission;
+import java.security.Permission;
+import java.security.Policy;
+import java.security.ProtectionDomain;
+import java.security.SecurityPermission;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.PropertyPermission;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.LoggingPermission;
+
+import javax.security.auth.AuthPermission;
+
+import org.wildfly.security.manager.action.ReadPropertyAction;
+
+/**
+ * A bounded cache of the permissions which have been granted to each {@link ProtectionDomain}, so that repeated
+ * identical checks do not consult the {@link java.security.Policy} again.
+ * <p>
+ * Only grants are cached, so a denial is always fully evaluated and reported.  Only permissions of types which are
+ * known to be immutable and to have a value-based {@code equals} are cached; {@link java.net.SocketPermission} is
+ * excluded because its {@code equals} may resolve host names.  Protection domains are weakly referenced.  The
+ * maximum number of entries is given by the {@value #MAXIMUM_SIZE_PROPERTY} system property, default {@value
+ * #DEFAULT_MAXIMUM_SIZE}; a value of {@code 0} disables the cache.  Once full an arbitrary entry is evicted for each
+ * new entry.
+ * <p>
+ * The cache remembers the {@link Policy} instance its grants were made against, and discards them all as soon as a
+ * different policy is seen to be installed.
+ */
+final class PermissionDecisionCache {
+
+    /**
+     * The system property giving the maximum number of cached decisions.
+     */
+    static final String MAXIMUM_SIZE_PROPERTY = "wildfly.security.manager.decision-cache-size";
+
+    /**
+     * The default maximum number of cached decisions.
+     */
+    static final int DEFAULT_MAXIMUM_SIZE = 4096;
+
+    static final int MAXIMUM_SIZE;
+
+    static {
+        int maximumSize;
+        try {
+            maximumSize = Integer.parseInt(doPrivileged(new ReadPropertyAction(MAXIMUM_SIZE_PROPERTY, Integer.toString(DEFAULT_MAXIMUM_SIZE))));
+        } catch (NumberFormatException e) {
+            maximumSize = DEFAULT_MAXIMUM_SIZE;
+        }
+        MAXIMUM_SIZE = Math.max(maximumSize, 0);
+    }
+
+    private static final Set<Class<?>> CACHEABLE_TYPES = Collections.unmodifiableSet(new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+        AllPermission.class,
+        AuthPermission.class,
+        FilePermission.class,
+        LoggingPermission.class,
+        NetPermission.class,
+        PropertyPermission.class,
+        ReflectPermission.class,
+        RuntimePermission.class,
+        SecurityPermission.class,
+        SerializablePermission.class,
+        WildFlySecurityManagerPermission.class
+    )));
+
+    // a lookup key for each thread, so that a lookup does not allocate
+    private static final ThreadLocal<Key> PROBE = new ThreadLocal<Key>() {
+        protected Key initialValue() {
+            return new Key();
+        }
+    };
+
+    private final ConcurrentMap<Key, Boolean> granted = new ConcurrentHashMap<Key, Boolean>();
+    private final ReferenceQueue<ProtectionDomain> queue = new ReferenceQueue<ProtectionDomain>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maximumSize;
+    private volatile int epoch;
+    private volatile Policy policy;
+
+    PermissionDecisionCache(final int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Determine whether decisions about the given permission may be cached.
+     *
+     * @param permission the permission
+     * @return {@code true} if decisions may be cached, {@code false} otherwise
+     */
+    boolean isCacheable(final Permission permission) {
+        return maximumSize > 0 && CACHEABLE_TYPES.contains(permission.getClass());
+    }
+
+    /**
+     * Get the current epoch, which must be read before a decision is made and passed to {@link #setGranted} so that a
+     * decision made against a policy which has since been replaced is not cached.
+     *
+     * @return the current epoch
+     */
+    int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Determine whether a permission was previously granted to a domain by the given policy.  If the given policy is
+     * not the one the cached grants were made against, all cached grants are discarded.
+     *
+     * @param domain the protection domain
+     * @param permission the permission
+     * @param policy the installed policy
+     * @return {@code true} if the permission was granted, {@code false} otherwise
+     */
+    boolean isGranted(final ProtectionDomain domain, final Permission permission, final Policy policy) {
+        if (policy != this.policy) {
+            setPolicy(policy);
+            return false;
+        }
+        return isGranted(domain, permission);
+    }
+
+    boolean isGranted(final ProtectionDomain domain, final Permission permission) {
+        final Key probe = PROBE.get();
+        probe.set(domain, permission);
+        try {
+            return granted.containsKey(probe);
+        } finally {
+            // don't keep the domain reachable from the thread
+            probe.set(null, null);
+        }
+    }
+
+    void setGranted(final ProtectionDomain domain, final Permission permission, final Policy policy, final int epoch) {
+        if (policy != this.policy) {
+            return;
+        }
+        setGranted(domain, permission, epoch);
+    }
+
+    void setGranted(final ProtectionDomain domain, final Permission permission, final int epoch) {
+        if (epoch != this.epoch) {
+            return;
+        }
+        expungeStaleEntries();
+        if (size.get() >= maximumSize) {
+            final Iterator<Key> iterator = granted.keySet().iterator();
+            if (iterator.hasNext() && granted.remove(iterator.next()) != null) {
+                size.decrementAndGet();
+            }
+        }
+        final Key key = new Key(domain, permission, queue);
+        if (granted.putIfAbsent(key, Boolean.TRUE) == null) {
+            size.incrementAndGet();
+            if (epoch != this.epoch && granted.remove(key) != null) {
+                // the cache was cleared while the decision was being stored
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Discard all cached decisions.
+     */
+    void clear() {
+        epoch ++;
+        final Iterator<Key> iterator = granted.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (granted.remove(iterator.next()) != null) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    private synchronized void setPolicy(final Policy policy) {
+        if (policy != this.policy) {
+            this.policy = policy;
+            clear();
+        }
+    }
+
+    int getSize() {
+        return size.get();
+    }
+
+    private void expungeStaleEntries() {
+        Object stale;
+        while ((stale = queue.poll()) != null) {
+            if (granted.remove(((DomainReference) stale).key) != null) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    private static final class Key {
+
+        // either the domain itself for a lookup, or a weak reference to it for a stored key; only lookup keys change
+        private Object domain;
+        private Permission permission;
+        private int hashCode;
+
+        private Key() {
+        }
+
+        private Key(final ProtectionDomain domain, final Permission permission, final ReferenceQueue<ProtectionDomain> queue) {
+            this.domain = new DomainReference(domain, this, queue);
+            this.permission = permission;
+            this.hashCode = System.identityHashCode(domain) * 31 + permission.hashCode();
+        }
+
+        private void set(final ProtectionDomain domain, final Permission permission) {
+            this.domain = domain;
+            this.permission = permission;
+            this.hashCode = permission == null ? 0 : System.identityHashCode(domain) * 31 + permission.hashCode();
+        }
+
+        private ProtectionDomain getDomain() {
+            final Object domain = this.domain;
+            return domain instanceof DomainReference ? ((DomainReference) domain).get() : (ProtectionDomain) domain;
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof Key && equals((Key) obj);
+        }
+
+        private boolean equals(final Key other) {
+            if (this == other) {
+                return true;
+            }
+            if (hashCode != other.hashCode) {
+                return false;
+            }
+            final ProtectionDomain domain = getDomain();
+            return domain != null && domain == other.getDomain() && permission.equals(other.permission);
+        }
+    }
+
+    private static final class DomainReference extends WeakReference<ProtectionDomain> {
+
+        private final Key key;
+
+        private DomainReference(final ProtectionDomain referent, final Key key, final ReferenceQueue<ProtectionDomain> queue) {
+            super(referent, queue);
+            this.key = key;
+        }
+    }
+}
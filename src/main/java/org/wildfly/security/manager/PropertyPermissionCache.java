@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.security.manager;
+
+import static java.security.AccessController.doPrivileged;
+
+import java.util.Iterator;
+import java.util.PropertyPermission;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.wildfly.security.manager.action.ReadPropertyAction;
+
+/**
+ * A bounded cache of {@link PropertyPermission} instances with the same actions, keyed by property name, so that
+ * frequently checked properties do not construct and parse a new permission for each check.
+ * <p>
+ * The maximum number of entries is given by the {@value #MAXIMUM_SIZE_PROPERTY} system property, default {@value
+ * #DEFAULT_MAXIMUM_SIZE}; a value of {@code 0} disables the cache.  Once full an arbitrary entry is evicted for each
+ * new entry.
+ */
+final class PropertyPermissionCache {
+
+    /**
+     * The system property giving the maximum number of cached permissions for each set of actions.
+     */
+    static final String MAXIMUM_SIZE_PROPERTY = "wildfly.security.manager.property-permission-cache-size";
+
+    /**
+     * The default maximum number of cached permissions for each set of actions.
+     */
+    static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    static final int MAXIMUM_SIZE;
+
+    static {
+        int maximumSize;
+        try {
+            maximumSize = Integer.parseInt(doPrivileged(new ReadPropertyAction(MAXIMUM_SIZE_PROPERTY, Integer.toString(DEFAULT_MAXIMUM_SIZE))));
+        } catch (NumberFormatException e) {
+            maximumSize = DEFAULT_MAXIMUM_SIZE;
+        }
+        MAXIMUM_SIZE = Math.max(maximumSize, 0);
+    }
+
+    private final String actions;
+    private final ConcurrentMap<String, PropertyPermission> permissions = new ConcurrentHashMap<String, PropertyPermission>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maximumSize;
+
+    PropertyPermissionCache(final String actions, final int maximumSize) {
+        this.actions = actions;
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Get the permission for the given property name.
+     *
+     * @param name the property name
+     * @return the permission
+     */
+    PropertyPermission get(final String name) {
+        PropertyPermission permission = permissions.get(name);
+        if (permission != null) {
+            return permission;
+        }
+        permission = new PropertyPermission(name, actions);
+        if (maximumSize == 0) {
+            return permission;
+        }
+        if (size.get() >= maximumSize) {
+            final Iterator<String> iterator = permissions.keySet().iterator();
+            if (iterator.hasNext() && permissions.remove(iterator.next()) != null) {
+                size.decrementAndGet();
+            }
+        }
+        final PropertyPermission appearing = permissions.putIfAbsent(name, permission);
+        if (appearing != null) {
+            return appearing;
+        }
+        size.incrementAndGet();
+        return permission;
+    }
+
+    int getSize() {
+        return size.get();
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.security.manager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * A snapshot of the permission checks sampled by the security manager profiler.  The profiler is enabled by setting
+ * the {@value CheckProfiler#SAMPLE_RATE_PROPERTY} system property to the number of checks of which one is sampled on
+ * each thread; sampled checks are counted and timed by check kind, permission, and calling code source.
+ *
+ * @see WildFlySecurityManager#getProfile()
+ */
+public final class SecurityManagerProfile {
+
+    /**
+     * The kind of a sampled check.
+     */
+    public enum Kind {
+        /**
+         * A permission check, by way of {@link WildFlySecurityManager#checkPermission(java.security.Permission)} or
+         * one of its variants.
+         */
+        CHECK_PERMISSION,
+        /**
+         * A system property read check, by way of {@link WildFlySecurityManager#checkPropertyAccess(String)}.
+         */
+        CHECK_PROPERTY_ACCESS,
+        /**
+         * A declared member access check, by way of {@link WildFlySecurityManager#checkMemberAccess(Class, int)}.
+         */
+        CHECK_MEMBER_ACCESS,
+        /**
+         * A call to one of the {@code doChecked} methods which enabled checking.  No time is recorded.
+         */
+        DO_CHECKED,
+        /**
+         * A call to one of the {@code doUnchecked} methods which disabled checking; the time is that of the check of
+         * the caller's {@code doUnchecked} permission.
+         */
+        DO_UNCHECKED,
+    }
+
+    private final int sampleRate;
+    private final List<Entry> entries;
+
+    SecurityManagerProfile(final int sampleRate, final List<Entry> entries) {
+        this.sampleRate = sampleRate;
+        this.entries = entries;
+    }
+
+    /**
+     * Get the number of checks of which one is sampled on each thread, or {@code 0} if the profiler is not enabled.
+     *
+     * @return the sample rate
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Get the entries of this profile, in decreasing order of total sampled time and then of sample count.
+     *
+     * @return the entries (not {@code null})
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Write this profile as text, one tab-separated line per entry following a header line.
+     *
+     * @param writer the writer to write to
+     * @throws IOException if writing fails
+     */
+    public void writeTo(final Writer writer) throws IOException {
+        final PrintWriter printWriter = new PrintWriter(writer);
+        printWriter.printf("# sample rate %d%n", Integer.valueOf(sampleRate));
+        printWriter.println("kind\tpermission type\tpermission name\tcode source\tsamples\testimated checks\tdenied samples\ttotal sampled ns\taverage ns");
+        for (Entry entry : entries) {
+            printWriter.println(entry);
+        }
+        printWriter.flush();
+        if (printWriter.checkError()) {
+            throw new IOException("Failed to write profile");
+        }
+    }
+
+    /**
+     * Write this profile as text to a file, replacing its content.
+     *
+     * @param file the file to write to
+     * @throws IOException if writing fails
+     */
+    public void writeTo(final File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writeTo(writer);
+        }
+    }
+
+    /**
+     * The sampled checks of one kind, of one permission, from one code source.
+     */
+    public static final class Entry {
+        private final Kind kind;
+        private final String permissionType;
+        private final String permissionName;
+        private final String codeSource;
+        private final long samples;
+        private final long estimatedCount;
+        private final long denied;
+        private final long totalNanos;
+
+        Entry(final Kind kind, final String permissionType, final String permissionName, final String codeSource, final long samples, final long estimatedCount, final long denied, final long totalNanos) {
+            this.kind = kind;
+            this.permissionType = permissionType;
+            this.permissionName = permissionName;
+            this.codeSource = codeSource;
+            this.samples = samples;
+            this.estimatedCount = estimatedCount;
+            this.denied = denied;
+            this.totalNanos = totalNanos;
+        }
+
+        /**
+         * Get the kind of check.
+         *
+         * @return the kind of check
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Get the class name of the checked permission.
+         *
+         * @return the class name, or {@code null} for checks of no single permission
+         */
+        public String getPermissionType() {
+            return permissionType;
+        }
+
+        /**
+         * Get the name of the checked permission.  Once the profiler has recorded its maximum number of entries,
+         * further names of a permission type are counted under the name {@code "<other>"}.
+         *
+         * @return the permission name, or {@code null} for checks of no single permission
+         */
+        public String getPermissionName() {
+            return permissionName;
+        }
+
+        /**
+         * Get the location of the code source of the calling protection domain.
+         *
+         * @return the location, or {@code null} if there is no calling code source
+         */
+        public String getCodeSource() {
+            return codeSource;
+        }
+
+        /**
+         * Get the number of sampled checks.
+         *
+         * @return the number of sampled checks
+         */
+        public long getSampleCount() {
+            return samples;
+        }
+
+        /**
+         * Get the estimated number of checks, which is the number of sampled checks multiplied by the sample rate.
+         *
+         * @return the estimated number of checks
+         */
+        public long getEstimatedCount() {
+            return estimatedCount;
+        }
+
+        /**
+         * Get the number of sampled checks which were denied.
+         *
+         * @return the number of denied sampled checks
+         */
+        public long getDeniedCount() {
+            return denied;
+        }
+
+        /**
+         * Get the total time of the sampled checks.
+         *
+         * @return the total time in nanoseconds
+         */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * Get the average time of the sampled checks.
+         *
+         * @return the average time in nanoseconds
+         */
+        public long getAverageNanos() {
+            return samples == 0 ? 0 : totalNanos / samples;
+        }
+
+        public String toString() {
+            return kind + "\t" + permissionType + "\t" + permissionName + "\t" + codeSource + "\t" + samples + "\t" + estimatedCount + "\t" + denied + "\t" + totalNanos + "\t" + getAverageNanos();
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.wildfly.security.manager;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.System.getSecurityManager;
+import static java.util.Arrays.copyOf;
 import static java.util.Arrays.copyOfRange;
 import static org.wildfly.security.manager.WildFlySecurityManagerPermission.GET_STACK_INSPECTOR_PERMISSION;
 
@@ -62,16 +63,27 @@ public final class StackInspector {
 
     /**
      * Get all or a portion of the call stack.  The {@code numFrames} argument specifies how many frames should be
-     * returned.
+     * returned.  Where the JDK allows a single frame to be found, only the requested frames are walked; otherwise the
+     * whole call stack is captured.
      *
      * @param skipFrames the number of frames to skip; 0 will include the immediate caller at index 0
      * @param numFrames the maximum number of frames to return
      * @return the partial call stack
      */
     public Class<?>[] getCallStack(int skipFrames, int numFrames) {
-        final Class<?>[] stack = WildFlySecurityManager.getCallStack();
-        final int from = max(0, skipFrames) + 2;
-        return copyOfRange(stack, from, min(from + numFrames, stack.length));
+        // frame 0 is this method
+        final CallerFrames frames = new CallerFrames();
+        final int from = max(0, skipFrames) + 1;
+        Class<?>[] result = new Class<?>[min(max(0, numFrames), CallerFrames.DIRECT_FRAME_LIMIT)];
+        int count = 0;
+        Class<?> frame;
+        while (count < numFrames && (frame = frames.get(from + count)) != null) {
+            if (count == result.length) {
+                result = copyOf(result, (int) min((long) numFrames, count * 2L));
+            }
+            result[count ++] = frame;
+        }
+        return count == result.length ? result : copyOf(result, count);
     }
 
     /**
@@ -110,4 +122,79 @@ public final class StackInspector {
         }
         return false;
     }
+
+    /**
+     * Determine whether the call stack contains a class which is matched by the given matcher.  Where the JDK allows
+     * a single frame to be found, the call stack is only walked as far as the first matching frame; otherwise the
+     * whole call stack is captured.
+     *
+     * @param matcher the frame matcher
+     * @return {@code true} if the call stack contains a matching class
+     */
+    public boolean callStackContains(FrameMatcher matcher) {
+        return findCaller(1, 0, matcher) != null;
+    }
+
+    /**
+     * Find the nearest class on the call stack which is matched by the given matcher.  Where the JDK allows a single
+     * frame to be found, the call stack is only walked as far as the first matching frame; otherwise the whole call
+     * stack is captured.
+     *
+     * @param skipFrames the number of frames to skip; 0 will include the immediate caller
+     * @param matcher the frame matcher
+     * @return the matching class, or {@code null} if no frame matches
+     */
+    public Class<?> findCaller(int skipFrames, FrameMatcher matcher) {
+        return findCaller(1, skipFrames, matcher);
+    }
+
+    /**
+     * Get the nearest class on the call stack which is not in any of the given packages or their subpackages, for
+     * example to find the application class which called into a library.  Where the JDK allows a single frame
+     * to be found, the call stack is only walked as far as the first such frame; otherwise the whole call stack is
+     * captured.
+     *
+     * @param skipFrames the number of frames to skip; 0 will include the immediate caller
+     * @param packageNames the names of the packages to pass over
+     * @return the nearest class outside of the packages, or {@code null} if every frame is within them
+     */
+    public Class<?> getFirstCallerOutside(int skipFrames, final String... packageNames) {
+        return findCaller(1, skipFrames, new FrameMatcher() {
+            public boolean matches(final Class<?> clazz) {
+                final String className = clazz.getName();
+                for (String packageName : packageNames) {
+                    if (className.length() > packageName.length() && className.charAt(packageName.length()) == '.' && className.startsWith(packageName)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+    }
+
+    private static Class<?> findCaller(int depth, int skipFrames, FrameMatcher matcher) {
+        // frame 0 is this method, and the frames up to the depth are within this class
+        final CallerFrames frames = new CallerFrames();
+        Class<?> frame;
+        for (int i = depth + 1 + max(0, skipFrames); (frame = frames.get(i)) != null; i ++) {
+            if (matcher.matches(frame)) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A matcher of the classes on the call stack.
+     */
+    public interface FrameMatcher {
+
+        /**
+         * Determine whether the class of a frame matches.
+         *
+         * @param clazz the class of the frame
+         * @return {@code true} if the class matches, {@code false} otherwise
+         */
+        boolean matches(Class<?> clazz);
+    }
 }
@@ -23,19 +23,23 @@
 package org.wildfly.security.manager;
 
 import java.io.FileDescriptor;
-import java.lang.reflect.Field;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Member;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.net.InetAddress;
 import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.security.CodeSource;
 import java.security.Permission;
+import java.security.Policy;
 import java.security.Principal;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.security.ProtectionDomain;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Properties;
 import java.util.PropertyPermission;
@@ -46,10 +50,12 @@ import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import org.kohsuke.MetaInfServices;
 import org.wildfly.security.ParametricPrivilegedAction;
 import org.wildfly.security.ParametricPrivilegedExceptionAction;
+import org.wildfly.security.manager.SecurityManagerProfile.Kind;
 import org.wildfly.security.manager.action.ClearPropertyAction;
 import org.wildfly.security.manager.action.GetClassLoaderAction;
 import org.wildfly.security.manager.action.GetContextClassLoaderAction;
 import org.wildfly.security.manager.action.GetEnvironmentAction;
+import org.wildfly.security.manager.action.GetPolicyAction;
 import org.wildfly.security.manager.action.GetProtectionDomainAction;
 import org.wildfly.security.manager.action.GetSystemPropertiesAction;
 import org.wildfly.security.manager.action.ReadEnvironmentPropertyAction;
@@ -67,6 +73,7 @@ import static java.lang.System.setProperty;
 import static java.lang.Thread.currentThread;
 import static java.security.AccessController.doPrivileged;
 import static org.wildfly.security.manager.WildFlySecurityManagerPermission.DO_UNCHECKED_PERMISSION;
+import static org.wildfly.security.manager.WildFlySecurityManagerPermission.GET_PROFILE_PERMISSION;
 import static org.wildfly.security.manager._private.SecurityMessages.access;
 
 /**
@@ -84,12 +91,19 @@ public final class WildFlySecurityManager extends SecurityManager {
     private static final Permission GET_CLASS_LOADER_PERMISSION = new RuntimePermission("getClassLoader");
     private static final Permission SET_CLASS_LOADER_PERMISSION = new RuntimePermission("setClassLoader");
 
+    static final PermissionDecisionCache DECISION_CACHE = new PermissionDecisionCache(PermissionDecisionCache.MAXIMUM_SIZE);
+    static final PropertyPermissionCache READ_PERMISSIONS = new PropertyPermissionCache("read", PropertyPermissionCache.MAXIMUM_SIZE);
+    static final PropertyPermissionCache WRITE_PERMISSIONS = new PropertyPermissionCache("write", PropertyPermissionCache.MAXIMUM_SIZE);
+    static final CheckProfiler PROFILER = CheckProfiler.INSTANCE;
+
     static class Context {
         boolean checking = true;
         boolean entered = false;
         ParametricPrivilegedAction<Object, Object> action1;
         ParametricPrivilegedExceptionAction<Object, Object> action2;
         Object parameter;
+        int sampleCountdown;
+        boolean sampling;
     }
 
     private static final ThreadLocal<Context> CTX = new ThreadLocal<Context>() {
@@ -98,13 +112,19 @@ public final class WildFlySecurityManager extends SecurityManager {
         }
     };
 
-    private static final Field PD_STACK;
+    private static final MethodHandle PD_STACK;
     private static final WildFlySecurityManager INSTANCE;
-    private static final boolean hasGetCallerClass;
+    static final boolean hasGetCallerClass;
     private static final int callerOffset;
 
     static {
-        PD_STACK = doPrivileged(new GetAccessibleDeclaredFieldAction(AccessControlContext.class, "context"));
+        MethodHandle pdStack = null;
+        try {
+            pdStack = MethodHandles.lookup().unreflectGetter(doPrivileged(new GetAccessibleDeclaredFieldAction(AccessControlContext.class, "context")));
+        } catch (IllegalAccessException | NoSuchFieldError | RuntimeException ignored) {
+            // the context will check itself
+        }
+        PD_STACK = pdStack;
         INSTANCE = doPrivileged(new PrivilegedAction<WildFlySecurityManager>() {
             public WildFlySecurityManager run() {
                 return new WildFlySecurityManager();
@@ -144,7 +164,8 @@ public final class WildFlySecurityManager extends SecurityManager {
         if (hasGetCallerClass) {
             return Reflection.getCallerClass(n + callerOffset);
         } else {
-            return getCallStack()[n + callerOffset];
+            // index 0 is getCallStack() and index 1 is this method
+            return getCallStack()[n + 1];
         }
     }
 
@@ -169,7 +190,7 @@ public final class WildFlySecurityManager extends SecurityManager {
      * @throws SecurityException if the check fails
      */
     public void checkPermission(final Permission perm) throws SecurityException {
-        checkPermission(perm, AccessController.getContext());
+        checkPermission(perm, null, getContext());
     }
 
     /**
@@ -189,21 +210,94 @@ public final class WildFlySecurityManager extends SecurityManager {
 
     /**
      * Find the protection domain in the given list which denies a permission, or {@code null} if the permission
-     * check would pass.
+     * check would pass.  Permissions previously granted to a domain are remembered, so that repeating a check does
+     * not consult the policy again; see {@link #refreshPolicy()}.
      *
      * @param permission the permission to test
      * @param domains the protection domains to try
      * @return the first denying protection domain, or {@code null} if there is none
      */
     public static ProtectionDomain findAccessDenial(final Permission permission, final ProtectionDomain... domains) {
-        if (domains != null) for (ProtectionDomain domain : domains) {
-            if (! domain.implies(permission)) {
-                return domain;
+        if (domains != null) {
+            for (ProtectionDomain domain : domains) {
+                if (! isGranted(domain, permission)) {
+                    return domain;
+                }
             }
         }
         return null;
     }
 
+    /**
+     * Determine whether a protection domain implies a permission, remembering the permission if it is granted.
+     *
+     * @param domain the protection domain
+     * @param permission the permission to test
+     * @return {@code true} if the permission is granted, {@code false} otherwise
+     */
+    static boolean isGranted(final ProtectionDomain domain, final Permission permission) {
+        final PermissionDecisionCache cache = DECISION_CACHE;
+        if (! cache.isCacheable(permission)) {
+            return domain.implies(permission);
+        }
+        final Policy policy = doPrivileged(GetPolicyAction.getInstance());
+        if (cache.isGranted(domain, permission, policy)) {
+            return true;
+        }
+        final int epoch = cache.getEpoch();
+        if (! domain.implies(permission)) {
+            return false;
+        }
+        cache.setGranted(domain, permission, policy, epoch);
+        return true;
+    }
+
+    /**
+     * Refresh the installed {@link Policy} and discard the permission grants remembered by the security manager.  If the
+     * policy is instead refreshed by calling {@link Policy#refresh()} directly, permissions it no longer grants may
+     * continue to be granted until this method is called.  Grants are also discarded once a different policy is
+     * installed.
+     *
+     * @throws SecurityException if the caller does not have permission to get the policy
+     */
+    public static void refreshPolicy() throws SecurityException {
+        Policy.getPolicy().refresh();
+        DECISION_CACHE.clear();
+    }
+
+    /**
+     * Get a snapshot of the permission checks sampled by the profiler.  The profiler is enabled by setting the
+     * {@code wildfly.security.manager.profile-sample-rate} system property to the number of checks of which one is
+     * sampled on each thread; if it is not enabled, the returned profile is empty.  The caller must have the
+     * {@code getProfile} {@link WildFlySecurityManagerPermission}.
+     *
+     * @return the profile
+     * @throws SecurityException if the caller does not have permission to get the profile
+     */
+    public static SecurityManagerProfile getProfile() throws SecurityException {
+        if (isChecking()) {
+            getSecurityManager().checkPermission(GET_PROFILE_PERMISSION);
+        }
+        final CheckProfiler profiler = PROFILER;
+        return profiler == null ? new SecurityManagerProfile(0, Collections.<SecurityManagerProfile.Entry>emptyList()) : profiler.getProfile();
+    }
+
+    /**
+     * Discard the permission checks sampled by the profiler so far.  The caller must have the {@code getProfile}
+     * {@link WildFlySecurityManagerPermission}.
+     *
+     * @throws SecurityException if the caller does not have permission to get the profile
+     */
+    public static void resetProfile() throws SecurityException {
+        if (isChecking()) {
+            getSecurityManager().checkPermission(GET_PROFILE_PERMISSION);
+        }
+        final CheckProfiler profiler = PROFILER;
+        if (profiler != null) {
+            profiler.reset();
+        }
+    }
+
     /**
      * Try a permission check.  Any violations will be logged to the {@code org.wildfly.security.access} category
      * at a {@code DEBUG} level.
@@ -215,7 +309,7 @@ public final class WildFlySecurityManager extends SecurityManager {
     public static boolean tryCheckPermission(final Permission permission, final ProtectionDomain... domains) {
         final ProtectionDomain protectionDomain = findAccessDenial(permission, domains);
         if (protectionDomain != null) {
-            final Context ctx = CTX.get();
+            final Context ctx = getContext();
             if (! ctx.entered) {
                 ctx.entered = true;
                 try {
@@ -244,24 +338,61 @@ public final class WildFlySecurityManager extends SecurityManager {
      * @throws SecurityException if the check fails
      */
     public void checkPermission(final Permission perm, final AccessControlContext context) throws SecurityException {
+        checkPermission(perm, context, getContext());
+    }
+
+    /**
+     * Perform a permission check with the security context of the current thread.
+     *
+     * @param perm the permission to check
+     * @param context the access control context to use for the check, or {@code null} to use the current context
+     *      only if permissions are being checked
+     * @param ctx the security context of the current thread
+     * @throws SecurityException if the check fails
+     */
+    private void checkPermission(final Permission perm, final AccessControlContext context, final Context ctx) throws SecurityException {
+        final CheckProfiler profiler = PROFILER;
+        if (profiler != null && doCheck(ctx) && profiler.sample(ctx)) {
+            final AccessControlContext checkContext = context == null ? AccessController.getContext() : context;
+            final long start = System.nanoTime();
+            boolean denied = false;
+            try {
+                doCheckPermission(perm, checkContext, ctx);
+            } catch (SecurityException e) {
+                denied = true;
+                throw e;
+            } finally {
+                ctx.sampling = false;
+                profiler.record(Kind.CHECK_PERMISSION, perm, getCallingDomain(checkContext), System.nanoTime() - start, denied);
+            }
+        } else {
+            doCheckPermission(perm, context, ctx);
+        }
+    }
+
+    private void doCheckPermission(final Permission perm, final AccessControlContext context, final Context ctx) throws SecurityException {
         if (perm.implies(SECURITY_MANAGER_PERMISSION)) {
             throw access.secMgrChange();
         }
-        final Context ctx = CTX.get();
         if (ctx.checking) {
             if (ctx.entered) {
                 return;
             }
-            final ProtectionDomain[] stack;
             ctx.entered = true;
             try {
-                stack = getProtectionDomainStack(context);
-                if (stack != null) {
-                    final ProtectionDomain deniedDomain = findAccessDenial(perm, stack);
-                    if (deniedDomain != null) {
-                        final CodeSource codeSource = deniedDomain.getCodeSource();
-                        final ClassLoader classLoader = deniedDomain.getClassLoader();
-                        throw access.accessControlException(perm, perm, codeSource, classLoader);
+                final AccessControlContext checkContext = context == null ? AccessController.getContext() : context;
+                if (PD_STACK == null) {
+                    // the domains of the context can't be read on this JVM
+                    checkContext.checkPermission(perm);
+                } else {
+                    final ProtectionDomain[] stack = getProtectionDomainStack(checkContext);
+                    if (stack != null) {
+                        final ProtectionDomain deniedDomain = findAccessDenial(perm, stack);
+                        if (deniedDomain != null) {
+                            final CodeSource codeSource = deniedDomain.getCodeSource();
+                            final ClassLoader classLoader = deniedDomain.getClassLoader();
+                            throw access.accessControlException(perm, perm, codeSource, classLoader);
+                        }
                     }
                 }
             } finally {
@@ -270,19 +401,41 @@ public final class WildFlySecurityManager extends SecurityManager {
         }
     }
 
-    private static ProtectionDomain[] getProtectionDomainStack(final AccessControlContext context) {
-        final ProtectionDomain[] stack;
+    static ProtectionDomain[] getProtectionDomainStack(final AccessControlContext context) {
         try {
-            stack = (ProtectionDomain[]) PD_STACK.get(context);
-        } catch (IllegalAccessException e) {
+            return (ProtectionDomain[]) PD_STACK.invokeExact(context);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
             // should be impossible
-            throw new IllegalAccessError(e.getMessage());
+            throw new UndeclaredThrowableException(t);
         }
-        return stack;
+    }
+
+    private static ProtectionDomain getCallingDomain(final AccessControlContext context) {
+        if (PD_STACK == null) {
+            return null;
+        }
+        final ProtectionDomain[] stack = getProtectionDomainStack(context);
+        return stack == null || stack.length == 0 ? null : stack[0];
+    }
+
+    /**
+     * Get the security context of the current thread, from the thread itself if it is a
+     * {@link WildFlySecurityManagerThread}.
+     *
+     * @return the security context of the current thread
+     */
+    static Context getContext() {
+        final Thread thread = currentThread();
+        if (thread instanceof WildFlySecurityManagerThread) {
+            return ((WildFlySecurityManagerThread) thread).getSecurityContext();
+        }
+        return CTX.get();
     }
 
     private static boolean doCheck() {
-        return doCheck(CTX.get());
+        return doCheck(getContext());
     }
 
     private static boolean doCheck(final WildFlySecurityManager.Context ctx) {
@@ -405,54 +558,64 @@ public final class WildFlySecurityManager extends SecurityManager {
     }
 
     public void checkPropertyAccess(final String key) {
-        final Context ctx = CTX.get();
+        final Context ctx = getContext();
         if (doCheck(ctx)) {
-            /*
-             * Here is our expected stack:
-             *   0: this method
-             *   1: java.lang.System.getProperty()
-             *   2: user code   | java.lang.(Boolean|Integer|Long).getXxx()
-             *  3+: ???         | java.lang.(Boolean|Integer|Long).getXxx() (more)
-             *   n:             | user code
-             */
-            Class<?>[] context = getClassContext();
-            if (context.length < 3) {
-                super.checkPropertyAccess(key);
-                return;
-            }
-            if (context[1] != System.class) {
-                super.checkPropertyAccess(key);
-                return;
-            }
-            Class<?> testClass = context[2];
-            if (context.length >= 4) for (int i = 2; i < context.length; i ++) {
-                if (context[i] == Boolean.class || context[i] == Integer.class || context[i] == Long.class) {
-                    testClass = context[i + 1];
-                } else {
-                    break;
-                }
-            }
-            final ProtectionDomain protectionDomain;
-            final ClassLoader classLoader;
-            final ClassLoader objectClassLoader;
-            ctx.entered = true;
+            final CheckProfiler profiler = PROFILER;
+            final boolean sampled = profiler != null && profiler.sample(ctx);
+            final long start = sampled ? System.nanoTime() : 0L;
+            ProtectionDomain protectionDomain = null;
+            boolean denied = false;
             try {
-                protectionDomain = testClass.getProtectionDomain();
-                classLoader = testClass.getClassLoader();
-                objectClassLoader = Object.class.getClassLoader();
+                /*
+                 * Here is our expected stack:
+                 *   0: this method
+                 *   1: java.lang.System.getProperty()
+                 *   2: user code   | java.lang.(Boolean|Integer|Long).getXxx()
+                 *  3+: ???         | java.lang.(Boolean|Integer|Long).getXxx() (more)
+                 *   n:             | user code
+                 */
+                final CallerFrames frames = new CallerFrames();
+                if (frames.get(1) != System.class) {
+                    super.checkPropertyAccess(key);
+                    return;
+                }
+                Class<?> testClass = frames.get(2);
+                for (int i = 3; testClass == Boolean.class || testClass == Integer.class || testClass == Long.class; i ++) {
+                    testClass = frames.get(i);
+                }
+                if (testClass == null) {
+                    super.checkPropertyAccess(key);
+                    return;
+                }
+                final ClassLoader classLoader;
+                final ClassLoader objectClassLoader;
+                ctx.entered = true;
+                try {
+                    protectionDomain = testClass.getProtectionDomain();
+                    classLoader = testClass.getClassLoader();
+                    objectClassLoader = Object.class.getClassLoader();
+                } finally {
+                    ctx.entered = false;
+                }
+                if (classLoader == objectClassLoader) {
+                    // can't trust it, it's gone through more JDK code
+                    super.checkPropertyAccess(key);
+                    return;
+                }
+                final PropertyPermission permission = READ_PERMISSIONS.get(key);
+                if (isGranted(protectionDomain, permission)) {
+                    return;
+                }
+                checkPermission(permission, null, ctx);
+            } catch (SecurityException e) {
+                denied = true;
+                throw e;
             } finally {
-                ctx.entered = false;
-            }
-            if (classLoader == objectClassLoader) {
-                // can't trust it, it's gone through more JDK code
-                super.checkPropertyAccess(key);
-                return;
-            }
-            final PropertyPermission permission = new PropertyPermission(key, "read");
-            if (protectionDomain.implies(permission)) {
-                return;
+                if (sampled) {
+                    ctx.sampling = false;
+                    profiler.record(Kind.CHECK_PROPERTY_ACCESS, PropertyPermission.class.getName(), key, protectionDomain, System.nanoTime() - start, denied);
+                }
             }
-            checkPermission(permission, AccessController.getContext());
         }
     }
 
@@ -492,63 +655,81 @@ public final class WildFlySecurityManager extends SecurityManager {
     }
 
     public void checkMemberAccess(final Class<?> clazz, final int which) {
-        final Context ctx = CTX.get();
+        final Context ctx = getContext();
         if (doCheck(ctx)) {
             if (clazz == null) {
                 throw new NullPointerException("class can't be null");
             }
             if (which != Member.PUBLIC) {
-                /* The default sec mgr implementation makes some ugly assumptions about call stack depth that we must
-                 * unfortunately replicate (and improve upon).  Here are the stack elements we expect to see:
-                 *
-                 *   0: this method
-                 *   1: java.lang.Class#checkMemberAccess()
-                 *   2: java.lang.Class#getDeclared*() or similar in Class
-                 *   3: user code | java.util.concurrent.Atomic*FieldUpdater (impl)
-                 *  4+: ???       | java.util.concurrent.Atomic*FieldUpdater (possibly more)
-                 *   n: ???       | user code
-                 *
-                 * The great irony is that Class is supposed to detect that this method is overridden and fall back to
-                 * a simple permission check, however that doesn't seem to be working in practice.
-                 */
-                Class<?>[] context = getClassContext();
-                int depth = context.length;
-                if (depth >= 4 && context[1] == Class.class && context[2] == Class.class) {
-                    final ClassLoader objectClassLoader;
-                    final ClassLoader clazzClassLoader;
-                    ClassLoader classLoader;
-                    // get class loaders without permission check
-                    ctx.entered = true;
-                    try {
-                        objectClassLoader = Object.class.getClassLoader();
-                        clazzClassLoader = clazz.getClassLoader();
-                        for (int i = 3; i < depth; i ++) {
-                            classLoader = context[i].getClassLoader();
-                            if (classLoader == objectClassLoader) {
-                                if (isAssignableToOneOf(context[i], ATOMIC_FIELD_UPDATER_TYPES)) {
-                                    // keep going
-                                } else {
-                                    // unknown JDK class, fall back
-                                    checkPermission(ACCESS_DECLARED_MEMBERS_PERMISSION);
-                                    return;
-                                }
-                            } else {
-                                if (clazzClassLoader == classLoader) {
-                                    // permission granted
-                                    return;
+                final CheckProfiler profiler = PROFILER;
+                final boolean sampled = profiler != null && profiler.sample(ctx);
+                final long start = sampled ? System.nanoTime() : 0L;
+                ProtectionDomain callerDomain = null;
+                boolean denied = false;
+                try {
+                    /* The default sec mgr implementation makes some ugly assumptions about call stack depth that we must
+                     * unfortunately replicate (and improve upon).  Here are the stack elements we expect to see:
+                     *
+                     *   0: this method
+                     *   1: java.lang.Class#checkMemberAccess()
+                     *   2: java.lang.Class#getDeclared*() or similar in Class
+                     *   3: user code | java.util.concurrent.Atomic*FieldUpdater (impl)
+                     *  4+: ???       | java.util.concurrent.Atomic*FieldUpdater (possibly more)
+                     *   n: ???       | user code
+                     *
+                     * The great irony is that Class is supposed to detect that this method is overridden and fall back to
+                     * a simple permission check, however that doesn't seem to be working in practice.
+                     */
+                    final CallerFrames frames = new CallerFrames();
+                    if (frames.get(1) == Class.class && frames.get(2) == Class.class) {
+                        final ClassLoader objectClassLoader;
+                        final ClassLoader clazzClassLoader;
+                        ClassLoader classLoader;
+                        // get class loaders without permission check
+                        ctx.entered = true;
+                        try {
+                            objectClassLoader = Object.class.getClassLoader();
+                            clazzClassLoader = clazz.getClassLoader();
+                            Class<?> caller;
+                            for (int i = 3; (caller = frames.get(i)) != null; i ++) {
+                                classLoader = caller.getClassLoader();
+                                if (classLoader == objectClassLoader) {
+                                    if (isAssignableToOneOf(caller, ATOMIC_FIELD_UPDATER_TYPES)) {
+                                        // keep going
+                                    } else {
+                                        // unknown JDK class, fall back
+                                        checkPermission(ACCESS_DECLARED_MEMBERS_PERMISSION, null, ctx);
+                                        return;
+                                    }
                                 } else {
-                                    // class loaders differ
-                                    checkPermission(ACCESS_DECLARED_MEMBERS_PERMISSION);
-                                    return;
+                                    if (sampled) {
+                                        callerDomain = caller.getProtectionDomain();
+                                    }
+                                    if (clazzClassLoader == classLoader) {
+                                        // permission granted
+                                        return;
+                                    } else {
+                                        // class loaders differ
+                                        checkPermission(ACCESS_DECLARED_MEMBERS_PERMISSION, null, ctx);
+                                        return;
+                                    }
                                 }
                             }
+                        } finally {
+                            ctx.entered = false;
                         }
-                    } finally {
-                        ctx.entered = false;
+                    }
+                    // fall back to paranoid check
+                    checkPermission(ACCESS_DECLARED_MEMBERS_PERMISSION, null, ctx);
+                } catch (SecurityException e) {
+                    denied = true;
+                    throw e;
+                } finally {
+                    if (sampled) {
+                        ctx.sampling = false;
+                        profiler.record(Kind.CHECK_MEMBER_ACCESS, ACCESS_DECLARED_MEMBERS_PERMISSION, callerDomain, System.nanoTime() - start, denied);
                     }
                 }
-                // fall back to paranoid check
-                checkPermission(ACCESS_DECLARED_MEMBERS_PERMISSION);
             }
         }
     }
@@ -568,10 +749,11 @@ public final class WildFlySecurityManager extends SecurityManager {
      * @return the return value of the action
      */
     public static <T> T doChecked(PrivilegedAction<T> action) {
-        final Context ctx = CTX.get();
+        final Context ctx = getContext();
         if (ctx.checking) {
             return action.run();
         }
+        recordDoChecked(ctx);
         ctx.checking = true;
         try {
             return action.run();
@@ -590,7 +772,7 @@ public final class WildFlySecurityManager extends SecurityManager {
      * @throws PrivilegedActionException if the action threw an exception
      */
     public static <T> T doChecked(PrivilegedExceptionAction<T> action) throws PrivilegedActionException {
-        final Context ctx = CTX.get();
+        final Context ctx = getContext();
         if (ctx.checking) {
             try {
                 return action.run();
@@ -600,6 +782,7 @@ public final class WildFlySecurityManager extends SecurityManager {
                 throw new PrivilegedActionException(e);
             }
         }
+        recordDoChecked(ctx);
         ctx.checking = true;
         try {
             return action.run();
@@ -622,10 +805,11 @@ public final class WildFlySecurityManager extends SecurityManager {
      * @return the return value of the action
      */
     public static <T> T doChecked(PrivilegedAction<T> action, AccessControlContext context) {
-        final Context ctx = CTX.get();
+        final Context ctx = getContext();
         if (ctx.checking) {
             return action.run();
         }
+        recordDoChecked(ctx);
         ctx.checking = true;
         try {
             return AccessController.doPrivileged(action, context);
@@ -645,7 +829,7 @@ public final class WildFlySecurityManager extends SecurityManager {
      * @throws PrivilegedActionException if the action threw an exception
      */
     public static <T> T doChecked(PrivilegedExceptionAction<T> action, AccessControlContext context) throws PrivilegedActionException {
-        final Context ctx = CTX.get();
+        final Context ctx = getContext();
         if (ctx.checking) {
             try {
                 return action.run();
@@ -655,6 +839,7 @@ public final class WildFlySecurityManager extends SecurityManager {
                 throw new PrivilegedActionException(e);
             }
         }
+        recordDoChecked(ctx);
         ctx.checking = true;
         try {
             return AccessController.doPrivileged(action, context);
@@ -672,7 +857,7 @@ public final class WildFlySecurityManager extends SecurityManager {
      * @return the return value of the action
      */
     public static <T> T doUnchecked(PrivilegedAction<T> action) {
-        final Context ctx = CTX.get();
+        final Context ctx = getContext();
         if (! ctx.checking) {
             return action.run();
         }
@@ -680,7 +865,7 @@ public final class WildFlySecurityManager extends SecurityManager {
         try {
             final SecurityManager sm = getSecurityManager();
             if (sm != null) {
-                checkPDPermission(getCallerClass(2), DO_UNCHECKED_PERMISSION);
+                checkDoUncheckedPermission(ctx, getCallerClass(2));
             }
             return action.run();
         } finally {
@@ -698,7 +883,7 @@ public final class WildFlySecurityManager extends SecurityManager {
      * @throws PrivilegedActionException if the action threw an exception
      */
     public static <T> T doUnchecked(PrivilegedExceptionAction<T> action) throws PrivilegedActionException {
-        final Context ctx = CTX.get();
+        final Context ctx = getContext();
         if (! ctx.checking) {
             try {
                 return action.run();
@@ -710,7 +895,7 @@ public final class WildFlySecurityManager extends SecurityManager {
         try {
             final SecurityManager sm = getSecurityManager();
             if (sm != null) {
-                checkPDPermission(getCallerClass(2), DO_UNCHECKED_PERMISSION);
+                checkDoUncheckedPermission(ctx, getCallerClass(2));
             }
             return action.run();
         } catch (Exception e) {
@@ -730,7 +915,7 @@ public final class WildFlySecurityManager extends SecurityManager {
      * @return the return value of the action
      */
     public static <T> T doUnchecked(PrivilegedAction<T> action, AccessControlContext context) {
-        final Context ctx = CTX.get();
+        final Context ctx = getContext();
         if (! ctx.checking) {
             return AccessController.doPrivileged(action, context);
         }
@@ -738,7 +923,7 @@ public final class WildFlySecurityManager extends SecurityManager {
         try {
             final SecurityManager sm = getSecurityManager();
             if (sm != null) {
-                checkPDPermission(getCallerClass(2), DO_UNCHECKED_PERMISSION);
+                checkDoUncheckedPermission(ctx, getCallerClass(2));
             }
             return AccessController.doPrivileged(action, context);
         } finally {
@@ -757,7 +942,7 @@ public final class WildFlySecurityManager extends SecurityManager {
      * @throws PrivilegedActionException if the action threw an exception
      */
     public static <T> T doUnchecked(PrivilegedExceptionAction<T> action, AccessControlContext context) throws PrivilegedActionException {
-        final Context ctx = CTX.get();
+        final Context ctx = getContext();
         if (! ctx.checking) {
             return AccessController.doPrivileged(action, context);
         }
@@ -765,7 +950,7 @@ public final class WildFlySecurityManager extends SecurityManager {
         try {
             final SecurityManager sm = getSecurityManager();
             if (sm != null) {
-                checkPDPermission(getCallerClass(2), DO_UNCHECKED_PERMISSION);
+                checkDoUncheckedPermission(ctx, getCallerClass(2));
             }
             return AccessController.doPrivileged(action, context);
         } finally {
@@ -783,11 +968,11 @@ public final class WildFlySecurityManager extends SecurityManager {
             protectionDomain = doPrivileged(new GetProtectionDomainAction(clazz));
             classLoader = doPrivileged(new GetClassLoaderAction(clazz));
         }
-        if (protectionDomain.implies(PROPERTIES_PERMISSION)) {
+        if (isGranted(protectionDomain, PROPERTIES_PERMISSION)) {
             return;
         }
-        final PropertyPermission permission = new PropertyPermission(propertyName, "read");
-        if (protectionDomain.implies(permission)) {
+        final PropertyPermission permission = READ_PERMISSIONS.get(propertyName);
+        if (isGranted(protectionDomain, permission)) {
             return;
         }
         throw access.accessControlException(permission, permission, protectionDomain.getCodeSource(), classLoader);
@@ -823,16 +1008,51 @@ public final class WildFlySecurityManager extends SecurityManager {
             protectionDomain = doPrivileged(new GetProtectionDomainAction(clazz));
             classLoader = doPrivileged(new GetClassLoaderAction(clazz));
         }
-        if (protectionDomain.implies(PROPERTIES_PERMISSION)) {
+        if (isGranted(protectionDomain, PROPERTIES_PERMISSION)) {
             return;
         }
-        final PropertyPermission permission = new PropertyPermission(propertyName, "write");
-        if (protectionDomain.implies(permission)) {
+        final PropertyPermission permission = WRITE_PERMISSIONS.get(propertyName);
+        if (isGranted(protectionDomain, permission)) {
             return;
         }
         throw access.accessControlException(permission, permission, protectionDomain.getCodeSource(), classLoader);
     }
 
+    private static void checkDoUncheckedPermission(final Context ctx, final Class<?> caller) {
+        final CheckProfiler profiler = PROFILER;
+        if (profiler != null && profiler.sample(ctx)) {
+            final long start = System.nanoTime();
+            boolean denied = false;
+            try {
+                checkPDPermission(caller, DO_UNCHECKED_PERMISSION);
+            } catch (SecurityException e) {
+                denied = true;
+                throw e;
+            } finally {
+                ctx.sampling = false;
+                profiler.record(Kind.DO_UNCHECKED, DO_UNCHECKED_PERMISSION, getProtectionDomain(caller), System.nanoTime() - start, denied);
+            }
+        } else {
+            checkPDPermission(caller, DO_UNCHECKED_PERMISSION);
+        }
+    }
+
+    private static void recordDoChecked(final Context ctx) {
+        final CheckProfiler profiler = PROFILER;
+        if (profiler != null && profiler.sample(ctx)) {
+            ctx.sampling = false;
+            // 1 is this method, 2 is doChecked()
+            profiler.record(Kind.DO_CHECKED, null, getProtectionDomain(getCallerClass(3)), 0L, false);
+        }
+    }
+
+    private static ProtectionDomain getProtectionDomain(final Class<?> clazz) {
+        if (clazz == null) {
+            return null;
+        }
+        return getSecurityManager() instanceof WildFlySecurityManager ? clazz.getProtectionDomain() : doPrivileged(new GetProtectionDomainAction(clazz));
+    }
+
     private static void checkPDPermission(Class<?> clazz, Permission permission) {
         final ProtectionDomain protectionDomain;
         final ClassLoader classLoader;
@@ -862,7 +1082,7 @@ public final class WildFlySecurityManager extends SecurityManager {
             return getProperty(name, def);
         }
         if (sm instanceof WildFlySecurityManager) {
-            final Context ctx = CTX.get();
+            final Context ctx = getContext();
             if (! ctx.checking) {
                 return getProperty(name, def);
             }
@@ -896,7 +1116,7 @@ public final class WildFlySecurityManager extends SecurityManager {
             return getenv(name);
         }
         if (sm instanceof WildFlySecurityManager) {
-            final Context ctx = CTX.get();
+            final Context ctx = getContext();
             if (! ctx.checking) {
                 return def(getenv(name), def);
             }
@@ -926,7 +1146,7 @@ public final class WildFlySecurityManager extends SecurityManager {
             return setProperty(name, value);
         }
         if (sm instanceof WildFlySecurityManager) {
-            final Context ctx = CTX.get();
+            final Context ctx = getContext();
             if (! ctx.checking) {
                 return setProperty(name, value);
             }
@@ -955,7 +1175,7 @@ public final class WildFlySecurityManager extends SecurityManager {
             return clearProperty(name);
         }
         if (sm instanceof WildFlySecurityManager) {
-            final Context ctx = CTX.get();
+            final Context ctx = getContext();
             if (! ctx.checking) {
                 return clearProperty(name);
             }
@@ -984,7 +1204,7 @@ public final class WildFlySecurityManager extends SecurityManager {
             return currentThread().getContextClassLoader();
         }
         if (sm instanceof WildFlySecurityManager) {
-            final Context ctx = CTX.get();
+            final Context ctx = getContext();
             if (! ctx.checking) {
                 return currentThread().getContextClassLoader();
             }
@@ -1017,7 +1237,7 @@ public final class WildFlySecurityManager extends SecurityManager {
             thread.setContextClassLoader(newClassLoader);
         }
         if (sm instanceof WildFlySecurityManager) {
-            final Context ctx = CTX.get();
+            final Context ctx = getContext();
             if (! ctx.checking) try {
                 return thread.getContextClassLoader();
             } finally {
@@ -1057,7 +1277,7 @@ public final class WildFlySecurityManager extends SecurityManager {
             thread.setContextClassLoader(clazz.getClassLoader());
         }
         if (sm instanceof WildFlySecurityManager) {
-            final Context ctx = CTX.get();
+            final Context ctx = getContext();
             if (! ctx.checking) try {
                 return thread.getContextClassLoader();
             } finally {
@@ -1097,7 +1317,7 @@ public final class WildFlySecurityManager extends SecurityManager {
             return getProperties();
         }
         if (sm instanceof WildFlySecurityManager) {
-            final Context ctx = CTX.get();
+            final Context ctx = getContext();
             if (! ctx.checking) {
                 return getProperties();
             }
@@ -1126,7 +1346,7 @@ public final class WildFlySecurityManager extends SecurityManager {
             return getenv();
         }
         if (sm instanceof WildFlySecurityManager) {
-            final Context ctx = CTX.get();
+            final Context ctx = getContext();
             if (! ctx.checking) {
                 return getenv();
             }
@@ -1156,7 +1376,7 @@ public final class WildFlySecurityManager extends SecurityManager {
             return clazz.getClassLoader();
         }
         if (sm instanceof WildFlySecurityManager) {
-            final Context ctx = CTX.get();
+            final Context ctx = getContext();
             if (! ctx.checking) {
                 return clazz.getClassLoader();
             }
@@ -1175,7 +1395,7 @@ public final class WildFlySecurityManager extends SecurityManager {
 
     private static final ClassValue<AccessControlContext> ACC_CACHE = new ClassValue<AccessControlContext>() {
         protected AccessControlContext computeValue(final Class<?> type) {
-            final Context ctx = CTX.get();
+            final Context ctx = getContext();
             assert ! ctx.entered;
             ctx.entered = true;
             try {
@@ -1188,7 +1408,7 @@ public final class WildFlySecurityManager extends SecurityManager {
 
     private static final PrivilegedAction<Object> PA_TRAMPOLINE1 = new PrivilegedAction<Object>() {
         public Object run() {
-            final Context ctx = CTX.get();
+            final Context ctx = getContext();
             final ParametricPrivilegedAction<Object, Object> a = ctx.action1;
             final Object p = ctx.parameter;
             ctx.action1 = null;
@@ -1199,7 +1419,7 @@ public final class WildFlySecurityManager extends SecurityManager {
 
     private static final PrivilegedExceptionAction<Object> PA_TRAMPOLINE2 = new PrivilegedExceptionAction<Object>() {
         public Object run() throws Exception {
-            final Context ctx = CTX.get();
+            final Context ctx = getContext();
             final ParametricPrivilegedExceptionAction<Object, Object> a = ctx.action2;
             final Object p = ctx.parameter;
             ctx.action2 = null;
@@ -1219,7 +1439,7 @@ public final class WildFlySecurityManager extends SecurityManager {
      */
     @SuppressWarnings("unchecked")
     public static <T, P> T doPrivilegedWithParameter(P parameter, ParametricPrivilegedAction<T, P> action) {
-        final Context ctx = CTX.get();
+        final Context ctx = getContext();
         ctx.action1 = (ParametricPrivilegedAction<Object, Object>) action;
         ctx.parameter = parameter;
         return (T) doPrivileged(PA_TRAMPOLINE1, ACC_CACHE.get(getCallerClass(2)));
@@ -1236,7 +1456,7 @@ public final class WildFlySecurityManager extends SecurityManager {
      */
     @SuppressWarnings("unchecked")
     public static <T, P> T doPrivilegedWithParameter(P parameter, ParametricPrivilegedExceptionAction<T, P> action) throws PrivilegedActionException {
-        final Context ctx = CTX.get();
+        final Context ctx = getContext();
         ctx.action2 = (ParametricPrivilegedExceptionAction<Object, Object>) action;
         ctx.parameter = parameter;
         return (T) doPrivileged(PA_TRAMPOLINE2, ACC_CACHE.get(getCallerClass(2)));
@@ -1254,7 +1474,7 @@ public final class WildFlySecurityManager extends SecurityManager {
      */
     @SuppressWarnings("unchecked")
     public static <T, P> T doPrivilegedWithParameter(P parameter, ParametricPrivilegedAction<T, P> action, AccessControlContext accessControlContext) {
-        final Context ctx = CTX.get();
+        final Context ctx = getContext();
         ctx.action1 = (ParametricPrivilegedAction<Object, Object>) action;
         ctx.parameter = parameter;
         ctx.entered = true;
@@ -1286,7 +1506,7 @@ public final class WildFlySecurityManager extends SecurityManager {
      */
     @SuppressWarnings("unchecked")
     public static <T, P> T doPrivilegedWithParameter(P parameter, ParametricPrivilegedExceptionAction<T, P> action, AccessControlContext accessControlContext) throws PrivilegedActionException {
-        final Context ctx = CTX.get();
+        final Context ctx = getContext();
         ctx.action2 = (ParametricPrivilegedExceptionAction<Object, Object>) action;
         ctx.parameter = parameter;
         ctx.entered = true;
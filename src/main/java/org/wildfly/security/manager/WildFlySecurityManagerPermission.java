@@ -35,6 +35,7 @@ import org.wildfly.security.manager._private.SecurityMessages;
  * <ul>
  *     <li>{@code doUnchecked}</li>
  *     <li>{@code getStackInterceptor}</li>
+ *     <li>{@code getProfile}</li>
  * </ul>
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
@@ -45,6 +46,7 @@ public final class WildFlySecurityManagerPermission extends BasicPermission {
     enum Name {
         doUnchecked,
         getStackInspector,
+        getProfile,
         ;
 
         private final WildFlySecurityManagerPermission permission;
@@ -69,6 +71,7 @@ public final class WildFlySecurityManagerPermission extends BasicPermission {
 
     static final WildFlySecurityManagerPermission DO_UNCHECKED_PERMISSION = Name.doUnchecked.getPermission();
     static final WildFlySecurityManagerPermission GET_STACK_INSPECTOR_PERMISSION = Name.getStackInspector.getPermission();
+    static final WildFlySecurityManagerPermission GET_PROFILE_PERMISSION = Name.getProfile.getPermission();
 
     static final Name[] values = Name.values();
 
@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.security.manager;
+
+/**
+ * A thread which holds its own security manager state, so that the checks and privileged operations of the
+ * {@link WildFlySecurityManager} made on it do not need a thread-local lookup.  Thread factories of performance
+ * sensitive thread pools may create instances of this class in place of plain {@link Thread}s; the behavior of the
+ * security manager is otherwise unchanged.
+ */
+public class WildFlySecurityManagerThread extends Thread {
+
+    // only ever accessed by this thread
+    private WildFlySecurityManager.Context securityContext;
+
+    /**
+     * Construct a new instance.
+     *
+     * @see Thread#Thread()
+     */
+    public WildFlySecurityManagerThread() {
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param target the runnable target
+     * @see Thread#Thread(Runnable)
+     */
+    public WildFlySecurityManagerThread(final Runnable target) {
+        super(target);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param group the thread group
+     * @param target the runnable target
+     * @see Thread#Thread(ThreadGroup, Runnable)
+     */
+    public WildFlySecurityManagerThread(final ThreadGroup group, final Runnable target) {
+        super(group, target);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param name the thread name
+     * @see Thread#Thread(String)
+     */
+    public WildFlySecurityManagerThread(final String name) {
+        super(name);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param group the thread group
+     * @param name the thread name
+     * @see Thread#Thread(ThreadGroup, String)
+     */
+    public WildFlySecurityManagerThread(final ThreadGroup group, final String name) {
+        super(group, name);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param target the runnable target
+     * @param name the thread name
+     * @see Thread#Thread(Runnable, String)
+     */
+    public WildFlySecurityManagerThread(final Runnable target, final String name) {
+        super(target, name);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param group the thread group
+     * @param target the runnable target
+     * @param name the thread name
+     * @see Thread#Thread(ThreadGroup, Runnable, String)
+     */
+    public WildFlySecurityManagerThread(final ThreadGroup group, final Runnable target, final String name) {
+        super(group, target, name);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param group the thread group
+     * @param target the runnable target
+     * @param name the thread name
+     * @param stackSize the requested stack size, or {@code 0} to ignore
+     * @see Thread#Thread(ThreadGroup, Runnable, String, long)
+     */
+    public WildFlySecurityManagerThread(final ThreadGroup group, final Runnable target, final String name, final long stackSize) {
+        super(group, target, name, stackSize);
+    }
+
+    /**
+     * Get the security manager state of this thread, creating it if needed.  Must only be called from this thread.
+     *
+     * @return the security manager state
+     */
+    WildFlySecurityManager.Context getSecurityContext() {
+        WildFlySecurityManager.Context securityContext = this.securityContext;
+        if (securityContext == null) {
+            this.securityContext = securityContext = new WildFlySecurityManager.Context();
+        }
+        return securityContext;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.security.manager;
+
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.Permission;
+import java.security.PermissionCollection;
+import java.security.Permissions;
+import java.security.Policy;
+import java.security.ProtectionDomain;
+import java.security.SecurityPermission;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A policy which grants permissions by code source, with the grants for each code source compiled into indexed sets
+ * so that checking a permission does not examine every grant.  Grants are replaced as a whole by {@link #setGrants(Map)};
+ * checks which are in progress complete against the grants which were in effect when they started.
+ * <p>
+ * A grant applies to every protection domain whose code source is implied by the code source of the grant, or to every
+ * protection domain if the code source of the grant is {@code null}.  Grants to principals are not supported.
+ */
+public final class WildFlySecurityPolicy extends Policy {
+
+    private static final Permission SET_POLICY_PERMISSION = new SecurityPermission("setPolicy");
+
+    // the most code sources whose compiled grants are remembered at once
+    private static final int MAXIMUM_CODE_SOURCES = 1024;
+
+    private volatile Grants grants = new Grants(Collections.<CodeSource, Collection<? extends Permission>>emptyMap());
+
+    /**
+     * Construct a new instance which grants nothing.
+     */
+    public WildFlySecurityPolicy() {
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param grants the permissions to grant to each code source, where a {@code null} code source grants
+     *      permissions to all code
+     */
+    public WildFlySecurityPolicy(final Map<CodeSource, ? extends Collection<? extends Permission>> grants) {
+        this.grants = new Grants(grants);
+    }
+
+    /**
+     * Replace all of the grants of this policy.  The new grants are compiled before they replace the existing
+     * grants, and any permission grants remembered by the security manager are discarded.
+     *
+     * @param grants the permissions to grant to each code source, where a {@code null} code source grants
+     *      permissions to all code
+     * @throws SecurityException if the caller does not have permission to set the policy
+     */
+    public void setGrants(final Map<CodeSource, ? extends Collection<? extends Permission>> grants) throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(SET_POLICY_PERMISSION);
+        }
+        this.grants = new Grants(grants);
+        WildFlySecurityManager.DECISION_CACHE.clear();
+    }
+
+    public boolean implies(final ProtectionDomain domain, final Permission permission) {
+        return grants.getPermissions(domain.getCodeSource()).implies(permission);
+    }
+
+    public PermissionCollection getPermissions(final CodeSource codeSource) {
+        final Permissions copy = new Permissions();
+        final Enumeration<Permission> elements = grants.getPermissions(codeSource).getPermissions().elements();
+        while (elements.hasMoreElements()) {
+            copy.add(elements.nextElement());
+        }
+        return copy;
+    }
+
+    public PermissionCollection getPermissions(final ProtectionDomain domain) {
+        final PermissionCollection permissions = getPermissions(domain.getCodeSource());
+        final PermissionCollection domainPermissions = domain.getPermissions();
+        if (domainPermissions != null) {
+            final Enumeration<Permission> elements = domainPermissions.elements();
+            while (elements.hasMoreElements()) {
+                permissions.add(elements.nextElement());
+            }
+        }
+        return permissions;
+    }
+
+    /**
+     * Refresh this policy.  The grants of this policy only change when they are replaced, so this method only
+     * discards the permission grants remembered by the security manager.
+     */
+    public void refresh() {
+        WildFlySecurityManager.DECISION_CACHE.clear();
+    }
+
+    private static final class Grants {
+        private final CodeSource[] codeSources;
+        private final List<List<Permission>> permissions;
+        private final CompiledPermissions global;
+        private final ConcurrentMap<Key, CompiledPermissions> compiled = new ConcurrentHashMap<Key, CompiledPermissions>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        Grants(final Map<CodeSource, ? extends Collection<? extends Permission>> grants) {
+            final List<CodeSource> codeSources = new ArrayList<CodeSource>(grants.size());
+            final List<List<Permission>> permissions = new ArrayList<List<Permission>>(grants.size());
+            final List<Permission> global = new ArrayList<Permission>();
+            for (Map.Entry<CodeSource, ? extends Collection<? extends Permission>> entry : grants.entrySet()) {
+                final CodeSource codeSource = entry.getKey();
+                if (codeSource == null) {
+                    global.addAll(entry.getValue());
+                } else {
+                    codeSources.add(codeSource);
+                    permissions.add(new ArrayList<Permission>(entry.getValue()));
+                }
+            }
+            this.codeSources = codeSources.toArray(new CodeSource[codeSources.size()]);
+            this.permissions = permissions;
+            this.global = new CompiledPermissions(global);
+        }
+
+        CompiledPermissions getPermissions(final CodeSource codeSource) {
+            if (codeSource == null || codeSources.length == 0) {
+                return global;
+            }
+            final Key key = new Key(codeSource);
+            CompiledPermissions compiledPermissions = compiled.get(key);
+            if (compiledPermissions != null) {
+                return compiledPermissions;
+            }
+            final List<Permission> granted = new ArrayList<Permission>();
+            final Enumeration<Permission> elements = global.getPermissions().elements();
+            while (elements.hasMoreElements()) {
+                granted.add(elements.nextElement());
+            }
+            for (int i = 0; i < codeSources.length; i++) {
+                if (codeSources[i].implies(codeSource)) {
+                    granted.addAll(permissions.get(i));
+                }
+            }
+            compiledPermissions = new CompiledPermissions(granted);
+            if (size.get() >= MAXIMUM_CODE_SOURCES) {
+                final Iterator<Key> iterator = compiled.keySet().iterator();
+                if (iterator.hasNext() && compiled.remove(iterator.next()) != null) {
+                    size.decrementAndGet();
+                }
+            }
+            final CompiledPermissions appearing = compiled.putIfAbsent(key, compiledPermissions);
+            if (appearing != null) {
+                return appearing;
+            }
+            size.incrementAndGet();
+            return compiledPermissions;
+        }
+    }
+
+    /**
+     * A code source key which compares locations by their string form, because {@link URL#equals(Object)} may
+     * resolve host names.
+     */
+    private static final class Key {
+        private final String location;
+        private final List<Certificate> certificates;
+        private final int hashCode;
+
+        Key(final CodeSource codeSource) {
+            final URL location = codeSource.getLocation();
+            final Certificate[] certificates = codeSource.getCertificates();
+            this.location = location == null ? null : location.toExternalForm();
+            this.certificates = certificates == null ? Collections.<Certificate>emptyList() : Arrays.asList(certificates);
+            this.hashCode = (this.location == null ? 0 : this.location.hashCode()) * 31 + this.certificates.hashCode();
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof Key && equals((Key) obj);
+        }
+
+        private boolean equals(final Key other) {
+            return this == other || hashCode == other.hashCode && (location == null ? other.location == null : location.equals(other.location)) && certificates.equals(other.certificates);
+        }
+    }
+}
@@ -27,6 +27,9 @@ import static org.wildfly.security.manager._private.SecurityMessages.permission;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A helper class for defining permissions which use a finite list of actions.  Define custom permissions using
@@ -37,6 +40,9 @@ import java.util.Iterator;
  * an {@code EnumSet}, an {@code int}, or a {@code long}.  The field should be marked {@code transient}, and
  * the actions represented by a (possibly synthetic) field of type {@code String} which uses the canonical representation
  * of the actions.
+ * <p>
+ * The results of parsing and of producing canonical action strings are remembered for each action type, so
+ * repeatedly using the same action strings is cheap.
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
@@ -94,14 +100,43 @@ public final class PermissionActions {
         }
     }
 
+    // the most results remembered for each action type, in each direction
+    private static final int MAXIMUM_CACHE_SIZE = 256;
+
     static final class Info<E> {
         final TrieNode<E> root;
         final E[] constants;
+        // the action bits of each parsed action string, for types of up to 64 actions
+        final ConcurrentMap<String, Long> parsed = new ConcurrentHashMap<>();
+        // the canonical action string of each set of action bits
+        final ConcurrentMap<Long, String> canonical = new ConcurrentHashMap<>();
+        private final AtomicInteger parsedSize = new AtomicInteger();
+        private final AtomicInteger canonicalSize = new AtomicInteger();
 
         Info(final TrieNode<E> root, final E[] constants) {
             this.root = root;
             this.constants = constants;
         }
+
+        void putParsed(final String actionString, final long bits) {
+            putBounded(parsed, parsedSize, actionString, Long.valueOf(bits));
+        }
+
+        void putCanonical(final long bits, final String actionString) {
+            putBounded(canonical, canonicalSize, Long.valueOf(bits), actionString);
+        }
+
+        private static <K, V> void putBounded(final ConcurrentMap<K, V> map, final AtomicInteger size, final K key, final V value) {
+            if (size.get() >= MAXIMUM_CACHE_SIZE) {
+                final Iterator<K> iterator = map.keySet().iterator();
+                if (iterator.hasNext() && map.remove(iterator.next()) != null) {
+                    size.decrementAndGet();
+                }
+            }
+            if (map.putIfAbsent(key, value) == null) {
+                size.incrementAndGet();
+            }
+        }
     }
 
     private static final ClassValue<Info<?>> storedInfo = new ClassValue<Info<?>>() {
@@ -119,6 +154,11 @@ public final class PermissionActions {
         }
     };
 
+    @SuppressWarnings("unchecked")
+    private static <E extends Enum<E>> Info<E> getInfo(final Class<E> type) {
+        return (Info<E>) storedInfo.get(type);
+    }
+
     interface MatchAction<E extends Enum<E>> {
         void matched(E item);
 
@@ -201,9 +241,20 @@ public final class PermissionActions {
         if (actionType == null) {
             throw new IllegalArgumentException("actionType is null");
         }
-        final SetMatchAction<E> matchAction = new SetMatchAction<>(EnumSet.noneOf(actionType));
-        doParse(actionType, actionString, matchAction);
-        return matchAction.getSet();
+        final E[] constants = getInfo(actionType).constants;
+        if (constants.length > 64) {
+            final SetMatchAction<E> matchAction = new SetMatchAction<>(EnumSet.noneOf(actionType));
+            doParse(actionType, actionString, matchAction);
+            return matchAction.getSet();
+        }
+        long bits = parseToBits(actionType, actionString);
+        final EnumSet<E> set = EnumSet.noneOf(actionType);
+        while (bits != 0) {
+            final long bit = Long.lowestOneBit(bits);
+            set.add(constants[Long.numberOfTrailingZeros(bit)]);
+            bits &= ~bit;
+        }
+        return set;
     }
 
     /**
@@ -225,9 +276,12 @@ public final class PermissionActions {
         if (actionType == null) {
             throw new IllegalArgumentException("actionType is null");
         }
-        final IntMatchAction<E> matchAction = new IntMatchAction<>();
-        doParse(actionType, actionString, matchAction);
-        return matchAction.getResult();
+        if (getInfo(actionType).constants.length > 32) {
+            final IntMatchAction<E> matchAction = new IntMatchAction<>();
+            doParse(actionType, actionString, matchAction);
+            return matchAction.getResult();
+        }
+        return (int) parseToBits(actionType, actionString);
     }
 
     /**
@@ -249,9 +303,32 @@ public final class PermissionActions {
         if (actionType == null) {
             throw new IllegalArgumentException("actionType is null");
         }
-        final LongMatchAction<E> matchAction = new LongMatchAction<>();
+        if (getInfo(actionType).constants.length > 64) {
+            final LongMatchAction<E> matchAction = new LongMatchAction<>();
+            doParse(actionType, actionString, matchAction);
+            return matchAction.getResult();
+        }
+        return parseToBits(actionType, actionString);
+    }
+
+    /**
+     * Parse an action string to the bits of the ordinals of its actions, for an action type of 64 or fewer constant
+     * values, remembering the result.
+     */
+    private static <E extends Enum<E>> long parseToBits(final Class<E> actionType, final String actionString) {
+        final Info<E> info = getInfo(actionType);
+        final Long cached = info.parsed.get(actionString);
+        if (cached != null) {
+            return cached.longValue();
+        }
+        final SetMatchAction<E> matchAction = new SetMatchAction<>(EnumSet.noneOf(actionType));
         doParse(actionType, actionString, matchAction);
-        return matchAction.getResult();
+        long bits = 0;
+        for (E action : matchAction.getSet()) {
+            bits |= 1L << action.ordinal();
+        }
+        info.putParsed(actionString, bits);
+        return bits;
     }
 
     private static <E extends Enum<E>> void doParse(final Class<E> actionType, final String actionString, final MatchAction<E> matchAction) {
@@ -342,9 +419,17 @@ public final class PermissionActions {
      */
     public static <E extends Enum<E>> String getCanonicalActionString(EnumSet<E> set) {
         if (set == null || set.isEmpty()) return "";
-        final StringBuilder b = new StringBuilder();
-        getCanonicalActionString(set, b);
-        return b.toString();
+        final Class<E> type = set.iterator().next().getDeclaringClass();
+        if (getInfo(type).constants.length > 64) {
+            final StringBuilder b = new StringBuilder();
+            appendActions(set, b);
+            return b.toString();
+        }
+        long bits = 0;
+        for (E action : set) {
+            bits |= 1L << action.ordinal();
+        }
+        return getCanonicalActionString(type, bits);
     }
 
     /**
@@ -356,6 +441,10 @@ public final class PermissionActions {
      */
     public static <E extends Enum<E>> void getCanonicalActionString(EnumSet<E> set, StringBuilder b) {
         if (set == null || set.isEmpty()) return;
+        b.append(getCanonicalActionString(set));
+    }
+
+    private static <E extends Enum<E>> void appendActions(EnumSet<E> set, StringBuilder b) {
         final Iterator<E> iterator = set.iterator();
         if (iterator.hasNext()) {
             E e = iterator.next();
@@ -377,10 +466,7 @@ public final class PermissionActions {
      * @return the canonical representation
      */
     public static <E extends Enum<E>> String getCanonicalActionString(Class<E> type, int set) {
-        if (set == 0) return "";
-        final StringBuilder b = new StringBuilder();
-        getCanonicalActionString(type, set, b);
-        return b.toString();
+        return getCanonicalActionString(type, set & 0xFFFFFFFFL);
     }
 
     /**
@@ -392,19 +478,7 @@ public final class PermissionActions {
      * @param <E> the action type
      */
     public static <E extends Enum<E>> void getCanonicalActionString(Class<E> type, int set, StringBuilder b) {
-        if (set == 0) return;
-        @SuppressWarnings("unchecked")
-        final E[] constants = (E[]) storedInfo.get(type).constants;
-        int bit = Integer.lowestOneBit(set);
-        E e = constants[Integer.numberOfTrailingZeros(bit)];
-        b.append(e.toString());
-        set &= ~bit;
-        while (set != 0) {
-            bit = Integer.lowestOneBit(set);
-            e = constants[Integer.numberOfTrailingZeros(bit)];
-            b.append(',').append(e.toString());
-            set &= ~bit;
-        }
+        getCanonicalActionString(type, set & 0xFFFFFFFFL, b);
     }
 
     /**
@@ -417,9 +491,15 @@ public final class PermissionActions {
      */
     public static <E extends Enum<E>> String getCanonicalActionString(Class<E> type, long set) {
         if (set == 0) return "";
-        final StringBuilder b = new StringBuilder();
-        getCanonicalActionString(type, set, b);
-        return b.toString();
+        final Info<E> info = getInfo(type);
+        String actionString = info.canonical.get(Long.valueOf(set));
+        if (actionString == null) {
+            final StringBuilder b = new StringBuilder();
+            appendActions(info.constants, set, b);
+            actionString = b.toString();
+            info.putCanonical(set, actionString);
+        }
+        return actionString;
     }
 
     /**
@@ -432,8 +512,10 @@ public final class PermissionActions {
      */
     public static <E extends Enum<E>> void getCanonicalActionString(Class<E> type, long set, StringBuilder b) {
         if (set == 0) return;
-        @SuppressWarnings("unchecked")
-        final E[] constants = (E[]) storedInfo.get(type).constants;
+        b.append(getCanonicalActionString(type, set));
+    }
+
+    private static <E> void appendActions(E[] constants, long set, StringBuilder b) {
         long bit = Long.lowestOneBit(set);
         E e = constants[Long.numberOfTrailingZeros(bit)];
         b.append(e.toString());
@@ -41,6 +41,50 @@ public final class WildFlySasl {
      */
     public static final String GSSAPI_DELEGATE_CREDENTIAL = "wildfly.sasl.gssapi.client.delegate-credential";
 
+    /**
+     * Property name to specify if the GSSAPI mechanism should share a cached initiator credential between client instances
+     * created for the same {@link javax.security.auth.Subject} when no {@link GSSCredential} was passed in using the
+     * {@link Sasl#CREDENTIALS} property.  If the property contains "true" the credential is only obtained again once it
+     * approaches expiry, "false" otherwise.  The default value is "false".
+     *
+     * Note: This is a client only property and is not used server side.
+     */
+    public static final String GSSAPI_CACHE_INITIATOR_CREDENTIAL = "wildfly.sasl.gssapi.client.cache-initiator-credential";
+
+    /**
+     * Property name for the number of seconds before expiry at which a cached GSSAPI initiator credential is no longer used
+     * and is obtained again.  The default value is "60".
+     *
+     * Note: This is a client only property and is not used server side.
+     */
+    public static final String GSSAPI_CREDENTIAL_REFRESH_MARGIN = "wildfly.sasl.gssapi.client.credential-refresh-margin";
+
+    /**
+     * Property name to specify if the GSSAPI mechanism should share a cached acceptor credential between server instances
+     * created for the same protocol, server name and {@link javax.security.auth.Subject}.  If the property contains "true"
+     * the credential is only obtained again once it approaches expiry, "false" otherwise.  The default value is "false".
+     *
+     * Note: This is a server only property and is not used client side.
+     */
+    public static final String GSSAPI_CACHE_ACCEPTOR_CREDENTIAL = "wildfly.sasl.gssapi.server.cache-acceptor-credential";
+
+    /**
+     * Property name for the path of the key tab backing the acceptor credential.  When credential caching is enabled a
+     * modification of this file causes the cached credential to be discarded and obtained again.
+     *
+     * Note: This is a server only property and is not used client side.
+     */
+    public static final String GSSAPI_KEY_TAB = "wildfly.sasl.gssapi.server.key-tab";
+
+    /**
+     * Property name for the {@link org.wildfly.security.sasl.token.TokenManager} which issued the tokens accepted by the
+     * {@code JBOSS-TOKEN} mechanism.  The property value is the {@code TokenManager} instance itself; without it no
+     * {@code JBOSS-TOKEN} server is created.
+     *
+     * Note: This is a server only property and is not used client side.
+     */
+    public static final String TOKEN_MANAGER = "wildfly.sasl.token.manager";
+
     /**
      * The various specifications for the SASL mechanisms mandate certain behaviour and verification of that behaviour at the
      * opposite side of the connection, unfortunately when interacting with other SASL mechanism implementations some of these
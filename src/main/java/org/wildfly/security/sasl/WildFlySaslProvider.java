@@ -19,12 +19,15 @@
 package org.wildfly.security.sasl;
 
 import static org.wildfly.security.sasl.anonymous.AbstractAnonymousFactory.ANONYMOUS;
+import static org.wildfly.security.sasl.external.ExternalSaslFactory.EXTERNAL;
 import static org.wildfly.security.sasl.gssapi.AbstractGssapiFactory.GSSAPI;
 import static org.wildfly.security.sasl.localuser.LocalUserSaslFactory.JBOSS_LOCAL_USER;
 import static org.wildfly.security.sasl.md5digest.MD5DigestServerFactory.JBOSS_DIGEST_MD5;
 import static org.wildfly.security.sasl.plain.PlainServerFactory.PLAIN;
+import static org.wildfly.security.sasl.token.TokenSaslFactory.JBOSS_TOKEN;
 
 import java.security.Provider;
+import java.util.Arrays;
 
 import javax.security.sasl.SaslClientFactory;
 import javax.security.sasl.SaslServerFactory;
@@ -32,6 +35,8 @@ import javax.security.sasl.SaslServerFactory;
 import org.kohsuke.MetaInfServices;
 import org.wildfly.security.sasl.anonymous.AnonymousClientFactory;
 import org.wildfly.security.sasl.anonymous.AnonymousServerFactory;
+import org.wildfly.security.sasl.external.ExternalClientFactory;
+import org.wildfly.security.sasl.external.ExternalServerFactory;
 import org.wildfly.security.sasl.gssapi.GssapiClientFactory;
 import org.wildfly.security.sasl.gssapi.GssapiServerFactory;
 import org.wildfly.security.sasl.localuser.LocalUserClientFactory;
@@ -39,6 +44,9 @@ import org.wildfly.security.sasl.localuser.LocalUserServerFactory;
 import org.wildfly.security.sasl.plain.PlainServerFactory;
 import org.wildfly.security.sasl.md5digest.MD5DigestClientFactory;
 import org.wildfly.security.sasl.md5digest.MD5DigestServerFactory;
+import org.wildfly.security.sasl.token.TokenClientFactory;
+import org.wildfly.security.sasl.token.TokenServerFactory;
+import org.wildfly.security.sasl.util.SaslMechanismRegistry;
 
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
@@ -62,7 +70,8 @@ public class WildFlySaslProvider extends Provider {
      */
     public WildFlySaslProvider() {
         super("wildfly-sasl", 1.0, INFO);
-        // NOTE: make sure that all client and server factories listed here also end up in the META-INF/services files.
+        // NOTE: make sure that all client and server factories listed here also end up in the META-INF/services files
+        // and in the mechanism registry.
         put(SASL_CLIENT_FACTORY + DOT + ANONYMOUS, AnonymousClientFactory.class.getName());
         put(SASL_SERVER_FACTORY + DOT + ANONYMOUS, AnonymousServerFactory.class.getName());
         put(SASL_SERVER_FACTORY + DOT + PLAIN, PlainServerFactory.class.getName());
@@ -72,6 +81,20 @@ public class WildFlySaslProvider extends Provider {
         put(SASL_CLIENT_FACTORY + DOT + GSSAPI, GssapiClientFactory.class.getName());
         put(SASL_CLIENT_FACTORY + DOT + JBOSS_DIGEST_MD5, MD5DigestClientFactory.class.getName());
         put(SASL_SERVER_FACTORY + DOT + JBOSS_DIGEST_MD5, MD5DigestServerFactory.class.getName());
+        put(SASL_CLIENT_FACTORY + DOT + JBOSS_TOKEN, TokenClientFactory.class.getName());
+        put(SASL_SERVER_FACTORY + DOT + JBOSS_TOKEN, TokenServerFactory.class.getName());
+        put(SASL_CLIENT_FACTORY + DOT + EXTERNAL, ExternalClientFactory.class.getName());
+        put(SASL_SERVER_FACTORY + DOT + EXTERNAL, ExternalServerFactory.class.getName());
+    }
+
+    /**
+     * Get a registry of the client and server factories provided by this provider, allowing mechanisms to be selected
+     * without searching the installed providers.
+     *
+     * @return the mechanism registry
+     */
+    public static SaslMechanismRegistry getMechanismRegistry() {
+        return RegistryHolder.REGISTRY;
     }
 
     /**
@@ -83,4 +106,24 @@ public class WildFlySaslProvider extends Provider {
         return "NOT SET";
     }
 
+    private static final class RegistryHolder {
+
+        // NOTE: make sure that all client and server factories registered by the provider are also listed here.
+        static final SaslMechanismRegistry REGISTRY = new SaslMechanismRegistry(
+                Arrays.<SaslServerFactory>asList(
+                        new AnonymousServerFactory(),
+                        new PlainServerFactory(),
+                        new LocalUserServerFactory(),
+                        new GssapiServerFactory(),
+                        new MD5DigestServerFactory(),
+                        new TokenServerFactory(),
+                        new ExternalServerFactory()),
+                Arrays.<SaslClientFactory>asList(
+                        new AnonymousClientFactory(),
+                        new LocalUserClientFactory(),
+                        new GssapiClientFactory(),
+                        new MD5DigestClientFactory(),
+                        new TokenClientFactory(),
+                        new ExternalClientFactory()));
+    }
 }
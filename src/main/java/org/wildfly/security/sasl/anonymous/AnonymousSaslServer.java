@@ -72,4 +72,14 @@ public final class AnonymousSaslServer extends AbstractSaslServer {
     public String getAuthorizationID() {
         return "anonymous";
     }
+
+    @Override
+    public boolean isResettable() {
+        return true;
+    }
+
+    @Override
+    protected void resetState() {
+        getContext().setNegotiationState(INITIAL);
+    }
 }
@@ -45,7 +45,11 @@ public class AnonymousServerFactory extends AbstractAnonymousFactory implements
             return null;
         }
 
-        return new AnonymousSaslServer(protocol, serverName, cbh);
+        final AnonymousSaslServer idle = getIdleParticipant(AnonymousSaslServer.class, protocol, serverName, cbh, props);
+        if (idle != null) {
+            return idle;
+        }
+        return makePoolable(new AnonymousSaslServer(protocol, serverName, cbh), protocol, serverName, cbh, props);
     }
 
 }
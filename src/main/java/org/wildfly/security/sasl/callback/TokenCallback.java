@@ -0,0 +1,47 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.callback;
+
+import javax.security.auth.callback.Callback;
+
+/**
+ * A callback used by the {@code JBOSS-TOKEN} mechanism client to obtain the token previously issued to it by the server.
+ */
+public class TokenCallback implements Callback {
+
+    private byte[] token;
+
+    /**
+     * Get the token.
+     *
+     * @return the token, or {@code null} if none was set
+     */
+    public byte[] getToken() {
+        return token;
+    }
+
+    /**
+     * Set the token.
+     *
+     * @param token the token, or {@code null} if no token is available
+     */
+    public void setToken(final byte[] token) {
+        this.token = token;
+    }
+}
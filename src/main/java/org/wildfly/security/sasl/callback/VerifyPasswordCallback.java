@@ -18,26 +18,91 @@
 
 package org.wildfly.security.sasl.callback;
 
+import java.util.Arrays;
+
 import javax.security.auth.callback.Callback;
 
 /**
  * A Callback to indicate the password has been verified instead of retrieving the
  * password.
+ * <p>
+ * A callback constructed from a {@code char[]} region refers to the caller's array directly, the mechanism may wipe the
+ * array as soon as the callback has been handled so the password must not be retained by the callback handler.  Such a
+ * password is best checked using {@link #passwordEquals(char[])} which neither copies it nor creates a {@code String}.
  *
  * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
  */
 public class VerifyPasswordCallback implements Callback {
 
-    private final String password;
+    private final char[] password;
+    private final int offset;
+    private final int length;
+    private String passwordString;
 
     private boolean verified = false;
 
     public VerifyPasswordCallback(final String password) {
+        this.password = password.toCharArray();
+        this.offset = 0;
+        this.length = this.password.length;
+        this.passwordString = password;
+    }
+
+    /**
+     * Construct a new instance referring to a region of a character array, the array is not copied.
+     *
+     * @param password the array holding the password
+     * @param offset the offset of the password within the array
+     * @param length the length of the password
+     */
+    public VerifyPasswordCallback(final char[] password, final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset > password.length - length) {
+            throw new IndexOutOfBoundsException();
+        }
         this.password = password;
+        this.offset = offset;
+        this.length = length;
     }
 
+    /**
+     * Get the password as a {@code String}, where the callback was constructed from a {@code char[]} this creates a
+     * {@code String} which cannot be wiped.
+     *
+     * @return the password
+     */
     public String getPassword() {
-        return password;
+        String passwordString = this.passwordString;
+        if (passwordString == null) {
+            passwordString = this.passwordString = new String(password, offset, length);
+        }
+        return passwordString;
+    }
+
+    /**
+     * Get a copy of the password, the caller should wipe the returned array once it is no longer needed.
+     *
+     * @return a copy of the password
+     */
+    public char[] getPasswordChars() {
+        return Arrays.copyOfRange(password, offset, offset + length);
+    }
+
+    /**
+     * Determine whether the password is equal to the given password.  The comparison takes the same time wherever the
+     * passwords differ.
+     *
+     * @param expected the expected password
+     * @return {@code true} if the passwords are equal, {@code false} otherwise
+     */
+    public boolean passwordEquals(final char[] expected) {
+        if (expected == null || expected.length != length) {
+            return false;
+        }
+        int diff = 0;
+        for (int i = 0; i < length; i++) {
+            diff |= expected[i] ^ password[offset + i];
+        }
+        return diff == 0;
     }
 
     public void setVerified(boolean verified) {
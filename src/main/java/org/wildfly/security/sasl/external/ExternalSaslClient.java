@@ -0,0 +1,60 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.external;
+
+import static org.wildfly.security.sasl.external.ExternalSaslFactory.EXTERNAL;
+
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.sasl.SaslException;
+
+import org.wildfly.security.sasl.util.AbstractSaslClient;
+import org.wildfly.security.sasl.util.Charsets;
+import org.wildfly.security.sasl.util.SaslState;
+import org.wildfly.security.sasl.util.SaslStateContext;
+
+/**
+ * The client side of the {@code EXTERNAL} SASL mechanism.  The client sends its authorization ID, which is empty if none
+ * was given, as its initial response.
+ */
+public final class ExternalSaslClient extends AbstractSaslClient {
+
+    private static final SaslState INITIAL = new SaslState() {
+        public byte[] evaluateMessage(final SaslStateContext context, final byte[] message) throws SaslException {
+            if (message != null && message.length > 0) {
+                throw new SaslException("Invalid challenge received from server");
+            }
+            final String authorizationId = getParticipant(context, ExternalSaslClient.class).getAuthorizationId();
+            context.negotiationComplete();
+            return authorizationId == null ? NO_BYTES : authorizationId.getBytes(Charsets.UTF_8);
+        }
+    };
+
+    /**
+     * Construct a new instance.
+     *
+     * @param protocol the protocol
+     * @param serverName the server name
+     * @param callbackHandler the callback handler
+     * @param authorizationId the possibly {@code null} protocol-dependent name used for authorization
+     */
+    ExternalSaslClient(final String protocol, final String serverName, final CallbackHandler callbackHandler, final String authorizationId) {
+        super(EXTERNAL, protocol, serverName, callbackHandler, authorizationId, true);
+        getContext().setNegotiationState(INITIAL);
+    }
+}
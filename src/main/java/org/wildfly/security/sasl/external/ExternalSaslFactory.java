@@ -0,0 +1,53 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.external;
+
+import org.wildfly.security.sasl.util.AbstractSaslFactory;
+
+/**
+ * Base class for the RFC 4422 {@code EXTERNAL} SASL mechanism, which relies on authentication already performed by the
+ * underlying connection, such as TLS with client certificates.
+ */
+public abstract class ExternalSaslFactory extends AbstractSaslFactory {
+
+    /**
+     * The name of the EXTERNAL SASL mechanism.
+     */
+    public static final String EXTERNAL = "EXTERNAL";
+
+    ExternalSaslFactory() {
+        super(EXTERNAL);
+    }
+
+    protected boolean isDictionarySusceptible() {
+        return false;
+    }
+
+    protected boolean isActiveSusceptible() {
+        return false;
+    }
+
+    protected boolean isPlainText() {
+        return false;
+    }
+
+    protected boolean isAnonymous() {
+        return false;
+    }
+}
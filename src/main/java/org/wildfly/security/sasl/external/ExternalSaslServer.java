@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.external;
+
+import static org.wildfly.security.sasl.external.ExternalSaslFactory.EXTERNAL;
+
+import java.security.Principal;
+
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+import javax.security.auth.x500.X500Principal;
+import javax.security.sasl.AuthorizeCallback;
+import javax.security.sasl.SaslException;
+
+import org.wildfly.security.auth.callback.PeerPrincipalCallback;
+import org.wildfly.security.auth.callback.SecurityDomainCallback;
+import org.wildfly.security.auth.provider.RealmIdentity;
+import org.wildfly.security.auth.provider.SecurityDomain;
+import org.wildfly.security.sasl.util.AbstractSaslServer;
+import org.wildfly.security.sasl.util.CallbackContinuation;
+import org.wildfly.security.sasl.util.Charsets;
+import org.wildfly.security.sasl.util.SaslState;
+import org.wildfly.security.sasl.util.SaslStateContext;
+
+/**
+ * The server side of the {@code EXTERNAL} SASL mechanism.  The authentication identity is the peer principal supplied
+ * through a {@link PeerPrincipalCallback}; no cryptographic work is performed and authentication completes on the first
+ * message.
+ * <p>
+ * If the callback handler supplies a {@link SecurityDomain} through a {@link SecurityDomainCallback}, the peer principal
+ * is mapped to a {@link RealmIdentity} of the domain: an {@link X500Principal} is passed to the realm as it is where the
+ * realm supports it, any other principal is mapped by name.
+ */
+public final class ExternalSaslServer extends AbstractSaslServer {
+
+    private static final SaslState INITIAL = new SaslState() {
+        public byte[] evaluateMessage(final SaslStateContext context, final byte[] message) throws SaslException {
+            // an empty message is an empty authorization ID, there is never an initial challenge
+            if (message.length > 1020) {
+                throw new SaslException("Authorization ID is too long");
+            }
+            final ExternalSaslServer server = getParticipant(context, ExternalSaslServer.class);
+            final PeerPrincipalCallback peerCallback = new PeerPrincipalCallback();
+            server.handleCallbacks(peerCallback);
+            final Principal peer = peerCallback.getPrincipal();
+            if (peer == null) {
+                throw new SaslException(EXTERNAL + ": the peer has not been authenticated");
+            }
+            final String authenticationId = server.getAuthenticationId(peer);
+            final String authorizationId = message.length == 0 ? authenticationId : new String(message, Charsets.UTF_8);
+
+            final AuthorizeCallback authorizeCallback = new AuthorizeCallback(authenticationId, authorizationId);
+            return server.handleCallbacks(new CallbackContinuation() {
+                public byte[] proceed(final SaslStateContext context) throws SaslException {
+                    if (! authorizeCallback.isAuthorized()) {
+                        throw new SaslException(EXTERNAL + ": " + authenticationId + " is not authorized to act as " + authorizationId);
+                    }
+                    server.authorizedId = authorizeCallback.getAuthorizedID();
+                    context.negotiationComplete();
+                    return null;
+                }
+            }, authorizeCallback);
+        }
+    };
+
+    private String authorizedId;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param protocol the protocol
+     * @param serverName the server name
+     * @param callbackHandler the callback handler
+     */
+    ExternalSaslServer(final String protocol, final String serverName, final CallbackHandler callbackHandler) {
+        super(EXTERNAL, protocol, serverName, callbackHandler);
+        getContext().setNegotiationState(INITIAL);
+    }
+
+    private String getAuthenticationId(final Principal peer) throws SaslException {
+        final SecurityDomainCallback domainCallback = new SecurityDomainCallback();
+        try {
+            tryHandleCallbacks(domainCallback);
+        } catch (UnsupportedCallbackException e) {
+            // no security domain, rely on the authorization callback alone
+            return peer.getName();
+        }
+        final SecurityDomain domain = domainCallback.getSecurityDomain();
+        if (domain == null) {
+            return peer.getName();
+        }
+        RealmIdentity identity = null;
+        if (peer instanceof X500Principal) {
+            try {
+                identity = domain.mapPrincipal(peer);
+            } catch (IllegalArgumentException e) {
+                // the realm does not support X.500 principals, fall back to the name
+            }
+        }
+        if (identity == null) {
+            identity = domain.mapName(peer.getName());
+        }
+        if (identity == null) {
+            throw new SaslException(EXTERNAL + ": unable to map peer " + peer.getName());
+        }
+        return identity.getPrincipal().getName();
+    }
+
+    public String getAuthorizationID() {
+        assertComplete();
+
+        return authorizedId;
+    }
+
+    @Override
+    public boolean isResettable() {
+        return true;
+    }
+
+    @Override
+    protected void resetState() {
+        authorizedId = null;
+        getContext().setNegotiationState(INITIAL);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.external;
+
+import java.util.Map;
+
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.sasl.SaslException;
+import javax.security.sasl.SaslServer;
+import javax.security.sasl.SaslServerFactory;
+
+import org.kohsuke.MetaInfServices;
+
+/**
+ * The server factory for the {@code EXTERNAL} SASL mechanism.
+ */
+@MetaInfServices(value = SaslServerFactory.class)
+public final class ExternalServerFactory extends ExternalSaslFactory implements SaslServerFactory {
+
+    public SaslServer createSaslServer(final String mechanism, final String protocol, final String serverName, final Map<String, ?> props, final CallbackHandler cbh) throws SaslException {
+        if (! EXTERNAL.equals(mechanism) || ! matches(props)) {
+            return null;
+        }
+        final ExternalSaslServer idle = getIdleParticipant(ExternalSaslServer.class, protocol, serverName, cbh, props);
+        if (idle != null) {
+            return idle;
+        }
+        return makePoolable(new ExternalSaslServer(protocol, serverName, cbh), protocol, serverName, cbh, props);
+    }
+}
@@ -18,6 +18,8 @@
 
 package org.wildfly.security.sasl.gssapi;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import javax.security.auth.callback.CallbackHandler;
@@ -31,7 +33,9 @@ import org.ietf.jgss.Oid;
 import org.jboss.logging.Logger;
 import org.wildfly.security.sasl.WildFlySasl;
 import org.wildfly.security.sasl.util.AbstractSaslParticipant;
-import org.wildfly.security.sasl.util.SaslWrapper;
+import org.wildfly.security.sasl.util.ByteBufferSaslWrapper;
+import org.wildfly.security.util.ByteBufferInputStream;
+import org.wildfly.security.util.ByteBufferOutputStream;
 
 /**
  * Base class for the SaslServer and SaslClient implementations implementing the GSSAPI mechanism as defined by RFC 4752
@@ -240,19 +244,26 @@ abstract class AbstractGssapiMechanism extends AbstractSaslParticipant {
 
     }
 
-    protected class GssapiWrapper implements SaslWrapper {
+    protected class GssapiWrapper implements ByteBufferSaslWrapper {
 
         private final boolean confidential;
+        // The wrap and unwrap directions may be used concurrently so each has its own MessageProp, reset before each use.
+        private final MessageProp wrapProp;
+        private final MessageProp unwrapProp;
 
         protected GssapiWrapper(final boolean confidential) {
             this.confidential = confidential;
+            wrapProp = new MessageProp(0, confidential);
+            unwrapProp = new MessageProp(0, confidential);
         }
 
         @Override
         public byte[] wrap(byte[] outgoing, int offset, int len) throws SaslException {
-            MessageProp prop = new MessageProp(0, confidential);
             try {
-                byte[] response = gssContext.wrap(outgoing, offset, len, prop);
+                final byte[] response;
+                synchronized (wrapProp) {
+                    response = gssContext.wrap(outgoing, offset, len, reset(wrapProp));
+                }
                 log.tracef("Wrapping message of length '%d' resulting message of length '%d'", len, response.length);
                 return response;
             } catch (GSSException e) {
@@ -262,14 +273,103 @@ abstract class AbstractGssapiMechanism extends AbstractSaslParticipant {
 
         @Override
         public byte[] unwrap(byte[] incoming, int offset, int len) throws SaslException {
-            MessageProp prop = new MessageProp(0, confidential);
             try {
-                byte[] response = gssContext.unwrap(incoming, offset, len, prop);
+                final byte[] response;
+                synchronized (unwrapProp) {
+                    response = gssContext.unwrap(incoming, offset, len, reset(unwrapProp));
+                }
                 log.tracef("Unwrapping message of length '%d' resulting message of length '%d'", len, response.length);
                 return response;
+            } catch (GSSException e) {
+                throw new SaslException("Unable to unwrap message.", e);
+            }
+        }
+
+        @Override
+        public void wrap(ByteBuffer outgoing, ByteBuffer target) throws SaslException, BufferOverflowException {
+            if (outgoing.hasArray()) {
+                final int len = outgoing.remaining();
+                final byte[] response = wrap(outgoing.array(), outgoing.arrayOffset() + outgoing.position(), len);
+                transfer(response, outgoing, target);
+            } else {
+                wrap(new ByteBuffer[] { outgoing }, 0, 1, target);
+            }
+        }
+
+        @Override
+        public void wrap(ByteBuffer[] outgoing, int offset, int length, ByteBuffer target) throws SaslException, BufferOverflowException {
+            final int[] positions = positions(outgoing, offset, length);
+            final int targetPosition = target.position();
+            boolean ok = false;
+            try {
+                synchronized (wrapProp) {
+                    gssContext.wrap(new ByteBufferInputStream(outgoing, offset, length), new ByteBufferOutputStream(target), reset(wrapProp));
+                }
+                log.tracef("Wrapping buffered message resulting message of length '%d'", target.position() - targetPosition);
+                ok = true;
             } catch (GSSException e) {
                 throw new SaslException("Unable to wrap message.", e);
+            } finally {
+                if (! ok) {
+                    restore(outgoing, offset, positions, target, targetPosition);
+                }
+            }
+        }
+
+        @Override
+        public void unwrap(ByteBuffer incoming, ByteBuffer target) throws SaslException, BufferOverflowException {
+            if (incoming.hasArray()) {
+                final int len = incoming.remaining();
+                final byte[] response = unwrap(incoming.array(), incoming.arrayOffset() + incoming.position(), len);
+                transfer(response, incoming, target);
+                return;
+            }
+            final int position = incoming.position();
+            final int targetPosition = target.position();
+            boolean ok = false;
+            try {
+                synchronized (unwrapProp) {
+                    gssContext.unwrap(new ByteBufferInputStream(incoming), new ByteBufferOutputStream(target), reset(unwrapProp));
+                }
+                log.tracef("Unwrapping buffered message resulting message of length '%d'", target.position() - targetPosition);
+                ok = true;
+            } catch (GSSException e) {
+                throw new SaslException("Unable to unwrap message.", e);
+            } finally {
+                if (! ok) {
+                    incoming.position(position);
+                    target.position(targetPosition);
+                }
+            }
+        }
+
+        private MessageProp reset(final MessageProp prop) {
+            prop.setQOP(0);
+            prop.setPrivacy(confidential);
+            return prop;
+        }
+
+        private void transfer(final byte[] response, final ByteBuffer source, final ByteBuffer target) {
+            if (target.remaining() < response.length) {
+                throw new BufferOverflowException();
+            }
+            source.position(source.limit());
+            target.put(response);
+        }
+
+        private int[] positions(final ByteBuffer[] buffers, final int offset, final int length) {
+            final int[] positions = new int[length];
+            for (int i = 0; i < length; i++) {
+                positions[i] = buffers[offset + i].position();
+            }
+            return positions;
+        }
+
+        private void restore(final ByteBuffer[] buffers, final int offset, final int[] positions, final ByteBuffer target, final int targetPosition) {
+            for (int i = 0; i < positions.length; i++) {
+                buffers[offset + i].position(positions[i]);
             }
+            target.position(targetPosition);
         }
 
     }
@@ -0,0 +1,304 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.gssapi;
+
+import java.io.File;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.AccessControlContext;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.security.auth.Subject;
+
+import org.ietf.jgss.GSSContext;
+import org.ietf.jgss.GSSCredential;
+import org.ietf.jgss.GSSException;
+import org.ietf.jgss.GSSManager;
+import org.ietf.jgss.GSSName;
+import org.jboss.logging.Logger;
+
+/**
+ * A cache of acceptor and initiator {@link GSSCredential} instances shared by the GSSAPI mechanism implementations.
+ * <p>
+ * Acceptor credentials are keyed by protocol, server name and the {@link Subject} associated with the calling
+ * {@link AccessControlContext}, initiator credentials by the {@code Subject} alone; the {@code Subject} is only weakly
+ * referenced so discarding it also discards the cached credentials.  A cached credential is replaced once it is within
+ * the refresh margin of its expiry or, where a key tab file is being tracked, once that file has been modified.
+ * <p>
+ * Cached credentials are shared between many {@link GSSContext} instances and so must never be disposed of by the
+ * mechanism using them.
+ */
+public final class CredentialCache {
+
+    private static final Logger log = Logger.getLogger(CredentialCache.class);
+
+    /**
+     * The default number of seconds before a credential expires at which it will be replaced.
+     */
+    public static final int DEFAULT_REFRESH_MARGIN = 60;
+
+    private static final CredentialCache INSTANCE = new CredentialCache();
+
+    private final ConcurrentMap<Key, Entry> cache = new ConcurrentHashMap<Key, Entry>();
+    private final ReferenceQueue<Subject> queue = new ReferenceQueue<Subject>();
+    private final AtomicLong acceptorHits = new AtomicLong();
+    private final AtomicLong acceptorMisses = new AtomicLong();
+    private final AtomicLong initiatorHits = new AtomicLong();
+    private final AtomicLong initiatorMisses = new AtomicLong();
+
+    private CredentialCache() {
+    }
+
+    /**
+     * Get the singleton instance.
+     *
+     * @return the singleton instance of the cache
+     */
+    public static CredentialCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get an acceptor credential for the given protocol and server name, creating it if there is no usable cached
+     * credential for the current {@link Subject}.
+     *
+     * @param manager the manager to use to create a new credential
+     * @param protocol the protocol
+     * @param serverName the server name
+     * @param keyTab the key tab file to monitor for changes, or {@code null} if none is to be monitored
+     * @return the acceptor credential
+     * @throws GSSException if a new credential could not be created
+     */
+    GSSCredential getAcceptorCredential(final GSSManager manager, final String protocol, final String serverName,
+            final File keyTab) throws GSSException {
+        final long keyTabModified = keyTab == null ? 0 : keyTab.lastModified();
+        final String name = protocol + "@" + serverName;
+        final GSSCredential cached = getCachedCredential(GSSCredential.ACCEPT_ONLY, name, keyTabModified, DEFAULT_REFRESH_MARGIN);
+        if (cached != null) {
+            acceptorHits.incrementAndGet();
+            log.tracef("Using cached acceptor credential for '%s'", name);
+            return cached;
+        }
+        acceptorMisses.incrementAndGet();
+
+        GSSName ourName = manager.createName(name, GSSName.NT_HOSTBASED_SERVICE, AbstractGssapiMechanism.KERBEROS_V5);
+        GSSCredential credential = manager.createCredential(ourName, GSSContext.INDEFINITE_LIFETIME,
+                AbstractGssapiMechanism.KERBEROS_V5, GSSCredential.ACCEPT_ONLY);
+
+        return cacheCredential(GSSCredential.ACCEPT_ONLY, name, keyTabModified, DEFAULT_REFRESH_MARGIN, credential);
+    }
+
+    /**
+     * Get the default initiator credential of the current {@link Subject}, creating it if there is no usable cached
+     * credential.
+     * <p>
+     * Sharing the initiator credential avoids a credential acquisition for every new context; where the {@code Subject} is
+     * writable the Kerberos implementation also retains the service tickets it obtains within it, so subsequent contexts
+     * for the same {@code protocol@serverName} do not need to contact the KDC either.
+     *
+     * @param manager the manager to use to create a new credential
+     * @param refreshMargin the number of seconds before expiry at which a cached credential is no longer used
+     * @return the initiator credential
+     * @throws GSSException if a new credential could not be created
+     */
+    GSSCredential getInitiatorCredential(final GSSManager manager, final int refreshMargin) throws GSSException {
+        final GSSCredential cached = getCachedCredential(GSSCredential.INITIATE_ONLY, null, 0, refreshMargin);
+        if (cached != null) {
+            initiatorHits.incrementAndGet();
+            log.trace("Using cached initiator credential");
+            return cached;
+        }
+        initiatorMisses.incrementAndGet();
+
+        GSSCredential credential = manager.createCredential(null, GSSContext.INDEFINITE_LIFETIME,
+                AbstractGssapiMechanism.KERBEROS_V5, GSSCredential.INITIATE_ONLY);
+
+        return cacheCredential(GSSCredential.INITIATE_ONLY, null, 0, refreshMargin, credential);
+    }
+
+    /**
+     * Get the number of acceptor credential requests satisfied from the cache.
+     *
+     * @return the number of acceptor credential requests satisfied from the cache
+     */
+    public long getAcceptorHitCount() {
+        return acceptorHits.get();
+    }
+
+    /**
+     * Get the number of acceptor credential requests which required a new credential to be obtained.
+     *
+     * @return the number of acceptor credential requests which required a new credential to be obtained
+     */
+    public long getAcceptorMissCount() {
+        return acceptorMisses.get();
+    }
+
+    /**
+     * Get the number of initiator credential requests satisfied from the cache, each of which avoided obtaining the
+     * credential from the KDC or the {@link Subject} again.
+     *
+     * @return the number of initiator credential requests satisfied from the cache
+     */
+    public long getInitiatorHitCount() {
+        return initiatorHits.get();
+    }
+
+    /**
+     * Get the number of initiator credential requests which required a new credential to be obtained.
+     *
+     * @return the number of initiator credential requests which required a new credential to be obtained
+     */
+    public long getInitiatorMissCount() {
+        return initiatorMisses.get();
+    }
+
+    /**
+     * Remove all cached credentials.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    private GSSCredential getCachedCredential(final int usage, final String name, final long keyTabModified,
+            final int refreshMargin) {
+        expungeStaleEntries();
+
+        final Entry existing = cache.get(new Key(usage, name, getCurrentSubject(), null));
+        return existing != null && existing.isValid(keyTabModified, refreshMargin) ? existing.credential : null;
+    }
+
+    private GSSCredential cacheCredential(final int usage, final String name, final long keyTabModified,
+            final int refreshMargin, final GSSCredential credential) throws GSSException {
+        final Subject subject = getCurrentSubject();
+        final Key key = new Key(usage, name, subject, null);
+        final Entry created = new Entry(credential, keyTabModified);
+        final Entry existing = cache.putIfAbsent(new Key(usage, name, subject, queue), created);
+        if (existing != null) {
+            if (existing.isValid(keyTabModified, refreshMargin)) {
+                // Another thread got there first, prefer the credential already being shared.
+                return existing.credential;
+            }
+            log.tracef("Replacing expired credential for '%s'", name);
+            // The replaced credential may still be in use by established contexts so it is not disposed of here.
+            cache.replace(key, existing, created);
+        }
+
+        return credential;
+    }
+
+    private void expungeStaleEntries() {
+        Object stale;
+        while ((stale = queue.poll()) != null) {
+            cache.remove(((SubjectReference) stale).key);
+        }
+    }
+
+    private static Subject getCurrentSubject() {
+        final AccessControlContext context = AccessController.getContext();
+        if (System.getSecurityManager() == null) {
+            return Subject.getSubject(context);
+        }
+        return AccessController.doPrivileged(new PrivilegedAction<Subject>() {
+            public Subject run() {
+                return Subject.getSubject(context);
+            }
+        });
+    }
+
+    private static final class Entry {
+
+        private final GSSCredential credential;
+        private final long expiry;
+        private final long keyTabModified;
+
+        private Entry(final GSSCredential credential, final long keyTabModified) throws GSSException {
+            this.credential = credential;
+            this.keyTabModified = keyTabModified;
+            final int lifetime = credential.getRemainingLifetime();
+            if (lifetime == GSSCredential.INDEFINITE_LIFETIME) {
+                expiry = Long.MAX_VALUE;
+            } else {
+                expiry = System.nanoTime() + TimeUnit.SECONDS.toNanos(lifetime);
+            }
+        }
+
+        private boolean isValid(final long keyTabModified, final int refreshMargin) {
+            return this.keyTabModified == keyTabModified
+                    && (expiry == Long.MAX_VALUE || expiry - TimeUnit.SECONDS.toNanos(refreshMargin) - System.nanoTime() > 0);
+        }
+    }
+
+    private static final class Key {
+
+        private final int usage;
+        private final String name;
+        private final SubjectReference subject;
+        private final int hashCode;
+
+        private Key(final int usage, final String name, final Subject subject, final ReferenceQueue<Subject> queue) {
+            this.usage = usage;
+            this.name = name;
+            this.subject = subject == null ? null : new SubjectReference(subject, this, queue);
+            // The Subject hash code changes as credentials are added so identity is used instead.
+            this.hashCode = (usage * 31 + (name == null ? 0 : name.hashCode())) * 31 + System.identityHashCode(subject);
+        }
+
+        private Subject getSubject() {
+            return subject == null ? null : subject.get();
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof Key && equals((Key) obj);
+        }
+
+        private boolean equals(final Key other) {
+            if (this == other) {
+                return true;
+            }
+            if (hashCode != other.hashCode || usage != other.usage || (name == null ? other.name != null : name.equals(other.name) == false)) {
+                return false;
+            }
+            if (subject == null || other.subject == null) {
+                return subject == other.subject;
+            }
+            final Subject ourSubject = getSubject();
+            return ourSubject != null && ourSubject == other.getSubject();
+        }
+    }
+
+    private static final class SubjectReference extends WeakReference<Subject> {
+
+        private final Key key;
+
+        private SubjectReference(final Subject referent, final Key key, final ReferenceQueue<Subject> queue) {
+            super(referent, queue);
+            this.key = key;
+        }
+    }
+}
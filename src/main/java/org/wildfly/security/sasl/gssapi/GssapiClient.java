@@ -78,11 +78,29 @@ public class GssapiClient extends AbstractGssapiMechanism implements SaslClient
             credential = (GSSCredential) credObj;
         }
 
-        // Better way to obtain the credential if we don't have one?
+        GSSCredential contextCredential = credential;
+        if (credential == null && props.containsKey(WildFlySasl.GSSAPI_CACHE_INITIATOR_CREDENTIAL)
+                && Boolean.parseBoolean((String) props.get(WildFlySasl.GSSAPI_CACHE_INITIATOR_CREDENTIAL))) {
+            int refreshMargin = CredentialCache.DEFAULT_REFRESH_MARGIN;
+            if (props.containsKey(WildFlySasl.GSSAPI_CREDENTIAL_REFRESH_MARGIN)) {
+                Object refreshMarginValue = props.get(WildFlySasl.GSSAPI_CREDENTIAL_REFRESH_MARGIN);
+                try {
+                    refreshMargin = Integer.parseInt((String) refreshMarginValue);
+                } catch (NumberFormatException | ClassCastException e) {
+                    throw new SaslException(String.format("Invalid credential refresh margin '%s'", refreshMarginValue), e);
+                }
+            }
+            log.tracef("Using cached initiator credential with refresh margin %d", refreshMargin);
+            try {
+                contextCredential = CredentialCache.getInstance().getInitiatorCredential(manager, refreshMargin);
+            } catch (GSSException e) {
+                throw new SaslException("Unable to obtain initiator credential.", e);
+            }
+        }
 
         final GSSContext gssContext;
         try {
-            gssContext = manager.createContext(acceptorName, KERBEROS_V5, credential, GSSContext.INDEFINITE_LIFETIME);
+            gssContext = manager.createContext(acceptorName, KERBEROS_V5, contextCredential, GSSContext.INDEFINITE_LIFETIME);
         } catch (GSSException e) {
             throw new SaslException("Unable to crate GSSContexr", e);
         }
@@ -18,6 +18,7 @@
 
 package org.wildfly.security.sasl.gssapi;
 
+import java.io.File;
 import java.util.Map;
 
 import javax.security.auth.callback.Callback;
@@ -34,6 +35,7 @@ import org.ietf.jgss.GSSName;
 import org.ietf.jgss.MessageProp;
 import org.ietf.jgss.Oid;
 import org.jboss.logging.Logger;
+import org.wildfly.security.sasl.WildFlySasl;
 import org.wildfly.security.sasl.util.Charsets;
 import org.wildfly.security.sasl.util.SaslState;
 import org.wildfly.security.sasl.util.SaslStateContext;
@@ -59,11 +61,23 @@ public class GssapiServer extends AbstractGssapiMechanism implements SaslServer
         // According to the Javadoc we will have a protocol and server name.
         String localName = protocol + "@" + serverName;
         log.tracef("Our name '%s'", localName);
+        boolean cacheCredential = false;
+        if (props.containsKey(WildFlySasl.GSSAPI_CACHE_ACCEPTOR_CREDENTIAL)) {
+            cacheCredential = Boolean.parseBoolean((String) props.get(WildFlySasl.GSSAPI_CACHE_ACCEPTOR_CREDENTIAL));
+        }
+        log.tracef("Caching acceptor credential = %b", cacheCredential);
         GSSContext gssContext = null;
         try {
-            GSSName ourName = manager.createName(localName, GSSName.NT_HOSTBASED_SERVICE, KERBEROS_V5);
-            GSSCredential ourCredential = manager.createCredential(ourName, GSSContext.INDEFINITE_LIFETIME, KERBEROS_V5,
-                    GSSCredential.ACCEPT_ONLY);
+            final GSSCredential ourCredential;
+            if (cacheCredential) {
+                String keyTab = (String) props.get(WildFlySasl.GSSAPI_KEY_TAB);
+                ourCredential = CredentialCache.getInstance().getAcceptorCredential(manager, protocol, serverName,
+                        keyTab == null ? null : new File(keyTab));
+            } else {
+                GSSName ourName = manager.createName(localName, GSSName.NT_HOSTBASED_SERVICE, KERBEROS_V5);
+                ourCredential = manager.createCredential(ourName, GSSContext.INDEFINITE_LIFETIME, KERBEROS_V5,
+                        GSSCredential.ACCEPT_ONLY);
+            }
 
             gssContext = manager.createContext(ourCredential);
         } catch (GSSException e) {
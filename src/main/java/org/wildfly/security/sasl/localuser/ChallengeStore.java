@@ -0,0 +1,231 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.localuser;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.logging.Logger;
+
+/**
+ * The store of challenge files created by {@link LocalUserServer} instances for a single base path.
+ * <p>
+ * Challenge files are created within a directory private to this process beneath the base path, with owner only
+ * permissions applied as part of the creation where the file system supports POSIX permissions.  A challenge which is
+ * never verified or disposed of is deleted by a background sweeper once it has been outstanding for longer than
+ * {@link #CHALLENGE_TIMEOUT} seconds.
+ */
+final class ChallengeStore {
+
+    private static final Logger log = Logger.getLogger(ChallengeStore.class);
+
+    /**
+     * The number of seconds after which an outstanding challenge is deleted by the sweeper.
+     */
+    static final int CHALLENGE_TIMEOUT = 300;
+
+    private static final int SWEEP_INTERVAL = 30;
+
+    private static final Set<OpenOption> CREATE_OPTIONS = Collections.<OpenOption>unmodifiableSet(EnumSet.of(CREATE_NEW, WRITE));
+    private static final Set<PosixFilePermission> OWNER_ONLY_FILE = PosixFilePermissions.fromString("rw-------");
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+
+    private static final SecureRandom NAME_RANDOM = new SecureRandom();
+
+    private static final ConcurrentMap<Path, ChallengeStore> STORES = new ConcurrentHashMap<Path, ChallengeStore>();
+    private static final AtomicBoolean SWEEPER_STARTED = new AtomicBoolean();
+
+    private final Path basePath;
+    private final FileAttribute<?>[] fileAttributes;
+    private final FileAttribute<?>[] directoryAttributes;
+    private final ConcurrentMap<Path, Long> outstanding = new ConcurrentHashMap<Path, Long>();
+    private volatile Path directory;
+
+    private ChallengeStore(final Path basePath) {
+        this.basePath = basePath;
+        if (basePath.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            fileAttributes = new FileAttribute<?>[] { PosixFilePermissions.asFileAttribute(OWNER_ONLY_FILE) };
+            directoryAttributes = new FileAttribute<?>[] { PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIRECTORY) };
+        } else {
+            fileAttributes = directoryAttributes = new FileAttribute<?>[0];
+        }
+    }
+
+    /**
+     * Get the challenge store for the given base path.
+     *
+     * @param basePath the absolute base path
+     * @return the challenge store
+     */
+    static ChallengeStore getInstance(final Path basePath) {
+        ChallengeStore store = STORES.get(basePath);
+        if (store == null) {
+            final ChallengeStore created = new ChallengeStore(basePath);
+            store = STORES.putIfAbsent(basePath, created);
+            if (store == null) {
+                store = created;
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Create a new challenge file holding the given content.
+     *
+     * <p>
+     * The file name is always taken from a {@link SecureRandom} private to the store, never from the source of the
+     * challenge content, since the name is sent to the client and must not reveal anything about the content.
+     *
+     * @param content the challenge content
+     * @return the path of the new challenge file
+     * @throws IOException if the challenge file could not be created
+     */
+    Path create(final byte[] content) throws IOException {
+        Path directory = getDirectory();
+        for (;;) {
+            final Path file = directory.resolve("local" + Long.toHexString(NAME_RANDOM.nextLong()) + ".challenge");
+            final SeekableByteChannel channel;
+            try {
+                // O_CREAT | O_EXCL with the permissions applied by the same call
+                channel = Files.newByteChannel(file, CREATE_OPTIONS, fileAttributes);
+            } catch (FileAlreadyExistsException e) {
+                continue;
+            } catch (NoSuchFileException e) {
+                // the directory has been removed from under us, e.g. by a tmp cleaner
+                directory = replaceDirectory(directory);
+                continue;
+            }
+            outstanding.put(file, Long.valueOf(System.nanoTime() + TimeUnit.SECONDS.toNanos(CHALLENGE_TIMEOUT)));
+            boolean ok = false;
+            try {
+                final ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.close();
+                ok = true;
+            } finally {
+                if (! ok) {
+                    try {
+                        channel.close();
+                    } catch (Throwable ignored) {
+                    }
+                    delete(file);
+                }
+            }
+            startSweeper();
+            return file;
+        }
+    }
+
+    /**
+     * Delete a challenge file.
+     *
+     * @param file the challenge file
+     */
+    void delete(final Path file) {
+        outstanding.remove(file);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.tracef(e, "Failed to delete challenge file %s", file);
+        }
+    }
+
+    private Path getDirectory() throws IOException {
+        final Path directory = this.directory;
+        return directory == null ? replaceDirectory(null) : directory;
+    }
+
+    private synchronized Path replaceDirectory(final Path previous) throws IOException {
+        Path directory = this.directory;
+        if (directory == previous) {
+            directory = this.directory = Files.createTempDirectory(basePath, "local-user-", directoryAttributes);
+            directory.toFile().deleteOnExit();
+        }
+        return directory;
+    }
+
+    private void sweep(final long now) {
+        for (Map.Entry<Path, Long> entry : outstanding.entrySet()) {
+            if (now - entry.getValue().longValue() > 0 && outstanding.remove(entry.getKey(), entry.getValue())) {
+                log.tracef("Deleting abandoned challenge file %s", entry.getKey());
+                delete(entry.getKey());
+            }
+        }
+    }
+
+    private static void startSweeper() {
+        if (SWEEPER_STARTED.get() || ! SWEEPER_STARTED.compareAndSet(false, true)) {
+            return;
+        }
+        AccessController.doPrivileged(new PrivilegedAction<Void>() {
+            public Void run() {
+                final Sweeper sweeper = new Sweeper();
+                new ScheduledThreadPoolExecutor(1, sweeper).scheduleWithFixedDelay(sweeper, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.SECONDS);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * The single background thread which deletes abandoned challenges of every store, started when the first challenge
+     * is created.
+     */
+    private static final class Sweeper implements Runnable, ThreadFactory {
+
+        public void run() {
+            final long now = System.nanoTime();
+            for (ChallengeStore store : STORES.values()) {
+                store.sweep(now);
+            }
+        }
+
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "WildFly SASL local user challenge sweeper");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -19,9 +19,8 @@
 package org.wildfly.security.sasl.localuser;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.SecureRandom;
@@ -57,9 +56,13 @@ public final class LocalUserServer extends AbstractSaslServer implements SaslSer
 
     private static final byte UTF8NUL = 0x00;
 
+    private static final Random SECURE_RANDOM = new SecureRandom();
+    private static final Random RANDOM = new Random();
+
     private volatile String authorizationId;
-    private volatile File challengeFile;
+    private volatile Path challengeFile;
     private final File basePath;
+    private final ChallengeStore challengeStore;
     private final String defaultUser;
     private final boolean useSecureRandom;
 
@@ -77,6 +80,7 @@ public final class LocalUserServer extends AbstractSaslServer implements SaslSer
         } else {
             basePath = new File(getProperty("java.io.tmpdir"));
         }
+        challengeStore = ChallengeStore.getInstance(basePath.toPath().toAbsolutePath());
 
         Object useSecureRandomObj = null;
         if (props.containsKey(LOCAL_USER_USE_SECURE_RANDOM)) {
@@ -125,11 +129,7 @@ public final class LocalUserServer extends AbstractSaslServer implements SaslSer
     }
 
     private Random getRandom() {
-        if (useSecureRandom) {
-            return new SecureRandom();
-        } else {
-            return new Random();
-        }
+        return useSecureRandom ? SECURE_RANDOM : RANDOM;
     }
 
     public void init() {
@@ -146,41 +146,14 @@ public final class LocalUserServer extends AbstractSaslServer implements SaslSer
                 } else {
                     authorizationId = new String(message, Charsets.UTF_8);
                 }
-                final Random random = getRandom();
+                final byte[] bytes = new byte[8];
+                getRandom().nextBytes(bytes);
                 try {
-                    challengeFile = File.createTempFile("local", ".challenge", basePath);
+                    challengeFile = challengeStore.create(bytes);
                 } catch (IOException e) {
                     throw new SaslException("Failed to create challenge file", e);
                 }
-
-                final FileOutputStream fos;
-                try {
-                    fos = new FileOutputStream(challengeFile);
-                } catch (FileNotFoundException e) {
-                    throw new SaslException("Failed to create challenge file", e);
-                }
-                boolean ok = false;
-                final byte[] bytes;
-                try {
-                    bytes = new byte[8];
-                    random.nextBytes(bytes);
-                    try {
-                        fos.write(bytes);
-                        fos.close();
-                        ok = true;
-                    } catch (IOException e) {
-                        throw new SaslException("Failed to create challenge file", e);
-                    }
-                } finally {
-                    if (!ok) {
-                        deleteChallenge();
-                    }
-                    try {
-                        fos.close();
-                    } catch (Throwable ignored) {
-                    }
-                }
-                final String path = challengeFile.getAbsolutePath();
+                final String path = challengeFile.toString();
                 final byte[] response = new byte[Charsets.encodedLengthOf(path)];
                 Charsets.encodeTo(path, response, 0);
                 getContext().setNegotiationState(new SaslState() {
@@ -245,9 +218,10 @@ public final class LocalUserServer extends AbstractSaslServer implements SaslSer
     }
 
     private void deleteChallenge() {
+        final Path challengeFile = this.challengeFile;
         if (challengeFile != null) {
-            challengeFile.delete();
-            challengeFile = null;
+            challengeStore.delete(challengeFile);
+            this.challengeFile = null;
         }
     }
 
@@ -256,9 +230,4 @@ public final class LocalUserServer extends AbstractSaslServer implements SaslSer
         super.dispose();
         deleteChallenge();
     }
-
-    @Override
-    protected void finalize() throws Throwable {
-        deleteChallenge();
-    }
 }
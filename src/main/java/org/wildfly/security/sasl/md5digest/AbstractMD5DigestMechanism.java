@@ -64,6 +64,9 @@ abstract class AbstractMD5DigestMechanism extends AbstractSaslParticipant {
     public static final String DEFAULT_QOP = "auth";
     public static final String[] CIPHER_OPTS = {"des", "3des", "rc4", "rc4-40", "rc4-56"};
 
+    private static final TransformationMapper TRANSFORMATION_MAPPER = new DefaultTransformationMapper();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
     private FORMAT format;
     protected String digestURI;
     private Charset charset = Charsets.LATIN_1;
@@ -114,12 +117,11 @@ abstract class AbstractMD5DigestMechanism extends AbstractSaslParticipant {
      * @return comma separated list of ciphers
      */
     static String getSupportedCiphers(String[] demandedCiphers) {
-        TransformationMapper trans = new DefaultTransformationMapper();
         if (demandedCiphers == null) {
             demandedCiphers = CIPHER_OPTS;
         }
         StringBuilder ciphers = new StringBuilder();
-        for (TransformationSpec ts: trans.getTransformationSpecByStrength(MD5DigestServerFactory.JBOSS_DIGEST_MD5, demandedCiphers)) {
+        for (TransformationSpec ts: TRANSFORMATION_MAPPER.getTransformationSpecByStrength(MD5DigestServerFactory.JBOSS_DIGEST_MD5, demandedCiphers)) {
             if (ciphers.length() > 0) {
                 ciphers.append(DELIMITER);
             }
@@ -129,9 +131,8 @@ abstract class AbstractMD5DigestMechanism extends AbstractSaslParticipant {
     }
 
     static byte[] generateNonce() {
-        SecureRandom random = new SecureRandom();
         byte[] nonceData = new byte[NONCE_SIZE];
-        random.nextBytes(nonceData);
+        RANDOM.nextBytes(nonceData);
 
         ByteStringBuilder nonceBase64 = new ByteStringBuilder();
         Base64.base64EncodeStandard(nonceBase64, new ByteArrayInputStream(nonceData), true);
@@ -32,9 +32,11 @@ import javax.security.sasl.SaslServer;
 
 import org.wildfly.security.sasl.md5digest.AbstractMD5DigestMechanism;
 import org.wildfly.security.sasl.util.ByteStringBuilder;
+import org.wildfly.security.sasl.util.CallbackContinuation;
 import org.wildfly.security.sasl.util.Charsets;
 import org.wildfly.security.sasl.util.SaslState;
 import org.wildfly.security.sasl.util.SaslStateContext;
+import org.wildfly.security.sasl.util.SaslEvaluationListener;
 import org.wildfly.security.sasl.util.SaslQuote;
 
 
@@ -62,38 +64,37 @@ public class MD5DigestSaslServer extends AbstractMD5DigestMechanism implements S
     private int nonceCount = -1;
     private byte[] nonce = null;
 
-    private final SaslState STEP_ONE = new SaslState() {
+    private static final SaslState STEP_ONE = new SaslState() {
 
         @Override
         public byte[] evaluateMessage(SaslStateContext context, byte[] message) throws SaslException {
+            final MD5DigestSaslServer server = getParticipant(context, MD5DigestSaslServer.class);
 
             if (message.length != 0) {
-                throw new SaslException(getMechanismName() + ": When sending challenge message has to be empty.");
+                throw new SaslException(server.getMechanismName() + ": When sending challenge message has to be empty.");
             }
-            getContext().setNegotiationState(STEP_THREE);
-            return generateChallenge();
+            context.setNegotiationState(STEP_THREE);
+            return server.generateChallenge();
         }
     };
 
 
-    private final SaslState STEP_THREE = new SaslState() {
+    private static final SaslState STEP_THREE = new SaslState() {
 
         @Override
         public byte[] evaluateMessage(SaslStateContext context, byte[] message) throws SaslException {
+            final MD5DigestSaslServer server = getParticipant(context, MD5DigestSaslServer.class);
 
             if (message == null || message.length == 0) {
-                throw new SaslException(getMechanismName() + ": message cannot be empty nor null");
+                throw new SaslException(server.getMechanismName() + ": message cannot be empty nor null");
             }
 
             // parse digest response
-            HashMap<String, byte[]> parsedDigestResponse = parseResponse(message);
-            noteDigestResponseData(parsedDigestResponse);
+            HashMap<String, byte[]> parsedDigestResponse = server.parseResponse(message);
+            server.noteDigestResponseData(parsedDigestResponse);
 
-            // validate
-            byte[] response = validateDigestResponse(parsedDigestResponse);
-
-            getContext().setNegotiationState(SaslState.COMPLETE);
-            return response;
+            // validate, completing negotiation once the response has been verified
+            return server.validateDigestResponse(parsedDigestResponse);
         }
 
     };
@@ -188,12 +189,12 @@ public class MD5DigestSaslServer extends AbstractMD5DigestMechanism implements S
         }
     }
 
-    private byte[] validateDigestResponse(HashMap<String, byte[]> parsedDigestResponse) throws SaslException {
+    private byte[] validateDigestResponse(final HashMap<String, byte[]> parsedDigestResponse) throws SaslException {
         if (nonceCount != 1) {
             throw new SaslException(getMechanismName() + ": nonce-count is not equal to 1");
         }
 
-        Charset clientCharset = Charsets.LATIN_1;
+        final Charset clientCharset;
         if (parsedDigestResponse.get("charset") != null) {
             String cCharset = new String(parsedDigestResponse.get("charset"));
             if (Charsets.UTF_8.equals(getCharset()) && cCharset.equals("utf-8")) {
@@ -201,16 +202,18 @@ public class MD5DigestSaslServer extends AbstractMD5DigestMechanism implements S
             } else {
                 throw new SaslException(getMechanismName() + ": client charset should not be specified as server is using iso 8859-1");
             }
+        } else {
+            clientCharset = Charsets.LATIN_1;
         }
 
-        String userName;
+        final String userName;
         if (parsedDigestResponse.get("username") != null) {
             userName = new String(parsedDigestResponse.get("username"), clientCharset);
         } else {
             throw new SaslException(getMechanismName() + ": missing username directive");
         }
 
-        String clientRealm;
+        final String clientRealm;
         if (parsedDigestResponse.get("realm") != null) {
             clientRealm = new String(parsedDigestResponse.get("realm"), clientCharset);
         } else {
@@ -232,7 +235,7 @@ public class MD5DigestSaslServer extends AbstractMD5DigestMechanism implements S
         if (parsedDigestResponse.get("cnonce") == null) {
             throw new SaslException(getMechanismName() + ": missing cnonce");
         }
-        byte[] cnonce = parsedDigestResponse.get("cnonce");
+        final byte[] cnonce = parsedDigestResponse.get("cnonce");
 
         if (parsedDigestResponse.get("nc") == null) {
             throw new SaslException(getMechanismName() + ": missing nonce-count");
@@ -248,12 +251,14 @@ public class MD5DigestSaslServer extends AbstractMD5DigestMechanism implements S
             throw new SaslException(getMechanismName() + ": digest-uri directive is missing");
         }
 
-        String qop = "auth";
+        final String qop;
         if (parsedDigestResponse.get("qop") != null) {
             qop = new String(parsedDigestResponse.get("qop"), clientCharset);
             if (!arrayContains(QOP_VALUES, qop)) {
                 throw new SaslException(getMechanismName() + ": qop directive unexpected value " + qop);
             }
+        } else {
+            qop = "auth";
         }
 
 
@@ -262,41 +267,44 @@ public class MD5DigestSaslServer extends AbstractMD5DigestMechanism implements S
         final PasswordCallback passwordCallback = new PasswordCallback("User password", false);
         final RealmCallback realmCallback = new RealmCallback("User realm");
 
-        handleCallbacks(realmCallback, nameCallback, passwordCallback);
-
-        byte[] authzid = parsedDigestResponse.get("authzid");
-        String authorizationId = (authzid==null || authzid.equals(userName)) ? null : new String(authzid, Charsets.UTF_8);
-
-        char[] passwd = null;
-        byte[] expectedResponse;
-        try {
-            passwd = passwordCallback.getPassword();
-            passwordCallback.clearPassword();
-
-            expectedResponse = digestResponse(userName, clientRealm, passwd,
-                    nonce, nonceCount, cnonce,
-                    authorizationId, qop, digestURI, clientCharset);
-        } catch (NoSuchAlgorithmException e) {
-            throw new SaslException("Algorithm not supported", e);
-        } finally {
-            // wipe out the password
-            if (passwd != null) {
-                Arrays.fill(passwd, (char)0);
-            }
-        }
-
-        if (parsedDigestResponse.get("response") != null) {
-            if (Arrays.equals(expectedResponse, parsedDigestResponse.get("response"))) {
-                this.authorizationId = authorizationId!=null ? authorizationId : userName; // TODO: Check permission use given authzid!
-                return createResponseAuth(parsedDigestResponse);
-            } else {
-                throw new SaslException(getMechanismName() + ": authentication failed - bad response");
+        return handleCallbacks(new CallbackContinuation() {
+            public byte[] proceed(final SaslStateContext context) throws SaslException {
+                byte[] authzid = parsedDigestResponse.get("authzid");
+                String authorizationId = (authzid==null || authzid.equals(userName)) ? null : new String(authzid, Charsets.UTF_8);
+
+                char[] passwd = null;
+                byte[] expectedResponse;
+                try {
+                    passwd = passwordCallback.getPassword();
+                    passwordCallback.clearPassword();
+
+                    expectedResponse = digestResponse(userName, clientRealm, passwd,
+                            nonce, nonceCount, cnonce,
+                            authorizationId, qop, digestURI, clientCharset);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new SaslException("Algorithm not supported", e);
+                } finally {
+                    // wipe out the password
+                    if (passwd != null) {
+                        Arrays.fill(passwd, (char)0);
+                    }
+                }
+
+                if (parsedDigestResponse.get("response") != null) {
+                    if (Arrays.equals(expectedResponse, parsedDigestResponse.get("response"))) {
+                        MD5DigestSaslServer.this.authorizationId = authorizationId!=null ? authorizationId : userName; // TODO: Check permission use given authzid!
+                        byte[] response = createResponseAuth(parsedDigestResponse);
+                        context.setNegotiationState(SaslState.COMPLETE);
+                        return response;
+                    } else {
+                        throw new SaslException(getMechanismName() + ": authentication failed - bad response");
+                    }
+
+                } else {
+                    throw new SaslException(getMechanismName() + ": missing response directive");
+                }
             }
-
-        } else {
-            throw new SaslException(getMechanismName() + ": missing response directive");
-        }
-
+        }, realmCallback, nameCallback, passwordCallback);
     }
 
     private byte[] createResponseAuth(HashMap<String, byte[]> parsedDigestResponse) {
@@ -326,10 +334,34 @@ public class MD5DigestSaslServer extends AbstractMD5DigestMechanism implements S
         getContext().setNegotiationState(STEP_ONE);
     }
 
+    @Override
+    public boolean isResettable() {
+        return true;
+    }
+
+    @Override
+    protected void resetState() {
+        authorizationId = null;
+        nonceCount = -1;
+        nonce = null;
+        getContext().setNegotiationState(STEP_ONE);
+    }
+
     @Override
     public byte[] evaluateResponse(byte[] response) throws SaslException {
         return evaluateMessage(response);
     }
 
+    /**
+     * Evaluate an authentication response received from the client without blocking on an
+     * {@link org.wildfly.security.sasl.util.AsyncCallbackHandler}.
+     *
+     * @param response the authentication response
+     * @param listener the listener to notify with the response to send to the client
+     */
+    public void evaluateResponseAsync(byte[] response, SaslEvaluationListener listener) {
+        evaluateMessage(response, listener);
+    }
+
 
 }
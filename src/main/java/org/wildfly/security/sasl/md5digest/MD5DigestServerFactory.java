@@ -55,6 +55,11 @@ public class MD5DigestServerFactory extends AbstractSaslFactory implements SaslS
             return null;
         }
 
+        final MD5DigestSaslServer idle = getIdleParticipant(MD5DigestSaslServer.class, protocol, serverName, cbh, props);
+        if (idle != null) {
+            return idle;
+        }
+
         String realmList = (String)props.get(AbstractMD5DigestMechanism.REALM_PROPERTY);
         String[] realms;
         if (realmList != null) {
@@ -74,7 +79,7 @@ public class MD5DigestServerFactory extends AbstractSaslFactory implements SaslS
         
         final MD5DigestSaslServer server = new MD5DigestSaslServer(realms, mechanism, protocol, serverName, cbh, charset, qops, cipherOpts);
         server.init();
-        return server;
+        return makePoolable(server, protocol, serverName, cbh, props);
     }
 
 }
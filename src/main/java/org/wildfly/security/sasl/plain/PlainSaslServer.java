@@ -20,6 +20,11 @@ package org.wildfly.security.sasl.plain;
 
 import static org.wildfly.security.sasl.plain.PlainServerFactory.PLAIN;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.util.Arrays;
+
 import javax.security.auth.callback.CallbackHandler;
 import javax.security.auth.callback.NameCallback;
 import javax.security.sasl.AuthorizeCallback;
@@ -27,6 +32,7 @@ import javax.security.sasl.SaslException;
 
 import org.wildfly.security.sasl.callback.VerifyPasswordCallback;
 import org.wildfly.security.sasl.util.AbstractSaslServer;
+import org.wildfly.security.sasl.util.CallbackContinuation;
 import org.wildfly.security.sasl.util.Charsets;
 import org.wildfly.security.sasl.util.SaslState;
 import org.wildfly.security.sasl.util.SaslStateContext;
@@ -39,7 +45,7 @@ public final class PlainSaslServer extends AbstractSaslServer {
 
     protected String authorizedId;
 
-    private final SaslState INITIAL = new SaslState() {
+    private static final SaslState INITIAL = new SaslState() {
 
         private static final byte UTF8NUL = 0x00;
 
@@ -54,97 +60,44 @@ public final class PlainSaslServer extends AbstractSaslServer {
                     throw new SaslException("Authentication message is too long");
                 }
 
-                String[] parts = split(message);
-                String authcid;
-                String authzid;
-                String passwd;
-                if (parts.length == 2) {
-                    authcid = parts[0];
-                    authzid = authcid;
-                    passwd = parts[1];
-                } else if (parts.length == 3) {
-                    authzid = parts[0];
-                    authcid = parts[1];
-                    passwd = parts[2];
-                } else {
-                    throw new SaslException("Invalid number of message parts (" + parts.length + ")");
+                // The message is split in place, only the identities are converted to Strings; the password is
+                // decoded straight into the server's reusable buffer so it can be wiped once verified.
+                final int authzidEnd = nextNul(message, 0, true);
+                final int authcidStart = authzidEnd + 1;
+                final int authcidEnd = nextNul(message, authcidStart, true);
+                final int passwdStart = authcidEnd + 1;
+                // Verify there is no nul after the password.
+                if (nextNul(message, passwdStart, false) > -1) {
+                    throw new SaslException("PLAIN: Invalid message format. (Too many delimiters)");
                 }
 
-                // By this point we have already created the Strings no point checking the length as the
-                // memory is already allocated.
-
-                // The message has now been parsed, split and converted to UTF-8 Strings
-                // now it is time to use the CallbackHandler to validate the supplied credentials.
+                final String authcid = new String(message, authcidStart, authcidEnd - authcidStart, Charsets.UTF_8);
+                final String authzid = authzidEnd == 0 ? authcid : new String(message, 0, authzidEnd, Charsets.UTF_8);
 
-                // First verify username and password.
+                // Now use the CallbackHandler to validate the supplied credentials, first verify username and password.
 
+                final PlainSaslServer server = getParticipant(context, PlainSaslServer.class);
+                final int passwdLength = server.decodePassword(message, passwdStart, length - passwdStart);
                 NameCallback ncb = new NameCallback("PLAIN authentication identity", authcid);
-                VerifyPasswordCallback vpc = new VerifyPasswordCallback(passwd);
-
-                handleCallbacks(ncb, vpc);
-
-                if (vpc.isVerified() == false) {
-                    throw new SaslException("PLAIN password not verified by CallbackHandler");
+                final VerifyPasswordCallback vpc = new VerifyPasswordCallback(server.passwordBuffer, 0, passwdLength);
+
+                try {
+                    return server.handleCallbacks(new CallbackContinuation() {
+                        public byte[] proceed(final SaslStateContext context) throws SaslException {
+                            server.wipePassword();
+                            if (vpc.isVerified() == false) {
+                                throw new SaslException("PLAIN password not verified by CallbackHandler");
+                            }
+
+                            // Now check the authorization id
+
+                            return server.authorize(authcid, authzid);
+                        }
+                    }, ncb, vpc);
+                } catch (SaslException | RuntimeException e) {
+                    server.wipePassword();
+                    throw e;
                 }
-
-                // Now check the authorization id
-
-                AuthorizeCallback acb = new AuthorizeCallback(authcid, authzid);
-                handleCallbacks(acb);
-
-                if (acb.isAuthorized() == true) {
-                    authorizedId = acb.getAuthorizedID();
-                } else {
-                    throw new SaslException("PLAIN: " + authcid +
-                            " is not authorized to act as " + authzid);
-                }
-
-                // negotiationComplete must only be called after the authorizedId is set.
-                context.negotiationComplete();
-                return null;
-            }
-        }
-
-        private String[] split(byte[] message) throws SaslException {
-            String authorizationId = null;
-            String authenticationId;
-            String password;
-
-            int startPos = 0;
-
-            int nextNul;
-            int length;
-            // Find the authorization ID
-            nextNul = nextNul(message, startPos, true);
-            if (nextNul > 0) {
-                length = length(nextNul, message.length, startPos);
-                authorizationId = new String(message, startPos, length, Charsets.UTF_8);
-                startPos += length + 1;
-            } else {
-                startPos++;
-            }
-
-            // Find the authentication ID
-            nextNul = nextNul(message, startPos, true);
-            length = length(nextNul, message.length, startPos);
-            authenticationId = new String(message, startPos, length, Charsets.UTF_8);
-            startPos += length + 1;
-
-            // Find the password
-            nextNul = nextNul(message, startPos, false);
-            // Verify there is no nul after the password.
-            if (nextNul > -1) {
-                throw new SaslException("PLAIN: Invalid message format. (Too many delimiters)");
-            }
-
-            length = length(nextNul, message.length, startPos);
-            password = new String(message, startPos, length, Charsets.UTF_8);
-            startPos += length + 1;
-
-            if (authorizationId == null) {
-                return new String[] { authenticationId, password };
-            } else {
-                return new String[] { authorizationId, authenticationId, password };
             }
         }
 
@@ -156,34 +109,78 @@ public final class PlainSaslServer extends AbstractSaslServer {
          * @return The position of the next nul byte.
          */
         private int nextNul(final byte[] message, final int startPos, final boolean mandatory) throws SaslException {
-            int nulpos = -1;
-
-            for (int i = startPos; i < message.length && nulpos < 0; i++) {
-                if (message[i] == UTF8NUL)
-                    nulpos = i;
+            for (int i = startPos; i < message.length; i++) {
+                if (message[i] == UTF8NUL) {
+                    return i;
+                }
             }
 
-            if (mandatory && nulpos < 0) {
+            if (mandatory) {
                 throw new SaslException("PLAIN: Invalid message format. (Missing delimiter)");
             }
 
-            return nulpos;
+            return -1;
         }
 
-        /**
-         * Calculate the length of the field based on the position of the nul, the length of the message
-         * and the starting point.
-         *
-         * @param nulPos
-         * @param messageLength
-         * @param startPos
-         * @return
-         */
-        private int length(final int nulPos, final int messageLength, final int startPos) {
-            return nulPos < 0 ? messageLength - startPos : nulPos - startPos;
+    };
+
+    private char[] passwordBuffer;
+    private int passwordLength;
+    private CharsetDecoder decoder;
+
+    /**
+     * Decode the UTF-8 password from the message into the password buffer, growing the buffer if required.
+     *
+     * @param message the message
+     * @param offset the offset of the password within the message
+     * @param length the length in bytes of the password
+     * @return the number of characters decoded
+     * @throws SaslException if the password is not valid UTF-8
+     */
+    private int decodePassword(final byte[] message, final int offset, final int length) throws SaslException {
+        // UTF-8 never decodes to more characters than it has bytes
+        if (passwordBuffer == null || passwordBuffer.length < length) {
+            passwordBuffer = new char[Math.max(length, 64)];
         }
+        if (decoder == null) {
+            decoder = Charsets.UTF_8.newDecoder();
+        } else {
+            decoder.reset();
+        }
+        final CharBuffer out = CharBuffer.wrap(passwordBuffer);
+        passwordLength = length;
+        if (decoder.decode(ByteBuffer.wrap(message, offset, length), out, true).isUnderflow() == false
+                || decoder.flush(out).isUnderflow() == false) {
+            wipePassword();
+            throw new SaslException("PLAIN: Invalid message format. (Password is not valid UTF-8)");
+        }
+        return passwordLength = out.position();
+    }
 
-    };
+    private void wipePassword() {
+        if (passwordLength > 0) {
+            Arrays.fill(passwordBuffer, 0, passwordLength, '\0');
+            passwordLength = 0;
+        }
+    }
+
+    private byte[] authorize(final String authcid, final String authzid) throws SaslException {
+        final AuthorizeCallback acb = new AuthorizeCallback(authcid, authzid);
+        return handleCallbacks(new CallbackContinuation() {
+            public byte[] proceed(final SaslStateContext context) throws SaslException {
+                if (acb.isAuthorized() == true) {
+                    authorizedId = acb.getAuthorizedID();
+                } else {
+                    throw new SaslException("PLAIN: " + authcid +
+                            " is not authorized to act as " + authzid);
+                }
+
+                // negotiationComplete must only be called after the authorizedId is set.
+                context.negotiationComplete();
+                return null;
+            }
+        }, acb);
+    }
 
     /**
      * Construct a new instance.
@@ -203,4 +200,27 @@ public final class PlainSaslServer extends AbstractSaslServer {
         return authorizedId;
     }
 
+    @Override
+    public boolean isResettable() {
+        return true;
+    }
+
+    @Override
+    protected void resetState() {
+        wipePassword();
+        authorizedId = null;
+        getContext().setNegotiationState(INITIAL);
+    }
+
+    @Override
+    protected void callbacksFailed() {
+        wipePassword();
+    }
+
+    @Override
+    public void dispose() throws SaslException {
+        wipePassword();
+        super.dispose();
+    }
+
 }
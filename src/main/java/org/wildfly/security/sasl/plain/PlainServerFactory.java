@@ -63,7 +63,11 @@ public class PlainServerFactory extends AbstractSaslFactory implements SaslServe
             return null;
         }
 
-        return new PlainSaslServer(protocol, serverName, cbh);
+        final PlainSaslServer idle = getIdleParticipant(PlainSaslServer.class, protocol, serverName, cbh, props);
+        if (idle != null) {
+            return idle;
+        }
+        return makePoolable(new PlainSaslServer(protocol, serverName, cbh), protocol, serverName, cbh, props);
     }
 
     @Override
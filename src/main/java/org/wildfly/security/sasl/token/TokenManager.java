@@ -0,0 +1,389 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.token;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.security.sasl.SaslException;
+
+import org.wildfly.security.auth.provider.RealmIdentity;
+import org.wildfly.security.sasl.util.Charsets;
+
+/**
+ * Issues and verifies the signed tokens used by the {@code JBOSS-TOKEN} mechanism.
+ * <p>
+ * A token binds a principal name and realm name to an expiry time and is signed with an HMAC, so verifying it needs no
+ * more than a single MAC computation.  The signing key can be rotated at any time; tokens signed with a retired key remain
+ * valid until they would have expired anyway.  Individual tokens, or all tokens issued to a principal so far, can be
+ * revoked.
+ * <p>
+ * Tokens are only verifiable by the manager which issued them, or by one sharing its keys.
+ */
+public final class TokenManager {
+
+    /**
+     * The default MAC algorithm.
+     */
+    public static final String DEFAULT_ALGORITHM = "HmacSHA256";
+
+    private static final byte VERSION = 1;
+    private static final int ID_LENGTH = 16;
+    private static final int MAX_NAME_LENGTH = 0xffff;
+
+    private final String algorithm;
+    private final long lifetime;
+    private final SecureRandom random = new SecureRandom();
+    private final KeyGenerator keyGenerator;
+    private final ConcurrentMap<Integer, SigningKey> keys = new ConcurrentHashMap<Integer, SigningKey>();
+    private final ConcurrentMap<TokenId, Long> revokedTokens = new ConcurrentHashMap<TokenId, Long>();
+    private final ConcurrentMap<String, Long> revokedPrincipals = new ConcurrentHashMap<String, Long>();
+    private volatile SigningKey currentKey;
+    private int nextKeyId;
+
+    /**
+     * Construct a new instance using the default algorithm and a generated key.
+     *
+     * @param lifetime the lifetime of issued tokens
+     * @param unit the unit of the lifetime
+     */
+    public TokenManager(final long lifetime, final TimeUnit unit) {
+        this(getDefaultKeyGenerator(), lifetime, unit);
+    }
+
+    /**
+     * Construct a new instance using the given MAC algorithm and a generated key.
+     *
+     * @param algorithm the MAC algorithm
+     * @param lifetime the lifetime of issued tokens
+     * @param unit the unit of the lifetime
+     * @throws NoSuchAlgorithmException if the algorithm is not available
+     */
+    public TokenManager(final String algorithm, final long lifetime, final TimeUnit unit) throws NoSuchAlgorithmException {
+        this(KeyGenerator.getInstance(algorithm), lifetime, unit);
+    }
+
+    private TokenManager(final KeyGenerator keyGenerator, final long lifetime, final TimeUnit unit) {
+        if (lifetime <= 0) {
+            throw new IllegalArgumentException("lifetime must be positive");
+        }
+        this.keyGenerator = keyGenerator;
+        this.algorithm = keyGenerator.getAlgorithm();
+        this.lifetime = unit.toMillis(lifetime);
+        rotateKey();
+    }
+
+    private static KeyGenerator getDefaultKeyGenerator() {
+        try {
+            return KeyGenerator.getInstance(DEFAULT_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the lifetime of issued tokens.
+     *
+     * @param unit the unit in which to return the lifetime
+     * @return the lifetime
+     */
+    public long getLifetime(final TimeUnit unit) {
+        return unit.convert(lifetime, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Start signing new tokens with a newly generated key.
+     */
+    public void rotateKey() {
+        final SecretKey key;
+        synchronized (keyGenerator) {
+            key = keyGenerator.generateKey();
+        }
+        rotateKey(key);
+    }
+
+    /**
+     * Start signing new tokens with the given key.  The key must be suitable for the MAC algorithm of this manager.
+     *
+     * @param key the new signing key
+     */
+    public synchronized void rotateKey(final SecretKey key) {
+        final SigningKey signingKey = new SigningKey(nextKeyId++, key);
+        // fail early on an unusable key
+        signingKey.getMac();
+        final long now = System.currentTimeMillis();
+        final SigningKey previous = currentKey;
+        keys.put(Integer.valueOf(signingKey.id), signingKey);
+        currentKey = signingKey;
+        if (previous != null) {
+            previous.retired = now;
+        }
+        final Iterator<SigningKey> iterator = keys.values().iterator();
+        while (iterator.hasNext()) {
+            final SigningKey existing = iterator.next();
+            if (existing.retired != 0 && existing.retired + lifetime < now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Issue a token for a principal in a realm.
+     *
+     * @param principalName the principal name
+     * @param realmName the realm name
+     * @return the signed token
+     */
+    public byte[] issueToken(final String principalName, final String realmName) {
+        final byte[] principal = principalName.getBytes(Charsets.UTF_8);
+        final byte[] realm = realmName.getBytes(Charsets.UTF_8);
+        if (principal.length > MAX_NAME_LENGTH || realm.length > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Principal or realm name is too long");
+        }
+        final byte[] id = new byte[ID_LENGTH];
+        random.nextBytes(id);
+        final SigningKey key = currentKey;
+        final Mac mac = key.getMac();
+        final long issued = System.currentTimeMillis();
+
+        final ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + 8 + 8 + ID_LENGTH + 2 + principal.length + 2 + realm.length + mac.getMacLength());
+        buffer.put(VERSION);
+        buffer.putInt(key.id);
+        buffer.putLong(issued);
+        buffer.putLong(issued + lifetime);
+        buffer.put(id);
+        buffer.putShort((short) principal.length);
+        buffer.put(principal);
+        buffer.putShort((short) realm.length);
+        buffer.put(realm);
+        mac.update(buffer.array(), 0, buffer.position());
+        try {
+            mac.doFinal(buffer.array(), buffer.position());
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Issue a token for a realm identity.
+     *
+     * @param identity the realm identity
+     * @return the signed token
+     */
+    public byte[] issueToken(final RealmIdentity identity) {
+        return issueToken(identity.getPrincipal().getName(), identity.getRealmName());
+    }
+
+    /**
+     * Revoke a token so that it is no longer accepted.  Tokens which are not valid are ignored.
+     *
+     * @param token the token to revoke
+     */
+    public void revokeToken(final byte[] token) {
+        final Token verified;
+        try {
+            verified = verifyToken(token, 0, token.length);
+        } catch (SaslException e) {
+            return;
+        }
+        revokedTokens.put(verified.id, Long.valueOf(verified.expiry));
+        purgeRevocations();
+    }
+
+    /**
+     * Revoke every token issued so far to a principal in a realm.
+     *
+     * @param principalName the principal name
+     * @param realmName the realm name
+     */
+    public void revokeTokens(final String principalName, final String realmName) {
+        revokedPrincipals.put(principalKey(principalName, realmName), Long.valueOf(System.currentTimeMillis()));
+        purgeRevocations();
+    }
+
+    private void purgeRevocations() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Long> tokens = revokedTokens.values().iterator();
+        while (tokens.hasNext()) {
+            if (tokens.next().longValue() < now) {
+                tokens.remove();
+            }
+        }
+        final Iterator<Long> principals = revokedPrincipals.values().iterator();
+        while (principals.hasNext()) {
+            if (principals.next().longValue() + lifetime < now) {
+                principals.remove();
+            }
+        }
+    }
+
+    private static String principalKey(final String principalName, final String realmName) {
+        return principalName + '\0' + realmName;
+    }
+
+    /**
+     * Verify a token.
+     *
+     * @param bytes the array containing the token
+     * @param offset the offset of the token
+     * @param length the length of the token
+     * @return the verified token
+     * @throws SaslException if the token is not valid
+     */
+    Token verifyToken(final byte[] bytes, final int offset, final int length) throws SaslException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        final long issued;
+        final long expiry;
+        final TokenId id;
+        final String principal;
+        final String realm;
+        try {
+            if (buffer.get() != VERSION) {
+                throw new SaslException("Unsupported token version");
+            }
+            final SigningKey key = keys.get(Integer.valueOf(buffer.getInt()));
+            if (key == null) {
+                throw new SaslException("Token signing key is not known");
+            }
+            issued = buffer.getLong();
+            expiry = buffer.getLong();
+            id = new TokenId(buffer.getLong(), buffer.getLong());
+            final int principalLength = buffer.getShort() & 0xffff;
+            principal = new String(bytes, buffer.position(), principalLength, Charsets.UTF_8);
+            buffer.position(buffer.position() + principalLength);
+            final int realmLength = buffer.getShort() & 0xffff;
+            realm = new String(bytes, buffer.position(), realmLength, Charsets.UTF_8);
+            buffer.position(buffer.position() + realmLength);
+
+            final Mac mac = key.getMac();
+            if (buffer.remaining() != mac.getMacLength()) {
+                throw new SaslException("Invalid token length");
+            }
+            mac.update(bytes, offset, buffer.position() - offset);
+            final byte[] expected = mac.doFinal();
+            final byte[] actual = new byte[expected.length];
+            buffer.get(actual);
+            if (! MessageDigest.isEqual(expected, actual)) {
+                throw new SaslException("Token signature is not valid");
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new SaslException("Malformed token", e);
+        }
+
+        if (expiry < System.currentTimeMillis()) {
+            throw new SaslException("Token has expired");
+        }
+        if (! revokedTokens.isEmpty() && revokedTokens.containsKey(id)) {
+            throw new SaslException("Token has been revoked");
+        }
+        if (! revokedPrincipals.isEmpty()) {
+            final Long revoked = revokedPrincipals.get(principalKey(principal, realm));
+            if (revoked != null && issued <= revoked.longValue()) {
+                throw new SaslException("Token has been revoked");
+            }
+        }
+        return new Token(id, principal, realm, expiry);
+    }
+
+    /**
+     * A verified token.
+     */
+    static final class Token {
+
+        private final TokenId id;
+        private final String principal;
+        private final String realm;
+        private final long expiry;
+
+        Token(final TokenId id, final String principal, final String realm, final long expiry) {
+            this.id = id;
+            this.principal = principal;
+            this.realm = realm;
+            this.expiry = expiry;
+        }
+
+        String getPrincipal() {
+            return principal;
+        }
+
+        String getRealm() {
+            return realm;
+        }
+    }
+
+    private final class SigningKey {
+
+        private final int id;
+        private final SecretKey key;
+        private final ThreadLocal<Mac> mac = new ThreadLocal<Mac>();
+        private volatile long retired;
+
+        SigningKey(final int id, final SecretKey key) {
+            this.id = id;
+            this.key = key;
+        }
+
+        Mac getMac() {
+            Mac mac = this.mac.get();
+            if (mac == null) {
+                try {
+                    mac = Mac.getInstance(algorithm);
+                    mac.init(key);
+                } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+                    throw new IllegalArgumentException("Unable to initialise MAC for signing key", e);
+                }
+                this.mac.set(mac);
+            }
+            return mac;
+        }
+    }
+
+    private static final class TokenId {
+
+        private final long high;
+        private final long low;
+
+        TokenId(final long high, final long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        public int hashCode() {
+            final long hash = high ^ low;
+            return (int) (hash ^ hash >>> 32);
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof TokenId && ((TokenId) obj).high == high && ((TokenId) obj).low == low;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.token;
+
+import static org.wildfly.security.sasl.token.TokenSaslFactory.JBOSS_TOKEN;
+
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.sasl.SaslException;
+
+import org.wildfly.security.sasl.callback.TokenCallback;
+import org.wildfly.security.sasl.util.AbstractSaslClient;
+import org.wildfly.security.sasl.util.ByteStringBuilder;
+import org.wildfly.security.sasl.util.SaslState;
+import org.wildfly.security.sasl.util.SaslStateContext;
+
+/**
+ * The client side of the {@code JBOSS-TOKEN} SASL mechanism.  The client sends the optional authorization ID followed by
+ * a NUL and the token obtained from a {@link TokenCallback} as its initial response.
+ */
+public final class TokenSaslClient extends AbstractSaslClient {
+
+    private static final SaslState INITIAL = new SaslState() {
+        public byte[] evaluateMessage(final SaslStateContext context, final byte[] message) throws SaslException {
+            if (message != null && message.length > 0) {
+                throw new SaslException("Invalid challenge received from server");
+            }
+            final TokenSaslClient client = getParticipant(context, TokenSaslClient.class);
+            final TokenCallback tokenCallback = new TokenCallback();
+            client.handleCallbacks(tokenCallback);
+            final byte[] token = tokenCallback.getToken();
+            if (token == null) {
+                throw new SaslException("No token available");
+            }
+            final ByteStringBuilder b = new ByteStringBuilder();
+            final String authorizationId = client.getAuthorizationId();
+            if (authorizationId != null) {
+                b.append(authorizationId);
+            }
+            b.append((byte) 0);
+            b.append(token);
+            context.negotiationComplete();
+            return b.toArray();
+        }
+    };
+
+    /**
+     * Construct a new instance.
+     *
+     * @param protocol the protocol
+     * @param serverName the server name
+     * @param callbackHandler the callback handler to use to obtain the token
+     * @param authorizationId the possibly {@code null} protocol-dependent name used for authorization
+     */
+    TokenSaslClient(final String protocol, final String serverName, final CallbackHandler callbackHandler, final String authorizationId) {
+        super(JBOSS_TOKEN, protocol, serverName, callbackHandler, authorizationId, true);
+        getContext().setNegotiationState(INITIAL);
+    }
+}
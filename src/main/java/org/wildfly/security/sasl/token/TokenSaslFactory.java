@@ -0,0 +1,45 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.token;
+
+import org.wildfly.security.sasl.util.AbstractSaslFactory;
+
+/**
+ * Base class for the {@code JBOSS-TOKEN} SASL mechanism, which authenticates a client by a {@linkplain TokenManager signed
+ * token} issued following an earlier authentication by some other mechanism.
+ * <p>
+ * The token is sent in the clear and can be replayed until it expires, so like a password the mechanism is considered
+ * plain text and susceptible to active attack.
+ */
+public abstract class TokenSaslFactory extends AbstractSaslFactory {
+
+    public static final String JBOSS_TOKEN = "JBOSS-TOKEN";
+
+    TokenSaslFactory() {
+        super(JBOSS_TOKEN);
+    }
+
+    protected boolean isDictionarySusceptible() {
+        return false;
+    }
+
+    protected boolean isAnonymous() {
+        return false;
+    }
+}
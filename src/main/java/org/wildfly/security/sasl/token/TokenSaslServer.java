@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.token;
+
+import static org.wildfly.security.sasl.token.TokenSaslFactory.JBOSS_TOKEN;
+
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+import javax.security.sasl.AuthorizeCallback;
+import javax.security.sasl.SaslException;
+
+import org.wildfly.security.auth.callback.SecurityDomainCallback;
+import org.wildfly.security.auth.provider.RealmIdentity;
+import org.wildfly.security.auth.provider.SecurityDomain;
+import org.wildfly.security.sasl.util.AbstractSaslServer;
+import org.wildfly.security.sasl.util.CallbackContinuation;
+import org.wildfly.security.sasl.util.Charsets;
+import org.wildfly.security.sasl.util.SaslState;
+import org.wildfly.security.sasl.util.SaslStateContext;
+
+/**
+ * The server side of the {@code JBOSS-TOKEN} SASL mechanism.  Authentication completes on the first message, which must
+ * hold a token issued by the server's {@link TokenManager}.
+ * <p>
+ * If the callback handler supplies a {@link SecurityDomain} through a {@link SecurityDomainCallback}, the principal of
+ * the token is mapped through the domain and must still belong to the realm the token was issued for.
+ */
+public final class TokenSaslServer extends AbstractSaslServer {
+
+    private static final SaslState INITIAL = new SaslState() {
+        public byte[] evaluateMessage(final SaslStateContext context, final byte[] message) throws SaslException {
+            final int length = message.length;
+            if (length == 0) {
+                // need initial response
+                return NO_BYTES;
+            }
+            final TokenSaslServer server = getParticipant(context, TokenSaslServer.class);
+            final int nul = Charsets.indexOf(message, 0, 0, length);
+            if (nul < 0) {
+                throw new SaslException("Invalid message format (missing delimiter)");
+            }
+            final TokenManager.Token token = server.tokenManager.verifyToken(message, nul + 1, length - nul - 1);
+            final String authenticationId = server.getAuthenticationId(token);
+            final String authorizationId = nul == 0 ? authenticationId : new String(message, 0, nul, Charsets.UTF_8);
+
+            final AuthorizeCallback authorizeCallback = new AuthorizeCallback(authenticationId, authorizationId);
+            return server.handleCallbacks(new CallbackContinuation() {
+                public byte[] proceed(final SaslStateContext context) throws SaslException {
+                    if (! authorizeCallback.isAuthorized()) {
+                        throw new SaslException(JBOSS_TOKEN + ": " + authenticationId + " is not authorized to act as " + authorizationId);
+                    }
+                    server.authorizedId = authorizeCallback.getAuthorizedID();
+                    context.negotiationComplete();
+                    return null;
+                }
+            }, authorizeCallback);
+        }
+    };
+
+    private final TokenManager tokenManager;
+    private String authorizedId;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param protocol the protocol
+     * @param serverName the server name
+     * @param callbackHandler the callback handler
+     * @param tokenManager the manager which issued the tokens to accept
+     */
+    TokenSaslServer(final String protocol, final String serverName, final CallbackHandler callbackHandler, final TokenManager tokenManager) {
+        super(JBOSS_TOKEN, protocol, serverName, callbackHandler);
+        this.tokenManager = tokenManager;
+        getContext().setNegotiationState(INITIAL);
+    }
+
+    private String getAuthenticationId(final TokenManager.Token token) throws SaslException {
+        final SecurityDomainCallback domainCallback = new SecurityDomainCallback();
+        try {
+            tryHandleCallbacks(domainCallback);
+        } catch (UnsupportedCallbackException e) {
+            // no security domain, rely on the authorization callback alone
+            return token.getPrincipal();
+        }
+        final SecurityDomain domain = domainCallback.getSecurityDomain();
+        if (domain == null) {
+            return token.getPrincipal();
+        }
+        final RealmIdentity identity = domain.mapName(token.getPrincipal());
+        if (identity == null || ! token.getRealm().equals(identity.getRealmName())) {
+            throw new SaslException(JBOSS_TOKEN + ": token was not issued for the realm of " + token.getPrincipal());
+        }
+        return identity.getPrincipal().getName();
+    }
+
+    public String getAuthorizationID() {
+        assertComplete();
+
+        return authorizedId;
+    }
+
+    @Override
+    public boolean isResettable() {
+        return true;
+    }
+
+    @Override
+    protected void resetState() {
+        authorizedId = null;
+        getContext().setNegotiationState(INITIAL);
+    }
+}
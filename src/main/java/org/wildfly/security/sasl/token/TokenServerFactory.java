@@ -0,0 +1,52 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.token;
+
+import java.util.Map;
+
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.sasl.SaslException;
+import javax.security.sasl.SaslServer;
+import javax.security.sasl.SaslServerFactory;
+
+import org.kohsuke.MetaInfServices;
+import org.wildfly.security.sasl.WildFlySasl;
+
+/**
+ * The server factory for the {@code JBOSS-TOKEN} SASL mechanism.  A server is only created if a {@link TokenManager} is
+ * given by the {@link WildFlySasl#TOKEN_MANAGER} property.
+ */
+@MetaInfServices(value = SaslServerFactory.class)
+public final class TokenServerFactory extends TokenSaslFactory implements SaslServerFactory {
+
+    public SaslServer createSaslServer(final String mechanism, final String protocol, final String serverName, final Map<String, ?> props, final CallbackHandler cbh) throws SaslException {
+        if (! JBOSS_TOKEN.equals(mechanism) || ! matches(props) || props == null) {
+            return null;
+        }
+        final Object tokenManager = props.get(WildFlySasl.TOKEN_MANAGER);
+        if (! (tokenManager instanceof TokenManager)) {
+            return null;
+        }
+        final TokenSaslServer idle = getIdleParticipant(TokenSaslServer.class, protocol, serverName, cbh, props);
+        if (idle != null) {
+            return idle;
+        }
+        return makePoolable(new TokenSaslServer(protocol, serverName, cbh, (TokenManager) tokenManager), protocol, serverName, cbh, props);
+    }
+}
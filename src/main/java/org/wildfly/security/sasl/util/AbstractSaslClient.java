@@ -59,6 +59,16 @@ public abstract class AbstractSaslClient extends AbstractSaslParticipant impleme
         return evaluateMessage(challenge);
     }
 
+    /**
+     * Evaluate an authentication challenge received from the server without blocking on an {@link AsyncCallbackHandler}.
+     *
+     * @param challenge the authentication challenge
+     * @param listener the listener to notify with the response to send to the server
+     */
+    public void evaluateChallengeAsync(final byte[] challenge, final SaslEvaluationListener listener) {
+        evaluateMessage(challenge, listener);
+    }
+
     /**
      * Determines whether this mechanism has an optional initial response.
      * If true, caller should call {@link #evaluateChallenge(byte[])} with an
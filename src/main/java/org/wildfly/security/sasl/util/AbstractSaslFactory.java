@@ -18,8 +18,10 @@
 
 package org.wildfly.security.sasl.util;
 
+import java.util.HashMap;
 import java.util.Map;
 
+import javax.security.auth.callback.CallbackHandler;
 import javax.security.sasl.Sasl;
 
 /**
@@ -31,7 +33,33 @@ public abstract class AbstractSaslFactory {
 
     static final String[] EMPTY = new String[0];
 
+    // Policy bits, each set in a policy mask when the policy is requested and in the characteristics of a mechanism which
+    // the policy excludes.
+
+    static final int PLAIN_TEXT = 1 << 0;
+    static final int ANONYMOUS = 1 << 1;
+    static final int NO_FORWARD_SECRECY = 1 << 2;
+    static final int ACTIVE_SUSCEPTIBLE = 1 << 3;
+    static final int DICTIONARY_SUSCEPTIBLE = 1 << 4;
+    static final int NO_PASS_CREDENTIALS = 1 << 5;
+
+    /**
+     * The number of distinct policy masks.
+     */
+    static final int POLICY_MASKS = 1 << 6;
+
+    private static final String[] POLICY_PROPERTIES = {
+        Sasl.POLICY_NOPLAINTEXT,
+        Sasl.POLICY_NOANONYMOUS,
+        Sasl.POLICY_FORWARD_SECRECY,
+        Sasl.POLICY_NOACTIVE,
+        Sasl.POLICY_NODICTIONARY,
+        Sasl.POLICY_PASS_CREDENTIALS,
+    };
+
     private final String[] names;
+    private volatile SaslParticipantPool pool;
+    private int characteristics = -1;
 
     /**
      * Construct a new instance.
@@ -42,6 +70,64 @@ public abstract class AbstractSaslFactory {
         names = new String[] { name };
     }
 
+    /**
+     * Set the maximum number of idle mechanism instances this factory retains for reuse.  While pooling is enabled,
+     * {@linkplain AbstractSaslParticipant#isResettable() resettable} instances created by this factory are reset and
+     * retained when they are disposed of, and are handed out again in place of a new instance for the same protocol, server
+     * name, callback handler and properties.  Only instances created by this factory instance take part, so pooling is of
+     * use to callers which hold on to the factory rather than creating participants through {@link Sasl}.
+     *
+     * @param maximumIdle the maximum number of idle instances to retain, or {@code 0} to disable pooling (the default)
+     */
+    public void setMaximumIdleInstances(final int maximumIdle) {
+        if (maximumIdle < 0) {
+            throw new IllegalArgumentException("maximumIdle must not be negative");
+        }
+        pool = maximumIdle == 0 ? null : new SaslParticipantPool(maximumIdle);
+    }
+
+    /**
+     * Get an idle pooled participant created with the given configuration, if pooling is enabled and there is one.
+     *
+     * @param type the participant type
+     * @param protocol the protocol
+     * @param serverName the server name
+     * @param callbackHandler the callback handler
+     * @param props the properties
+     * @param <T> the participant type
+     * @return the reset participant, or {@code null} if there is no idle participant to reuse
+     */
+    protected <T extends AbstractSaslParticipant> T getIdleParticipant(final Class<T> type, final String protocol, final String serverName,
+            final CallbackHandler callbackHandler, final Map<String, ?> props) {
+        final SaslParticipantPool pool = this.pool;
+        if (pool == null) {
+            return null;
+        }
+        final AbstractSaslParticipant participant = pool.take(protocol, serverName, callbackHandler, props);
+        return type.isInstance(participant) ? type.cast(participant) : null;
+    }
+
+    /**
+     * Arrange for a newly created participant to be returned to the pool when it is disposed of, if pooling is enabled and
+     * the participant is resettable.
+     *
+     * @param participant the new participant
+     * @param protocol the protocol
+     * @param serverName the server name
+     * @param callbackHandler the callback handler
+     * @param props the properties
+     * @param <T> the participant type
+     * @return the participant
+     */
+    protected <T extends AbstractSaslParticipant> T makePoolable(final T participant, final String protocol, final String serverName,
+            final CallbackHandler callbackHandler, final Map<String, ?> props) {
+        final SaslParticipantPool pool = this.pool;
+        if (pool != null) {
+            pool.attach(participant, protocol, serverName, callbackHandler, props);
+        }
+        return participant;
+    }
+
     /**
      * Get the mechanism names matching the given properties.
      *
@@ -64,12 +150,63 @@ public abstract class AbstractSaslFactory {
      * @return {@code true} if there is a match, {@code false} otherwise
      */
     protected boolean matches(final Map<String, ?> props) {
-        return  ! (getPropertyValue(Sasl.POLICY_NOPLAINTEXT, props, false) && isPlainText()
-                || getPropertyValue(Sasl.POLICY_NOANONYMOUS, props, false) && isAnonymous()
-                || getPropertyValue(Sasl.POLICY_FORWARD_SECRECY, props, false) && ! isForwardSecrecy()
-                || getPropertyValue(Sasl.POLICY_NOACTIVE, props, false) && isActiveSusceptible()
-                || getPropertyValue(Sasl.POLICY_NODICTIONARY, props, false) && isDictionarySusceptible()
-                || getPropertyValue(Sasl.POLICY_PASS_CREDENTIALS, props, false) && ! isPassCredentials());
+        return (getCharacteristics() & getPolicyMask(props)) == 0;
+    }
+
+    /**
+     * Get the characteristics of this mechanism as a mask of the policy bits which exclude it.  The mask is computed once,
+     * so the {@code is*} methods must return constant values.
+     *
+     * @return the characteristics mask
+     */
+    final int getCharacteristics() {
+        int characteristics = this.characteristics;
+        if (characteristics == -1) {
+            characteristics = (isPlainText() ? PLAIN_TEXT : 0)
+                    | (isAnonymous() ? ANONYMOUS : 0)
+                    | (isForwardSecrecy() ? 0 : NO_FORWARD_SECRECY)
+                    | (isActiveSusceptible() ? ACTIVE_SUSCEPTIBLE : 0)
+                    | (isDictionarySusceptible() ? DICTIONARY_SUSCEPTIBLE : 0)
+                    | (isPassCredentials() ? 0 : NO_PASS_CREDENTIALS);
+            this.characteristics = characteristics;
+        }
+        return characteristics;
+    }
+
+    /**
+     * Get the mask of the policies requested by the given properties.
+     *
+     * @param props the properties, may be {@code null}
+     * @return the policy mask
+     */
+    static int getPolicyMask(final Map<String, ?> props) {
+        if (props == null || props.isEmpty()) {
+            return 0;
+        }
+        int mask = 0;
+        for (int i = 0; i < POLICY_PROPERTIES.length; i++) {
+            final Object value = props.get(POLICY_PROPERTIES[i]);
+            if (value != null && (value instanceof Boolean ? ((Boolean) value).booleanValue() : Boolean.parseBoolean(value.toString()))) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Get properties which request the policies of the given mask.
+     *
+     * @param mask the policy mask
+     * @return the properties
+     */
+    static Map<String, ?> getPolicyProperties(final int mask) {
+        final Map<String, Object> props = new HashMap<String, Object>();
+        for (int i = 0; i < POLICY_PROPERTIES.length; i++) {
+            if ((mask & 1 << i) != 0) {
+                props.put(POLICY_PROPERTIES[i], Boolean.TRUE);
+            }
+        }
+        return props;
     }
 
     /**
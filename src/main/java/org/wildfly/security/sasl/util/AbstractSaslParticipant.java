@@ -18,12 +18,15 @@
 
 package org.wildfly.security.sasl.util;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
 import javax.security.auth.callback.UnsupportedCallbackException;
 import javax.security.sasl.SaslException;
+import javax.security.sasl.SaslServer;
 
 /**
  * A common base class for SASL participants.
@@ -37,15 +40,16 @@ public abstract class AbstractSaslParticipant {
      */
     public static final byte[] NO_BYTES = new byte[0];
 
-    private final SaslStateContext context = new SaslStateContext() {
-        public void setNegotiationState(final SaslState newState) {
-            state = newState;
-        }
+    /**
+     * The marker returned by {@link #handleCallbacks(CallbackContinuation, Callback...)} when evaluation has been suspended.
+     */
+    private static final byte[] SUSPENDED = new byte[0];
 
-        public void negotiationComplete() {
-            state = SaslState.COMPLETE;
-        }
-    };
+    private static final RuntimePermission SET_INSTRUMENTATION_LISTENER_PERMISSION = new RuntimePermission("setSaslInstrumentationListener");
+
+    private static volatile SaslInstrumentationListener instrumentationListener;
+
+    private final StateContext context = new StateContext();
 
     private final String mechanismName;
     private final CallbackHandler callbackHandler;
@@ -53,7 +57,14 @@ public abstract class AbstractSaslParticipant {
     private final String serverName;
 
     private SaslState state;
+    private volatile SaslEvaluationListener listener;
     private SaslWrapper wrapper;
+    private ByteBufferSaslWrapper byteBufferWrapper;
+    private Measurement measurement;
+
+    SaslParticipantPool pool;
+    SaslParticipantPool.Key poolKey;
+    boolean idle;
 
     /**
      * Construct a new instance.
@@ -84,6 +95,70 @@ public abstract class AbstractSaslParticipant {
         }
     }
 
+    /**
+     * Handle callbacks and then continue evaluating the current message.  When the message is being evaluated
+     * asynchronously and the callback handler is an {@link AsyncCallbackHandler}, the callbacks are handled without
+     * blocking and the value returned must in turn be returned by the current {@link SaslState}; the continuation is run
+     * once the callbacks have been handled.  Otherwise the callbacks are handled and the continuation run immediately.
+     *
+     * @param continuation the remainder of the evaluation
+     * @param callbacks the callbacks to handle
+     * @return the value to return from the current state
+     * @throws SaslException if a callback failed or negotiation has failed
+     */
+    protected byte[] handleCallbacks(final CallbackContinuation continuation, final Callback... callbacks) throws SaslException {
+        final SaslEvaluationListener listener = this.listener;
+        if (listener == null || ! (callbackHandler instanceof AsyncCallbackHandler)) {
+            handleCallbacks(callbacks);
+            return continuation.proceed(context);
+        }
+        final Measurement measurement = this.measurement;
+        final long start = measurement == null ? 0L : System.nanoTime();
+        ((AsyncCallbackHandler) callbackHandler).handle(callbacks, new AsyncCallbackHandler.Completion() {
+            public void handled() {
+                if (measurement != null) {
+                    measurement.stepCallbackTime += System.nanoTime() - start;
+                }
+                final byte[] result;
+                try {
+                    result = continuation.proceed(context);
+                } catch (SaslException e) {
+                    evaluationFailed(listener, e);
+                    return;
+                } catch (RuntimeException e) {
+                    evaluationFailed(listener, new SaslException("SASL evaluation failed", e));
+                    return;
+                }
+                if (result != SUSPENDED) {
+                    evaluationComplete(listener, result);
+                }
+            }
+
+            public void failed(final Throwable cause) {
+                if (measurement != null) {
+                    measurement.stepCallbackTime += System.nanoTime() - start;
+                }
+                callbacksFailed();
+                if (cause instanceof UnsupportedCallbackException) {
+                    evaluationFailed(listener, new SaslException("Callback handler cannot support callback " + ((UnsupportedCallbackException) cause).getCallback().getClass(), cause));
+                } else if (cause instanceof SaslException) {
+                    evaluationFailed(listener, (SaslException) cause);
+                } else {
+                    evaluationFailed(listener, new SaslException("Callback handler invocation failed", cause));
+                }
+            }
+        });
+        return SUSPENDED;
+    }
+
+    /**
+     * Called when callbacks being handled asynchronously by {@link #handleCallbacks(CallbackContinuation, Callback...)}
+     * have failed, in place of the continuation and before the failure is reported.  Participants which hold sensitive
+     * state for the continuation, such as a password, should discard it here.
+     */
+    protected void callbacksFailed() {
+    }
+
     /**
      * Handle callbacks, wrapping exceptions as needed.
      *
@@ -92,17 +167,81 @@ public abstract class AbstractSaslParticipant {
      * @throws UnsupportedCallbackException if a callback isn't supported
      */
     protected void tryHandleCallbacks(Callback... callbacks) throws SaslException, UnsupportedCallbackException {
+        final Measurement measurement = this.measurement;
+        final long start = measurement == null ? 0L : System.nanoTime();
         try {
             callbackHandler.handle(callbacks);
         } catch (SaslException | UnsupportedCallbackException e) {
             throw e;
         } catch (Throwable t) {
             throw new SaslException("Callback handler invocation failed", t);
+        } finally {
+            if (measurement != null) {
+                measurement.stepCallbackTime += System.nanoTime() - start;
+            }
         }
     }
 
     public void init() {}
 
+    /**
+     * Get the participant to which the given state context belongs.  This allows a {@link SaslState} which needs access
+     * to the participant to be shared by all instances of a mechanism rather than being allocated for each instance.
+     *
+     * @param context the context passed to {@link SaslState#evaluateMessage(SaslStateContext, byte[])}
+     * @param type the participant type
+     * @param <T> the participant type
+     * @return the participant
+     * @throws IllegalArgumentException if the context does not belong to a participant of the given type
+     */
+    protected static <T extends AbstractSaslParticipant> T getParticipant(final SaslStateContext context, final Class<T> type) {
+        if (context instanceof StateContext) {
+            final AbstractSaslParticipant participant = ((StateContext) context).getParticipant();
+            if (type.isInstance(participant)) {
+                return type.cast(participant);
+            }
+        }
+        throw new IllegalArgumentException("State context does not belong to a participant of " + type);
+    }
+
+    /**
+     * Determine whether this participant can be {@linkplain #reset() reset} and reused for another authentication
+     * exchange.
+     *
+     * @return {@code true} if it can (default is {@code false})
+     */
+    public boolean isResettable() {
+        return false;
+    }
+
+    /**
+     * Reset this participant so that it can be reused for a new authentication exchange with the same protocol, server
+     * name, callback handler and configuration.  The outcome of any previous exchange is discarded, including any
+     * configured wrapper.
+     *
+     * @throws UnsupportedOperationException if this participant is not {@linkplain #isResettable() resettable}
+     * @throws IllegalStateException if an asynchronous evaluation is in progress
+     */
+    public void reset() {
+        if (! isResettable()) {
+            throw new UnsupportedOperationException("Mechanism " + mechanismName + " cannot be reset");
+        }
+        if (listener != null) {
+            throw new IllegalStateException("Evaluation in progress");
+        }
+        state = SaslState.FAILED;
+        measurement = null;
+        setWrapper(null);
+        resetState();
+    }
+
+    /**
+     * Clear the state of the previous authentication exchange and set the initial negotiation state.  Called by
+     * {@link #reset()}, so must be implemented by participants which are {@linkplain #isResettable() resettable}.
+     */
+    protected void resetState() {
+    }
+
     /**
      * Get the name of this mechanism.
      *
@@ -158,15 +297,129 @@ public abstract class AbstractSaslParticipant {
     }
 
     protected byte[] evaluateMessage(final byte[] message) throws SaslException {
+        final Measurement measurement = startStep(message);
         boolean ok = false;
+        byte[] result = null;
         try {
-            byte[] result = state.evaluateMessage(context, message);
+            result = state.evaluateMessage(context, message);
             ok = true;
             return result;
         } finally {
             if (! ok) {
                 state = SaslState.FAILED;
             }
+            if (measurement != null) {
+                endStep(measurement, result, ok);
+            }
+        }
+    }
+
+    /**
+     * Evaluate a message without blocking on an {@link AsyncCallbackHandler}.  The listener is notified once the message
+     * has been evaluated, which may be before this method returns.  Only one evaluation may be in progress at a time.
+     *
+     * @param message the message to evaluate
+     * @param listener the listener to notify of the result
+     * @throws IllegalStateException if an evaluation is already in progress
+     */
+    protected void evaluateMessage(final byte[] message, final SaslEvaluationListener listener) {
+        if (this.listener != null) {
+            throw new IllegalStateException("Evaluation already in progress");
+        }
+        this.listener = listener;
+        startStep(message);
+        final byte[] result;
+        try {
+            result = state.evaluateMessage(context, message);
+        } catch (SaslException e) {
+            evaluationFailed(listener, e);
+            return;
+        } catch (RuntimeException e) {
+            evaluationFailed(listener, new SaslException("SASL evaluation failed", e));
+            return;
+        }
+        if (result != SUSPENDED) {
+            evaluationComplete(listener, result);
+        }
+    }
+
+    private void evaluationComplete(final SaslEvaluationListener listener, final byte[] result) {
+        final Measurement measurement = this.measurement;
+        if (measurement != null) {
+            endStep(measurement, result, true);
+        }
+        this.listener = null;
+        listener.evaluated(result);
+    }
+
+    private void evaluationFailed(final SaslEvaluationListener listener, final SaslException cause) {
+        state = SaslState.FAILED;
+        final Measurement measurement = this.measurement;
+        if (measurement != null) {
+            endStep(measurement, null, false);
+        }
+        this.listener = null;
+        listener.failed(cause);
+    }
+
+    /**
+     * Install the listener to be notified of the progress of all subsequent authentication exchanges.  An exchange which
+     * is already in progress continues to be reported to the listener which was installed when it began.
+     *
+     * @param listener the listener, or {@code null} to disable instrumentation
+     * @throws SecurityException if a security manager is installed and the caller does not have the
+     *      {@code setSaslInstrumentationListener} {@link RuntimePermission}
+     */
+    public static void setInstrumentationListener(final SaslInstrumentationListener listener) {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(SET_INSTRUMENTATION_LISTENER_PERMISSION);
+        }
+        instrumentationListener = listener;
+    }
+
+    /**
+     * Get the installed instrumentation listener.
+     *
+     * @return the listener, or {@code null} if instrumentation is disabled
+     */
+    public static SaslInstrumentationListener getInstrumentationListener() {
+        return instrumentationListener;
+    }
+
+    private Measurement startStep(final byte[] message) {
+        Measurement measurement = this.measurement;
+        if (measurement == null) {
+            final SaslInstrumentationListener instrumentationListener = AbstractSaslParticipant.instrumentationListener;
+            if (instrumentationListener == null) {
+                return null;
+            }
+            measurement = this.measurement = new Measurement(instrumentationListener);
+        }
+        measurement.messageSize = message == null ? 0 : message.length;
+        measurement.stepCallbackTime = 0L;
+        measurement.stepStart = System.nanoTime();
+        return measurement;
+    }
+
+    private void endStep(final Measurement measurement, final byte[] reply, final boolean ok) {
+        final long stepTime = System.nanoTime() - measurement.stepStart;
+        final boolean server = this instanceof SaslServer;
+        final int step = ++measurement.steps;
+        measurement.evaluationTime += stepTime;
+        measurement.callbackTime += measurement.stepCallbackTime;
+        final boolean ended = ! ok || state == SaslState.COMPLETE || state == SaslState.FAILED;
+        if (ended) {
+            this.measurement = null;
+        }
+        // a faulty listener must not affect the outcome of the exchange
+        final SaslInstrumentationListener listener = measurement.listener;
+        try {
+            listener.stepEvaluated(mechanismName, server, step, stepTime, measurement.stepCallbackTime, measurement.messageSize, ok && reply != null ? reply.length : -1);
+            if (ended) {
+                listener.exchangeEnded(mechanismName, server, ok && state == SaslState.COMPLETE, step, measurement.evaluationTime, measurement.callbackTime);
+            }
+        } catch (RuntimeException ignored) {
         }
     }
 
@@ -177,6 +430,7 @@ public abstract class AbstractSaslParticipant {
      */
     protected void setWrapper(final SaslWrapper wrapper) {
         this.wrapper = wrapper;
+        byteBufferWrapper = ByteBufferSaslWrapperAdapter.adapt(wrapper);
     }
 
     /**
@@ -215,6 +469,58 @@ public abstract class AbstractSaslParticipant {
         return wrapper.unwrap(incoming, offset, len);
     }
 
+    /**
+     * Wraps the remaining content of a buffer to be sent to the other participant.
+     *
+     * @param outgoing the buffer containing the bytes to encode
+     * @param target the buffer to receive the encoded bytes
+     * @exception SaslException if wrapping fails
+     * @exception BufferOverflowException if the target buffer has insufficient space remaining
+     * @exception IllegalStateException if wrapping is not configured
+     * @see ByteBufferSaslWrapper#wrap(ByteBuffer, ByteBuffer)
+     */
+    public void wrap(final ByteBuffer outgoing, final ByteBuffer target) throws SaslException {
+        getByteBufferWrapper().wrap(outgoing, target);
+    }
+
+    /**
+     * Wraps the remaining content of several buffers as a single message to be sent to the other participant.
+     *
+     * @param outgoing the buffers containing the bytes to encode
+     * @param offset the index of the first buffer to encode
+     * @param length the number of buffers to encode
+     * @param target the buffer to receive the encoded bytes
+     * @exception SaslException if wrapping fails
+     * @exception BufferOverflowException if the target buffer has insufficient space remaining
+     * @exception IllegalStateException if wrapping is not configured
+     * @see ByteBufferSaslWrapper#wrap(ByteBuffer[], int, int, ByteBuffer)
+     */
+    public void wrap(final ByteBuffer[] outgoing, final int offset, final int length, final ByteBuffer target) throws SaslException {
+        getByteBufferWrapper().wrap(outgoing, offset, length, target);
+    }
+
+    /**
+     * Unwraps the remaining content of a buffer received from the other participant.
+     *
+     * @param incoming the buffer containing the bytes to decode
+     * @param target the buffer to receive the decoded bytes
+     * @exception SaslException if unwrapping fails
+     * @exception BufferOverflowException if the target buffer has insufficient space remaining
+     * @exception IllegalStateException if wrapping is not configured
+     * @see ByteBufferSaslWrapper#unwrap(ByteBuffer, ByteBuffer)
+     */
+    public void unwrap(final ByteBuffer incoming, final ByteBuffer target) throws SaslException {
+        getByteBufferWrapper().unwrap(incoming, target);
+    }
+
+    private ByteBufferSaslWrapper getByteBufferWrapper() {
+        ByteBufferSaslWrapper wrapper = byteBufferWrapper;
+        if (wrapper == null) {
+            throw new IllegalStateException("Wrapping is not configured");
+        }
+        return wrapper;
+    }
+
     /**
      * Determine whether the authentication exchange has completed.
      *
@@ -282,10 +588,48 @@ public abstract class AbstractSaslParticipant {
 
 
     /**
-     * Dispose of this participant.
+     * Dispose of this participant.  A participant obtained from a pooling factory is reset and returned to the pool for
+     * reuse.
      *
      * @throws SaslException if disposal failed
      */
     public void dispose() throws SaslException {
+        final SaslParticipantPool pool = this.pool;
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
+
+    /**
+     * The measurements of an instrumented authentication exchange.
+     */
+    private static final class Measurement {
+
+        private final SaslInstrumentationListener listener;
+        private int steps;
+        private long evaluationTime;
+        private long callbackTime;
+        private long stepStart;
+        private long stepCallbackTime;
+        private int messageSize;
+
+        Measurement(final SaslInstrumentationListener listener) {
+            this.listener = listener;
+        }
+    }
+
+    private final class StateContext implements SaslStateContext {
+
+        public void setNegotiationState(final SaslState newState) {
+            state = newState;
+        }
+
+        public void negotiationComplete() {
+            state = SaslState.COMPLETE;
+        }
+
+        AbstractSaslParticipant getParticipant() {
+            return AbstractSaslParticipant.this;
+        }
     }
 }
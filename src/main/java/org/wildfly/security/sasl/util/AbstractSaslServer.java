@@ -51,4 +51,14 @@ public abstract class AbstractSaslServer extends AbstractSaslParticipant impleme
     public byte[] evaluateResponse(final byte[] response) throws SaslException {
         return evaluateMessage(response);
     }
+
+    /**
+     * Evaluate an authentication response received from the client without blocking on an {@link AsyncCallbackHandler}.
+     *
+     * @param response the authentication response
+     * @param listener the listener to notify with the response to send to the client
+     */
+    public void evaluateResponseAsync(final byte[] response, final SaslEvaluationListener listener) {
+        evaluateMessage(response, listener);
+    }
 }
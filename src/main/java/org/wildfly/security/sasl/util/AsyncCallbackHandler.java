@@ -0,0 +1,58 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.util;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+
+/**
+ * A callback handler which is able to handle callbacks without blocking the calling thread.  When a SASL participant is
+ * evaluating a message asynchronously it uses {@link #handle(Callback[], Completion)} and resumes negotiation once the
+ * completion is notified; when evaluating synchronously the blocking {@link #handle(Callback[])} method is used.
+ */
+public interface AsyncCallbackHandler extends CallbackHandler {
+
+    /**
+     * Begin handling the given callbacks.  The completion must be notified exactly once, on any thread, when handling
+     * has finished or failed.
+     *
+     * @param callbacks the callbacks to handle
+     * @param completion the completion to notify
+     */
+    void handle(Callback[] callbacks, Completion completion);
+
+    /**
+     * The completion of an asynchronous callback handler invocation.
+     */
+    interface Completion {
+
+        /**
+         * Indicate that all of the callbacks have been handled.
+         */
+        void handled();
+
+        /**
+         * Indicate that handling the callbacks failed.  A {@link javax.security.auth.callback.UnsupportedCallbackException}
+         * should be given if one of the callbacks is not supported.
+         *
+         * @param cause the cause of the failure
+         */
+        void failed(Throwable cause);
+    }
+}
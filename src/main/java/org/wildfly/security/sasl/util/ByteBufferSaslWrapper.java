@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.util;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import javax.security.sasl.SaslException;
+
+/**
+ * A {@link SaslWrapper} which can also wrap and unwrap the content of {@link ByteBuffer}s, which may be heap or direct
+ * buffers.
+ * <p>
+ * Each method consumes all of the remaining bytes of the source buffers and writes the result into the target buffer,
+ * advancing the positions of each.  If the target buffer does not have enough space remaining for the result a
+ * {@link BufferOverflowException} is thrown and the positions of all of the buffers are left unchanged.
+ */
+public interface ByteBufferSaslWrapper extends SaslWrapper {
+
+    /**
+     * Wrap the remaining content of a buffer to be sent to the other participant.
+     *
+     * @param outgoing the buffer containing the bytes to encode
+     * @param target the buffer to receive the encoded bytes
+     * @throws SaslException if wrapping fails
+     * @throws BufferOverflowException if the target buffer has insufficient space remaining
+     */
+    void wrap(ByteBuffer outgoing, ByteBuffer target) throws SaslException, BufferOverflowException;
+
+    /**
+     * Wrap the remaining content of several buffers as a single message to be sent to the other participant.
+     *
+     * @param outgoing the buffers containing the bytes to encode
+     * @param offset the index of the first buffer to encode
+     * @param length the number of buffers to encode
+     * @param target the buffer to receive the encoded bytes
+     * @throws SaslException if wrapping fails
+     * @throws BufferOverflowException if the target buffer has insufficient space remaining
+     */
+    void wrap(ByteBuffer[] outgoing, int offset, int length, ByteBuffer target) throws SaslException, BufferOverflowException;
+
+    /**
+     * Unwrap the remaining content of a buffer received from the other participant.
+     *
+     * @param incoming the buffer containing the bytes to decode
+     * @param target the buffer to receive the decoded bytes
+     * @throws SaslException if unwrapping fails
+     * @throws BufferOverflowException if the target buffer has insufficient space remaining
+     */
+    void unwrap(ByteBuffer incoming, ByteBuffer target) throws SaslException, BufferOverflowException;
+}
@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.util;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import javax.security.sasl.SaslException;
+
+/**
+ * A {@link ByteBufferSaslWrapper} which delegates to an array based {@link SaslWrapper}.  The backing array of a heap
+ * buffer is passed to the delegate directly; the content of direct buffers, or of multiple buffers being wrapped as one
+ * message, is first copied to an array.
+ */
+public final class ByteBufferSaslWrapperAdapter implements ByteBufferSaslWrapper {
+
+    private final SaslWrapper delegate;
+
+    private ByteBufferSaslWrapperAdapter(final SaslWrapper delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Get a {@link ByteBufferSaslWrapper} for the given wrapper, adapting it only if it does not support buffers itself.
+     *
+     * @param wrapper the wrapper, or {@code null} for none
+     * @return the buffer based wrapper, or {@code null} if the given wrapper was {@code null}
+     */
+    public static ByteBufferSaslWrapper adapt(final SaslWrapper wrapper) {
+        if (wrapper == null || wrapper instanceof ByteBufferSaslWrapper) {
+            return (ByteBufferSaslWrapper) wrapper;
+        }
+        return new ByteBufferSaslWrapperAdapter(wrapper);
+    }
+
+    public byte[] wrap(final byte[] outgoing, final int offset, final int len) throws SaslException {
+        return delegate.wrap(outgoing, offset, len);
+    }
+
+    public byte[] unwrap(final byte[] incoming, final int offset, final int len) throws SaslException {
+        return delegate.unwrap(incoming, offset, len);
+    }
+
+    public void wrap(final ByteBuffer outgoing, final ByteBuffer target) throws SaslException, BufferOverflowException {
+        final int len = outgoing.remaining();
+        final byte[] result;
+        if (outgoing.hasArray()) {
+            result = delegate.wrap(outgoing.array(), outgoing.arrayOffset() + outgoing.position(), len);
+        } else {
+            result = delegate.wrap(copyOf(outgoing), 0, len);
+        }
+        transfer(result, outgoing, target);
+    }
+
+    public void wrap(final ByteBuffer[] outgoing, final int offset, final int length, final ByteBuffer target) throws SaslException, BufferOverflowException {
+        if (length == 1) {
+            wrap(outgoing[offset], target);
+            return;
+        }
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            total += outgoing[i].remaining();
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new SaslException("Message too large to wrap");
+        }
+        final byte[] bytes = new byte[(int) total];
+        int pos = 0;
+        for (int i = offset; i < offset + length; i++) {
+            final ByteBuffer buffer = outgoing[i].duplicate();
+            final int cnt = buffer.remaining();
+            buffer.get(bytes, pos, cnt);
+            pos += cnt;
+        }
+        final byte[] result = delegate.wrap(bytes, 0, bytes.length);
+        if (target.remaining() < result.length) {
+            throw new BufferOverflowException();
+        }
+        for (int i = offset; i < offset + length; i++) {
+            outgoing[i].position(outgoing[i].limit());
+        }
+        target.put(result);
+    }
+
+    public void unwrap(final ByteBuffer incoming, final ByteBuffer target) throws SaslException, BufferOverflowException {
+        final int len = incoming.remaining();
+        final byte[] result;
+        if (incoming.hasArray()) {
+            result = delegate.unwrap(incoming.array(), incoming.arrayOffset() + incoming.position(), len);
+        } else {
+            result = delegate.unwrap(copyOf(incoming), 0, len);
+        }
+        transfer(result, incoming, target);
+    }
+
+    private static byte[] copyOf(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static void transfer(final byte[] result, final ByteBuffer source, final ByteBuffer target) {
+        if (target.remaining() < result.length) {
+            throw new BufferOverflowException();
+        }
+        source.position(source.limit());
+        target.put(result);
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.util;
+
+import javax.security.sasl.SaslException;
+
+/**
+ * The remainder of a {@link SaslState} evaluation which is to run once callbacks have been handled.
+ *
+ * @see AbstractSaslParticipant#handleCallbacks(CallbackContinuation, javax.security.auth.callback.Callback...)
+ */
+public interface CallbackContinuation {
+
+    /**
+     * Continue evaluating the current message.
+     *
+     * @param context the state context
+     * @return the reply message
+     * @throws SaslException if negotiation has failed
+     */
+    byte[] proceed(SaslStateContext context) throws SaslException;
+}
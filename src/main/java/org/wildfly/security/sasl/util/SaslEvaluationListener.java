@@ -0,0 +1,42 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.util;
+
+import javax.security.sasl.SaslException;
+
+/**
+ * A listener for the result of an asynchronous evaluation of a SASL challenge or response message.  The listener may be
+ * called on the thread which began the evaluation or on any thread used by an {@link AsyncCallbackHandler}.
+ */
+public interface SaslEvaluationListener {
+
+    /**
+     * Indicate that the message has been evaluated.
+     *
+     * @param reply the reply message, which may be {@code null}
+     */
+    void evaluated(byte[] reply);
+
+    /**
+     * Indicate that the evaluation failed, after which negotiation cannot continue.
+     *
+     * @param cause the cause of the failure
+     */
+    void failed(SaslException cause);
+}
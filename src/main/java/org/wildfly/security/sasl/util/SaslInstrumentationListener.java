@@ -0,0 +1,61 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.util;
+
+/**
+ * A listener which is notified of the progress of every SASL authentication exchange performed by mechanisms based on
+ * {@link AbstractSaslParticipant}, for monitoring and profiling purposes.  A listener is installed by calling
+ * {@link AbstractSaslParticipant#setInstrumentationListener(SaslInstrumentationListener)}; when none is installed the
+ * only cost to an exchange is a single volatile read per message.
+ * <p>
+ * Times are measured in nanoseconds.  The callback time is the portion of the evaluation time spent in the callback
+ * handler, the remainder being spent by the mechanism itself, for example in cryptographic operations.  Listeners may
+ * be called concurrently by many participants and on any thread used by an {@link AsyncCallbackHandler}, so must be
+ * thread safe and should return quickly.
+ *
+ * @see SaslStatistics
+ */
+public interface SaslInstrumentationListener {
+
+    /**
+     * Indicate that a single challenge or response message has been evaluated, successfully or not.
+     *
+     * @param mechanismName the mechanism name
+     * @param server {@code true} if the participant is a server, {@code false} if it is a client
+     * @param step the number of the step within the exchange, starting at 1
+     * @param evaluationTime the total time taken to evaluate the message
+     * @param callbackTime the part of the evaluation time spent handling callbacks
+     * @param messageSize the size of the message evaluated
+     * @param replySize the size of the reply, or {@code -1} if there was no reply or the evaluation failed
+     */
+    void stepEvaluated(String mechanismName, boolean server, int step, long evaluationTime, long callbackTime, int messageSize, int replySize);
+
+    /**
+     * Indicate that an authentication exchange has ended, either by completing or by failing.  Exchanges which are
+     * abandoned before they end are not reported.
+     *
+     * @param mechanismName the mechanism name
+     * @param server {@code true} if the participant is a server, {@code false} if it is a client
+     * @param successful {@code true} if negotiation completed, {@code false} if it failed
+     * @param steps the number of steps evaluated
+     * @param evaluationTime the total time taken to evaluate every message of the exchange
+     * @param callbackTime the part of the evaluation time spent handling callbacks
+     */
+    void exchangeEnded(String mechanismName, boolean server, boolean successful, int steps, long evaluationTime, long callbackTime);
+}
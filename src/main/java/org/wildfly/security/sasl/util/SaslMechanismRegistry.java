@@ -0,0 +1,238 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.util;
+
+import static org.wildfly.security.sasl.util.AbstractSaslFactory.POLICY_MASKS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.sasl.SaslClient;
+import javax.security.sasl.SaslClientFactory;
+import javax.security.sasl.SaslException;
+import javax.security.sasl.SaslServer;
+import javax.security.sasl.SaslServerFactory;
+
+/**
+ * A registry of SASL client and server factories which resolves mechanisms directly rather than searching the installed
+ * security providers for every authentication.
+ * <p>
+ * The SASL policy properties can only be combined in 64 ways, so the mechanisms
+ * permitted by each combination are computed once when the registry is created; {@link AbstractSaslFactory} instances
+ * contribute their characteristics mask directly, any other factory is queried once per combination.  Selecting a
+ * mechanism for a connection is then a lookup of the policy mask of its properties.  Factories must therefore select
+ * mechanisms on the policy properties alone.
+ */
+public final class SaslMechanismRegistry {
+
+    private final Registration<SaslServerFactory> servers;
+    private final Registration<SaslClientFactory> clients;
+
+    /**
+     * Construct a new instance.  Where more than one factory supports the same mechanism, the first takes precedence.
+     *
+     * @param serverFactories the server factories
+     * @param clientFactories the client factories
+     */
+    public SaslMechanismRegistry(final Collection<? extends SaslServerFactory> serverFactories, final Collection<? extends SaslClientFactory> clientFactories) {
+        servers = new Registration<SaslServerFactory>(serverFactories) {
+            String[] getMechanismNames(final SaslServerFactory factory, final Map<String, ?> props) {
+                return factory.getMechanismNames(props);
+            }
+        };
+        clients = new Registration<SaslClientFactory>(clientFactories) {
+            String[] getMechanismNames(final SaslClientFactory factory, final Map<String, ?> props) {
+                return factory.getMechanismNames(props);
+            }
+        };
+    }
+
+    /**
+     * Get the server mechanisms permitted by the policies in the given properties.  The returned array is shared and must
+     * not be modified.
+     *
+     * @param props the properties, may be {@code null}
+     * @return the mechanism names, in registration order
+     */
+    public String[] getServerMechanismNames(final Map<String, ?> props) {
+        return servers.names[AbstractSaslFactory.getPolicyMask(props)];
+    }
+
+    /**
+     * Get the client mechanisms permitted by the policies in the given properties.  The returned array is shared and must
+     * not be modified.
+     *
+     * @param props the properties, may be {@code null}
+     * @return the mechanism names, in registration order
+     */
+    public String[] getClientMechanismNames(final Map<String, ?> props) {
+        return clients.names[AbstractSaslFactory.getPolicyMask(props)];
+    }
+
+    /**
+     * Get the server factory for a mechanism, if the mechanism is permitted by the policies in the given properties.
+     *
+     * @param mechanism the mechanism name
+     * @param props the properties, may be {@code null}
+     * @return the factory, or {@code null} if the mechanism is not registered or not permitted
+     */
+    public SaslServerFactory getServerFactory(final String mechanism, final Map<String, ?> props) {
+        return servers.getFactory(mechanism, AbstractSaslFactory.getPolicyMask(props));
+    }
+
+    /**
+     * Get the client factory for a mechanism, if the mechanism is permitted by the policies in the given properties.
+     *
+     * @param mechanism the mechanism name
+     * @param props the properties, may be {@code null}
+     * @return the factory, or {@code null} if the mechanism is not registered or not permitted
+     */
+    public SaslClientFactory getClientFactory(final String mechanism, final Map<String, ?> props) {
+        return clients.getFactory(mechanism, AbstractSaslFactory.getPolicyMask(props));
+    }
+
+    /**
+     * Create a SASL server for a mechanism, as {@link javax.security.sasl.Sasl#createSaslServer(String, String, String, Map, CallbackHandler)}
+     * does but using only the registered factories.
+     *
+     * @param mechanism the mechanism name
+     * @param protocol the protocol
+     * @param serverName the server name
+     * @param props the properties, may be {@code null}
+     * @param callbackHandler the callback handler
+     * @return the SASL server, or {@code null} if the mechanism is not registered or not permitted
+     * @throws SaslException if the server could not be created
+     */
+    public SaslServer createSaslServer(final String mechanism, final String protocol, final String serverName, final Map<String, ?> props,
+            final CallbackHandler callbackHandler) throws SaslException {
+        final SaslServerFactory factory = getServerFactory(mechanism, props);
+        return factory == null ? null : factory.createSaslServer(mechanism, protocol, serverName, props, callbackHandler);
+    }
+
+    /**
+     * Create a SASL client for the first of the given mechanisms which is permitted and for which a client can be created,
+     * as {@link javax.security.sasl.Sasl#createSaslClient(String[], String, String, String, Map, CallbackHandler)} does
+     * but using only the registered factories.
+     *
+     * @param mechanisms the mechanism names in order of preference
+     * @param authorizationId the authorization ID, may be {@code null}
+     * @param protocol the protocol
+     * @param serverName the server name
+     * @param props the properties, may be {@code null}
+     * @param callbackHandler the callback handler
+     * @return the SASL client, or {@code null} if none of the mechanisms are registered and permitted
+     * @throws SaslException if a client could not be created
+     */
+    public SaslClient createSaslClient(final String[] mechanisms, final String authorizationId, final String protocol, final String serverName,
+            final Map<String, ?> props, final CallbackHandler callbackHandler) throws SaslException {
+        final int mask = AbstractSaslFactory.getPolicyMask(props);
+        for (String mechanism : mechanisms) {
+            final SaslClientFactory factory = clients.getFactory(mechanism, mask);
+            if (factory != null) {
+                final SaslClient client = factory.createSaslClient(new String[] { mechanism }, authorizationId, protocol, serverName, props, callbackHandler);
+                if (client != null) {
+                    return client;
+                }
+            }
+        }
+        return null;
+    }
+
+    private abstract static class Registration<F> {
+
+        private final String[][] names = new String[POLICY_MASKS][];
+        private final Map<String, Mechanism<F>> mechanisms = new HashMap<String, Mechanism<F>>();
+
+        Registration(final Collection<? extends F> factories) {
+            final Map<String, Mechanism<F>> ordered = new LinkedHashMap<String, Mechanism<F>>();
+            for (F factory : factories) {
+                if (factory instanceof AbstractSaslFactory) {
+                    final AbstractSaslFactory saslFactory = (AbstractSaslFactory) factory;
+                    final int characteristics = saslFactory.getCharacteristics();
+                    long permitted = 0;
+                    for (int mask = 0; mask < POLICY_MASKS; mask++) {
+                        if ((characteristics & mask) == 0) {
+                            permitted |= 1L << mask;
+                        }
+                    }
+                    for (String name : saslFactory.getMechanismNames(null)) {
+                        register(ordered, name, factory, permitted);
+                    }
+                } else {
+                    for (int mask = 0; mask < POLICY_MASKS; mask++) {
+                        final String[] permittedNames = getMechanismNames(factory, AbstractSaslFactory.getPolicyProperties(mask));
+                        if (permittedNames != null) {
+                            for (String name : permittedNames) {
+                                register(ordered, name, factory, 1L << mask);
+                            }
+                        }
+                    }
+                }
+            }
+            mechanisms.putAll(ordered);
+            for (int mask = 0; mask < POLICY_MASKS; mask++) {
+                final List<String> permittedNames = new ArrayList<String>(ordered.size());
+                for (Mechanism<F> mechanism : ordered.values()) {
+                    if (mechanism.isPermitted(mask)) {
+                        permittedNames.add(mechanism.name);
+                    }
+                }
+                names[mask] = permittedNames.isEmpty() ? AbstractSaslFactory.EMPTY : permittedNames.toArray(new String[permittedNames.size()]);
+            }
+        }
+
+        abstract String[] getMechanismNames(F factory, Map<String, ?> props);
+
+        F getFactory(final String name, final int mask) {
+            final Mechanism<F> mechanism = mechanisms.get(name);
+            return mechanism != null && mechanism.isPermitted(mask) ? mechanism.factory : null;
+        }
+
+        private static <F> void register(final Map<String, Mechanism<F>> ordered, final String name, final F factory, final long permitted) {
+            final Mechanism<F> existing = ordered.get(name);
+            if (existing == null) {
+                ordered.put(name, new Mechanism<F>(name, factory, permitted));
+            } else if (existing.factory == factory) {
+                existing.permitted |= permitted;
+            }
+        }
+    }
+
+    private static final class Mechanism<F> {
+
+        private final String name;
+        private final F factory;
+        private long permitted;
+
+        Mechanism(final String name, final F factory, final long permitted) {
+            this.name = name;
+            this.factory = factory;
+            this.permitted = permitted;
+        }
+
+        boolean isPermitted(final int mask) {
+            return (permitted & 1L << mask) != 0;
+        }
+    }
+}
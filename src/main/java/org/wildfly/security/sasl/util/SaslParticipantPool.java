@@ -0,0 +1,133 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.callback.CallbackHandler;
+
+/**
+ * A bounded pool of idle, reset SASL participants, keyed by the protocol, server name, callback handler and properties
+ * they were created with.
+ */
+final class SaslParticipantPool {
+
+    private final ConcurrentMap<Key, Queue<AbstractSaslParticipant>> idle = new ConcurrentHashMap<Key, Queue<AbstractSaslParticipant>>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final int maximumIdle;
+
+    SaslParticipantPool(final int maximumIdle) {
+        this.maximumIdle = maximumIdle;
+    }
+
+    AbstractSaslParticipant take(final String protocol, final String serverName, final CallbackHandler callbackHandler, final Map<String, ?> props) {
+        final Queue<AbstractSaslParticipant> queue = idle.get(new Key(protocol, serverName, callbackHandler, props));
+        if (queue == null) {
+            return null;
+        }
+        final AbstractSaslParticipant participant = queue.poll();
+        if (participant != null) {
+            idleCount.decrementAndGet();
+            participant.idle = false;
+        }
+        return participant;
+    }
+
+    void attach(final AbstractSaslParticipant participant, final String protocol, final String serverName, final CallbackHandler callbackHandler, final Map<String, ?> props) {
+        if (participant.isResettable()) {
+            // copy the properties so later changes by the caller do not affect the key
+            participant.poolKey = new Key(protocol, serverName, callbackHandler, props == null ? null : new HashMap<String, Object>(props));
+            participant.pool = this;
+        }
+    }
+
+    void release(final AbstractSaslParticipant participant) {
+        if (participant.idle) {
+            return;
+        }
+        participant.idle = true;
+        try {
+            participant.reset();
+        } catch (IllegalStateException e) {
+            // still in use, let it be discarded
+            return;
+        }
+        int count;
+        do {
+            count = idleCount.get();
+            if (count >= maximumIdle) {
+                return;
+            }
+        } while (! idleCount.compareAndSet(count, count + 1));
+        final Key key = participant.poolKey;
+        Queue<AbstractSaslParticipant> queue = idle.get(key);
+        if (queue == null) {
+            final Queue<AbstractSaslParticipant> created = new ConcurrentLinkedQueue<AbstractSaslParticipant>();
+            queue = idle.putIfAbsent(key, created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+        queue.offer(participant);
+    }
+
+    static final class Key {
+
+        private final String protocol;
+        private final String serverName;
+        private final CallbackHandler callbackHandler;
+        private final Map<String, ?> props;
+        private final int hashCode;
+
+        Key(final String protocol, final String serverName, final CallbackHandler callbackHandler, final Map<String, ?> props) {
+            this.protocol = protocol;
+            this.serverName = serverName;
+            this.callbackHandler = callbackHandler;
+            this.props = props == null || props.isEmpty() ? null : props;
+            this.hashCode = ((hash(protocol) * 31 + hash(serverName)) * 31 + System.identityHashCode(callbackHandler)) * 31 + hash(this.props);
+        }
+
+        private static int hash(final Object object) {
+            return object == null ? 0 : object.hashCode();
+        }
+
+        private static boolean equal(final Object a, final Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof Key && equals((Key) obj);
+        }
+
+        private boolean equals(final Key other) {
+            return this == other || hashCode == other.hashCode && callbackHandler == other.callbackHandler
+                    && equal(protocol, other.protocol) && equal(serverName, other.serverName) && equal(props, other.props);
+        }
+    }
+}
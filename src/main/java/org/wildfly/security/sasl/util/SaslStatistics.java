@@ -0,0 +1,331 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.util;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link SaslInstrumentationListener} which accumulates statistics for each mechanism in memory, to be read
+ * programmatically.  Server and client exchanges are accounted for separately.
+ * <p>
+ * Times and sizes are recorded in {@link Histogram}s with power of two buckets, so recording a value costs a few atomic
+ * increments and no allocation.  Step statistics are kept for the first {@link #MAX_STEPS} steps of an exchange, any
+ * later steps being accounted to the last of these.
+ */
+public final class SaslStatistics implements SaslInstrumentationListener {
+
+    /**
+     * The number of steps for which separate statistics are kept.
+     */
+    public static final int MAX_STEPS = 8;
+
+    private final ConcurrentMap<String, MechanismStatistics> serverStatistics = new ConcurrentHashMap<String, MechanismStatistics>();
+    private final ConcurrentMap<String, MechanismStatistics> clientStatistics = new ConcurrentHashMap<String, MechanismStatistics>();
+
+    /**
+     * Construct a new instance.
+     */
+    public SaslStatistics() {
+    }
+
+    public void stepEvaluated(final String mechanismName, final boolean server, final int step, final long evaluationTime, final long callbackTime, final int messageSize, final int replySize) {
+        final MechanismStatistics statistics = getOrCreate(server ? serverStatistics : clientStatistics, mechanismName);
+        final int index = Math.min(step, MAX_STEPS) - 1;
+        statistics.stepTime[index].record(evaluationTime);
+        statistics.stepCallbackTime[index].record(callbackTime);
+        statistics.messageSize.record(messageSize);
+        if (replySize >= 0) {
+            statistics.replySize.record(replySize);
+        }
+    }
+
+    public void exchangeEnded(final String mechanismName, final boolean server, final boolean successful, final int steps, final long evaluationTime, final long callbackTime) {
+        final MechanismStatistics statistics = getOrCreate(server ? serverStatistics : clientStatistics, mechanismName);
+        (successful ? statistics.successful : statistics.failed).incrementAndGet();
+        statistics.exchangeTime.record(evaluationTime);
+        statistics.exchangeCallbackTime.record(callbackTime);
+    }
+
+    /**
+     * Get the names of the mechanisms for which server statistics have been recorded.
+     *
+     * @return the mechanism names
+     */
+    public Set<String> getServerMechanismNames() {
+        return Collections.unmodifiableSet(serverStatistics.keySet());
+    }
+
+    /**
+     * Get the names of the mechanisms for which client statistics have been recorded.
+     *
+     * @return the mechanism names
+     */
+    public Set<String> getClientMechanismNames() {
+        return Collections.unmodifiableSet(clientStatistics.keySet());
+    }
+
+    /**
+     * Get the server statistics of a mechanism.
+     *
+     * @param mechanismName the mechanism name
+     * @return the statistics, or {@code null} if no server exchange of the mechanism has been recorded
+     */
+    public MechanismStatistics getServerStatistics(final String mechanismName) {
+        return serverStatistics.get(mechanismName);
+    }
+
+    /**
+     * Get the client statistics of a mechanism.
+     *
+     * @param mechanismName the mechanism name
+     * @return the statistics, or {@code null} if no client exchange of the mechanism has been recorded
+     */
+    public MechanismStatistics getClientStatistics(final String mechanismName) {
+        return clientStatistics.get(mechanismName);
+    }
+
+    /**
+     * Discard all recorded statistics.
+     */
+    public void clear() {
+        serverStatistics.clear();
+        clientStatistics.clear();
+    }
+
+    private static MechanismStatistics getOrCreate(final ConcurrentMap<String, MechanismStatistics> map, final String mechanismName) {
+        MechanismStatistics statistics = map.get(mechanismName);
+        if (statistics == null) {
+            final MechanismStatistics created = new MechanismStatistics();
+            statistics = map.putIfAbsent(mechanismName, created);
+            if (statistics == null) {
+                statistics = created;
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * The statistics of one side of a single mechanism.
+     */
+    public static final class MechanismStatistics {
+
+        private final AtomicLong successful = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final Histogram exchangeTime = new Histogram();
+        private final Histogram exchangeCallbackTime = new Histogram();
+        private final Histogram messageSize = new Histogram();
+        private final Histogram replySize = new Histogram();
+        private final Histogram[] stepTime = new Histogram[MAX_STEPS];
+        private final Histogram[] stepCallbackTime = new Histogram[MAX_STEPS];
+
+        MechanismStatistics() {
+            for (int i = 0; i < MAX_STEPS; i++) {
+                stepTime[i] = new Histogram();
+                stepCallbackTime[i] = new Histogram();
+            }
+        }
+
+        /**
+         * Get the number of exchanges which completed successfully.
+         *
+         * @return the number of successful exchanges
+         */
+        public long getSuccessfulExchangeCount() {
+            return successful.get();
+        }
+
+        /**
+         * Get the number of exchanges which failed.
+         *
+         * @return the number of failed exchanges
+         */
+        public long getFailedExchangeCount() {
+            return failed.get();
+        }
+
+        /**
+         * Get the total evaluation times, in nanoseconds, of ended exchanges.
+         *
+         * @return the exchange time histogram
+         */
+        public Histogram getExchangeTime() {
+            return exchangeTime;
+        }
+
+        /**
+         * Get the times, in nanoseconds, spent handling callbacks during ended exchanges.
+         *
+         * @return the exchange callback time histogram
+         */
+        public Histogram getExchangeCallbackTime() {
+            return exchangeCallbackTime;
+        }
+
+        /**
+         * Get the evaluation times, in nanoseconds, of a step.
+         *
+         * @param step the step number, from 1 to {@link #MAX_STEPS}
+         * @return the step time histogram
+         */
+        public Histogram getStepTime(final int step) {
+            return stepTime[step - 1];
+        }
+
+        /**
+         * Get the times, in nanoseconds, spent handling callbacks during a step.
+         *
+         * @param step the step number, from 1 to {@link #MAX_STEPS}
+         * @return the step callback time histogram
+         */
+        public Histogram getStepCallbackTime(final int step) {
+            return stepCallbackTime[step - 1];
+        }
+
+        /**
+         * Get the sizes of the messages evaluated.
+         *
+         * @return the message size histogram
+         */
+        public Histogram getMessageSize() {
+            return messageSize;
+        }
+
+        /**
+         * Get the sizes of the replies produced.
+         *
+         * @return the reply size histogram
+         */
+        public Histogram getReplySize() {
+            return replySize;
+        }
+    }
+
+    /**
+     * A histogram of non-negative values using power of two buckets: bucket {@code 0} holds the value {@code 0} and
+     * bucket {@code n} values from {@code 2^(n-1)} to {@code 2^n - 1}.
+     */
+    public static final class Histogram {
+
+        /**
+         * The number of buckets.
+         */
+        public static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong maximum = new AtomicLong();
+
+        Histogram() {
+        }
+
+        void record(final long value) {
+            final long v = Math.max(value, 0L);
+            buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(v));
+            count.incrementAndGet();
+            total.addAndGet(v);
+            long max;
+            do {
+                max = maximum.get();
+            } while (v > max && ! maximum.compareAndSet(max, v));
+        }
+
+        /**
+         * Get the number of values recorded.
+         *
+         * @return the number of values
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * Get the sum of the values recorded.
+         *
+         * @return the sum of the values
+         */
+        public long getTotal() {
+            return total.get();
+        }
+
+        /**
+         * Get the largest value recorded.
+         *
+         * @return the largest value, or {@code 0} if none has been recorded
+         */
+        public long getMaximum() {
+            return maximum.get();
+        }
+
+        /**
+         * Get the mean of the values recorded.
+         *
+         * @return the mean, or {@code 0} if no value has been recorded
+         */
+        public double getMean() {
+            final long count = this.count.get();
+            return count == 0L ? 0.0 : (double) total.get() / count;
+        }
+
+        /**
+         * Get the number of values recorded in a bucket.
+         *
+         * @param bucket the bucket index
+         * @return the number of values in the bucket
+         */
+        public long getBucketCount(final int bucket) {
+            return buckets.get(bucket);
+        }
+
+        /**
+         * Get the largest value held by a bucket.
+         *
+         * @param bucket the bucket index
+         * @return the largest value of the bucket
+         */
+        public static long getBucketUpperBound(final int bucket) {
+            return bucket == 0 ? 0L : bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1L;
+        }
+
+        /**
+         * Get an upper bound of the given percentile of the values recorded, accurate to within a factor of two.
+         *
+         * @param percentile the percentile, from {@code 0} to {@code 100}
+         * @return the upper bound, or {@code 0} if no value has been recorded
+         */
+        public long getPercentile(final double percentile) {
+            if (percentile < 0.0 || percentile > 100.0) {
+                throw new IllegalArgumentException("Invalid percentile " + percentile);
+            }
+            long remaining = (long) Math.ceil(count.get() * percentile / 100.0);
+            for (int i = 0; i < BUCKETS; i++) {
+                remaining -= buckets.get(i);
+                if (remaining <= 0L) {
+                    return Math.min(getBucketUpperBound(i), maximum.get());
+                }
+            }
+            return maximum.get();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream which reads the remaining content of a sequence of byte buffers, advancing the position of each buffer
+ * as it is read.  Heap and direct buffers are both supported without any intermediate copy.
+ */
+public final class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer[] buffers;
+    private final int end;
+    private int current;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param buffer the buffer to read from
+     */
+    public ByteBufferInputStream(final ByteBuffer buffer) {
+        this(new ByteBuffer[] { buffer }, 0, 1);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param buffers the buffers to read from in order
+     * @param offset the index of the first buffer to read from
+     * @param length the number of buffers to read from
+     */
+    public ByteBufferInputStream(final ByteBuffer[] buffers, final int offset, final int length) {
+        this.buffers = buffers;
+        this.current = offset;
+        this.end = offset + length;
+    }
+
+    public int read() {
+        final ByteBuffer buffer = nextBuffer();
+        return buffer == null ? -1 : buffer.get() & 0xff;
+    }
+
+    public int read(final byte[] b, final int off, final int len) {
+        if (len == 0) {
+            return 0;
+        }
+        // Read across buffer boundaries so a single read of available() bytes returns everything.
+        int total = 0;
+        ByteBuffer buffer;
+        while (total < len && (buffer = nextBuffer()) != null) {
+            final int cnt = Math.min(len - total, buffer.remaining());
+            buffer.get(b, off + total, cnt);
+            total += cnt;
+        }
+        return total == 0 ? -1 : total;
+    }
+
+    public long skip(final long n) {
+        long skipped = 0;
+        ByteBuffer buffer;
+        while (skipped < n && (buffer = nextBuffer()) != null) {
+            final int cnt = (int) Math.min(n - skipped, buffer.remaining());
+            buffer.position(buffer.position() + cnt);
+            skipped += cnt;
+        }
+        return skipped;
+    }
+
+    public int available() {
+        long total = 0;
+        for (int i = current; i < end; i++) {
+            total += buffers[i].remaining();
+        }
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    private ByteBuffer nextBuffer() {
+        while (current < end) {
+            final ByteBuffer buffer = buffers[current];
+            if (buffer.hasRemaining()) {
+                return buffer;
+            }
+            current++;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.util;
+
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * An output stream which writes into a byte buffer, advancing its position.  Heap and direct buffers are both supported
+ * without any intermediate copy.
+ */
+public final class ByteBufferOutputStream extends OutputStream {
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param buffer the buffer to write into
+     */
+    public ByteBufferOutputStream(final ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Write a byte.
+     *
+     * @param b the byte to write
+     * @throws BufferOverflowException if the buffer has no space remaining
+     */
+    public void write(final int b) throws BufferOverflowException {
+        buffer.put((byte) b);
+    }
+
+    /**
+     * Write some bytes.
+     *
+     * @param b the bytes to write
+     * @param off the offset of the first byte to write
+     * @param len the number of bytes to write
+     * @throws BufferOverflowException if the buffer has insufficient space remaining
+     */
+    public void write(final byte[] b, final int off, final int len) throws BufferOverflowException {
+        buffer.put(b, off, len);
+    }
+}
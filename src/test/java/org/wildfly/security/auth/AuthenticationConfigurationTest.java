@@ -0,0 +1,162 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.auth;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.Provider;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+import javax.security.auth.callback.UnsupportedCallbackException;
+import javax.security.sasl.Sasl;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.wildfly.security.auth.callback.CredentialCallback;
+import org.wildfly.security.auth.principal.AnonymousPrincipal;
+import org.wildfly.security.auth.util.NameRewriter;
+import org.wildfly.security.password.Password;
+import org.wildfly.security.password.impl.WildFlyElytronPasswordProvider;
+
+/**
+ * Tests of the compiled form of {@link AuthenticationConfiguration} chains.
+ */
+public class AuthenticationConfigurationTest {
+
+    private static final Provider provider = new WildFlyElytronPasswordProvider();
+
+    @BeforeClass
+    public static void registerProvider() {
+        Security.addProvider(provider);
+    }
+
+    @AfterClass
+    public static void removeProvider() {
+        Security.removeProvider(provider.getName());
+    }
+
+    @Test
+    public void testResolvedSettings() throws Exception {
+        final URI uri = new URI("remote://server.example.com:9999");
+        assertSame(AnonymousPrincipal.getInstance(), AuthenticationConfiguration.EMPTY.getPrincipal());
+        assertEquals("server.example.com", AuthenticationConfiguration.EMPTY.getHost(uri));
+        assertEquals(9999, AuthenticationConfiguration.EMPTY.getPort(uri));
+
+        AuthenticationConfiguration configuration = AuthenticationConfiguration.EMPTY.useHost("first").usePort(1000).useName("user1");
+        configuration = configuration.useHost("second").usePort(2000).useName("user2");
+        assertEquals("second", configuration.getHost(uri));
+        assertEquals(2000, configuration.getPort(uri));
+        assertEquals("user2", configuration.getPrincipal().getName());
+
+        assertNull(AuthenticationConfiguration.EMPTY.useHost("").getHost(uri));
+    }
+
+    @Test
+    public void testCallbackDispatch() throws Exception {
+        final AuthenticationConfiguration configuration = AuthenticationConfiguration.EMPTY.useName("user").usePassword("secret");
+        final NameCallback nameCallback = new NameCallback("Name");
+        final PasswordCallback passwordCallback = new PasswordCallback("Password", false);
+        final CredentialCallback credentialCallback = new CredentialCallback(Password.class);
+        configuration.getCallbackHandler().handle(new Callback[] { nameCallback, passwordCallback, credentialCallback });
+        assertEquals("user", nameCallback.getName());
+        assertArrayEquals("secret".toCharArray(), passwordCallback.getPassword());
+        assertTrue(credentialCallback.getCredential() instanceof Password);
+
+        // a subclass of a supported callback type is dispatched to the same layer
+        final NameCallback nameSubclass = new NameCallback("Name") {
+            private static final long serialVersionUID = 1L;
+        };
+        configuration.getCallbackHandler().handle(new Callback[] { nameSubclass });
+        assertEquals("user", nameSubclass.getName());
+
+        // a credential callback with a default credential is optional so it may go unhandled
+        final CredentialCallback optional = new CredentialCallback("default", String.class);
+        configuration.getCallbackHandler().handle(new Callback[] { optional });
+        assertEquals("default", optional.getCredential());
+
+        try {
+            AuthenticationConfiguration.EMPTY.getCallbackHandler().handle(new Callback[] { new NameCallback("Name") });
+            fail("Expected exception not thrown");
+        } catch (UnsupportedCallbackException expected) {
+        }
+    }
+
+    @Test
+    public void testCallbackHandler() throws Exception {
+        final Set<Callback> handled = new HashSet<Callback>();
+        final CallbackHandler callbackHandler = new CallbackHandler() {
+            public void handle(final Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                handled.addAll(Arrays.asList(callbacks));
+            }
+        };
+        final AuthenticationConfiguration configuration = AuthenticationConfiguration.EMPTY.useName("user").useCallbackHandler(callbackHandler);
+        final NameCallback nameCallback = new NameCallback("Name");
+        configuration.getCallbackHandler().handle(new Callback[] { nameCallback });
+        assertEquals(1, handled.size());
+        assertNull(nameCallback.getName());
+        assertSame(AnonymousPrincipal.getInstance(), configuration.getPrincipal());
+    }
+
+    @Test
+    public void testMechanismFilter() throws Exception {
+        final Set<String> names = new HashSet<String>(Arrays.asList("ANONYMOUS", "PLAIN", "DIGEST-MD5"));
+        AuthenticationConfiguration.EMPTY.forbidSaslMechanisms("PLAIN").filterSaslMechanisms(names);
+        assertEquals(new HashSet<String>(Arrays.asList("ANONYMOUS")), names);
+
+        names.addAll(Arrays.asList("PLAIN", "DIGEST-MD5"));
+        AuthenticationConfiguration.EMPTY.allowSaslMechanisms("ANONYMOUS", "PLAIN").forbidSaslMechanisms("ANONYMOUS").filterSaslMechanisms(names);
+        assertEquals(new HashSet<String>(), names);
+    }
+
+    @Test
+    public void testRewriteAndProperties() throws Exception {
+        final AuthenticationConfiguration configuration = AuthenticationConfiguration.EMPTY.rewriteUser(new NameRewriter() {
+            public String rewriteName(final String original) {
+                return original + "@inner";
+            }
+        }).rewriteUser(new NameRewriter() {
+            public String rewriteName(final String original) {
+                return original.toUpperCase();
+            }
+        }).usePassword("secret");
+        assertEquals("USER@INNER", configuration.doRewriteUser("user"));
+
+        final Map<String, Object> properties = new HashMap<String, Object>();
+        configuration.configureSaslProperties(properties);
+        assertEquals(1, properties.size());
+        assertTrue(properties.get(Sasl.CREDENTIALS) instanceof Password);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.auth;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.Provider;
+import java.security.Security;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.wildfly.security.auth.callback.CredentialCallback;
+import org.wildfly.security.password.impl.WildFlyElytronPasswordProvider;
+
+/**
+ * Tests of parsing identity contexts from XML.
+ */
+public class IdentityContextParserTest {
+
+    private static final Provider provider = new WildFlyElytronPasswordProvider();
+
+    @BeforeClass
+    public static void registerProvider() {
+        Security.addProvider(provider);
+    }
+
+    @AfterClass
+    public static void removeProvider() {
+        Security.removeProvider(provider.getName());
+    }
+
+    private static IdentityContext parse(final String xml) throws XMLStreamException {
+        return IdentityContextParser.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    private static AuthenticationConfiguration getConfiguration(final IdentityContext context, final String uri) throws Exception {
+        return new IdentityContextConfigurationClient().getAuthenticationConfiguration(new URI(uri), context);
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        final IdentityContext context = parse("<?xml version='1.0'?>" +
+                "<identity-context xmlns='urn:elytron:1.0'>" +
+                "  <authentication-configuration name='base'>" +
+                "    <set-user-name name='guest'/>" +
+                "    <set-password password='secret'/>" +
+                "  </authentication-configuration>" +
+                "  <authentication-configuration name='admin' extends='base'>" +
+                "    <set-user-name name='admin'/>" +
+                "    <set-host name='admin.example.com'/>" +
+                "    <set-port number='9990'/>" +
+                "  </authentication-configuration>" +
+                "  <rule configuration='admin'>" +
+                "    <match-protocol name='remote'/>" +
+                "    <match-port number='9999'/>" +
+                "  </rule>" +
+                "  <rule configuration='base'/>" +
+                "</identity-context>");
+
+        final AuthenticationConfiguration admin = getConfiguration(context, "remote://server.example.com:9999");
+        assertEquals("admin", admin.getPrincipal().getName());
+        assertEquals("admin.example.com", admin.getHost(new URI("remote://server.example.com:9999")));
+        assertEquals(9990, admin.getPort(new URI("remote://server.example.com:9999")));
+        final NameCallback nameCallback = new NameCallback("Name");
+        final PasswordCallback passwordCallback = new PasswordCallback("Password", false);
+        admin.getCallbackHandler().handle(new Callback[] { nameCallback, passwordCallback });
+        assertEquals("admin", nameCallback.getName());
+        assertArrayEquals("secret".toCharArray(), passwordCallback.getPassword());
+
+        assertEquals("guest", getConfiguration(context, "http://server.example.com").getPrincipal().getName());
+    }
+
+    @Test
+    public void testInvalidDocuments() throws Exception {
+        final String[] documents = {
+                "<identity-context xmlns='urn:other'/>",
+                "<identity-context xmlns='urn:elytron:1.0'><rule configuration='missing'/></identity-context>",
+                "<identity-context xmlns='urn:elytron:1.0'><rule/></identity-context>",
+                "<identity-context xmlns='urn:elytron:1.0'><authentication-configuration name='c'><set-port number='0'/></authentication-configuration></identity-context>",
+                "<identity-context xmlns='urn:elytron:1.0'><authentication-configuration name='c'><set-colour/></authentication-configuration></identity-context>",
+        };
+        for (String document : documents) {
+            try {
+                parse(document);
+                fail("Expected exception not thrown for " + document);
+            } catch (XMLStreamException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testKeyStoreLoadedOnUse() throws Exception {
+        final File directory = Files.createTempDirectory("identity-context").toFile();
+        final File keyStore = new File(directory, "broken.keystore");
+        final File configurationFile = new File(directory, "identity-context.xml");
+        try {
+            Files.write(keyStore.toPath(), "not a key store".getBytes(StandardCharsets.UTF_8));
+            Files.write(configurationFile.toPath(), ("<identity-context xmlns='urn:elytron:1.0'>" +
+                    "  <key-store name='broken' file='broken.keystore' password='secret'/>" +
+                    "  <authentication-configuration name='key'>" +
+                    "    <set-key-store-credential key-store='broken' alias='client'/>" +
+                    "  </authentication-configuration>" +
+                    "  <rule configuration='key'/>" +
+                    "</identity-context>").getBytes(StandardCharsets.UTF_8));
+
+            // the unreadable key store is only noticed once the credential is required
+            final IdentityContext context = IdentityContext.fromXML(configurationFile);
+            final AuthenticationConfiguration configuration = getConfiguration(context, "remote://server.example.com");
+            try {
+                configuration.getCallbackHandler().handle(new Callback[] { new CredentialCallback(Object.class) });
+                fail("Expected exception not thrown");
+            } catch (IOException expected) {
+            }
+        } finally {
+            configurationFile.delete();
+            keyStore.delete();
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testFileCache() throws Exception {
+        final File file = File.createTempFile("identity-context", ".xml");
+        try {
+            Files.write(file.toPath(), ("<identity-context xmlns='urn:elytron:1.0'>" +
+                    "  <authentication-configuration name='c'><set-user-name name='first'/></authentication-configuration>" +
+                    "  <rule configuration='c'/>" +
+                    "</identity-context>").getBytes(StandardCharsets.UTF_8));
+            final IdentityContext first = IdentityContext.fromXML(file);
+            assertSame(first, IdentityContext.fromXML(file));
+
+            Files.write(file.toPath(), ("<identity-context xmlns='urn:elytron:1.0'>" +
+                    "  <authentication-configuration name='c'><set-user-name name='second'/></authentication-configuration>" +
+                    "  <rule configuration='c'/>" +
+                    "</identity-context>").getBytes(StandardCharsets.UTF_8));
+            final IdentityContext second = IdentityContext.fromXML(file);
+            assertNotSame(first, second);
+            assertEquals("second", getConfiguration(second, "remote://server.example.com").getPrincipal().getName());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testFileCacheDoesNotRetainContext() throws Exception {
+        final File file = File.createTempFile("identity-context", ".xml");
+        try {
+            Files.write(file.toPath(), ("<identity-context xmlns='urn:elytron:1.0'>" +
+                    "  <authentication-configuration name='c'><set-password password='secret'/></authentication-configuration>" +
+                    "  <rule configuration='c'/>" +
+                    "</identity-context>").getBytes(StandardCharsets.UTF_8));
+            final WeakReference<IdentityContext> reference = new WeakReference<>(IdentityContext.fromXML(file));
+            // the parsed context and its password are released once it is no longer in use
+            for (int i = 0; i < 10 && reference.get() != null; i++) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            assertNull(reference.get());
+            assertNotNull(IdentityContext.fromXML(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLargeDocument() throws Exception {
+        final int count = 10000;
+        final StringBuilder b = new StringBuilder("<identity-context xmlns='urn:elytron:1.0'>");
+        for (int i = 0; i < count; i++) {
+            b.append("<authentication-configuration name='c").append(i).append("'>");
+            b.append("<set-user-name name='user").append(i).append("'/><set-password password='password").append(i).append("'/>");
+            b.append("</authentication-configuration>");
+            b.append("<rule configuration='c").append(i).append("'>");
+            b.append("<match-protocol name='remote'/><match-host name='host").append(i).append(".example.com'/>");
+            b.append("</rule>");
+        }
+        b.append("</identity-context>");
+        final IdentityContext context = parse(b.toString());
+        assertEquals("user1234", getConfiguration(context, "remote://host1234.example.com").getPrincipal().getName());
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.security.PrivilegedAction;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests of running tasks with a captured {@link IdentityContext}.
+ */
+public class IdentityContextPropagationTest {
+
+    private static final Callable<IdentityContext> CAPTURE = new Callable<IdentityContext>() {
+        public IdentityContext call() {
+            return IdentityContext.captureCurrent();
+        }
+    };
+
+    private static IdentityContext createContext(final String host) {
+        return IdentityContext.empty().with(MatchRule.ALL.matchHost(host), AuthenticationConfiguration.EMPTY);
+    }
+
+    @Test
+    public void testWrap() throws Exception {
+        final IdentityContext context = createContext("wrap.example.com");
+        final IdentityContext original = IdentityContext.captureCurrent();
+        assertNotSame(context, original);
+
+        final AtomicReference<IdentityContext> seen = new AtomicReference<>();
+        final Runnable runnable = context.wrap(new Runnable() {
+            public void run() {
+                seen.set(IdentityContext.captureCurrent());
+            }
+        });
+        runnable.run();
+        assertSame(context, seen.get());
+        assertSame(original, IdentityContext.captureCurrent());
+
+        final Callable<IdentityContext> callable = context.wrap(CAPTURE);
+        assertSame(context, callable.call());
+        assertSame(original, IdentityContext.captureCurrent());
+
+        // a wrapped task keeps the context it was wrapped with
+        assertSame(runnable, createContext("other.example.com").wrap(runnable));
+        assertSame(callable, createContext("other.example.com").wrap(callable));
+    }
+
+    @Test
+    public void testContextRestoredOnException() throws Exception {
+        final IdentityContext original = IdentityContext.captureCurrent();
+        try {
+            createContext("fail.example.com").wrap(new Callable<Void>() {
+                public Void call() throws Exception {
+                    throw new IllegalStateException();
+                }
+            }).call();
+        } catch (IllegalStateException expected) {
+        }
+        assertSame(original, IdentityContext.captureCurrent());
+    }
+
+    @Test
+    public void testPropagatingExecutorService() throws Exception {
+        final ExecutorService executorService = IdentityContext.propagating(Executors.newFixedThreadPool(2));
+        try {
+            assertSame(executorService, IdentityContext.propagating(executorService));
+            final IdentityContext context = createContext("executor.example.com");
+            context.run(new PrivilegedAction<Void>() {
+                public Void run() {
+                    try {
+                        assertSame(context, executorService.submit(CAPTURE).get());
+                        final List<Future<IdentityContext>> futures = executorService.invokeAll(Arrays.asList(CAPTURE, CAPTURE, CAPTURE));
+                        for (Future<IdentityContext> future : futures) {
+                            assertSame(context, future.get());
+                        }
+                        assertSame(context, executorService.invokeAny(Arrays.asList(CAPTURE, CAPTURE)));
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return null;
+                }
+            });
+            // a task submitted outside of the context runs without it
+            assertSame(IdentityContext.captureCurrent(), executorService.submit(CAPTURE).get());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdownNowReturnsSubmittedTasks() throws Exception {
+        final ThreadPoolExecutor delegate = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        final ExecutorService executorService = IdentityContext.propagating(delegate);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            executorService.execute(new Runnable() {
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            });
+            final Runnable defaultTask = new Runnable() {
+                public void run() {
+                }
+            };
+            final Runnable contextTask = new Runnable() {
+                public void run() {
+                }
+            };
+            executorService.execute(defaultTask);
+            createContext("shutdown.example.com").run(new PrivilegedAction<Void>() {
+                public Void run() {
+                    executorService.execute(contextTask);
+                    return null;
+                }
+            });
+            assertEquals(2, delegate.getQueue().size());
+
+            final List<Runnable> pending = executorService.shutdownNow();
+            assertEquals(2, pending.size());
+            assertSame(defaultTask, pending.get(0));
+            assertSame(contextTask, pending.get(1));
+        } finally {
+            release.countDown();
+            delegate.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDefaultContextPropagated() throws Exception {
+        final ThreadPoolExecutor delegate = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        final ExecutorService executorService = IdentityContext.propagating(delegate);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            executorService.execute(new Runnable() {
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            });
+            final IdentityContext original = IdentityContext.captureCurrent();
+            final AtomicReference<IdentityContext> seen = new AtomicReference<>();
+            executorService.execute(new Runnable() {
+                public void run() {
+                    seen.set(IdentityContext.captureCurrent());
+                }
+            });
+
+            // a thread with another context runs the queued task, as a caller-runs or work-stealing executor would
+            final Runnable queued = delegate.getQueue().poll();
+            createContext("helper.example.com").run(new PrivilegedAction<Void>() {
+                public Void run() {
+                    queued.run();
+                    return null;
+                }
+            });
+            assertSame(original, seen.get());
+        } finally {
+            release.countDown();
+            delegate.shutdownNow();
+        }
+    }
+}
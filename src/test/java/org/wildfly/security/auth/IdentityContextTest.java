@@ -0,0 +1,173 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of rule matching by {@link IdentityContext}, comparing the indexed matching of large contexts with testing
+ * each rule in turn.
+ */
+public class IdentityContextTest {
+
+    private static final String[] SCHEMES = { "remote", "http", "https" };
+
+    @Test
+    public void testFirstMatchWins() throws Exception {
+        AuthenticationConfiguration configuration = AuthenticationConfiguration.EMPTY;
+        IdentityContext context = IdentityContext.empty();
+        for (int i = 0; i < 20; i++) {
+            context = context.with(MatchRule.ALL.matchHost("host" + i + ".example.com"), configuration);
+        }
+        context = context.with(MatchRule.ALL.matchProtocol("https"), configuration);
+        context = context.with(MatchRule.ALL.matchHost("host1"), configuration);
+        context = context.with(MatchRule.ALL.matchHost("host1").matchPort(8443), configuration);
+        context = context.with(MatchRule.ALL, configuration);
+
+        assertEquals(1, context.ruleMatching(new URI("remote://host1.example.com")));
+        assertEquals(20, context.ruleMatching(new URI("https://other.example.com")));
+        // host specifications match by prefix
+        assertEquals(21, context.ruleMatching(new URI("remote://host10.example.org")));
+        assertEquals(10, context.ruleMatching(new URI("remote://host10.example.com:8443")));
+        assertEquals(21, context.ruleMatching(new URI("remote://host1:8443")));
+        assertEquals(23, context.ruleMatching(new URI("remote://other.example.com")));
+        // the default rule does not match URIs with user info
+        assertEquals(-1, context.ruleMatching(new URI("remote://user@other.example.com")));
+    }
+
+    @Test
+    public void testIndexMatchesLinearScan() throws Exception {
+        final Random random = new Random(42);
+        final int count = 500;
+        final IdentityContext context = createContext(random, count);
+        for (int i = 0; i < 5000; i++) {
+            final URI uri = randomUri(random, count);
+            assertEquals(uri.toString(), linearRuleMatching(context, count, uri), context.ruleMatching(uri));
+        }
+    }
+
+    @Test
+    public void testMatchCache() throws Exception {
+        final IdentityContextConfigurationClient client = new IdentityContextConfigurationClient();
+        final AuthenticationConfiguration configuration = AuthenticationConfiguration.EMPTY.useName("George");
+        IdentityContext context = IdentityContext.empty();
+        for (int i = 0; i < 20; i++) {
+            context = context.with(MatchRule.ALL.matchHost("host" + i + ".example.com"), i == 5 ? configuration : AuthenticationConfiguration.EMPTY);
+        }
+
+        final URI uri = new URI("remote://host5.example.com:4447");
+        assertSame(configuration, client.getAuthenticationConfiguration(uri, context));
+        assertEquals(0, client.getMatchCacheHitCount(context));
+        assertEquals(1, client.getMatchCacheMissCount(context));
+        assertSame(configuration, client.getAuthenticationConfiguration(new URI("remote://host5.example.com:4447"), context));
+        assertEquals(1, client.getMatchCacheHitCount(context));
+        assertEquals(1, client.getMatchCacheSize(context));
+
+        // URIs matching no rule are remembered too
+        assertNull(client.getAuthenticationConfiguration(new URI("remote://other.example.com"), context));
+        assertNull(client.getAuthenticationConfiguration(new URI("remote://other.example.com"), context));
+        assertEquals(2, client.getMatchCacheHitCount(context));
+
+        // the memo is bounded
+        for (int i = 0; i < MatchRuleCache.DEFAULT_MAXIMUM_SIZE * 2; i++) {
+            assertEquals(-1, context.ruleMatching(new URI("remote://other" + i + ".example.com")));
+        }
+        assertTrue(client.getMatchCacheSize(context) <= MatchRuleCache.DEFAULT_MAXIMUM_SIZE);
+
+        // small contexts do not keep a memo
+        final IdentityContext small = IdentityContext.empty().with(MatchRule.ALL, configuration);
+        assertSame(configuration, client.getAuthenticationConfiguration(uri, small));
+        assertEquals(0, client.getMatchCacheMissCount(small));
+    }
+
+    @Test
+    public void testMatchCacheCaseSensitive() throws Exception {
+        IdentityContext context = IdentityContext.empty();
+        for (int i = 0; i < 20; i++) {
+            context = context.with(MatchRule.ALL.matchHost("host" + i + ".example.com"), AuthenticationConfiguration.EMPTY);
+        }
+        context = context.with(MatchRule.ALL.matchProtocol("remote"), AuthenticationConfiguration.EMPTY);
+        context = context.with(MatchRule.ALL, AuthenticationConfiguration.EMPTY);
+
+        // these URIs are equal, but are matched by different rules
+        final URI[] uris = {
+            new URI("remote://HOST1.example.com"),
+            new URI("remote://host1.example.com"),
+            new URI("REMOTE://HOST1.example.com"),
+            new URI("REMOTE://host1.example.com"),
+        };
+        for (int round = 0; round < 2; round++) {
+            for (URI uri : uris) {
+                assertEquals(uri.toString(), linearRuleMatching(context, 22, uri), context.ruleMatching(uri));
+            }
+        }
+        assertEquals(20, context.ruleMatching(uris[0]));
+        assertEquals(1, context.ruleMatching(uris[1]));
+        assertEquals(21, context.ruleMatching(uris[2]));
+    }
+
+    private static IdentityContext createContext(final Random random, final int count) {
+        final IdentityContext.Rule[] rules = new IdentityContext.Rule[count];
+        for (int i = 0; i < count; i++) {
+            MatchRule rule = MatchRule.ALL;
+            switch (random.nextInt(8)) {
+                case 0:
+                    rule = rule.matchProtocol(SCHEMES[random.nextInt(SCHEMES.length)]);
+                    break;
+                case 1:
+                    rule = rule.matchHost("host" + random.nextInt(count)).matchPort(8000 + random.nextInt(4));
+                    break;
+                case 2:
+                    rule = rule.matchHost("host" + random.nextInt(count) + ".example.com").matchPath("/app" + random.nextInt(4));
+                    break;
+                case 3:
+                    rule = rule.matchHost("host" + random.nextInt(count) + ".example.com").matchUser("user" + random.nextInt(4));
+                    break;
+                default:
+                    rule = rule.matchProtocol(SCHEMES[random.nextInt(SCHEMES.length)]).matchHost("host" + random.nextInt(count) + ".example.com");
+            }
+            rules[i] = new IdentityContext.Rule(rule, AuthenticationConfiguration.EMPTY);
+        }
+        return new IdentityContext(rules, false);
+    }
+
+    private static URI randomUri(final Random random, final int count) throws Exception {
+        final String scheme = SCHEMES[random.nextInt(SCHEMES.length)];
+        final String user = random.nextInt(4) == 0 ? "user" + random.nextInt(4) + "@" : "";
+        final String host = "host" + random.nextInt(count) + (random.nextBoolean() ? ".example.com" : ".example.org");
+        final String port = random.nextBoolean() ? ":" + (8000 + random.nextInt(4)) : "";
+        final String path = random.nextBoolean() ? "/app" + random.nextInt(4) + "/index" : "";
+        return new URI(scheme + "://" + user + host + port + path);
+    }
+
+    private static int linearRuleMatching(final IdentityContext context, final int count, final URI uri) {
+        for (int i = 0; i < count; i++) {
+            if (context.getMatchRule(i).matches(uri)) return i;
+        }
+        return -1;
+    }
+}
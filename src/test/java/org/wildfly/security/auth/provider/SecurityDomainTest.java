@@ -0,0 +1,59 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.auth.provider;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Locale;
+
+import org.junit.Test;
+import org.wildfly.security.auth.principal.NamePrincipal;
+import org.wildfly.security.auth.util.NameRewriter;
+import org.wildfly.security.auth.util.RealmMapper;
+
+/**
+ * Tests of mapping names and principals to realm identities by a {@link SecurityDomain}.
+ */
+public class SecurityDomainTest {
+
+    @Test
+    public void testPreRealmRewriters() {
+        final SecurityDomain.Builder builder = SecurityDomain.builder();
+        builder.addRealm("DefaultRealm", new SimpleMapBackedSecurityRealm("DefaultRealm"));
+        builder.addRealm("AdminRealm", new SimpleMapBackedSecurityRealm("AdminRealm"));
+        builder.setDefaultRealmName("DefaultRealm");
+        builder.addPreRealmRewriter(new NameRewriter() {
+            public String rewriteName(final String original) {
+                return original.toLowerCase(Locale.ROOT);
+            }
+        });
+        builder.setRealmMapper(new RealmMapper() {
+            public String getRealmMapping(final String userName) {
+                return userName.equals("admin") ? "AdminRealm" : null;
+            }
+        });
+        final SecurityDomain domain = builder.build();
+
+        // the realm is selected by the rewritten name either way
+        assertEquals("AdminRealm", domain.mapName("ADMIN").getRealmName());
+        assertEquals("AdminRealm", domain.mapPrincipal(new NamePrincipal("ADMIN")).getRealmName());
+        assertEquals("DefaultRealm", domain.mapName("George").getRealmName());
+        assertEquals("DefaultRealm", domain.mapPrincipal(new NamePrincipal("George")).getRealmName());
+    }
+}
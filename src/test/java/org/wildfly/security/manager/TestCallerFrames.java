@@ -0,0 +1,59 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.security.manager;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link CallerFrames}.
+ */
+public class TestCallerFrames {
+
+    @Test
+    public void testFramesMatchCallStack() {
+        final CallerFrames frames = new CallerFrames();
+        // index 0 of the call stack is getCallStack() itself
+        final Class<?>[] stack = WildFlySecurityManager.getCallStack();
+        assertSame(TestCallerFrames.class, frames.get(0));
+        for (int i = 0; i < stack.length - 1; i ++) {
+            assertSame("frame " + i, stack[i + 1], frames.get(i));
+        }
+        assertNull(frames.get(stack.length - 1));
+        assertNull(frames.get(stack.length + 100));
+    }
+
+    @Test
+    public void testCallerOfCaller() {
+        assertSame(TestCallerFrames.class, Callee.getCaller());
+        assertSame(TestCallerFrames.class, WildFlySecurityManager.getCallerClass(1));
+    }
+
+    static final class Callee {
+        static Class<?> getCaller() {
+            return new CallerFrames().get(1);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.security.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
+import java.util.List;
+import java.util.PropertyPermission;
+
+import org.junit.Test;
+import org.wildfly.security.manager.SecurityManagerProfile.Entry;
+import org.wildfly.security.manager.SecurityManagerProfile.Kind;
+
+/**
+ * Tests of {@link CheckProfiler} and {@link SecurityManagerProfile}.
+ */
+public class TestCheckProfiler {
+
+    private static ProtectionDomain createDomain(final String location) throws Exception {
+        return new ProtectionDomain(new CodeSource(new URL(location), (Certificate[]) null), null);
+    }
+
+    @Test
+    public void testSampling() {
+        final CheckProfiler profiler = new CheckProfiler(10);
+        final WildFlySecurityManager.Context ctx = new WildFlySecurityManager.Context();
+        int sampled = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (profiler.sample(ctx)) {
+                ctx.sampling = false;
+                sampled++;
+            }
+        }
+        assertEquals(100, sampled);
+    }
+
+    @Test
+    public void testNestedChecksNotSampled() {
+        final CheckProfiler profiler = new CheckProfiler(1);
+        final WildFlySecurityManager.Context ctx = new WildFlySecurityManager.Context();
+        assertTrue(profiler.sample(ctx));
+        // a check made by the sampled check is not sampled again
+        assertFalse(profiler.sample(ctx));
+        ctx.sampling = false;
+        assertTrue(profiler.sample(ctx));
+    }
+
+    @Test
+    public void testProfile() throws Exception {
+        final CheckProfiler profiler = new CheckProfiler(100);
+        final ProtectionDomain application = createDomain("file:/deployments/app.jar");
+        profiler.record(Kind.CHECK_PERMISSION, new RuntimePermission("getClassLoader"), application, 1000L, false);
+        profiler.record(Kind.CHECK_PERMISSION, new RuntimePermission("getClassLoader"), application, 3000L, true);
+        profiler.record(Kind.CHECK_PERMISSION, new RuntimePermission("getClassLoader"), null, 500L, false);
+        profiler.record(Kind.CHECK_PROPERTY_ACCESS, PropertyPermission.class.getName(), "java.version", application, 9000L, false);
+        profiler.record(Kind.DO_CHECKED, null, application, 0L, false);
+
+        final SecurityManagerProfile profile = profiler.getProfile();
+        assertEquals(100, profile.getSampleRate());
+        final List<Entry> entries = profile.getEntries();
+        assertEquals(4, entries.size());
+
+        Entry entry = entries.get(0);
+        assertEquals(Kind.CHECK_PROPERTY_ACCESS, entry.getKind());
+        assertEquals("java.version", entry.getPermissionName());
+
+        entry = entries.get(1);
+        assertEquals(Kind.CHECK_PERMISSION, entry.getKind());
+        assertEquals(RuntimePermission.class.getName(), entry.getPermissionType());
+        assertEquals("getClassLoader", entry.getPermissionName());
+        assertEquals("file:/deployments/app.jar", entry.getCodeSource());
+        assertEquals(2, entry.getSampleCount());
+        assertEquals(200, entry.getEstimatedCount());
+        assertEquals(1, entry.getDeniedCount());
+        assertEquals(4000, entry.getTotalNanos());
+        assertEquals(2000, entry.getAverageNanos());
+
+        assertNull(entries.get(2).getCodeSource());
+        assertEquals(Kind.DO_CHECKED, entries.get(3).getKind());
+        assertNull(entries.get(3).getPermissionType());
+
+        profiler.reset();
+        assertTrue(profiler.getProfile().getEntries().isEmpty());
+    }
+
+    @Test
+    public void testBoundedEntries() throws Exception {
+        final CheckProfiler profiler = new CheckProfiler(1);
+        for (int i = 0; i < CheckProfiler.MAXIMUM_ENTRIES + 100; i++) {
+            profiler.record(Kind.CHECK_PERMISSION, new RuntimePermission("permission" + i), null, 1L, false);
+        }
+        final List<Entry> entries = profiler.getProfile().getEntries();
+        assertEquals(CheckProfiler.MAXIMUM_ENTRIES + 1, entries.size());
+        assertEquals(CheckProfiler.OTHER_NAME, entries.get(0).getPermissionName());
+        assertEquals(100, entries.get(0).getSampleCount());
+
+        // further new checks of the same kind share the one overflow entry
+        profiler.record(Kind.CHECK_PERMISSION, new PropertyPermission("other", "read"), createDomain("file:/other.jar"), 1L, false);
+        profiler.record(Kind.CHECK_PERMISSION, PropertyPermission.class.getName(), null, createDomain("file:/another.jar"), 1L, false);
+        assertEquals(CheckProfiler.MAXIMUM_ENTRIES + 1, profiler.getProfile().getEntries().size());
+        assertEquals(102, profiler.getProfile().getEntries().get(0).getSampleCount());
+    }
+
+    @Test
+    public void testWriteTo() throws Exception {
+        final CheckProfiler profiler = new CheckProfiler(10);
+        profiler.record(Kind.CHECK_PERMISSION, new RuntimePermission("getClassLoader"), createDomain("file:/app.jar"), 1500L, false);
+        final File file = File.createTempFile("profile", ".txt");
+        try {
+            profiler.getProfile().writeTo(file);
+            final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            assertEquals(3, lines.size());
+            assertEquals("# sample rate 10", lines.get(0));
+            assertEquals("CHECK_PERMISSION\tjava.lang.RuntimePermission\tgetClassLoader\tfile:/app.jar\t1\t10\t0\t1500\t1500", lines.get(2));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testDisabledProfile() {
+        if (WildFlySecurityManager.PROFILER == null) {
+            assertEquals(0, WildFlySecurityManager.getProfile().getSampleRate());
+            assertTrue(WildFlySecurityManager.getProfile().getEntries().isEmpty());
+        }
+    }
+}
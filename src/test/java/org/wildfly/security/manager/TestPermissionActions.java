@@ -36,6 +36,7 @@ import org.wildfly.security.permission.PermissionActions;
  */
 @SuppressWarnings("SpellCheckingInspection")
 public class TestPermissionActions {
+
     enum ActionSetOne {
         foo,
         bar,
@@ -182,4 +183,35 @@ public class TestPermissionActions {
         assertTrue(set.contains(ActionSetTwo.foobaz));
         assertTrue(set.contains(ActionSetTwo.foobazz));
     }
+
+    @Test
+    public void testRepeatedParse() {
+        for (int i = 0; i < 3; i ++) {
+            final EnumSet<ActionSetOne> set = PermissionActions.parseActionStringToSet(ActionSetOne.class, "baz, foo");
+            assertEquals(EnumSet.of(ActionSetOne.foo, ActionSetOne.baz), set);
+            // the returned set is the caller's own
+            set.add(ActionSetOne.bar);
+            assertEquals(5, PermissionActions.parseActionStringToInt(ActionSetOne.class, "baz, foo"));
+            assertEquals(5L, PermissionActions.parseActionStringToLong(ActionSetOne.class, "baz, foo"));
+            assertEquals(7, PermissionActions.parseActionStringToInt(ActionSetOne.class, "*"));
+            try {
+                PermissionActions.parseActionStringToInt(ActionSetOne.class, "baz,barf");
+                fail("Expected exception not thrown");
+            } catch (IllegalArgumentException ignored) {}
+        }
+    }
+
+    @Test
+    public void testRepeatedCanonicalActionString() {
+        for (int i = 0; i < 3; i ++) {
+            assertEquals("foo,baz", getCanonicalActionString(ActionSetOne.class, 5));
+            assertEquals("foo,baz", getCanonicalActionString(ActionSetOne.class, 5L));
+            assertEquals("foo,baz", getCanonicalActionString(EnumSet.of(ActionSetOne.baz, ActionSetOne.foo)));
+            assertEquals("foobaz,fooba", getCanonicalActionString(ActionSetTwo.class, 0x22));
+            final StringBuilder b = new StringBuilder("actions=");
+            getCanonicalActionString(ActionSetOne.class, 3, b);
+            assertEquals("actions=foo,bar", b.toString());
+        }
+        assertEquals("", getCanonicalActionString(ActionSetOne.class, 0));
+    }
 }
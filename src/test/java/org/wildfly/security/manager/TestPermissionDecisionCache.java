@@ -0,0 +1,188 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.security.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FilePermission;
+import java.net.SocketPermission;
+import java.security.Permission;
+import java.security.Permissions;
+import java.security.Policy;
+import java.security.Principal;
+import java.security.ProtectionDomain;
+import java.util.PropertyPermission;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the permission decisions remembered by {@link WildFlySecurityManager#findAccessDenial}.
+ */
+public class TestPermissionDecisionCache {
+
+    private final AtomicInteger policyChecks = new AtomicInteger();
+    private final Permissions granted = new Permissions();
+    private Policy originalPolicy;
+
+    @Before
+    public void installPolicy() {
+        granted.add(new PropertyPermission("java.*", "read"));
+        granted.add(new FilePermission("/tmp/-", "read"));
+        granted.add(new RuntimePermission("getClassLoader"));
+        granted.add(new SocketPermission("localhost", "connect"));
+        originalPolicy = Policy.getPolicy();
+        Policy.setPolicy(new Policy() {
+            public boolean implies(final ProtectionDomain domain, final Permission permission) {
+                policyChecks.incrementAndGet();
+                return granted.implies(permission);
+            }
+        });
+        WildFlySecurityManager.DECISION_CACHE.clear();
+    }
+
+    @After
+    public void restorePolicy() {
+        Policy.setPolicy(originalPolicy);
+        WildFlySecurityManager.DECISION_CACHE.clear();
+    }
+
+    private static ProtectionDomain[] createStack(final int depth) {
+        final ProtectionDomain[] stack = new ProtectionDomain[depth];
+        for (int i = 0; i < depth; i++) {
+            stack[i] = new ProtectionDomain(null, null, null, new Principal[0]);
+        }
+        return stack;
+    }
+
+    @Test
+    public void testGrantsRemembered() {
+        final ProtectionDomain[] stack = createStack(3);
+        assertNull(WildFlySecurityManager.findAccessDenial(new PropertyPermission("java.version", "read"), stack));
+        assertEquals(3, policyChecks.get());
+        assertNull(WildFlySecurityManager.findAccessDenial(new PropertyPermission("java.version", "read"), stack));
+        assertEquals(3, policyChecks.get());
+
+        // a different domain is checked against the policy
+        final ProtectionDomain other = createStack(1)[0];
+        assertNull(WildFlySecurityManager.findAccessDenial(new PropertyPermission("java.version", "read"), other));
+        assertEquals(4, policyChecks.get());
+    }
+
+    @Test
+    public void testDenialsNotRemembered() {
+        final ProtectionDomain[] stack = createStack(2);
+        final Permission denied = new PropertyPermission("user.home", "read");
+        assertSame(stack[0], WildFlySecurityManager.findAccessDenial(denied, stack));
+        assertSame(stack[0], WildFlySecurityManager.findAccessDenial(denied, stack));
+        assertEquals(2, policyChecks.get());
+        assertFalse(WildFlySecurityManager.DECISION_CACHE.isGranted(stack[0], denied));
+    }
+
+    @Test
+    public void testUncacheablePermission() {
+        final ProtectionDomain[] stack = createStack(1);
+        final Permission permission = new SocketPermission("localhost", "connect");
+        assertNull(WildFlySecurityManager.findAccessDenial(permission, stack));
+        assertNull(WildFlySecurityManager.findAccessDenial(permission, stack));
+        assertEquals(2, policyChecks.get());
+    }
+
+    @Test
+    public void testRefreshPolicy() {
+        final ProtectionDomain[] stack = createStack(1);
+        final Permission permission = new RuntimePermission("getClassLoader");
+        assertNull(WildFlySecurityManager.findAccessDenial(permission, stack));
+        assertTrue(WildFlySecurityManager.DECISION_CACHE.isGranted(stack[0], permission));
+
+        WildFlySecurityManager.refreshPolicy();
+        assertFalse(WildFlySecurityManager.DECISION_CACHE.isGranted(stack[0], permission));
+        assertEquals(0, WildFlySecurityManager.DECISION_CACHE.getSize());
+
+        // a decision made before the refresh is not remembered
+        final int epoch = WildFlySecurityManager.DECISION_CACHE.getEpoch();
+        WildFlySecurityManager.DECISION_CACHE.clear();
+        WildFlySecurityManager.DECISION_CACHE.setGranted(stack[0], permission, epoch);
+        assertFalse(WildFlySecurityManager.DECISION_CACHE.isGranted(stack[0], permission));
+    }
+
+    @Test
+    public void testPolicyReplacedDuringCheck() throws Throwable {
+        final ProtectionDomain domain = createStack(1)[0];
+        final Permission permission = new RuntimePermission("getClassLoader");
+        final CountDownLatch checking = new CountDownLatch(1);
+        final CountDownLatch replaced = new CountDownLatch(1);
+        Policy.setPolicy(new Policy() {
+            public boolean implies(final ProtectionDomain domain, final Permission permission) {
+                checking.countDown();
+                try {
+                    replaced.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            }
+        });
+        final AtomicReference<ProtectionDomain> denial = new AtomicReference<ProtectionDomain>(domain);
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                denial.set(WildFlySecurityManager.findAccessDenial(permission, domain));
+            }
+        });
+        thread.start();
+        assertTrue(checking.await(10, TimeUnit.SECONDS));
+        // the new policy grants nothing
+        Policy.setPolicy(new Policy() {
+            public boolean implies(final ProtectionDomain domain, final Permission permission) {
+                return false;
+            }
+        });
+        replaced.countDown();
+        thread.join(10000);
+        assertNull(denial.get());
+
+        // the grant made by the replaced policy is not used
+        assertSame(domain, WildFlySecurityManager.findAccessDenial(permission, domain));
+    }
+
+    @Test
+    public void testBoundedSize() {
+        final PermissionDecisionCache cache = new PermissionDecisionCache(16);
+        final ProtectionDomain domain = createStack(1)[0];
+        for (int i = 0; i < 100; i++) {
+            cache.setGranted(domain, new RuntimePermission("permission" + i), cache.getEpoch());
+        }
+        assertEquals(16, cache.getSize());
+        assertTrue(cache.isGranted(domain, new RuntimePermission("permission99")));
+        assertFalse(new PermissionDecisionCache(0).isCacheable(new RuntimePermission("permission")));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.security.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.security.Permissions;
+import java.security.ProtectionDomain;
+import java.util.PropertyPermission;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of {@link PropertyPermissionCache} and of the property permission checks which use it.
+ */
+public class TestPropertyPermissionCache {
+
+    @Before
+    public void clearDecisions() {
+        WildFlySecurityManager.DECISION_CACHE.clear();
+    }
+
+    @After
+    public void discardDecisions() {
+        WildFlySecurityManager.DECISION_CACHE.clear();
+    }
+
+    private static ProtectionDomain createDomain(final PropertyPermission... granted) {
+        final Permissions permissions = new Permissions();
+        for (PropertyPermission permission : granted) {
+            permissions.add(permission);
+        }
+        return new ProtectionDomain(null, permissions);
+    }
+
+    @Test
+    public void testPermissionsInterned() {
+        final PropertyPermissionCache cache = new PropertyPermissionCache("read", 16);
+        final PropertyPermission permission = cache.get("java.version");
+        assertEquals(new PropertyPermission("java.version", "read"), permission);
+        assertSame(permission, cache.get("java.version"));
+        assertEquals(1, cache.getSize());
+        assertEquals(new PropertyPermission("java.version", "write"), new PropertyPermissionCache("write", 16).get("java.version"));
+    }
+
+    @Test
+    public void testBoundedSize() {
+        final PropertyPermissionCache cache = new PropertyPermissionCache("read", 16);
+        for (int i = 0; i < 100; i++) {
+            cache.get("property" + i);
+        }
+        assertEquals(16, cache.getSize());
+        assertSame(cache.get("property99"), cache.get("property99"));
+
+        final PropertyPermissionCache disabled = new PropertyPermissionCache("read", 0);
+        assertNotSame(disabled.get("java.version"), disabled.get("java.version"));
+        assertEquals(0, disabled.getSize());
+    }
+
+    @Test
+    public void testGrantsRemembered() {
+        final ProtectionDomain domain = createDomain(new PropertyPermission("java.*", "read"));
+        final PropertyPermission permission = WildFlySecurityManager.READ_PERMISSIONS.get("java.version");
+        assertTrue(WildFlySecurityManager.isGranted(domain, permission));
+        assertTrue(WildFlySecurityManager.DECISION_CACHE.isGranted(domain, permission));
+        assertFalse(WildFlySecurityManager.isGranted(domain, WildFlySecurityManager.WRITE_PERMISSIONS.get("java.version")));
+        assertFalse(WildFlySecurityManager.isGranted(domain, WildFlySecurityManager.READ_PERMISSIONS.get("user.home")));
+    }
+
+    @Test
+    public void testRepeatedCheckDoesNotAllocate() {
+        final ProtectionDomain domain = createDomain(new PropertyPermission("java.*", "read"));
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (! (threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        final long id = Thread.currentThread().getId();
+        boolean granted = true;
+        for (int i = 0; i < 1000; i++) {
+            granted &= WildFlySecurityManager.isGranted(domain, WildFlySecurityManager.READ_PERMISSIONS.get("java.version"));
+        }
+        final long before = allocations.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 1000; i++) {
+            granted &= WildFlySecurityManager.isGranted(domain, WildFlySecurityManager.READ_PERMISSIONS.get("java.version"));
+        }
+        final long allocated = allocations.getThreadAllocatedBytes(id) - before;
+        assertTrue(granted);
+        // allow for the measurement itself, but not for anything per check
+        assertTrue("Allocated " + allocated + " bytes", allocated < 1000);
+    }
+}
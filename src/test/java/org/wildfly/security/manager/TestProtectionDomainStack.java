@@ -0,0 +1,60 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.security.manager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Field;
+import java.security.AccessControlContext;
+import java.security.Principal;
+import java.security.ProtectionDomain;
+
+import org.junit.Test;
+
+/**
+ * Tests of reading the protection domains of an {@link AccessControlContext}.
+ */
+public class TestProtectionDomainStack {
+
+    private static AccessControlContext createContext(final int depth) {
+        final ProtectionDomain[] stack = new ProtectionDomain[depth];
+        for (int i = 0; i < depth; i++) {
+            stack[i] = new ProtectionDomain(null, null, null, new Principal[0]);
+        }
+        return new AccessControlContext(stack);
+    }
+
+    @Test
+    public void testStack() throws Exception {
+        final Field field = new GetAccessibleDeclaredFieldAction(AccessControlContext.class, "context").run();
+        for (int depth : new int[] { 1, 5, 20 }) {
+            final AccessControlContext context = createContext(depth);
+            final ProtectionDomain[] stack = WildFlySecurityManager.getProtectionDomainStack(context);
+            assertSame(field.get(context), stack);
+            assertArrayEquals((ProtectionDomain[]) field.get(context), stack);
+        }
+        assertNull(WildFlySecurityManager.getProtectionDomainStack(new AccessControlContext(new ProtectionDomain[0])));
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.security.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.PrivilegedAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests of the security manager state held by a {@link WildFlySecurityManagerThread}.
+ */
+public class TestSecurityManagerThread {
+
+    private static final PrivilegedAction<Boolean> CHECKING_ACTION = new PrivilegedAction<Boolean>() {
+        public Boolean run() {
+            return Boolean.valueOf(WildFlySecurityManager.getContext().checking);
+        }
+    };
+
+    private static void runOn(final Thread thread) throws Throwable {
+        // failures on the thread are rethrown on the test thread
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            public void uncaughtException(final Thread t, final Throwable e) {
+                failure.set(e);
+            }
+        });
+        thread.start();
+        thread.join();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    @Test
+    public void testStateHeldByThread() throws Throwable {
+        final AtomicReference<WildFlySecurityManager.Context> first = new AtomicReference<>();
+        final AtomicReference<WildFlySecurityManager.Context> second = new AtomicReference<>();
+        final AtomicReference<Boolean> checking = new AtomicReference<>();
+        final WildFlySecurityManagerThread thread = new WildFlySecurityManagerThread(new Runnable() {
+            public void run() {
+                first.set(WildFlySecurityManager.getContext());
+                second.set(WildFlySecurityManager.getContext());
+                checking.set(WildFlySecurityManager.doUnchecked(CHECKING_ACTION));
+            }
+        }, "state");
+        runOn(thread);
+        assertSame(first.get(), second.get());
+        assertFalse(checking.get().booleanValue());
+        // the state is restored after the unchecked action
+        assertTrue(first.get().checking);
+
+        // the state of another thread is separate
+        final AtomicReference<WildFlySecurityManager.Context> other = new AtomicReference<>();
+        runOn(new WildFlySecurityManagerThread(new Runnable() {
+            public void run() {
+                other.set(WildFlySecurityManager.getContext());
+            }
+        }));
+        assertNotSame(first.get(), other.get());
+        assertNotSame(first.get(), WildFlySecurityManager.getContext());
+    }
+
+    @Test
+    public void testPlainThread() throws Throwable {
+        final AtomicReference<WildFlySecurityManager.Context> first = new AtomicReference<>();
+        final AtomicReference<WildFlySecurityManager.Context> second = new AtomicReference<>();
+        runOn(new Thread(new Runnable() {
+            public void run() {
+                first.set(WildFlySecurityManager.getContext());
+                second.set(WildFlySecurityManager.getContext());
+            }
+        }));
+        assertSame(first.get(), second.get());
+        assertNotSame(first.get(), WildFlySecurityManager.getContext());
+        assertFalse(WildFlySecurityManager.doUnchecked(CHECKING_ACTION).booleanValue());
+    }
+
+    @Test
+    public void testPropertyPrivileged() throws Throwable {
+        final String expected = System.getProperty("java.version");
+        final PrivilegedAction<String> readAction = new PrivilegedAction<String>() {
+            public String run() {
+                return WildFlySecurityManager.getPropertyPrivileged("java.version", null);
+            }
+        };
+        for (boolean securityManagerThread : new boolean[] { false, true }) {
+            final AtomicReference<String> value = new AtomicReference<>();
+            final AtomicReference<String> missing = new AtomicReference<>();
+            final AtomicReference<String> unchecked = new AtomicReference<>();
+            final AtomicReference<Boolean> checking = new AtomicReference<>();
+            final Runnable task = new Runnable() {
+                public void run() {
+                    value.set(WildFlySecurityManager.getPropertyPrivileged("java.version", null));
+                    missing.set(WildFlySecurityManager.getPropertyPrivileged("wildfly.security.test.missing", "default"));
+                    unchecked.set(WildFlySecurityManager.doUnchecked(readAction));
+                    checking.set(Boolean.valueOf(WildFlySecurityManager.getContext().checking));
+                }
+            };
+            runOn(securityManagerThread ? new WildFlySecurityManagerThread(task) : new Thread(task));
+            assertEquals(expected, value.get());
+            assertEquals("default", missing.get());
+            assertEquals(expected, unchecked.get());
+            assertTrue(checking.get().booleanValue());
+        }
+    }
+}
@@ -18,8 +18,14 @@
 
 package org.wildfly.security.manager;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
 
 import org.junit.Test;
 
@@ -28,6 +34,18 @@ import org.junit.Test;
  */
 public final class TestStackInspector {
 
+    private static final StackInspector.FrameMatcher TEST_CLASS_MATCHER = new StackInspector.FrameMatcher() {
+        public boolean matches(final Class<?> clazz) {
+            return clazz == TestStackInspector.class;
+        }
+    };
+
+    private static final StackInspector.FrameMatcher NO_MATCHER = new StackInspector.FrameMatcher() {
+        public boolean matches(final Class<?> clazz) {
+            return false;
+        }
+    };
+
     @Test
     public void simpleTest() {
         final StackInspector i = StackInspector.getInstance();
@@ -48,4 +66,44 @@ public final class TestStackInspector {
         assertEquals(2, i.getCallStack(0, 2).length);
         assertEquals(3, i.getCallStack(0, 3).length);
     }
+
+    @Test
+    public void testPartialCallStack() {
+        assertEquals(0, recurseForStack(40));
+    }
+
+    private int recurseForStack(final int depth) {
+        if (depth > 0) {
+            return recurseForStack(depth - 1);
+        }
+        final StackInspector i = StackInspector.getInstance();
+        final Class<?>[] stack = i.getCallStack();
+        assertArrayEquals(Arrays.copyOfRange(stack, 0, 3), i.getCallStack(0, 3));
+        assertArrayEquals(Arrays.copyOfRange(stack, 5, 30), i.getCallStack(5, 25));
+        assertArrayEquals(stack, i.getCallStack(0, Integer.MAX_VALUE));
+        assertEquals(0, i.getCallStack(0, 0).length);
+        assertEquals(0, i.getCallStack(stack.length + 10, 3).length);
+        return depth;
+    }
+
+    @Test
+    public void testFindCaller() {
+        final StackInspector i = StackInspector.getInstance();
+        assertSame(TestStackInspector.class, i.findCaller(0, TEST_CLASS_MATCHER));
+        assertSame(null, i.findCaller(0, NO_MATCHER));
+        assertTrue(i.callStackContains(TEST_CLASS_MATCHER));
+        assertFalse(i.callStackContains(NO_MATCHER));
+        assertSame(TestStackInspector.class, Callee.findTestCaller());
+
+        // a package name is only matched as a whole
+        assertSame(TestStackInspector.class, i.getFirstCallerOutside(0, "org.wildfly.securit"));
+        final Class<?> outside = i.getFirstCallerOutside(0, "org.wildfly.security");
+        assertTrue(outside == null || ! outside.getName().startsWith("org.wildfly.security."));
+    }
+
+    static final class Callee {
+        static Class<?> findTestCaller() {
+            return StackInspector.getInstance().findCaller(0, TEST_CLASS_MATCHER);
+        }
+    }
 }
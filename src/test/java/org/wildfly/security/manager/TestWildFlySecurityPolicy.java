@@ -0,0 +1,254 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.security.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FilePermission;
+import java.net.SocketPermission;
+import java.net.URL;
+import java.security.AllPermission;
+import java.security.CodeSource;
+import java.security.Permission;
+import java.security.Permissions;
+import java.security.ProtectionDomain;
+import java.security.SecurityPermission;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PropertyPermission;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link WildFlySecurityPolicy}.
+ */
+public class TestWildFlySecurityPolicy {
+
+    private static final String ROOT = File.separator + "srv" + File.separator;
+
+    private static ProtectionDomain createDomain(final String location) throws Exception {
+        return new ProtectionDomain(new CodeSource(new URL(location), (Certificate[]) null), null, null, null);
+    }
+
+    private static Map<CodeSource, Collection<Permission>> grantAll(final Permission... permissions) {
+        return Collections.<CodeSource, Collection<Permission>>singletonMap(null, Arrays.asList(permissions));
+    }
+
+    private static void assertSameDecisions(final List<Permission> granted, final Permission... checked) throws Exception {
+        final Permissions expected = new Permissions();
+        for (Permission permission : granted) {
+            expected.add(permission);
+        }
+        final WildFlySecurityPolicy policy = new WildFlySecurityPolicy(grantAll(granted.toArray(new Permission[granted.size()])));
+        final ProtectionDomain domain = createDomain("file:/app.jar");
+        for (Permission permission : checked) {
+            assertEquals(permission.toString(), expected.implies(permission), policy.implies(domain, permission));
+        }
+    }
+
+    @Test
+    public void testNamedPermissions() throws Exception {
+        assertSameDecisions(Arrays.<Permission>asList(
+                new RuntimePermission("getClassLoader"),
+                new RuntimePermission("accessClassInPackage.sun.*"),
+                new RuntimePermission("exitVM"),
+                new SecurityPermission("getProperty.*"),
+                new WildFlySecurityManagerPermission("doUnchecked")),
+                new RuntimePermission("getClassLoader"),
+                new RuntimePermission("setClassLoader"),
+                new RuntimePermission("accessClassInPackage.sun.misc"),
+                new RuntimePermission("accessClassInPackage.sun"),
+                new RuntimePermission("accessClassInPackage.*"),
+                new RuntimePermission("exitVM.1"),
+                new RuntimePermission("exitVM"),
+                new SecurityPermission("getProperty.foo"),
+                new SecurityPermission("setProperty.foo"),
+                new WildFlySecurityManagerPermission("doUnchecked"),
+                new WildFlySecurityManagerPermission("getStackInspector"));
+    }
+
+    @Test
+    public void testWildcardImpliesLongerNamesOnly() throws Exception {
+        assertSameDecisions(Arrays.<Permission>asList(
+                new RuntimePermission("a.*"),
+                new RuntimePermission("exitVM"),
+                new PropertyPermission("b.*", "read")),
+                new RuntimePermission("a."),
+                new RuntimePermission("a.b"),
+                new RuntimePermission("a"),
+                new RuntimePermission("exitVM."),
+                new RuntimePermission("exitVM.0"),
+                new PropertyPermission("b.", "read"),
+                new PropertyPermission("b.c", "read"));
+    }
+
+    @Test
+    public void testPropertyPermissions() throws Exception {
+        assertSameDecisions(Arrays.<Permission>asList(
+                new PropertyPermission("java.*", "read"),
+                new PropertyPermission("java.io.tmpdir", "write"),
+                new PropertyPermission("user.name", "read,write")),
+                new PropertyPermission("java.version", "read"),
+                new PropertyPermission("java.version", "write"),
+                new PropertyPermission("java.io.tmpdir", "read,write"),
+                new PropertyPermission("java.*", "read"),
+                new PropertyPermission("user.name", "read,write"),
+                new PropertyPermission("user.home", "read"),
+                new PropertyPermission("*", "read"));
+        assertSameDecisions(Arrays.<Permission>asList(new PropertyPermission("*", "read")),
+                new PropertyPermission("any.property", "read"),
+                new PropertyPermission("any.property", "write"));
+    }
+
+    @Test
+    public void testFilePermissions() throws Exception {
+        assertSameDecisions(Arrays.<Permission>asList(
+                new FilePermission(ROOT + "data" + File.separator + "-", "read"),
+                new FilePermission(ROOT + "logs" + File.separator + "*", "read,write"),
+                new FilePermission(ROOT + "config.xml", "read"),
+                new FilePermission(ROOT + "config.xml", "write"),
+                new SocketPermission("localhost", "connect")),
+                new FilePermission(ROOT + "data" + File.separator + "a" + File.separator + "b", "read"),
+                new FilePermission(ROOT + "data" + File.separator + "a", "write"),
+                new FilePermission(ROOT + "data", "read"),
+                new FilePermission(ROOT + "logs" + File.separator + "server.log", "write"),
+                new FilePermission(ROOT + "logs" + File.separator + "old" + File.separator + "server.log", "read"),
+                new FilePermission(ROOT + "config.xml", "read,write"),
+                new FilePermission(ROOT + "data" + File.separator + "-", "read"),
+                new FilePermission(ROOT + "other.xml", "read"),
+                new SocketPermission("localhost", "connect"));
+        assertSameDecisions(Arrays.<Permission>asList(new FilePermission("<<ALL FILES>>", "read")),
+                new FilePermission(ROOT + "anything", "read"),
+                new FilePermission(ROOT + "anything", "write"));
+    }
+
+    @Test
+    public void testCodeSources() throws Exception {
+        final Map<CodeSource, Collection<Permission>> grants = new HashMap<>();
+        grants.put(new CodeSource(new URL("file:/modules/-"), (Certificate[]) null), Collections.<Permission>singletonList(new RuntimePermission("getClassLoader")));
+        grants.put(new CodeSource(new URL("file:/deployments/app.jar"), (Certificate[]) null), Collections.<Permission>singletonList(new AllPermission()));
+        grants.put(null, Collections.<Permission>singletonList(new PropertyPermission("java.version", "read")));
+        final WildFlySecurityPolicy policy = new WildFlySecurityPolicy(grants);
+
+        final ProtectionDomain module = createDomain("file:/modules/system/module.jar");
+        assertTrue(policy.implies(module, new RuntimePermission("getClassLoader")));
+        assertTrue(policy.implies(module, new PropertyPermission("java.version", "read")));
+        assertFalse(policy.implies(module, new RuntimePermission("setClassLoader")));
+
+        final ProtectionDomain application = createDomain("file:/deployments/app.jar");
+        assertTrue(policy.implies(application, new RuntimePermission("setClassLoader")));
+
+        final ProtectionDomain other = createDomain("file:/other.jar");
+        assertFalse(policy.implies(other, new RuntimePermission("getClassLoader")));
+        assertTrue(policy.implies(other, new PropertyPermission("java.version", "read")));
+        assertTrue(policy.getPermissions(other.getCodeSource()).implies(new PropertyPermission("java.version", "read")));
+        assertFalse(policy.getPermissions(other.getCodeSource()).implies(new RuntimePermission("getClassLoader")));
+    }
+
+    @Test
+    public void testSetGrants() throws Exception {
+        final WildFlySecurityPolicy policy = new WildFlySecurityPolicy(grantAll(new RuntimePermission("getClassLoader")));
+        final ProtectionDomain domain = createDomain("file:/app.jar");
+        final Permission permission = new RuntimePermission("getClassLoader");
+        assertTrue(policy.implies(domain, permission));
+        WildFlySecurityManager.DECISION_CACHE.setGranted(domain, permission, WildFlySecurityManager.DECISION_CACHE.getEpoch());
+
+        policy.setGrants(grantAll(new RuntimePermission("setClassLoader")));
+        assertFalse(policy.implies(domain, permission));
+        assertTrue(policy.implies(domain, new RuntimePermission("setClassLoader")));
+        assertFalse(WildFlySecurityManager.DECISION_CACHE.isGranted(domain, permission));
+    }
+
+    @Test
+    public void testLargePolicy() throws Exception {
+        final List<Permission> granted = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            granted.add(new PropertyPermission("app" + i + ".*", "read"));
+            granted.add(new FilePermission(ROOT + "app" + i + File.separator + "-", "read"));
+            granted.add(new RuntimePermission("custom" + i));
+        }
+        assertSameDecisions(granted,
+                new PropertyPermission("app999.setting", "read"),
+                new PropertyPermission("app1000.setting", "read"),
+                new FilePermission(ROOT + "app999" + File.separator + "data" + File.separator + "file", "read"),
+                new FilePermission(ROOT + "app1000" + File.separator + "file", "read"),
+                new RuntimePermission("custom999"),
+                new RuntimePermission("custom1000"));
+    }
+
+    @Test
+    public void testRandomDecisions() throws Exception {
+        final Random random = new Random(4357);
+        for (int round = 0; round < 50; round++) {
+            final List<Permission> granted = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                granted.add(randomPermission(random, true));
+            }
+            final Permission[] checked = new Permission[200];
+            for (int i = 0; i < checked.length; i++) {
+                checked[i] = randomPermission(random, false);
+            }
+            assertSameDecisions(granted, checked);
+        }
+    }
+
+    private static final String[] NAME_SEGMENTS = { "a", "b", "exitVM", "foo" };
+    private static final String[] PROPERTY_ACTIONS = { "read", "write", "read,write" };
+    private static final String[] FILE_ACTIONS = { "read", "write", "read,write", "delete" };
+
+    private static Permission randomPermission(final Random random, final boolean wildcards) {
+        final boolean wildcard = wildcards && random.nextInt(3) == 0;
+        switch (random.nextInt(3)) {
+            case 0: {
+                final String name = randomName(random, '.') + (wildcard ? ".*" : "");
+                return new PropertyPermission(name, PROPERTY_ACTIONS[random.nextInt(PROPERTY_ACTIONS.length)]);
+            }
+            case 1: {
+                return new RuntimePermission(randomName(random, '.') + (wildcard ? ".*" : ""));
+            }
+            default: {
+                final String name = ROOT + randomName(random, File.separatorChar) + (wildcard ? File.separator + (random.nextBoolean() ? "*" : "-") : "");
+                return new FilePermission(name, FILE_ACTIONS[random.nextInt(FILE_ACTIONS.length)]);
+            }
+        }
+    }
+
+    private static String randomName(final Random random, final char separator) {
+        final StringBuilder name = new StringBuilder(NAME_SEGMENTS[random.nextInt(NAME_SEGMENTS.length)]);
+        final int segments = random.nextInt(3);
+        for (int i = 0; i < segments; i++) {
+            name.append(separator).append(NAME_SEGMENTS[random.nextInt(NAME_SEGMENTS.length)]);
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.gssapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.wildfly.security.sasl.gssapi.JAASUtil.loginClient;
+import static org.wildfly.security.sasl.gssapi.JAASUtil.loginServer;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.security.auth.Subject;
+import javax.security.auth.login.LoginException;
+import javax.security.sasl.SaslClient;
+import javax.security.sasl.SaslException;
+import javax.security.sasl.SaslServer;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.wildfly.security.sasl.WildFlySasl;
+
+/**
+ * Test a WildFly client sharing a cached initiator credential can repeatedly authenticate against a WildFly server.
+ */
+public class CachingWildFlyClientWildFlyServer extends BaseGssapiTests {
+
+    private static final int CONNECTION_COUNT = 10;
+
+    private static Subject clientSubject;
+    private static Subject serverSubject;
+
+    @BeforeClass
+    public static void initialise() throws LoginException {
+        clientSubject = loginClient();
+        serverSubject = loginServer();
+    }
+
+    @AfterClass
+    public static void destroy() {
+        CredentialCache.getInstance().clear();
+        clientSubject = null;
+        serverSubject = null;
+    }
+
+    @Override
+    protected SaslClient getSaslClient(final boolean authServer, final VerificationMode mode) throws Exception {
+        Map<String, String> props = Collections.singletonMap(WildFlySasl.GSSAPI_CACHE_INITIATOR_CREDENTIAL, Boolean.TRUE.toString());
+        SaslClient baseClient = createClient(clientSubject, true, authServer, mode, props);
+
+        return new SubjectWrappingSaslClient(baseClient, clientSubject);
+    }
+
+    @Override
+    protected SaslServer getSaslServer(final VerificationMode mode) throws Exception {
+        Map<String, String> props = Collections.emptyMap();
+        SaslServer baseServer = createServer(serverSubject, true, mode, props);
+
+        return new SubjectWrappingSaslServer(baseServer, serverSubject);
+    }
+
+    @Test
+    public void repeatedConnectionsReuseCredential() throws Exception {
+        CredentialCache cache = CredentialCache.getInstance();
+        cache.clear();
+        long hitsBefore = cache.getInitiatorHitCount();
+        long missesBefore = cache.getInitiatorMissCount();
+
+        for (int i = 0; i < CONNECTION_COUNT; i++) {
+            SaslClient client = getSaslClient(false, VerificationMode.NONE);
+            SaslServer server = getSaslServer(VerificationMode.NONE);
+            try {
+                byte[] exchange = new byte[0];
+                while (client.isComplete() == false || server.isComplete() == false) {
+                    exchange = client.evaluateChallenge(exchange);
+                    if (server.isComplete() == false) {
+                        exchange = server.evaluateResponse(exchange);
+                    }
+                }
+                assertEquals("Authorization ID", "jduke@WILDFLY.ORG", server.getAuthorizationID());
+            } finally {
+                client.dispose();
+                server.dispose();
+            }
+        }
+
+        long hits = cache.getInitiatorHitCount() - hitsBefore;
+        long misses = cache.getInitiatorMissCount() - missesBefore;
+        assertEquals("Initiator credential obtained once", 1, misses);
+        assertTrue("Initiator credential reused", hits >= CONNECTION_COUNT - 1);
+    }
+
+    @Test
+    public void invalidRefreshMarginRejected() throws Exception {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(WildFlySasl.GSSAPI_CACHE_INITIATOR_CREDENTIAL, Boolean.TRUE.toString());
+        props.put(WildFlySasl.GSSAPI_CREDENTIAL_REFRESH_MARGIN, "soon");
+        try {
+            createClient(clientSubject, true, false, VerificationMode.NONE, props);
+            fail("Expected SaslException not thrown.");
+        } catch (SaslException expected) {
+        }
+    }
+
+}
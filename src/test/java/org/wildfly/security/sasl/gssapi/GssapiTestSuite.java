@@ -35,7 +35,10 @@ import org.junit.runners.Suite.SuiteClasses;
     JdkClientJdkServer.class,
     JdkClientWildFlyServer.class,
     WildFlyClientJdkServer.class,
-    WildFlyClientWildFlyServer.class
+    WildFlyClientWildFlyServer.class,
+    WildFlyClientWildFlyServerByteBuffers.class,
+    WildFlyClientCachingWildFlyServer.class,
+    CachingWildFlyClientWildFlyServer.class
 })
 public class GssapiTestSuite {
 
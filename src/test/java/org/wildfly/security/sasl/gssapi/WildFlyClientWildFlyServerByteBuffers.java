@@ -0,0 +1,239 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.gssapi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.wildfly.security.sasl.gssapi.JAASUtil.loginClient;
+import static org.wildfly.security.sasl.gssapi.JAASUtil.loginServer;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.security.auth.Subject;
+import javax.security.auth.login.LoginException;
+import javax.security.sasl.SaslClient;
+import javax.security.sasl.SaslServer;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test the {@link java.nio.ByteBuffer} wrap and unwrap methods of a WildFly client and WildFly server using a
+ * confidential security layer.
+ */
+public class WildFlyClientWildFlyServerByteBuffers extends BaseGssapiTests {
+
+    private static final int MESSAGE_SIZE = 100;
+
+    private static Subject clientSubject;
+    private static Subject serverSubject;
+
+    private GssapiClient client;
+    private GssapiServer server;
+
+    @BeforeClass
+    public static void initialise() throws LoginException {
+        clientSubject = loginClient();
+        serverSubject = loginServer();
+    }
+
+    @AfterClass
+    public static void destroy() {
+        clientSubject = null;
+        serverSubject = null;
+    }
+
+    @After
+    public void dispose() throws Exception {
+        if (client != null) {
+            client.dispose();
+            client = null;
+        }
+        if (server != null) {
+            server.dispose();
+            server = null;
+        }
+    }
+
+    @Override
+    protected SaslClient getSaslClient(final boolean authServer, final VerificationMode mode) throws Exception {
+        Map<String, String> props = Collections.emptyMap();
+        SaslClient baseClient = createClient(clientSubject, true, authServer, mode, props);
+
+        return new SubjectWrappingSaslClient(baseClient, clientSubject);
+    }
+
+    @Override
+    protected SaslServer getSaslServer(final VerificationMode mode) throws Exception {
+        Map<String, String> props = Collections.emptyMap();
+        SaslServer baseServer = createServer(serverSubject, true, mode, props);
+
+        return new SubjectWrappingSaslServer(baseServer, serverSubject);
+    }
+
+    @Test
+    public void heapBufferRoundTrip() throws Exception {
+        authenticate();
+        roundTrip(false);
+    }
+
+    @Test
+    public void directBufferRoundTrip() throws Exception {
+        authenticate();
+        roundTrip(true);
+    }
+
+    @Test
+    public void gatheringWrap() throws Exception {
+        authenticate();
+        final byte[] message = message();
+        final ByteBuffer[] outgoing = new ByteBuffer[] {
+            ByteBuffer.allocate(0),
+            ByteBuffer.wrap(message, 0, 30).slice(),
+            direct(message, 30, 40),
+            ByteBuffer.wrap(message, 70, 30),
+            ByteBuffer.allocate(10),
+        };
+        final ByteBuffer wrapped = ByteBuffer.allocate(MESSAGE_SIZE * 2);
+        client.wrap(outgoing, 1, 3, wrapped);
+        for (int i = 1; i < 4; i++) {
+            assertFalse("Buffer " + i + " consumed", outgoing[i].hasRemaining());
+        }
+        assertEquals("Buffer outside range untouched", 10, outgoing[4].remaining());
+
+        wrapped.flip();
+        final ByteBuffer unwrapped = ByteBuffer.allocate(MESSAGE_SIZE * 2);
+        server.unwrap(wrapped, unwrapped);
+        assertArrayEquals(message, remaining(unwrapped));
+    }
+
+    @Test
+    public void undersizedTarget() throws Exception {
+        authenticate();
+        final byte[] message = message();
+        for (boolean direct : new boolean[] { false, true }) {
+            final ByteBuffer outgoing = direct ? direct(message, 0, message.length) : ByteBuffer.wrap(message);
+            final ByteBuffer small = allocate(direct, 4);
+            small.put((byte) 1);
+            try {
+                client.wrap(outgoing, small);
+                fail("Expected BufferOverflowException not thrown.");
+            } catch (BufferOverflowException expected) {
+            }
+            assertEquals("Outgoing position restored", 0, outgoing.position());
+            assertEquals("Target position restored", 1, small.position());
+
+            final ByteBuffer[] gathered = new ByteBuffer[] { outgoing, allocate(direct, 10) };
+            try {
+                client.wrap(gathered, 0, 2, small);
+                fail("Expected BufferOverflowException not thrown.");
+            } catch (BufferOverflowException expected) {
+            }
+            assertEquals("Outgoing position restored", 0, gathered[0].position());
+            assertEquals("Outgoing position restored", 0, gathered[1].position());
+            assertEquals("Target position restored", 1, small.position());
+
+            final ByteBuffer wrapped = allocate(direct, MESSAGE_SIZE * 2);
+            client.wrap(outgoing, wrapped);
+            wrapped.flip();
+            final int wrappedLength = wrapped.remaining();
+            try {
+                server.unwrap(wrapped, small);
+                fail("Expected BufferOverflowException not thrown.");
+            } catch (BufferOverflowException expected) {
+            }
+            assertEquals("Incoming position restored", 0, wrapped.position());
+            assertEquals("Incoming data retained", wrappedLength, wrapped.remaining());
+            assertEquals("Target position restored", 1, small.position());
+        }
+    }
+
+    private void roundTrip(final boolean direct) throws Exception {
+        final byte[] message = message();
+
+        final ByteBuffer outgoing = direct ? direct(message, 0, message.length) : ByteBuffer.wrap(message);
+        final ByteBuffer wrapped = allocate(direct, MESSAGE_SIZE * 2);
+        client.wrap(outgoing, wrapped);
+        assertFalse("Outgoing consumed", outgoing.hasRemaining());
+
+        wrapped.flip();
+        final ByteBuffer unwrapped = allocate(direct, MESSAGE_SIZE * 2);
+        server.unwrap(wrapped, unwrapped);
+        assertFalse("Incoming consumed", wrapped.hasRemaining());
+        assertArrayEquals("Unwrapped (By Server) matched original", message, remaining(unwrapped));
+
+        unwrapped.rewind();
+        wrapped.clear();
+        server.wrap(unwrapped, wrapped);
+        wrapped.flip();
+        final ByteBuffer returned = allocate(direct, MESSAGE_SIZE * 2);
+        client.unwrap(wrapped, returned);
+        assertArrayEquals("Unwrapped (By Client) matched original", message, remaining(returned));
+    }
+
+    private void authenticate() throws Exception {
+        final Map<String, String> props = Collections.emptyMap();
+        client = (GssapiClient) createClient(clientSubject, true, false, VerificationMode.CONFIDENTIALITY, props);
+        server = (GssapiServer) createServer(serverSubject, true, VerificationMode.CONFIDENTIALITY, props);
+        final SaslClient wrappingClient = new SubjectWrappingSaslClient(client, clientSubject);
+        final SaslServer wrappingServer = new SubjectWrappingSaslServer(server, serverSubject);
+
+        byte[] exchange = new byte[0];
+        while (wrappingClient.isComplete() == false || wrappingServer.isComplete() == false) {
+            exchange = wrappingClient.evaluateChallenge(exchange);
+            if (wrappingServer.isComplete() == false) {
+                exchange = wrappingServer.evaluateResponse(exchange);
+            }
+        }
+    }
+
+    private static byte[] message() {
+        final byte[] message = new byte[MESSAGE_SIZE];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) i;
+        }
+        return message;
+    }
+
+    private static ByteBuffer allocate(final boolean direct, final int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private static ByteBuffer direct(final byte[] bytes, final int offset, final int length) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        buffer.put(bytes, offset, length);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static byte[] remaining(final ByteBuffer buffer) {
+        buffer.flip();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+}
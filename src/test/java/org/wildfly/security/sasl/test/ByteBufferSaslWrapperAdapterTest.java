@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.security.sasl.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import javax.security.sasl.SaslException;
+
+import org.junit.Test;
+import org.wildfly.security.sasl.util.ByteBufferSaslWrapper;
+import org.wildfly.security.sasl.util.ByteBufferSaslWrapperAdapter;
+import org.wildfly.security.sasl.util.Charsets;
+import org.wildfly.security.sasl.util.SaslWrapper;
+
+/**
+ * Tests of org.wildfly.security.sasl.util.ByteBufferSaslWrapperAdapter
+ */
+public class ByteBufferSaslWrapperAdapterTest {
+
+    private static final SaslWrapper PREFIXING_WRAPPER = new SaslWrapper() {
+        public byte[] wrap(final byte[] outgoing, final int offset, final int len) {
+            byte[] result = new byte[len + 1];
+            result[0] = (byte) len;
+            System.arraycopy(outgoing, offset, result, 1, len);
+            return result;
+        }
+
+        public byte[] unwrap(final byte[] incoming, final int offset, final int len) {
+            byte[] result = new byte[len - 1];
+            System.arraycopy(incoming, offset + 1, result, 0, len - 1);
+            return result;
+        }
+    };
+
+    @Test
+    public void testAdaptNull() {
+        assertEquals(null, ByteBufferSaslWrapperAdapter.adapt(null));
+    }
+
+    @Test
+    public void testAdaptTwice() {
+        ByteBufferSaslWrapper adapted = ByteBufferSaslWrapperAdapter.adapt(PREFIXING_WRAPPER);
+        assertSame(adapted, ByteBufferSaslWrapperAdapter.adapt(adapted));
+    }
+
+    @Test
+    public void testHeapBuffers() throws SaslException {
+        ByteBufferSaslWrapper wrapper = ByteBufferSaslWrapperAdapter.adapt(PREFIXING_WRAPPER);
+        ByteBuffer source = ByteBuffer.wrap("xxHello".getBytes(Charsets.UTF_8));
+        source.position(2);
+        ByteBuffer wrapped = ByteBuffer.allocate(16);
+        wrapper.wrap(source, wrapped);
+        assertFalse(source.hasRemaining());
+        wrapped.flip();
+        assertEquals(6, wrapped.remaining());
+        assertEquals(5, wrapped.get(0));
+
+        ByteBuffer unwrapped = ByteBuffer.allocate(16);
+        wrapper.unwrap(wrapped, unwrapped);
+        assertFalse(wrapped.hasRemaining());
+        assertArrayEquals("Hello".getBytes(Charsets.UTF_8), toArray(unwrapped));
+    }
+
+    @Test
+    public void testDirectBuffers() throws SaslException {
+        ByteBufferSaslWrapper wrapper = ByteBufferSaslWrapperAdapter.adapt(PREFIXING_WRAPPER);
+        ByteBuffer source = ByteBuffer.allocateDirect(5);
+        source.put("Hello".getBytes(Charsets.UTF_8)).flip();
+        ByteBuffer wrapped = ByteBuffer.allocateDirect(16);
+        wrapper.wrap(source, wrapped);
+        wrapped.flip();
+
+        ByteBuffer unwrapped = ByteBuffer.allocateDirect(16);
+        wrapper.unwrap(wrapped, unwrapped);
+        assertArrayEquals("Hello".getBytes(Charsets.UTF_8), toArray(unwrapped));
+    }
+
+    @Test
+    public void testGatheringWrap() throws SaslException {
+        ByteBufferSaslWrapper wrapper = ByteBufferSaslWrapperAdapter.adapt(PREFIXING_WRAPPER);
+        ByteBuffer direct = ByteBuffer.allocateDirect(3);
+        direct.put("llo".getBytes(Charsets.UTF_8)).flip();
+        ByteBuffer[] sources = new ByteBuffer[] { ByteBuffer.wrap("He".getBytes(Charsets.UTF_8)), direct };
+        ByteBuffer wrapped = ByteBuffer.allocate(16);
+        wrapper.wrap(sources, 0, sources.length, wrapped);
+        assertFalse(sources[0].hasRemaining());
+        assertFalse(sources[1].hasRemaining());
+        assertArrayEquals(PREFIXING_WRAPPER.wrap("Hello".getBytes(Charsets.UTF_8), 0, 5), toArray(wrapped));
+    }
+
+    @Test
+    public void testOverflowLeavesBuffersUnchanged() throws SaslException {
+        ByteBufferSaslWrapper wrapper = ByteBufferSaslWrapperAdapter.adapt(PREFIXING_WRAPPER);
+        ByteBuffer[] sources = new ByteBuffer[] { ByteBuffer.wrap("He".getBytes(Charsets.UTF_8)), ByteBuffer.wrap("llo".getBytes(Charsets.UTF_8)) };
+        ByteBuffer wrapped = ByteBuffer.allocate(5);
+        try {
+            wrapper.wrap(sources, 0, sources.length, wrapped);
+            fail("Expected exception not thrown.");
+        } catch (BufferOverflowException expected) {
+        }
+        assertEquals(2, sources[0].remaining());
+        assertEquals(3, sources[1].remaining());
+        assertEquals(0, wrapped.position());
+    }
+
+    private static byte[] toArray(final ByteBuffer buffer) {
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.Collections;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+import javax.security.auth.x500.X500Principal;
+import javax.security.sasl.AuthorizeCallback;
+import javax.security.sasl.Sasl;
+import javax.security.sasl.SaslClient;
+import javax.security.sasl.SaslException;
+import javax.security.sasl.SaslServer;
+
+import org.junit.Test;
+import org.wildfly.security.auth.callback.PeerPrincipalCallback;
+import org.wildfly.security.auth.callback.SecurityDomainCallback;
+import org.wildfly.security.auth.provider.SecurityDomain;
+import org.wildfly.security.auth.provider.SimpleMapBackedSecurityRealm;
+import org.wildfly.security.sasl.external.ExternalSaslServer;
+
+/**
+ * Test for the EXTERNAL SASL mechanism, this will test both the client and server side.
+ */
+public class ExternalTest extends BaseTestCase {
+
+    private static final String EXTERNAL = "EXTERNAL";
+
+    private static final X500Principal PEER = new X500Principal("CN=George,O=Test");
+
+    @Test
+    public void testSuccessfulExchange() throws Exception {
+        SaslServer server = createServer(new PeerCallbackHandler(PEER, null));
+        assertEquals(ExternalSaslServer.class, server.getClass());
+        exchange(server, null);
+        assertTrue(server.isComplete());
+        assertEquals(PEER.getName(), server.getAuthorizationID());
+    }
+
+    @Test
+    public void testAuthorizationId() throws Exception {
+        SaslServer server = createServer(new PeerCallbackHandler(PEER, null));
+        exchange(server, PEER.getName());
+        assertTrue(server.isComplete());
+        assertEquals(PEER.getName(), server.getAuthorizationID());
+    }
+
+    @Test
+    public void testNotAuthorized() throws Exception {
+        assertExchangeFails(createServer(new PeerCallbackHandler(PEER, null)), "Borris");
+    }
+
+    @Test
+    public void testNoPeerPrincipal() throws Exception {
+        assertExchangeFails(createServer(new PeerCallbackHandler(null, null)), null);
+    }
+
+    @Test
+    public void testPeerCallbackUnsupported() throws Exception {
+        assertExchangeFails(createServer(new ServerCallbackHandler("George", "gpwd".toCharArray())), null);
+    }
+
+    @Test
+    public void testSecurityDomain() throws Exception {
+        SecurityDomain.Builder builder = SecurityDomain.builder();
+        // the realm only supports name principals so the X.500 principal is mapped by name
+        builder.addRealm("TestRealm", new SimpleMapBackedSecurityRealm("TestRealm"));
+        builder.setDefaultRealmName("TestRealm");
+        SecurityDomain domain = builder.build();
+
+        SaslServer server = createServer(new PeerCallbackHandler(PEER, domain));
+        exchange(server, null);
+        assertTrue(server.isComplete());
+        assertEquals(PEER.getName(), server.getAuthorizationID());
+
+        assertExchangeFails(createServer(new PeerCallbackHandler(PEER, domain)), "Borris");
+    }
+
+    @Test
+    public void testServerReuse() throws Exception {
+        SaslServer server = createServer(new PeerCallbackHandler(PEER, null));
+        exchange(server, null);
+        assertTrue(server.isComplete());
+        server.dispose();
+
+        server = createServer(new PeerCallbackHandler(PEER, null));
+        assertFalse(server.isComplete());
+        exchange(server, null);
+        assertTrue(server.isComplete());
+    }
+
+    private SaslServer createServer(final CallbackHandler serverCallback) throws SaslException {
+        return Sasl.createSaslServer(EXTERNAL, "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), serverCallback);
+    }
+
+    private void exchange(final SaslServer server, final String authorizationId) throws SaslException {
+        SaslClient client = Sasl.createSaslClient(new String[] { EXTERNAL }, authorizationId, "TestProtocol", "TestServer",
+                Collections.<String, Object>emptyMap(), null);
+        assertTrue(client.hasInitialResponse());
+        byte[] message = client.evaluateChallenge(new byte[0]);
+        assertTrue(client.isComplete());
+        assertNull(server.evaluateResponse(message));
+    }
+
+    private void assertExchangeFails(final SaslServer server, final String authorizationId) {
+        try {
+            exchange(server, authorizationId);
+            fail("Expected SaslException not thrown.");
+        } catch (SaslException expected) {
+        }
+        assertFalse(server.isComplete());
+    }
+
+    private static final class PeerCallbackHandler implements CallbackHandler {
+
+        private final Principal peer;
+        private final SecurityDomain domain;
+
+        PeerCallbackHandler(final Principal peer, final SecurityDomain domain) {
+            this.peer = peer;
+            this.domain = domain;
+        }
+
+        public void handle(final Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+            for (Callback current : callbacks) {
+                if (current instanceof PeerPrincipalCallback) {
+                    ((PeerPrincipalCallback) current).setPrincipal(peer);
+                } else if (current instanceof SecurityDomainCallback && domain != null) {
+                    ((SecurityDomainCallback) current).setSecurityDomain(domain);
+                } else if (current instanceof AuthorizeCallback) {
+                    AuthorizeCallback acb = (AuthorizeCallback) current;
+                    acb.setAuthorized(acb.getAuthenticationID().equals(acb.getAuthorizationID()));
+                } else {
+                    throw new UnsupportedCallbackException(current);
+                }
+            }
+        }
+    }
+}
@@ -19,9 +19,16 @@
 package org.wildfly.security.sasl.test;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Test;
 import org.wildfly.security.sasl.util.Charsets;
@@ -392,4 +399,111 @@ public class LocalUserTest extends BaseTestCase {
         assertFalse("Temporary file was deleted.", file.exists());
     }
 
+    /**
+     * Test that challenge files are created within a directory private to this process and, where POSIX permissions
+     * are supported, are only accessible to their owner.
+     */
+
+    @Test
+    public void testChallengePermissions() throws Exception {
+        final File basePath = new File(System.getProperty("java.io.tmpdir")).getAbsoluteFile();
+        CallbackHandler serverCallback = new ServerCallbackHandler("George", (char[]) null);
+        SaslServer first = Sasl.createSaslServer(LOCAL_USER, "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), serverCallback);
+        SaslServer second = Sasl.createSaslServer(LOCAL_USER, "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), serverCallback);
+
+        final Path firstFile = Paths.get(new String(first.evaluateResponse(new byte[] { 0 }), Charsets.UTF_8));
+        final Path secondFile = Paths.get(new String(second.evaluateResponse(new byte[] { 0 }), Charsets.UTF_8));
+
+        assertEquals(firstFile.getParent(), secondFile.getParent());
+        assertEquals(basePath.toPath(), firstFile.getParent().getParent());
+        if (firstFile.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(firstFile));
+            assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(firstFile.getParent()));
+        }
+
+        first.dispose();
+        second.dispose();
+        assertFalse(Files.exists(firstFile));
+        assertFalse(Files.exists(secondFile));
+    }
+
+    /**
+     * Test that the name of a challenge file, which is sent to the client, is not the next output of the insecure
+     * {@link java.util.Random} which produced the challenge content.
+     */
+    @Test
+    public void testChallengeNameIndependentOfInsecureRandom() throws Exception {
+        CallbackHandler serverCallback = new ServerCallbackHandler("George", (char[]) null);
+        Map<String, String> serverOptions = new HashMap<String, String>();
+        serverOptions.put("wildfly.sasl.local-user.use-secure-random", "false");
+        for (int i = 0; i < 10; i++) {
+            SaslServer server = Sasl.createSaslServer(LOCAL_USER, "TestProtocol", "TestServer", serverOptions, serverCallback);
+            Path file = Paths.get(new String(server.evaluateResponse(new byte[] { 0 }), Charsets.UTF_8));
+            byte[] content = Files.readAllBytes(file);
+            assertEquals(8, content.length);
+
+            // recover every java.util.Random state which could have produced the content and predict the following long
+            int first = littleEndianInt(content, 0);
+            int second = littleEndianInt(content, 4);
+            for (long low = 0; low < 0x10000; low++) {
+                long seed = (first & 0xFFFFFFFFL) << 16 | low;
+                seed = nextSeed(seed);
+                if ((int) (seed >>> 16) != second) {
+                    continue;
+                }
+                long high = nextSeed(seed);
+                long next = nextSeed(high);
+                long predicted = ((long) (int) (high >>> 16) << 32) + (int) (next >>> 16);
+                assertFalse("Challenge name predictable from challenge content",
+                        file.getFileName().toString().equals("local" + Long.toHexString(predicted) + ".challenge"));
+            }
+            server.dispose();
+        }
+    }
+
+    private static int littleEndianInt(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    private static long nextSeed(final long seed) {
+        return (seed * 0x5DEECE66DL + 0xBL) & ((1L << 48) - 1);
+    }
+
+    /**
+     * Check that many servers can create and dispose of challenges concurrently.
+     */
+    @Test
+    public void testConcurrentChallenges() throws Exception {
+        final int threads = 8;
+        final int iterations = 50;
+        final CallbackHandler serverCallback = new ServerCallbackHandler("George", (char[]) null);
+        final AtomicLong failures = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < iterations; i++) {
+                            SaslServer server = Sasl.createSaslServer(LOCAL_USER, "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), serverCallback);
+                            final byte[] challenge = server.evaluateResponse(new byte[] { 0 });
+                            server.dispose();
+                            if (new File(new String(challenge, Charsets.UTF_8)).exists()) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue("Challenges created", done.await(60, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+    }
+
 }
@@ -20,9 +20,12 @@ package org.wildfly.security.sasl.test;
 import static javax.security.sasl.Sasl.POLICY_NOPLAINTEXT;
 import static org.junit.Assert.*;
 
+import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
 import javax.security.sasl.Sasl;
 import javax.security.sasl.SaslClient;
+import javax.security.sasl.SaslException;
 import javax.security.sasl.SaslServer;
 import javax.security.sasl.SaslServerFactory;
 
@@ -30,10 +33,18 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
+import org.wildfly.security.sasl.callback.VerifyPasswordCallback;
 import org.wildfly.security.sasl.plain.PlainSaslServer;
 import org.wildfly.security.sasl.plain.PlainServerFactory;
+import org.wildfly.security.sasl.util.AsyncCallbackHandler;
+import org.wildfly.security.sasl.util.SaslEvaluationListener;
 
 /**
  * Test the server side of the Plain SASL mechanism.
@@ -241,4 +252,196 @@ public class PlainTest extends BaseTestCase {
         assertEquals("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa", server.getAuthorizationID());
     }
 
+    /**
+     * Test a successful exchange where the password contains characters outside of ASCII.
+     */
+    @Test
+    public void testSuccessfulExchange_NonAsciiPassword() throws Exception {
+        final char[] password = "g\u00e9p\u20acwd\ud83d\ude00".toCharArray();
+        CallbackHandler serverCallback = new ServerCallbackHandler("George", password);
+        SaslServer server = Sasl.createSaslServer(PLAIN, "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), serverCallback);
+
+        server.evaluateResponse("\0George\0g\u00e9p\u20acwd\ud83d\ude00".getBytes("UTF-8"));
+        assertTrue(server.isComplete());
+        assertEquals("George", server.getAuthorizationID());
+    }
+
+    /**
+     * Test that a password which is not valid UTF-8 is rejected.
+     */
+    @Test
+    public void testInvalidPasswordEncoding() throws Exception {
+        CallbackHandler serverCallback = new ServerCallbackHandler("George", "gpwd".toCharArray());
+        SaslServer server = Sasl.createSaslServer(PLAIN, "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), serverCallback);
+
+        try {
+            server.evaluateResponse(new byte[] { 0, 'G', 0, 'g', (byte) 0xc3, 'p' });
+            fail("Expected SaslException not thrown.");
+        } catch (SaslException expected) {
+        }
+        assertFalse(server.isComplete());
+    }
+
+    /**
+     * Test that the password seen by the callback handler is wiped once it has been verified.
+     */
+    @Test
+    public void testPasswordWiped() throws Exception {
+        final VerifyPasswordCallback[] verified = new VerifyPasswordCallback[1];
+        final CallbackHandler delegate = new ServerCallbackHandler("George", "gpwd".toCharArray());
+        CallbackHandler serverCallback = new CallbackHandler() {
+            public void handle(final Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                for (Callback current : callbacks) {
+                    if (current instanceof VerifyPasswordCallback) {
+                        verified[0] = (VerifyPasswordCallback) current;
+                    }
+                }
+                delegate.handle(callbacks);
+            }
+        };
+        SaslServer server = Sasl.createSaslServer(PLAIN, "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), serverCallback);
+
+        server.evaluateResponse("George\0George\0gpwd".getBytes("UTF-8"));
+        assertTrue(server.isComplete());
+        assertNotNull(verified[0]);
+        assertTrue(verified[0].isVerified());
+        assertTrue(verified[0].passwordEquals(new char[4]));
+    }
+
+    /**
+     * Test a successful exchange where the server callbacks are handled asynchronously on another thread.
+     */
+    @Test
+    public void testSuccessfulExchangeAsync() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CallbackHandler serverCallback = new ExecutorCallbackHandler(new ServerCallbackHandler("George", "gpwd".toCharArray()), executor);
+            PlainSaslServer server = (PlainSaslServer) Sasl.createSaslServer(PLAIN, "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), serverCallback);
+
+            CallbackHandler clientCallback = new ClientCallbackHandler("George", "gpwd".toCharArray());
+            SaslClient client = Sasl.createSaslClient(new String[]{PLAIN}, "George", "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), clientCallback);
+
+            byte[] message = client.evaluateChallenge(new byte[0]);
+            ResultListener listener = new ResultListener();
+            server.evaluateResponseAsync(message, listener);
+            listener.await();
+
+            assertNull(listener.failure);
+            assertNull(listener.reply);
+            assertTrue(server.isComplete());
+            assertEquals("George", server.getAuthorizationID());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test that a bad password is rejected when the server callbacks are handled asynchronously.
+     */
+    @Test
+    public void testBadPasswordAsync() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CallbackHandler serverCallback = new ExecutorCallbackHandler(new ServerCallbackHandler("George", "gpwd".toCharArray()), executor);
+            PlainSaslServer server = (PlainSaslServer) Sasl.createSaslServer(PLAIN, "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), serverCallback);
+
+            CallbackHandler clientCallback = new ClientCallbackHandler("George", "bad".toCharArray());
+            SaslClient client = Sasl.createSaslClient(new String[]{PLAIN}, "George", "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), clientCallback);
+
+            byte[] message = client.evaluateChallenge(new byte[0]);
+            ResultListener listener = new ResultListener();
+            server.evaluateResponseAsync(message, listener);
+            listener.await();
+
+            assertNotNull(listener.failure);
+            assertFalse(server.isComplete());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test that the password is wiped when the server callbacks fail asynchronously.
+     */
+    @Test
+    public void testPasswordWipedOnAsyncFailure() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final VerifyPasswordCallback[] seen = new VerifyPasswordCallback[1];
+            CallbackHandler failing = new CallbackHandler() {
+                public void handle(final Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                    for (Callback current : callbacks) {
+                        if (current instanceof VerifyPasswordCallback) {
+                            seen[0] = (VerifyPasswordCallback) current;
+                        }
+                    }
+                    throw new IOException("Password store unavailable");
+                }
+            };
+            CallbackHandler serverCallback = new ExecutorCallbackHandler(failing, executor);
+            PlainSaslServer server = (PlainSaslServer) Sasl.createSaslServer(PLAIN, "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), serverCallback);
+
+            ResultListener listener = new ResultListener();
+            server.evaluateResponseAsync("George\0George\0gpwd".getBytes("UTF-8"), listener);
+            listener.await();
+
+            assertNotNull(listener.failure);
+            assertFalse(server.isComplete());
+            assertNotNull(seen[0]);
+            assertTrue(seen[0].passwordEquals(new char[4]));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static final class ExecutorCallbackHandler implements AsyncCallbackHandler {
+
+        private final CallbackHandler delegate;
+        private final Executor executor;
+
+        private ExecutorCallbackHandler(final CallbackHandler delegate, final Executor executor) {
+            this.delegate = delegate;
+            this.executor = executor;
+        }
+
+        public void handle(final Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+            delegate.handle(callbacks);
+        }
+
+        public void handle(final Callback[] callbacks, final Completion completion) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        delegate.handle(callbacks);
+                    } catch (Throwable t) {
+                        completion.failed(t);
+                        return;
+                    }
+                    completion.handled();
+                }
+            });
+        }
+    }
+
+    private static final class ResultListener implements SaslEvaluationListener {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile byte[] reply;
+        private volatile SaslException failure;
+
+        public void evaluated(final byte[] reply) {
+            this.reply = reply;
+            latch.countDown();
+        }
+
+        public void failed(final SaslException cause) {
+            failure = cause;
+            latch.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("Evaluation completed", latch.await(10, TimeUnit.SECONDS));
+        }
+    }
+
 }
\ No newline at end of file
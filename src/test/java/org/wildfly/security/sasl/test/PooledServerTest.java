@@ -0,0 +1,235 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.sasl.Sasl;
+import javax.security.sasl.SaslClient;
+import javax.security.sasl.SaslException;
+import javax.security.sasl.SaslServer;
+
+import org.junit.Test;
+import org.wildfly.security.sasl.anonymous.AbstractAnonymousFactory;
+import org.wildfly.security.sasl.anonymous.AnonymousServerFactory;
+import org.wildfly.security.sasl.md5digest.MD5DigestServerFactory;
+import org.wildfly.security.sasl.plain.PlainServerFactory;
+import org.wildfly.security.sasl.util.Charsets;
+
+/**
+ * Tests for the reuse of server mechanism instances by pooling factories.
+ */
+public class PooledServerTest extends BaseTestCase {
+
+    private static final Map<String, Object> NO_PROPS = Collections.<String, Object>emptyMap();
+    private static final int HANDSHAKE_COUNT = 1000;
+
+    @Test
+    public void testPlainInstanceReused() throws Exception {
+        PlainServerFactory factory = new PlainServerFactory();
+        factory.setMaximumIdleInstances(10);
+        CallbackHandler serverCallback = new ServerCallbackHandler("George", "gpwd".toCharArray());
+
+        SaslServer server = factory.createSaslServer(PlainServerFactory.PLAIN, "TestProtocol", "TestServer", NO_PROPS, serverCallback);
+        plainExchange(server, "George", "gpwd");
+        assertEquals("George", server.getAuthorizationID());
+        server.dispose();
+
+        SaslServer reused = factory.createSaslServer(PlainServerFactory.PLAIN, "TestProtocol", "TestServer", NO_PROPS, serverCallback);
+        assertSame(server, reused);
+        assertFalse(reused.isComplete());
+        plainExchange(reused, "George", "gpwd");
+        assertTrue(reused.isComplete());
+        assertEquals("George", reused.getAuthorizationID());
+    }
+
+    @Test
+    public void testPlainFailedInstanceReused() throws Exception {
+        PlainServerFactory factory = new PlainServerFactory();
+        factory.setMaximumIdleInstances(10);
+        CallbackHandler serverCallback = new ServerCallbackHandler("George", "gpwd".toCharArray());
+
+        SaslServer server = factory.createSaslServer(PlainServerFactory.PLAIN, "TestProtocol", "TestServer", NO_PROPS, serverCallback);
+        try {
+            plainExchange(server, "George", "bad");
+            fail("Expected SaslException not thrown.");
+        } catch (SaslException expected) {
+        }
+        server.dispose();
+
+        SaslServer reused = factory.createSaslServer(PlainServerFactory.PLAIN, "TestProtocol", "TestServer", NO_PROPS, serverCallback);
+        assertSame(server, reused);
+        plainExchange(reused, "George", "gpwd");
+        assertTrue(reused.isComplete());
+    }
+
+    @Test
+    public void testPoolKeyedByConfiguration() throws Exception {
+        PlainServerFactory factory = new PlainServerFactory();
+        factory.setMaximumIdleInstances(10);
+        CallbackHandler serverCallback = new ServerCallbackHandler("George", "gpwd".toCharArray());
+
+        SaslServer server = factory.createSaslServer(PlainServerFactory.PLAIN, "TestProtocol", "TestServer", NO_PROPS, serverCallback);
+        server.dispose();
+
+        assertNotSame(server, factory.createSaslServer(PlainServerFactory.PLAIN, "TestProtocol", "OtherServer", NO_PROPS, serverCallback));
+        CallbackHandler otherCallback = new ServerCallbackHandler("George", "gpwd".toCharArray());
+        assertNotSame(server, factory.createSaslServer(PlainServerFactory.PLAIN, "TestProtocol", "TestServer", NO_PROPS, otherCallback));
+        assertSame(server, factory.createSaslServer(PlainServerFactory.PLAIN, "TestProtocol", "TestServer", new HashMap<String, Object>(), serverCallback));
+    }
+
+    @Test
+    public void testPoolingDisabledByDefault() throws Exception {
+        PlainServerFactory factory = new PlainServerFactory();
+        CallbackHandler serverCallback = new ServerCallbackHandler("George", "gpwd".toCharArray());
+
+        SaslServer server = factory.createSaslServer(PlainServerFactory.PLAIN, "TestProtocol", "TestServer", NO_PROPS, serverCallback);
+        server.dispose();
+        assertNotSame(server, factory.createSaslServer(PlainServerFactory.PLAIN, "TestProtocol", "TestServer", NO_PROPS, serverCallback));
+    }
+
+    @Test
+    public void testDisposeTwice() throws Exception {
+        PlainServerFactory factory = new PlainServerFactory();
+        factory.setMaximumIdleInstances(10);
+        CallbackHandler serverCallback = new ServerCallbackHandler("George", "gpwd".toCharArray());
+
+        SaslServer server = factory.createSaslServer(PlainServerFactory.PLAIN, "TestProtocol", "TestServer", NO_PROPS, serverCallback);
+        server.dispose();
+        server.dispose();
+
+        assertSame(server, factory.createSaslServer(PlainServerFactory.PLAIN, "TestProtocol", "TestServer", NO_PROPS, serverCallback));
+        assertNotSame(server, factory.createSaslServer(PlainServerFactory.PLAIN, "TestProtocol", "TestServer", NO_PROPS, serverCallback));
+    }
+
+    @Test
+    public void testDigestInstanceReused() throws Exception {
+        MD5DigestServerFactory factory = new MD5DigestServerFactory();
+        factory.setMaximumIdleInstances(10);
+        CallbackHandler serverCallback = new ServerCallbackHandler("George", "gpwd".toCharArray());
+        Map<String, Object> serverProps = new HashMap<String, Object>();
+        serverProps.put("com.sun.security.sasl.digest.realm", "TestRealm");
+
+        SaslServer server = factory.createSaslServer(MD5DigestServerFactory.JBOSS_DIGEST_MD5, "TestProtocol", "TestServer", serverProps, serverCallback);
+        digestExchange(server);
+        assertEquals("George", server.getAuthorizationID());
+        server.dispose();
+
+        SaslServer reused = factory.createSaslServer(MD5DigestServerFactory.JBOSS_DIGEST_MD5, "TestProtocol", "TestServer", serverProps, serverCallback);
+        assertSame(server, reused);
+        assertFalse(reused.isComplete());
+        assertNull(reused.getAuthorizationID());
+        digestExchange(reused);
+        assertTrue(reused.isComplete());
+        assertEquals("George", reused.getAuthorizationID());
+    }
+
+    @Test
+    public void testAnonymousInstanceReused() throws Exception {
+        AnonymousServerFactory factory = new AnonymousServerFactory();
+        factory.setMaximumIdleInstances(10);
+
+        SaslServer server = factory.createSaslServer(AbstractAnonymousFactory.ANONYMOUS, "TestProtocol", "TestServer", NO_PROPS, null);
+        server.evaluateResponse("anonymous".getBytes(Charsets.UTF_8));
+        assertTrue(server.isComplete());
+        server.dispose();
+
+        SaslServer reused = factory.createSaslServer(AbstractAnonymousFactory.ANONYMOUS, "TestProtocol", "TestServer", NO_PROPS, null);
+        assertSame(server, reused);
+        assertFalse(reused.isComplete());
+        reused.evaluateResponse("anonymous".getBytes(Charsets.UTF_8));
+        assertTrue(reused.isComplete());
+    }
+
+    /**
+     * Check that pooled PLAIN handshakes allocate less than unpooled ones.
+     */
+    @Test
+    public void testPooledHandshakesAllocateLess() throws Exception {
+        CallbackHandler serverCallback = new ServerCallbackHandler("George", "gpwd".toCharArray());
+        byte[] response = "George\0George\0gpwd".getBytes(Charsets.UTF_8);
+
+        PlainServerFactory unpooled = new PlainServerFactory();
+        PlainServerFactory pooled = new PlainServerFactory();
+        pooled.setMaximumIdleInstances(10);
+
+        // warm up
+        runHandshakes(unpooled, serverCallback, response);
+        runHandshakes(pooled, serverCallback, response);
+
+        long unpooledBytes = runHandshakes(unpooled, serverCallback, response);
+        long pooledBytes = runHandshakes(pooled, serverCallback, response);
+        if (unpooledBytes >= 0 && pooledBytes >= 0) {
+            assertTrue("Pooled " + pooledBytes + " bytes, unpooled " + unpooledBytes + " bytes", pooledBytes < unpooledBytes);
+        }
+    }
+
+    /**
+     * Run a series of handshakes, returning the number of bytes allocated by the current thread if this can be measured.
+     */
+    private long runHandshakes(final PlainServerFactory factory, final CallbackHandler serverCallback, final byte[] response) throws Exception {
+        final long start = allocatedBytes();
+        for (int i = 0; i < HANDSHAKE_COUNT; i++) {
+            SaslServer server = factory.createSaslServer(PlainServerFactory.PLAIN, "TestProtocol", "TestServer", NO_PROPS, serverCallback);
+            server.evaluateResponse(response);
+            assertTrue(server.isComplete());
+            server.dispose();
+        }
+        final long end = allocatedBytes();
+        return start < 0 || end < 0 ? -1 : end - start;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private void plainExchange(final SaslServer server, final String username, final String password) throws Exception {
+        CallbackHandler clientCallback = new ClientCallbackHandler(username, password.toCharArray());
+        SaslClient client = Sasl.createSaslClient(new String[]{PlainServerFactory.PLAIN}, username, "TestProtocol", "TestServer", NO_PROPS, clientCallback);
+
+        byte[] message = client.evaluateChallenge(new byte[0]);
+        server.evaluateResponse(message);
+    }
+
+    private void digestExchange(final SaslServer server) throws Exception {
+        CallbackHandler clientCallback = new ClientCallbackHandler("George", "gpwd".toCharArray());
+        SaslClient client = Sasl.createSaslClient(new String[]{MD5DigestServerFactory.JBOSS_DIGEST_MD5}, "George", "TestProtocol", "TestServer", NO_PROPS, clientCallback);
+
+        byte[] message = server.evaluateResponse(new byte[0]);
+        message = client.evaluateChallenge(message);
+        server.evaluateResponse(message);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.sasl.Sasl;
+import javax.security.sasl.SaslClient;
+import javax.security.sasl.SaslException;
+import javax.security.sasl.SaslServer;
+
+import org.junit.After;
+import org.junit.Test;
+import org.wildfly.security.sasl.util.AbstractSaslParticipant;
+import org.wildfly.security.sasl.util.SaslInstrumentationListener;
+import org.wildfly.security.sasl.util.SaslStatistics;
+import org.wildfly.security.sasl.util.SaslStatistics.Histogram;
+import org.wildfly.security.sasl.util.SaslStatistics.MechanismStatistics;
+
+/**
+ * Test the instrumentation of SASL exchanges and the in-memory {@link SaslStatistics}.
+ */
+public class SaslInstrumentationTest extends BaseTestCase {
+
+    private static final String PLAIN = "PLAIN";
+    private static final String ANONYMOUS = "ANONYMOUS";
+
+    @After
+    public void disableInstrumentation() {
+        AbstractSaslParticipant.setInstrumentationListener(null);
+    }
+
+    @Test
+    public void testSuccessfulExchange() throws Exception {
+        SaslStatistics statistics = new SaslStatistics();
+        AbstractSaslParticipant.setInstrumentationListener(statistics);
+
+        assertTrue(exchange("gpwd"));
+
+        MechanismStatistics server = statistics.getServerStatistics(PLAIN);
+        assertEquals(1, server.getSuccessfulExchangeCount());
+        assertEquals(0, server.getFailedExchangeCount());
+        assertEquals(1, server.getStepTime(1).getCount());
+        assertEquals(0, server.getStepTime(2).getCount());
+        assertEquals(1, server.getStepCallbackTime(1).getCount());
+        assertTrue(server.getExchangeCallbackTime().getTotal() <= server.getExchangeTime().getTotal());
+        assertEquals("George\0George\0gpwd".length(), server.getMessageSize().getTotal());
+        // the final server step has no reply
+        assertEquals(0, server.getReplySize().getCount());
+
+        assertEquals(Collections.singleton(PLAIN), statistics.getServerMechanismNames());
+    }
+
+    @Test
+    public void testClientExchange() throws Exception {
+        SaslStatistics statistics = new SaslStatistics();
+        AbstractSaslParticipant.setInstrumentationListener(statistics);
+
+        CallbackHandler serverCallback = new ServerCallbackHandler("George", (char[]) null);
+        SaslServer server = Sasl.createSaslServer(ANONYMOUS, "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), serverCallback);
+        CallbackHandler clientCallback = new ClientCallbackHandler("George", (char[]) null);
+        SaslClient client = Sasl.createSaslClient(new String[]{ANONYMOUS}, "George", "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), clientCallback);
+
+        byte[] message = client.evaluateChallenge(new byte[0]);
+        server.evaluateResponse(message);
+        assertTrue(server.isComplete());
+
+        MechanismStatistics clientStatistics = statistics.getClientStatistics(ANONYMOUS);
+        assertEquals(1, clientStatistics.getSuccessfulExchangeCount());
+        assertEquals(1, clientStatistics.getStepTime(1).getCount());
+        assertEquals(0, clientStatistics.getMessageSize().getTotal());
+        assertEquals(message.length, clientStatistics.getReplySize().getTotal());
+        assertEquals(1, statistics.getServerStatistics(ANONYMOUS).getSuccessfulExchangeCount());
+        assertEquals(Collections.singleton(ANONYMOUS), statistics.getClientMechanismNames());
+    }
+
+    @Test
+    public void testFailedExchange() throws Exception {
+        SaslStatistics statistics = new SaslStatistics();
+        AbstractSaslParticipant.setInstrumentationListener(statistics);
+
+        assertFalse(exchange("bad"));
+
+        MechanismStatistics server = statistics.getServerStatistics(PLAIN);
+        assertEquals(0, server.getSuccessfulExchangeCount());
+        assertEquals(1, server.getFailedExchangeCount());
+        assertEquals(1, server.getStepTime(1).getCount());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        SaslStatistics statistics = new SaslStatistics();
+        AbstractSaslParticipant.setInstrumentationListener(statistics);
+        AbstractSaslParticipant.setInstrumentationListener(null);
+
+        assertTrue(exchange("gpwd"));
+
+        assertNull(statistics.getServerStatistics(PLAIN));
+        assertTrue(statistics.getClientMechanismNames().isEmpty());
+    }
+
+    @Test
+    public void testFaultyListener() throws Exception {
+        AbstractSaslParticipant.setInstrumentationListener(new SaslInstrumentationListener() {
+            public void stepEvaluated(String mechanismName, boolean server, int step, long evaluationTime, long callbackTime, int messageSize, int replySize) {
+                throw new IllegalStateException();
+            }
+
+            public void exchangeEnded(String mechanismName, boolean server, boolean successful, int steps, long evaluationTime, long callbackTime) {
+                throw new IllegalStateException();
+            }
+        });
+
+        assertTrue(exchange("gpwd"));
+        assertFalse(exchange("bad"));
+    }
+
+    @Test
+    public void testHistogram() throws Exception {
+        SaslStatistics statistics = new SaslStatistics();
+        for (int i = 0; i <= 100; i++) {
+            statistics.stepEvaluated(PLAIN, true, 1, i, 0, 0, -1);
+        }
+        Histogram histogram = statistics.getServerStatistics(PLAIN).getStepTime(1);
+        assertEquals(101, histogram.getCount());
+        assertEquals(5050, histogram.getTotal());
+        assertEquals(100, histogram.getMaximum());
+        assertEquals(50.0, histogram.getMean(), 0.0);
+        assertEquals(1, histogram.getBucketCount(0));
+        assertEquals(1, histogram.getBucketCount(1));
+        assertEquals(2, histogram.getBucketCount(2));
+        assertEquals(63, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(100));
+        assertEquals(0, statistics.getServerStatistics(PLAIN).getReplySize().getCount());
+
+        // steps beyond the maximum are accounted to the last step
+        statistics.stepEvaluated(PLAIN, true, SaslStatistics.MAX_STEPS + 3, 1, 0, 0, -1);
+        assertEquals(1, statistics.getServerStatistics(PLAIN).getStepTime(SaslStatistics.MAX_STEPS).getCount());
+    }
+
+    private boolean exchange(final String password) throws SaslException {
+        CallbackHandler serverCallback = new ServerCallbackHandler("George", "gpwd".toCharArray());
+        SaslServer server = Sasl.createSaslServer(PLAIN, "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), serverCallback);
+
+        CallbackHandler clientCallback = new ClientCallbackHandler("George", password.toCharArray());
+        SaslClient client = Sasl.createSaslClient(new String[]{PLAIN}, "George", "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), clientCallback);
+
+        byte[] message = client.evaluateChallenge(new byte[0]);
+        try {
+            assertNull(server.evaluateResponse(message));
+        } catch (SaslException e) {
+            assertFalse(server.isComplete());
+            return false;
+        }
+        assertTrue(server.isComplete());
+        return true;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.sasl.Sasl;
+import javax.security.sasl.SaslClient;
+import javax.security.sasl.SaslClientFactory;
+import javax.security.sasl.SaslException;
+import javax.security.sasl.SaslServer;
+import javax.security.sasl.SaslServerFactory;
+
+import org.junit.Test;
+import org.wildfly.security.sasl.WildFlySaslProvider;
+import org.wildfly.security.sasl.anonymous.AnonymousClientFactory;
+import org.wildfly.security.sasl.anonymous.AnonymousSaslClient;
+import org.wildfly.security.sasl.anonymous.AnonymousServerFactory;
+import org.wildfly.security.sasl.md5digest.MD5DigestServerFactory;
+import org.wildfly.security.sasl.plain.PlainSaslServer;
+import org.wildfly.security.sasl.plain.PlainServerFactory;
+import org.wildfly.security.sasl.util.SaslMechanismRegistry;
+
+/**
+ * Tests for the {@link SaslMechanismRegistry}.
+ */
+public class SaslMechanismRegistryTest {
+
+    private static final String[] POLICIES = {
+        Sasl.POLICY_NOPLAINTEXT,
+        Sasl.POLICY_NOANONYMOUS,
+        Sasl.POLICY_FORWARD_SECRECY,
+        Sasl.POLICY_NOACTIVE,
+        Sasl.POLICY_NODICTIONARY,
+        Sasl.POLICY_PASS_CREDENTIALS,
+    };
+
+    @Test
+    public void testPolicySelection() {
+        SaslMechanismRegistry registry = WildFlySaslProvider.getMechanismRegistry();
+        Map<String, Object> props = new HashMap<String, Object>();
+
+        assertArrayEquals(new String[] { "ANONYMOUS", "PLAIN", "JBOSS-LOCAL-USER", "GSSAPI", "DIGEST-MD5", "JBOSS-TOKEN", "EXTERNAL" }, registry.getServerMechanismNames(props));
+        assertArrayEquals(new String[] { "ANONYMOUS", "JBOSS-LOCAL-USER", "GSSAPI", "DIGEST-MD5", "JBOSS-TOKEN", "EXTERNAL" }, registry.getClientMechanismNames(null));
+
+        props.put(Sasl.POLICY_NOPLAINTEXT, "true");
+        assertArrayEquals(new String[] { "ANONYMOUS", "JBOSS-LOCAL-USER", "GSSAPI", "EXTERNAL" }, registry.getServerMechanismNames(props));
+
+        props.put(Sasl.POLICY_NOANONYMOUS, Boolean.TRUE);
+        assertArrayEquals(new String[] { "JBOSS-LOCAL-USER", "GSSAPI", "EXTERNAL" }, registry.getServerMechanismNames(props));
+
+        props.put(Sasl.POLICY_NOANONYMOUS, "false");
+        assertArrayEquals(new String[] { "ANONYMOUS", "JBOSS-LOCAL-USER", "GSSAPI", "EXTERNAL" }, registry.getServerMechanismNames(props));
+    }
+
+    /**
+     * Verify the registry agrees with the factories themselves for every combination of policies.
+     */
+    @Test
+    public void testConsistentWithFactories() {
+        SaslServerFactory[] factories = { new AnonymousServerFactory(), new PlainServerFactory(), new MD5DigestServerFactory() };
+        SaslMechanismRegistry registry = new SaslMechanismRegistry(Arrays.asList(factories), Collections.<SaslClientFactory>emptyList());
+
+        for (int mask = 0; mask < 1 << POLICIES.length; mask++) {
+            Map<String, Object> props = new HashMap<String, Object>();
+            for (int i = 0; i < POLICIES.length; i++) {
+                props.put(POLICIES[i], Boolean.toString((mask & 1 << i) != 0));
+            }
+            int expected = 0;
+            for (SaslServerFactory factory : factories) {
+                String[] names = factory.getMechanismNames(props);
+                for (String name : names) {
+                    assertSame(factory, registry.getServerFactory(name, props));
+                }
+                expected += names.length;
+            }
+            assertEquals(expected, registry.getServerMechanismNames(props).length);
+        }
+    }
+
+    @Test
+    public void testCreateServer() throws Exception {
+        SaslMechanismRegistry registry = WildFlySaslProvider.getMechanismRegistry();
+        CallbackHandler serverCallback = new ServerCallbackHandler("George", "gpwd".toCharArray());
+
+        SaslServer server = registry.createSaslServer("PLAIN", "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), serverCallback);
+        assertEquals(PlainSaslServer.class, server.getClass());
+
+        assertNull(registry.createSaslServer("PLAIN", "TestProtocol", "TestServer", Collections.singletonMap(Sasl.POLICY_NOPLAINTEXT, "true"), serverCallback));
+        assertNull(registry.createSaslServer("UNKNOWN", "TestProtocol", "TestServer", null, serverCallback));
+    }
+
+    @Test
+    public void testCreateClient() throws Exception {
+        SaslMechanismRegistry registry = new SaslMechanismRegistry(Collections.<SaslServerFactory>emptyList(),
+                Arrays.<SaslClientFactory>asList(new AnonymousClientFactory()));
+
+        SaslClient client = registry.createSaslClient(new String[] { "PLAIN", "ANONYMOUS" }, null, "TestProtocol", "TestServer", null, null);
+        assertNotNull(client);
+        assertEquals(AnonymousSaslClient.class, client.getClass());
+
+        assertNull(registry.createSaslClient(new String[] { "ANONYMOUS" }, null, "TestProtocol", "TestServer",
+                Collections.singletonMap(Sasl.POLICY_NOANONYMOUS, "true"), null));
+    }
+
+    /**
+     * Verify factories not derived from the WildFly base class are queried for each combination of policies.
+     */
+    @Test
+    public void testForeignFactory() throws Exception {
+        SaslServerFactory foreign = new SaslServerFactory() {
+            public SaslServer createSaslServer(String mechanism, String protocol, String serverName, Map<String, ?> props, CallbackHandler cbh) throws SaslException {
+                return null;
+            }
+
+            public String[] getMechanismNames(Map<String, ?> props) {
+                return props != null && "true".equals(String.valueOf(props.get(Sasl.POLICY_NOACTIVE))) ? new String[0] : new String[] { "FOREIGN" };
+            }
+        };
+        SaslMechanismRegistry registry = new SaslMechanismRegistry(Arrays.asList(foreign, new PlainServerFactory()), Collections.<SaslClientFactory>emptyList());
+
+        assertArrayEquals(new String[] { "FOREIGN", "PLAIN" }, registry.getServerMechanismNames(null));
+        assertSame(foreign, registry.getServerFactory("FOREIGN", Collections.singletonMap(Sasl.POLICY_NOPLAINTEXT, "true")));
+        assertNull(registry.getServerFactory("FOREIGN", Collections.singletonMap(Sasl.POLICY_NOACTIVE, "true")));
+    }
+}
@@ -67,7 +67,7 @@ public class ServerCallbackHandler implements CallbackHandler {
                 pcb.setPassword(expectedPassword);
             } else if (current instanceof VerifyPasswordCallback && expectedPassword != null) {
                 VerifyPasswordCallback vcb = (VerifyPasswordCallback) current;
-                vcb.setVerified(String.valueOf(expectedPassword).equals(vcb.getPassword()));
+                vcb.setVerified(vcb.passwordEquals(expectedPassword));
             } else if (current instanceof DigestHashCallback && hexURPHash != null) {
                 DigestHashCallback dhc = (DigestHashCallback) current;
                 dhc.setHexHash(hexURPHash);
@@ -0,0 +1,231 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.security.sasl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+import javax.security.sasl.AuthorizeCallback;
+import javax.security.sasl.Sasl;
+import javax.security.sasl.SaslClient;
+import javax.security.sasl.SaslException;
+import javax.security.sasl.SaslServer;
+
+import org.junit.Test;
+import org.wildfly.security.auth.callback.SecurityDomainCallback;
+import org.wildfly.security.auth.provider.SecurityDomain;
+import org.wildfly.security.auth.provider.SimpleMapBackedSecurityRealm;
+import org.wildfly.security.sasl.WildFlySasl;
+import org.wildfly.security.sasl.callback.TokenCallback;
+import org.wildfly.security.sasl.token.TokenManager;
+import org.wildfly.security.sasl.token.TokenSaslServer;
+
+/**
+ * Test for the JBOSS-TOKEN SASL mechanism, this will test both the client and server side.
+ */
+public class TokenTest extends BaseTestCase {
+
+    private static final String TOKEN = "JBOSS-TOKEN";
+
+    @Test
+    public void testNoTokenManager() throws Exception {
+        CallbackHandler serverCallback = new ServerCallbackHandler("George", "gpwd".toCharArray());
+        assertNull(Sasl.createSaslServer(TOKEN, "TestProtocol", "TestServer", Collections.<String, Object>emptyMap(), serverCallback));
+    }
+
+    @Test
+    public void testSuccessfulExchange() throws Exception {
+        TokenManager tokenManager = new TokenManager(1, TimeUnit.MINUTES);
+        byte[] token = tokenManager.issueToken("George", "TestRealm");
+
+        SaslServer server = createServer(tokenManager, new ServerCallbackHandler("George", "gpwd".toCharArray()));
+        assertEquals(TokenSaslServer.class, server.getClass());
+        exchange(server, null, token);
+        assertTrue(server.isComplete());
+        assertEquals("George", server.getAuthorizationID());
+    }
+
+    @Test
+    public void testNotAuthorized() throws Exception {
+        TokenManager tokenManager = new TokenManager(1, TimeUnit.MINUTES);
+        byte[] token = tokenManager.issueToken("George", "TestRealm");
+
+        SaslServer server = createServer(tokenManager, new ServerCallbackHandler("George", "gpwd".toCharArray()));
+        assertExchangeFails(server, "Borris", token);
+    }
+
+    @Test
+    public void testTamperedToken() throws Exception {
+        TokenManager tokenManager = new TokenManager(1, TimeUnit.MINUTES);
+        byte[] token = tokenManager.issueToken("George", "TestRealm");
+        // change the last character of the realm name
+        token[token.length - 33] ^= 1;
+
+        assertExchangeFails(createServer(tokenManager, new ServerCallbackHandler("George", "gpwd".toCharArray())), null, token);
+        assertExchangeFails(createServer(tokenManager, new ServerCallbackHandler("George", "gpwd".toCharArray())), null, new byte[] { 1, 2, 3 });
+    }
+
+    @Test
+    public void testForeignToken() throws Exception {
+        TokenManager tokenManager = new TokenManager(1, TimeUnit.MINUTES);
+        byte[] token = new TokenManager(1, TimeUnit.MINUTES).issueToken("George", "TestRealm");
+
+        assertExchangeFails(createServer(tokenManager, new ServerCallbackHandler("George", "gpwd".toCharArray())), null, token);
+    }
+
+    @Test
+    public void testExpiredToken() throws Exception {
+        TokenManager tokenManager = new TokenManager(1, TimeUnit.MILLISECONDS);
+        byte[] token = tokenManager.issueToken("George", "TestRealm");
+        Thread.sleep(10);
+
+        assertExchangeFails(createServer(tokenManager, new ServerCallbackHandler("George", "gpwd".toCharArray())), null, token);
+    }
+
+    @Test
+    public void testKeyRotation() throws Exception {
+        TokenManager tokenManager = new TokenManager(1, TimeUnit.MINUTES);
+        byte[] oldToken = tokenManager.issueToken("George", "TestRealm");
+        tokenManager.rotateKey();
+        byte[] newToken = tokenManager.issueToken("George", "TestRealm");
+
+        SaslServer server = createServer(tokenManager, new ServerCallbackHandler("George", "gpwd".toCharArray()));
+        exchange(server, null, oldToken);
+        assertTrue(server.isComplete());
+
+        server = createServer(tokenManager, new ServerCallbackHandler("George", "gpwd".toCharArray()));
+        exchange(server, null, newToken);
+        assertTrue(server.isComplete());
+    }
+
+    @Test
+    public void testRevokedToken() throws Exception {
+        TokenManager tokenManager = new TokenManager(1, TimeUnit.MINUTES);
+        byte[] revoked = tokenManager.issueToken("George", "TestRealm");
+        byte[] other = tokenManager.issueToken("George", "TestRealm");
+        tokenManager.revokeToken(revoked);
+
+        assertExchangeFails(createServer(tokenManager, new ServerCallbackHandler("George", "gpwd".toCharArray())), null, revoked);
+        SaslServer server = createServer(tokenManager, new ServerCallbackHandler("George", "gpwd".toCharArray()));
+        exchange(server, null, other);
+        assertTrue(server.isComplete());
+    }
+
+    @Test
+    public void testRevokedPrincipal() throws Exception {
+        TokenManager tokenManager = new TokenManager(1, TimeUnit.MINUTES);
+        byte[] revoked = tokenManager.issueToken("George", "TestRealm");
+        byte[] otherRealm = tokenManager.issueToken("George", "OtherRealm");
+        tokenManager.revokeTokens("George", "TestRealm");
+        Thread.sleep(10);
+        byte[] reissued = tokenManager.issueToken("George", "TestRealm");
+
+        assertExchangeFails(createServer(tokenManager, new ServerCallbackHandler("George", "gpwd".toCharArray())), null, revoked);
+        SaslServer server = createServer(tokenManager, new ServerCallbackHandler("George", "gpwd".toCharArray()));
+        exchange(server, null, otherRealm);
+        assertTrue(server.isComplete());
+        server = createServer(tokenManager, new ServerCallbackHandler("George", "gpwd".toCharArray()));
+        exchange(server, null, reissued);
+        assertTrue(server.isComplete());
+    }
+
+    @Test
+    public void testSecurityDomain() throws Exception {
+        SecurityDomain.Builder builder = SecurityDomain.builder();
+        builder.addRealm("TestRealm", new SimpleMapBackedSecurityRealm("TestRealm"));
+        builder.setDefaultRealmName("TestRealm");
+        CallbackHandler serverCallback = new DomainCallbackHandler(builder.build());
+
+        TokenManager tokenManager = new TokenManager(1, TimeUnit.MINUTES);
+        SaslServer server = createServer(tokenManager, serverCallback);
+        exchange(server, null, tokenManager.issueToken("George", "TestRealm"));
+        assertTrue(server.isComplete());
+        assertEquals("George", server.getAuthorizationID());
+
+        assertExchangeFails(createServer(tokenManager, serverCallback), null, tokenManager.issueToken("George", "OtherRealm"));
+    }
+
+    private SaslServer createServer(final TokenManager tokenManager, final CallbackHandler serverCallback) throws SaslException {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(WildFlySasl.TOKEN_MANAGER, tokenManager);
+        return Sasl.createSaslServer(TOKEN, "TestProtocol", "TestServer", props, serverCallback);
+    }
+
+    private void exchange(final SaslServer server, final String authorizationId, final byte[] token) throws SaslException {
+        SaslClient client = Sasl.createSaslClient(new String[] { TOKEN }, authorizationId, "TestProtocol", "TestServer",
+                Collections.<String, Object>emptyMap(), new CallbackHandler() {
+                    public void handle(final Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                        for (Callback current : callbacks) {
+                            if (current instanceof TokenCallback) {
+                                ((TokenCallback) current).setToken(token);
+                            } else {
+                                throw new UnsupportedCallbackException(current);
+                            }
+                        }
+                    }
+                });
+        assertTrue(client.hasInitialResponse());
+        byte[] message = client.evaluateChallenge(new byte[0]);
+        assertTrue(client.isComplete());
+        assertNull(server.evaluateResponse(message));
+    }
+
+    private void assertExchangeFails(final SaslServer server, final String authorizationId, final byte[] token) {
+        try {
+            exchange(server, authorizationId, token);
+            fail("Expected SaslException not thrown.");
+        } catch (SaslException expected) {
+        }
+        assertFalse(server.isComplete());
+    }
+
+    private static final class DomainCallbackHandler implements CallbackHandler {
+
+        private final SecurityDomain domain;
+
+        DomainCallbackHandler(final SecurityDomain domain) {
+            this.domain = domain;
+        }
+
+        public void handle(final Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+            for (Callback current : callbacks) {
+                if (current instanceof SecurityDomainCallback) {
+                    ((SecurityDomainCallback) current).setSecurityDomain(domain);
+                } else if (current instanceof AuthorizeCallback) {
+                    AuthorizeCallback acb = (AuthorizeCallback) current;
+                    acb.setAuthorized(acb.getAuthenticationID().equals(acb.getAuthorizationID()));
+                } else {
+                    throw new UnsupportedCallbackException(current);
+                }
+            }
+        }
+    }
+}